@@ -0,0 +1,251 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.io.Resources;
+import io.dockstore.common.Registry;
+import io.dockstore.common.SourceControl;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tag;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.ToolMode;
+import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.core.WorkflowMode;
+import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.jdbi.ToolDAO;
+import org.hibernate.SessionFactory;
+
+/**
+ * Realistic entries and descriptors for the benchmarks, built in memory so that no benchmark needs a database,
+ * a source control provider or a network connection.
+ * Descriptors are read from the fixtures directory on the classpath.
+ *
+ * @author dyuen
+ */
+public final class Fixtures {
+
+    public static final String CWL_MAIN = "Dockstore.cwl";
+    public static final List<String> CWL_SECONDARY = Arrays.asList("qc.cwl", "tools/sort.cwl", "tools/bamstats.cwl", "tools/md5sum.cwl");
+    public static final String WDL_MAIN = "Dockstore.wdl";
+    public static final List<String> WDL_SECONDARY = Arrays.asList("tasks.wdl");
+    /**
+     * versions of each entry, published entries typically have a handful
+     */
+    public static final int VERSIONS = 5;
+
+    /**
+     * source file ids of an entry start at its id times this
+     */
+    private static final long FILE_IDS_PER_ENTRY = 10000;
+    private static final long IMAGE_SIZE = 100L * 1024 * 1024;
+    private static final String DOCKERFILE = "FROM ubuntu:xenial-20161010\nRUN apt-get update && apt-get install -y samtools\n";
+
+    private Fixtures() {
+        // hide the constructor for utility classes
+    }
+
+    /**
+     * @param path relative to the fixtures directory
+     * @return the content of a fixture
+     */
+    public static String read(String path) {
+        try {
+            return Resources.toString(Resources.getResource("fixtures/" + path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the secondary CWL descriptors, by path relative to the main descriptor
+     */
+    public static Map<String, String> cwlSecondaryFiles() {
+        Map<String, String> files = new HashMap<>();
+        CWL_SECONDARY.forEach(path -> files.put(path, read("cwl/" + path)));
+        return files;
+    }
+
+    /**
+     * @return the secondary WDL descriptors, by path relative to the main descriptor
+     */
+    public static Map<String, String> wdlSecondaryFiles() {
+        Map<String, String> files = new HashMap<>();
+        WDL_SECONDARY.forEach(path -> files.put(path, read("wdl/" + path)));
+        return files;
+    }
+
+    public static DockstoreWebserviceConfiguration configuration() {
+        DockstoreWebserviceConfiguration config = new DockstoreWebserviceConfiguration();
+        config.setHostname("localhost");
+        config.setPort("8080");
+        config.setScheme("http");
+        return config;
+    }
+
+    /**
+     * A published quay.io tool where every tag has a Dockerfile, a CWL and a WDL descriptor
+     *
+     * @param id   id of the tool, source files are numbered after it
+     * @param tags number of tags
+     */
+    public static Tool tool(long id, int tags) {
+        Tool tool = new Tool();
+        tool.setId(id);
+        tool.setMode(ToolMode.AUTO_DETECT_QUAY_TAGS_AUTOMATED_BUILDS);
+        tool.setName("dockstore-tool-" + id);
+        tool.setNamespace("collaboratory");
+        tool.setRegistry(Registry.QUAY_IO.toString());
+        tool.setGitUrl("git@github.com:collaboratory/dockstore-tool-" + id + ".git");
+        tool.setDefaultDockerfilePath("/Dockerfile");
+        tool.setDefaultCwlPath("/Dockstore.cwl");
+        tool.setDefaultWdlPath("/Dockstore.wdl");
+        tool.setAuthor("Dockstore Benchmarks");
+        tool.setDescription("A tool to benchmark with");
+        tool.setIsPublished(true);
+        tool.setLastUpdated(new Date(0));
+
+        final String cwl = read("cwl/tools/bamstats.cwl");
+        final String wdl = read("wdl/tasks.wdl");
+        long fileId = id * FILE_IDS_PER_ENTRY;
+        for (int i = 0; i < tags; i++) {
+            Tag tag = new Tag();
+            tag.setName("1." + i);
+            tag.setReference("1." + i);
+            tag.setImageId("sha256:" + Long.toHexString(id) + i);
+            tag.setSize(IMAGE_SIZE);
+            tag.setDockerfilePath("/Dockerfile");
+            tag.setCwlPath("/Dockstore.cwl");
+            tag.setWdlPath("/Dockstore.wdl");
+            tag.setAutomated(true);
+            tag.setValid(true);
+            tag.setVerified(i % 2 == 0);
+            tag.setVerifiedSource(i % 2 == 0 ? "Dockstore CLI" : null);
+            tag.setLastModified(new Date(0));
+            tag.addSourceFile(sourceFile(fileId++, SourceFile.FileType.DOCKERFILE, "/Dockerfile", DOCKERFILE));
+            tag.addSourceFile(sourceFile(fileId++, SourceFile.FileType.DOCKSTORE_CWL, "/Dockstore.cwl", cwl));
+            tag.addSourceFile(sourceFile(fileId++, SourceFile.FileType.DOCKSTORE_WDL, "/Dockstore.wdl", wdl));
+            tool.addTag(tag);
+        }
+        return tool;
+    }
+
+    /**
+     * A published GitHub CWL workflow where every version has the main descriptor and all of its imports
+     *
+     * @param id       id of the workflow, source files are numbered after it
+     * @param versions number of versions
+     */
+    public static Workflow workflow(long id, int versions) {
+        Workflow workflow = new Workflow();
+        workflow.setId(id);
+        workflow.setMode(WorkflowMode.FULL);
+        workflow.setOrganization("dockstore-testing");
+        workflow.setRepository("benchmark-workflow-" + id);
+        workflow.setSourceControl(SourceControl.GITHUB);
+        workflow.setDescriptorType("cwl");
+        workflow.setDefaultWorkflowPath("/" + CWL_MAIN);
+        workflow.setGitUrl("git@github.com:dockstore-testing/benchmark-workflow-" + id + ".git");
+        workflow.setAuthor("Dockstore Benchmarks");
+        workflow.setDescription("A workflow to benchmark with");
+        workflow.setIsPublished(true);
+        workflow.setLastUpdated(new Date(0));
+
+        Map<String, String> files = new HashMap<>(cwlSecondaryFiles());
+        files.put(CWL_MAIN, read("cwl/" + CWL_MAIN));
+        long fileId = id * FILE_IDS_PER_ENTRY;
+        for (int i = 0; i < versions; i++) {
+            WorkflowVersion version = workflowVersion("1." + i);
+            version.setVerified(i % 2 == 0);
+            version.setVerifiedSource(i % 2 == 0 ? "Dockstore CLI" : null);
+            version.setLastModified(new Date(0));
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                version.addSourceFile(sourceFile(fileId++, SourceFile.FileType.DOCKSTORE_CWL, "/" + file.getKey(), file.getValue()));
+            }
+            workflow.addWorkflowVersion(version);
+        }
+        return workflow;
+    }
+
+    /**
+     * A mix of tools and workflows, as would be found when indexing all published entries
+     *
+     * @param count    number of entries
+     * @param versions number of versions per entry
+     */
+    public static List<Entry> entries(int count, int versions) {
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            entries.add(i % 2 == 0 ? tool(i, versions) : workflow(i, versions));
+        }
+        return entries;
+    }
+
+    /**
+     * A valid version of a workflow whose main descriptor is at the root of the repository
+     */
+    public static WorkflowVersion workflowVersion(String name) {
+        WorkflowVersion version = new WorkflowVersion();
+        version.setName(name);
+        version.setReference(name);
+        version.setWorkflowPath("/" + CWL_MAIN);
+        version.setValid(true);
+        return version;
+    }
+
+    /**
+     * Tools in descriptors link to Dockstore when they are published, without a database this is decided by a fixed set of paths.
+     *
+     * @param publishedPaths paths of tools that are considered published
+     */
+    public static ToolDAO toolDAO(Set<String> publishedPaths) {
+        final Set<String> paths = new HashSet<>(publishedPaths);
+        // never used, the only query is overridden
+        SessionFactory sessionFactory = (SessionFactory)Proxy.newProxyInstance(Fixtures.class.getClassLoader(), new Class<?>[] { SessionFactory.class },
+            (proxy, method, args) -> {
+                throw new UnsupportedOperationException(method.getName());
+            });
+        return new ToolDAO(sessionFactory) {
+            @Override
+            public boolean hasPublishedByPath(String path) {
+                return paths.contains(path);
+            }
+        };
+    }
+
+    private static SourceFile sourceFile(long id, SourceFile.FileType type, String path, String content) {
+        SourceFile file = new SourceFile();
+        file.setId(id);
+        file.setType(type);
+        file.setPath(path);
+        file.setContent(content);
+        return file;
+    }
+}
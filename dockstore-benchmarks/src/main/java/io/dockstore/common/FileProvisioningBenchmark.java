@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.dockstore.benchmarks.BenchmarkRunner;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Provisioning input files that are all in the cache, which is what a re-run of a workflow or a batch of launches on the same inputs does.
+ * No plugins are installed and the urls are not http(s), so this measures the cache lookup and the linking into the working directory.
+ *
+ * @author dyuen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Fork(1)
+public class FileProvisioningBenchmark {
+
+    private static final int FILE_SIZE = 1024 * 1024;
+
+    @Param({ "10", "100" })
+    private int files;
+
+    private Path root;
+    private Path working;
+    private FileProvisioning fileProvisioning;
+    private List<Pair<String, Path>> inputFiles;
+
+    @Setup
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("dockstore-benchmark");
+        working = root.resolve("working");
+        Path cache = root.resolve("cache");
+        File config = root.resolve("config").toFile();
+        FileUtils.writeLines(config, StandardCharsets.UTF_8.name(), Arrays.asList("use-cache = true", "cache-dir = " + cache,
+            "file-plugins-location = " + root.resolve("plugins")));
+        fileProvisioning = new FileProvisioning(config.getAbsolutePath());
+
+        // seeded through the cache itself, so that the benchmark follows its layout
+        FileProvisioningCache fileProvisioningCache = new FileProvisioningCache(cache, 0);
+        Path seed = root.resolve("seed.bam");
+        inputFiles = new ArrayList<>();
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < files; i++) {
+            // not http(s), which would ask a server whether the file changed on every lookup
+            String url = "s3://dockstore-benchmark/input-" + i + ".bam";
+            content[0] = (byte)i;
+            content[1] = (byte)(i >> Byte.SIZE);
+            Files.write(seed, content);
+            try (FileProvisioningCache.KeyLock ignored = fileProvisioningCache.lock(url)) {
+                fileProvisioningCache.store(fileProvisioningCache.lookup(url), seed);
+            }
+            inputFiles.add(ImmutablePair.of(url, working.resolve("input-" + i + ".bam")));
+        }
+        Files.delete(seed);
+    }
+
+    /**
+     * Each invocation provisions all of the files, which takes well over a millisecond
+     */
+    @TearDown(Level.Invocation)
+    public void cleanWorkingDirectory() throws IOException {
+        FileUtils.deleteDirectory(working.toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Benchmark
+    public void provisionCachedInputs() {
+        fileProvisioning.provisionInputFiles("", inputFiles);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.dockstore.benchmarks.BenchmarkRunner;
+import io.dockstore.benchmarks.Fixtures;
+import io.dockstore.webservice.core.Entry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the bulk request used to index all published entries.
+ *
+ * @author dyuen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Fork(1)
+public class ElasticManagerBenchmark {
+
+    @Param({ "100", "1000" })
+    private int entries;
+
+    private final ElasticManager manager = new ElasticManager();
+    private List<Entry> published;
+
+    @Setup
+    public void setup() {
+        published = Fixtures.entries(entries, Fixtures.VERSIONS);
+    }
+
+    @Benchmark
+    public String bulkNDJSON() {
+        return manager.getNDJSON(published);
+    }
+}
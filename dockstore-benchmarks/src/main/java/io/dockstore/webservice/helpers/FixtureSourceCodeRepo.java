@@ -0,0 +1,104 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import io.dockstore.webservice.core.Entry;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Version;
+import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.core.WorkflowVersion;
+
+/**
+ * A single repository held in memory, so that resolving imports can be benchmarked without a source control provider.
+ * This lives in the helpers package because some of the abstract methods of {@link SourceCodeRepoInterface} are package-private.
+ *
+ * @author dyuen
+ */
+public class FixtureSourceCodeRepo extends SourceCodeRepoInterface {
+
+    private final Map<String, String> files;
+
+    /**
+     * @param files content of the repository, by path from the root (without a leading slash)
+     */
+    public FixtureSourceCodeRepo(Map<String, String> files) {
+        this.files = new HashMap<>(files);
+        this.gitUsername = "benchmark";
+    }
+
+    @Override
+    public String readFile(String repositoryId, String fileName, String reference) {
+        return files.get(fileName.startsWith("/") ? fileName.substring(1) : fileName);
+    }
+
+    @Override
+    public Map<String, String> getWorkflowGitUrl2RepositoryId() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean checkSourceCodeValidity() {
+        return true;
+    }
+
+    @Override
+    public Workflow initializeWorkflow(String repositoryId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Workflow setupWorkflowVersions(String repositoryId, Workflow workflow, Optional<Workflow> existingWorkflow,
+        Map<String, WorkflowVersion> existingDefaults) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getRepositoryId(Entry entry) {
+        return "benchmark/repository";
+    }
+
+    @Override
+    public String getMainBranch(Entry entry, String repositoryId) {
+        return "master";
+    }
+
+    @Override
+    public SourceFile getSourceFile(String path, String id, String branch, SourceFile.FileType type) {
+        String content = readFile(id, path, branch);
+        if (content == null) {
+            return null;
+        }
+        SourceFile file = new SourceFile();
+        file.setType(type);
+        file.setPath(path);
+        file.setContent(content);
+        return file;
+    }
+
+    @Override
+    void updateReferenceType(String repositoryId, Version version) {
+        version.setReferenceType(Version.ReferenceType.BRANCH);
+    }
+
+    @Override
+    String getCommitID(String repositoryId, Version version) {
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.languages;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.dockstore.benchmarks.BenchmarkRunner;
+import io.dockstore.benchmarks.Fixtures;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.WorkflowVersion;
+import io.dockstore.webservice.helpers.FixtureSourceCodeRepo;
+import io.dockstore.webservice.jdbi.ToolDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolving imports and building the DAG and tool listings of descriptors, done on every refresh and for every DAG and tools tab in the UI.
+ *
+ * @author dyuen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Fork(1)
+public class LanguageHandlerBenchmark {
+
+    @Param({ "DAG", "TOOLS" })
+    private LanguageHandlerInterface.Type type;
+
+    private final CWLHandler cwlHandler = new CWLHandler();
+    private final WDLHandler wdlHandler = new WDLHandler();
+
+    private String cwlMain;
+    private Map<String, String> cwlSecondary;
+    private String wdlMain;
+    private Map<String, String> wdlSecondary;
+    private FixtureSourceCodeRepo repo;
+    private WorkflowVersion version;
+    private ToolDAO toolDAO;
+
+    @Setup
+    public void setup() {
+        cwlMain = Fixtures.read("cwl/" + Fixtures.CWL_MAIN);
+        cwlSecondary = Fixtures.cwlSecondaryFiles();
+        wdlMain = Fixtures.read("wdl/" + Fixtures.WDL_MAIN);
+        wdlSecondary = Fixtures.wdlSecondaryFiles();
+
+        Map<String, String> files = new HashMap<>(cwlSecondary);
+        files.put(Fixtures.CWL_MAIN, cwlMain);
+        repo = new FixtureSourceCodeRepo(files);
+        version = Fixtures.workflowVersion("master");
+        toolDAO = Fixtures.toolDAO(Collections.singleton("quay.io/collaboratory/dockstore-tool-bamstats"));
+    }
+
+    @Benchmark
+    public Map<String, SourceFile> cwlProcessImports() {
+        return cwlHandler.processImports("benchmark/repository", cwlMain, version, repo);
+    }
+
+    @Benchmark
+    public String cwlGetContent() {
+        return cwlHandler.getContent("/" + Fixtures.CWL_MAIN, cwlMain, cwlSecondary, type, toolDAO);
+    }
+
+    @Benchmark
+    public String wdlGetContent() {
+        return wdlHandler.getContent("/" + Fixtures.WDL_MAIN, wdlMain, wdlSecondary, type, toolDAO);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.swagger.api.impl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.core.Response;
+
+import io.dockstore.benchmarks.BenchmarkRunner;
+import io.dockstore.benchmarks.Fixtures;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.swagger.model.Tool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting GA4GH v2 responses to v1, done for every request to the v1 GA4GH API.
+ *
+ * @author dyuen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Fork(1)
+public class ApiVersionConverterBenchmark {
+
+    /**
+     * number of tools in a page of /tools
+     */
+    @Param({ "10", "100", "1000" })
+    private int tools;
+
+    private List<Tool> page;
+    private Tool single;
+
+    @Setup
+    public void setup() {
+        DockstoreWebserviceConfiguration config = Fixtures.configuration();
+        page = Fixtures.entries(tools, Fixtures.VERSIONS).stream().map(entry -> ToolsImplCommon.convertEntryToTool(entry, config).getLeft())
+            .collect(Collectors.toList());
+        single = page.get(0);
+    }
+
+    @Benchmark
+    public Response convertToolsPage() {
+        // built for each call, the converter only reads the response but a real one is never reused
+        Response response = Response.ok(page).header("next_page", "http://localhost:8080/api/ga4gh/v2/tools?offset=1&limit=" + tools)
+            .header("last_page", "http://localhost:8080/api/ga4gh/v2/tools?offset=10&limit=" + tools).header("current_offset", "0")
+            .header("current_limit", String.valueOf(tools)).build();
+        return ApiVersionConverter.convertToVersion(response);
+    }
+
+    @Benchmark
+    public Response convertTool() {
+        return ApiVersionConverter.convertToVersion(Response.ok(single).build());
+    }
+}
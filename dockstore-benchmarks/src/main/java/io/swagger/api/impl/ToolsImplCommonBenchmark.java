@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.swagger.api.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Table;
+import io.dockstore.benchmarks.BenchmarkRunner;
+import io.dockstore.benchmarks.Fixtures;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.Workflow;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting Dockstore entries to GA4GH tools, done for every entry listed by the GA4GH API.
+ *
+ * @author dyuen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkRunner.ITERATIONS, time = 1)
+@Fork(1)
+public class ToolsImplCommonBenchmark {
+
+    @Param({ "1", "10", "100" })
+    private int versions;
+
+    private DockstoreWebserviceConfiguration config;
+    private Tool tool;
+    private Workflow workflow;
+
+    @Setup
+    public void setup() {
+        config = Fixtures.configuration();
+        tool = Fixtures.tool(1, versions);
+        workflow = Fixtures.workflow(2, versions);
+    }
+
+    @Benchmark
+    public Pair<io.swagger.model.Tool, Table<String, SourceFile.FileType, Object>> convertTool() {
+        return ToolsImplCommon.convertEntryToTool(tool, config);
+    }
+
+    @Benchmark
+    public Pair<io.swagger.model.Tool, Table<String, SourceFile.FileType, Object>> convertWorkflow() {
+        return ToolsImplCommon.convertEntryToTool(workflow, config);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.client.cli;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import io.dockstore.common.FileProvisioningCache;
+import io.dockstore.common.TabExpansionUtil;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.apache.commons.io.FileUtils;
+
+import static io.dockstore.client.cli.ArgumentUtility.exceptionMessage;
+import static io.dockstore.client.cli.ArgumentUtility.out;
+import static io.dockstore.client.cli.Client.IO_ERROR;
+import static io.dockstore.client.cli.JCommanderUtility.printJCommanderHelp;
+
+/**
+ * Shows and prunes the cache of provisioned input files, see {@link FileProvisioningCache}
+ */
+public final class CacheClient {
+
+    private static final long BYTES_IN_MEGABYTE = 1024L * 1024L;
+
+    private CacheClient() {
+        // disable constructor for utility class
+    }
+
+    /**
+     * @param args
+     * @param configFile
+     */
+    public static boolean handleCommand(List<String> args, INIConfiguration configFile) {
+        String[] argv = args.toArray(new String[args.size()]);
+        JCommander jc = new JCommander();
+
+        CommandCache commandCache = new CommandCache();
+        JCommander jcCache = JCommanderUtility.addCommand(jc, "cache", commandCache);
+
+        CommandCacheStats commandCacheStats = new CommandCacheStats();
+        JCommanderUtility.addCommand(jcCache, "stats", commandCacheStats);
+
+        CommandCachePrune commandCachePrune = new CommandCachePrune();
+        JCommanderUtility.addCommand(jcCache, "prune", commandCachePrune);
+        // Not parsing with jc because we know the first command was cache.  jc's purpose is to display help
+        try {
+            jcCache.parse(argv);
+            if (args.isEmpty() || commandCache.help) {
+                printJCommanderHelp(jc, "dockstore", "cache");
+            } else {
+                switch (jcCache.getParsedCommand()) {
+                case "stats":
+                    if (commandCacheStats.help) {
+                        printJCommanderHelp(jc, "dockstore", "cache");
+                    } else {
+                        return handleStats(FileProvisioningCache.fromConfig(configFile));
+                    }
+                    break;
+                case "prune":
+                    if (commandCachePrune.help) {
+                        printJCommanderHelp(jc, "dockstore", "cache");
+                    } else {
+                        FileProvisioningCache cache = FileProvisioningCache.fromConfig(configFile);
+                        if (commandCachePrune.maxSizeMB != null) {
+                            cache = new FileProvisioningCache(cache.getRoot(), commandCachePrune.maxSizeMB * BYTES_IN_MEGABYTE);
+                        }
+                        return handlePrune(cache);
+                    }
+                    break;
+                default:
+                    // fall through
+                }
+            }
+        } catch (ParameterException e) {
+            printJCommanderHelp(jc, "dockstore", "cache");
+        }
+        return true;
+    }
+
+    private static boolean handleStats(FileProvisioningCache cache) {
+        try {
+            FileProvisioningCache.Stats stats = cache.stats();
+            StringBuilder builder = new StringBuilder();
+            builder.append("Cache directory\t").append(cache.getRoot()).append('\n');
+            builder.append("Files\t").append(stats.getFiles()).append('\n');
+            builder.append("Size\t").append(FileUtils.byteCountToDisplaySize(stats.getBytes())).append('\n');
+            builder.append("Maximum size\t").append(stats.getMaxBytes() > 0 ? FileUtils.byteCountToDisplaySize(stats.getMaxBytes()) : "unlimited")
+                .append('\n');
+            builder.append("Urls\t").append(stats.getUrls()).append('\n');
+            builder.append("Files from older versions\t").append(FileUtils.byteCountToDisplaySize(stats.getLegacyBytes())).append('\n');
+            out(TabExpansionUtil.aligned(builder.toString()));
+        } catch (IOException e) {
+            exceptionMessage(e, "Could not read the cache", IO_ERROR);
+        }
+        return true;
+    }
+
+    private static boolean handlePrune(FileProvisioningCache cache) {
+        try {
+            int removed = cache.removeUnused();
+            int evicted = cache.evict();
+            out("Removed " + removed + " unused entries and evicted " + evicted + " least recently used files");
+        } catch (IOException e) {
+            exceptionMessage(e, "Could not prune the cache", IO_ERROR);
+        }
+        return true;
+    }
+
+    @Parameters(separators = "=", commandDescription = "Show and prune the cache of input files, turned on with use-cache in the config file")
+    private static class CommandCache {
+        @Parameter(names = "--help", description = "Prints help for cache command", help = true)
+        private boolean help = false;
+    }
+
+    @Parameters(separators = "=", commandDescription = "Show what is in the cache")
+    private static class CommandCacheStats {
+        @Parameter(names = "--help", description = "Prints help for stats command", help = true)
+        private boolean help = false;
+    }
+
+    @Parameters(separators = "=", commandDescription = "Remove files cached by older versions and evict least recently used files down to the maximum size")
+    private static class CommandCachePrune {
+        @Parameter(names = "--max-size-mb", description = "Evict down to this size instead of cache-max-size-mb from the config file")
+        private Long maxSizeMB;
+        @Parameter(names = "--help", description = "Prints help for prune command", help = true)
+        private boolean help = false;
+    }
+}
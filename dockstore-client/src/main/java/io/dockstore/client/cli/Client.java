@@ -572,6 +572,7 @@ public class Client {
         out("   workflow            Puts dockstore into workflow mode.");
         out("   checker             Puts dockstore into checker mode.");
         out("   plugin              Configure and debug plugins.");
+        out("   cache               Show and prune the cache of input files.");
         out("");
         printLineBreak();
         out("");
@@ -687,6 +688,8 @@ public class Client {
                         targetClient = getWorkflowClient();
                     } else if ("plugin".equals(mode)) {
                         handled = PluginClient.handleCommand(args, Utilities.parseConfig(configFile));
+                    } else if ("cache".equals(mode)) {
+                        handled = CacheClient.handleCommand(args, Utilities.parseConfig(configFile));
                     } else if ("search".equals(mode)) {
                         handled = SearchClient.handleCommand(args, this.extendedGA4GHApi);
                     } else if ("checker".equals(mode)) {
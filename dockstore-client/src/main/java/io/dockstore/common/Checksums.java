@@ -0,0 +1,347 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Digests of a file computed as its bytes go by, and the checksums the file is expected to have.
+ * <p>
+ * Expected checksums come from the CWL checksum field, from Content-MD5, x-goog-hash and ETag headers, and from plugins.
+ * A mismatch fails the transfer, except against an ETag, which is only an MD5 of the content for some objects
+ * (not for encrypted or multipart S3 objects, for instance) and is only logged.
+ *
+ * @author dyuen
+ */
+final class Checksums {
+
+    static final String MD5 = "md5";
+    static final String SHA1 = "sha1";
+    static final String SHA256 = "sha256";
+    static final String CRC32C = "crc32c";
+
+    private static final Logger LOG = LoggerFactory.getLogger(Checksums.class);
+    private static final Pattern MD5_HEX = Pattern.compile("[0-9a-fA-F]{32}");
+    private static final Pattern ALGORITHM = Pattern.compile("[a-zA-Z0-9]+");
+    private static final Pattern HEX = Pattern.compile("[0-9a-fA-F]{8,}");
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Map<String, MessageDigest> digests = new TreeMap<>();
+    private final List<Expected> expected = new ArrayList<>();
+    private Hasher crc32c;
+    private boolean started;
+    private Map<String, String> values;
+    private Expected verified;
+
+    /**
+     * @param algorithms digests to compute whether or not they are expected, such as {@link #SHA256} for the cache
+     * @param expected   checksums the file should have, their algorithms are computed as well
+     */
+    Checksums(Collection<String> algorithms, Collection<Expected> expected) {
+        algorithms.forEach(this::add);
+        expected.forEach(this::expect);
+    }
+
+    /**
+     * Add a checksum to compare against, before any bytes are digested
+     */
+    void expect(Expected checksum) {
+        if (started && !computes(checksum.algorithm)) {
+            LOG.debug("Too late to compute " + checksum.algorithm + ", not comparing against " + checksum.source);
+            return;
+        }
+        if (add(checksum.algorithm)) {
+            expected.add(checksum);
+        }
+    }
+
+    private boolean computes(String algorithm) {
+        return CRC32C.equals(algorithm) ? crc32c != null : digests.containsKey(algorithm);
+    }
+
+    private boolean add(String algorithm) {
+        if (CRC32C.equals(algorithm)) {
+            if (crc32c == null) {
+                crc32c = Hashing.crc32c().newHasher();
+            }
+            return true;
+        }
+        if (digests.containsKey(algorithm)) {
+            return true;
+        }
+        try {
+            digests.put(algorithm, MessageDigest.getInstance(javaName(algorithm)));
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            LOG.warn("Cannot compute " + algorithm + " checksums, supported are " + MD5 + ", " + SHA1 + ", " + SHA256 + " and " + CRC32C);
+            return false;
+        }
+    }
+
+    void update(byte[] bytes, int offset, int length) {
+        started = true;
+        for (MessageDigest digest : digests.values()) {
+            digest.update(bytes, offset, length);
+        }
+        if (crc32c != null) {
+            crc32c.putBytes(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Digest a whole file, for files that arrived some other way such as through a plugin
+     */
+    void update(Path file) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                update(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * @return a stream that digests what is read from it
+     */
+    InputStream digesting(InputStream inputStream) {
+        return new DigestingInputStream(inputStream);
+    }
+
+    /**
+     * @return hex digest by algorithm, once every byte has been digested
+     */
+    Map<String, String> values() {
+        if (values == null) {
+            Map<String, String> computed = new TreeMap<>();
+            digests.forEach((algorithm, digest) -> computed.put(algorithm, Hex.encodeHexString(digest.digest())));
+            if (crc32c != null) {
+                computed.put(CRC32C, String.format("%08x", crc32c.hash().asInt()));
+            }
+            values = Collections.unmodifiableMap(computed);
+        }
+        return values;
+    }
+
+    /**
+     * Compare the digests with the expected checksums
+     *
+     * @param what what was digested, for messages
+     * @throws IOException on a mismatch
+     */
+    void verify(String what) throws IOException {
+        for (Expected checksum : expected) {
+            String actual = values().get(checksum.algorithm);
+            if (checksum.hex.equalsIgnoreCase(actual)) {
+                if (verified == null) {
+                    verified = checksum;
+                }
+            } else if (checksum.reliable) {
+                throw new IOException(what + " has " + checksum.algorithm + " " + actual + " but " + checksum.source + " says " + checksum.hex);
+            } else {
+                LOG.info(checksum.source + " of " + what + " is not its " + checksum.algorithm + ", not using it to verify the file");
+            }
+        }
+    }
+
+    /**
+     * @return a summary for the provisioning report, such as "md5 verified against Content-MD5", null if there is nothing to say
+     */
+    String describe() {
+        if (verified != null) {
+            return verified.algorithm + " verified against " + verified.source;
+        }
+        String sha256 = values().get(SHA256);
+        return sha256 == null ? null : SHA256 + " " + sha256;
+    }
+
+    private static String javaName(String algorithm) {
+        switch (algorithm) {
+        case MD5:
+            return "MD5";
+        case SHA1:
+            return "SHA-1";
+        case SHA256:
+            return "SHA-256";
+        default:
+            return algorithm;
+        }
+    }
+
+    /**
+     * A checksum that a file should have, and where that came from
+     */
+    static final class Expected {
+        private final String algorithm;
+        private final String hex;
+        private final String source;
+        private final boolean reliable;
+
+        Expected(String algorithm, String hex, String source, boolean reliable) {
+            this.algorithm = algorithm.toLowerCase(Locale.ROOT);
+            this.hex = hex.toLowerCase(Locale.ROOT);
+            this.source = source;
+            this.reliable = reliable;
+        }
+
+        String getAlgorithm() {
+            return algorithm;
+        }
+
+        String getHex() {
+            return hex;
+        }
+
+        boolean isReliable() {
+            return reliable;
+        }
+
+        /**
+         * @param checksum as in the CWL checksum field and the plugin API, such as {@code sha1$2fd4e1c67a2d28fced849ee1bb76e7391b93eb12}
+         * @param source   where it came from, for messages
+         */
+        static Optional<Expected> parse(String checksum, String source) {
+            if (checksum == null) {
+                return Optional.empty();
+            }
+            int separator = checksum.indexOf('$');
+            if (separator <= 0) {
+                LOG.warn("Ignoring checksum " + checksum + " from " + source + ", expected algorithm$hex");
+                return Optional.empty();
+            }
+            String algorithm = checksum.substring(0, separator);
+            String hex = checksum.substring(separator + 1);
+            if (!ALGORITHM.matcher(algorithm).matches() || !HEX.matcher(hex).matches()) {
+                LOG.warn("Ignoring checksum " + checksum + " from " + source + ", expected algorithm$hex");
+                return Optional.empty();
+            }
+            return Optional.of(new Expected(algorithm, hex, source, true));
+        }
+
+        /**
+         * @param contentMd5 a base64 Content-MD5 header of a whole file, not of a range
+         */
+        static Optional<Expected> fromContentMd5(String contentMd5) {
+            try {
+                return contentMd5 == null ? Optional.empty()
+                    : Optional.of(new Expected(MD5, Hex.encodeHexString(Base64.getDecoder().decode(contentMd5.trim())), "Content-MD5", true));
+            } catch (IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        }
+
+        /**
+         * @param googHash an x-goog-hash header, such as {@code crc32c=n03x6A==,md5=Ojk9c3dhfxgoKVVHYwFbHQ==}
+         */
+        static List<Expected> fromGoogHash(String googHash) {
+            List<Expected> checksums = new ArrayList<>();
+            if (googHash == null) {
+                return checksums;
+            }
+            for (String entry : googHash.split(",")) {
+                int separator = entry.indexOf('=');
+                if (separator <= 0) {
+                    continue;
+                }
+                String algorithm = entry.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+                if (MD5.equals(algorithm) || CRC32C.equals(algorithm)) {
+                    try {
+                        byte[] bytes = Base64.getDecoder().decode(entry.substring(separator + 1).trim());
+                        checksums.add(new Expected(algorithm, Hex.encodeHexString(bytes), "x-goog-hash", true));
+                    } catch (IllegalArgumentException e) {
+                        LOG.debug("Ignoring " + entry + " in x-goog-hash");
+                    }
+                }
+            }
+            return checksums;
+        }
+
+        /**
+         * @param etag an ETag header, only strong ETags that look like an MD5 are used
+         */
+        static Optional<Expected> fromEtag(String etag) {
+            if (etag == null || etag.startsWith("W/")) {
+                return Optional.empty();
+            }
+            String value = etag.replace("\"", "");
+            return MD5_HEX.matcher(value).matches() ? Optional.of(new Expected(MD5, value, "ETag", false)) : Optional.empty();
+        }
+
+        @Override
+        public String toString() {
+            return algorithm + '$' + hex;
+        }
+    }
+
+    /**
+     * Digests bytes as they are read, so that checking a download needs no second pass over the file
+     */
+    private final class DigestingInputStream extends FilterInputStream {
+        private DigestingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) {
+                update(new byte[] {(byte)read}, 0, 1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("Cannot skip while digesting");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -30,12 +30,22 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
 import io.dockstore.provision.ProgressPrinter;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration2.INIConfiguration;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.net.io.CopyStreamEvent;
@@ -58,6 +68,12 @@ import ro.fortsoft.pf4j.PluginManager;
 public final class FileProvisionUtil {
 
     static final String PLUGINS_JSON_FILENAME = "plugins.json";
+    private static final String PLUGIN_CACHE_DIR = "plugin-cache-dir";
+    private static final int PLUGIN_DOWNLOAD_THREADS = 4;
+    /**
+     * A multiple of the block size of common file systems, and the default stripe size of Lustre
+     */
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
     private static final Logger LOG = LoggerFactory.getLogger(FileProvisionUtil.class);
 
     private FileProvisionUtil() {
@@ -65,6 +81,38 @@ public final class FileProvisionUtil {
     }
 
     static boolean downloadFromVFS2(String path, Path targetFilePath, int threads) {
+        return downloadFromVFS2(path, targetFilePath, threads, RangedDownloader.DEFAULT_CONNECTIONS);
+    }
+
+    /**
+     * Download a file, large http(s) files are split into parallel range requests when the server allows it
+     *
+     * @param path           where to download from
+     * @param targetFilePath where to download to
+     * @param threads        number of files being downloaded at once, used for display purposes
+     * @param connections    number of connections for each http(s) file, 1 to always use a single stream
+     * @return true if the file was downloaded, a retry resumes a ranged download that failed part way
+     */
+    static boolean downloadFromVFS2(String path, Path targetFilePath, int threads, int connections) {
+        return downloadFromVFS2(path, targetFilePath, threads, connections, null);
+    }
+
+    /**
+     * @param checksums digests to compute while downloading and checksums to compare them with, null for none
+     * @return true if the file was downloaded and matches its expected checksums, a file that does not match is deleted
+     */
+    static boolean downloadFromVFS2(String path, Path targetFilePath, int threads, int connections, Checksums checksums) {
+        String scheme = URI.create(path).getScheme();
+        if (connections > 1 && ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+            try {
+                if (new RangedDownloader(connections, RangedDownloader.DEFAULT_PART_SIZE).download(path, targetFilePath, threads, checksums)) {
+                    return verify(path, targetFilePath, checksums);
+                }
+            } catch (IOException e) {
+                LOG.error(e.getMessage());
+                return false;
+            }
+        }
         // VFS call, see https://github.com/abashev/vfs-s3/tree/branch-2.3.x and
         // https://commons.apache.org/proper/commons-vfs/filesystems.html
         try {
@@ -76,21 +124,56 @@ public final class FileProvisionUtil {
             FileSystemManager fsManager = VFS.getManager();
             try (FileObject src = fsManager.resolveFile(path, opts);
                 FileObject dest = fsManager.resolveFile(targetFilePath.toFile().getAbsolutePath())) {
-                copyFromInputStreamToOutputStream(src, dest, threads);
+                copyFromInputStreamToOutputStream(src, dest, threads, checksums);
             }
+            return verify(path, targetFilePath, checksums);
+        } catch (IOException e) {
+            LOG.error(e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean verify(String path, Path targetFilePath, Checksums checksums) throws IOException {
+        if (checksums == null) {
+            return true;
+        }
+        try {
+            checksums.verify(path);
             return true;
         } catch (IOException e) {
+            // do not leave a corrupt file where it could be mistaken for a download
+            Files.deleteIfExists(targetFilePath);
             LOG.error(e.getMessage());
             return false;
         }
     }
 
+    private static void verify(Path file, String sha256) throws IOException {
+        if (sha256 == null) {
+            return;
+        }
+        String actual;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            actual = DigestUtils.sha256Hex(inputStream);
+        }
+        if (!sha256.equalsIgnoreCase(actual)) {
+            throw new IOException("Checksum of " + file.getFileName() + " is " + actual + " but " + PLUGINS_JSON_FILENAME + " expects " + sha256);
+        }
+    }
+
     /**
      * Copy from file object to file object while displaying progress, will not close streams
      *
      * @throws IOException throws an exception if unable to provision input files
      */
     static void copyFromInputStreamToOutputStream(FileObject src, FileObject dest, int threads) throws IOException {
+        copyFromInputStreamToOutputStream(src, dest, threads, null);
+    }
+
+    /**
+     * @param checksums digests to compute from the bytes as they are copied, null for none
+     */
+    static void copyFromInputStreamToOutputStream(FileObject src, FileObject dest, int threads, Checksums checksums) throws IOException {
         CopyStreamListener listener = new CopyStreamListener() {
             ProgressPrinter printer = new ProgressPrinter(threads, threads > 1 ? src.toString() : "");
 
@@ -101,6 +184,7 @@ public final class FileProvisionUtil {
 
             @Override
             public void bytesTransferred(long totalBytesTransferred, int bytesTransferred, long streamSize) {
+                ProvisioningScheduler.throttle(bytesTransferred);
                 synchronized (System.out) {
                     printer.handleProgress(totalBytesTransferred, streamSize);
                 }
@@ -116,12 +200,10 @@ public final class FileProvisionUtil {
 
         try (FileContent srcContent = src.getContent();
             FileContent destContent = dest.getContent();
-            InputStream inputStream = srcContent.getInputStream();
+            InputStream inputStream = checksums == null ? srcContent.getInputStream() : checksums.digesting(srcContent.getInputStream());
                 OutputStream outputStream = destContent.getOutputStream()) {
-            // a larger buffer improves copy performance
-            // we can also split this (local file copy) out into a plugin later
-            final int largeBuffer = 100;
-            Util.copyStream(inputStream, outputStream, Util.DEFAULT_COPY_BUFFER_SIZE * largeBuffer, size, listener);
+            // a larger buffer improves copy performance, local copies do not come through here, see LocalProvisioning
+            Util.copyStream(inputStream, outputStream, COPY_BUFFER_SIZE, size, listener);
         } finally {
             // finalize output from the printer
             System.out.println();
@@ -168,12 +250,18 @@ public final class FileProvisionUtil {
     }
 
     /**
-     * Downloads all plugins
+     * Downloads all plugins, several at a time
      *
      * @param configFile The parsed config file
      */
     public static void downloadPlugins(INIConfiguration configFile) {
         String filePluginLocation = FileProvisionUtil.getFilePluginLocation(configFile);
+        String configuredCacheLocation = configFile.getString(PLUGIN_CACHE_DIR, null);
+        boolean safeCache = configuredCacheLocation == null || isSafePluginCache(Paths.get(configuredCacheLocation));
+        if (!safeCache) {
+            LOG.warn("Not using " + PLUGIN_CACHE_DIR + " " + configuredCacheLocation + ", other users could replace the plugins in it");
+        }
+        String pluginCacheLocation = safeCache ? configuredCacheLocation : null;
         String pluginJSONPath = FileProvisionUtil.getPluginJSONLocation(configFile);
         File f = new File(pluginJSONPath);
         if (!f.exists()) {
@@ -189,44 +277,43 @@ public final class FileProvisionUtil {
             JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(pluginJSONPath), Charset.forName("UTF-8")));
             PluginJSON[] arrayJSON = gson.fromJson(reader, PluginJSON[].class);
             List<PluginJSON> listJSON = Arrays.asList(arrayJSON);
-            listJSON.forEach(t -> downloadPlugin(filePluginLocation, t));
+            LOG.info("Downloading Plugins");
+            int threads = Math.max(1, Math.min(PLUGIN_DOWNLOAD_THREADS, listJSON.size()));
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Boolean>> futures = new ArrayList<>();
+                for (PluginJSON json : listJSON) {
+                    futures.add(executorService.submit(() -> downloadPlugin(filePluginLocation, pluginCacheLocation, json, threads)));
+                }
+                for (Future<Boolean> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        LOG.error("Could not download plugin: " + e.getCause().getMessage(), e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("Plugin download interrupted");
+            } finally {
+                executorService.shutdownNow();
+            }
         } catch (FileNotFoundException e) {
             LOG.error(PLUGINS_JSON_FILENAME + " not found");
         }
     }
 
-    /**
-     * Downloads a plugin
-     *
-     * @param filePluginLocation The path of the plugins folder
-     * @param version            The version of the plugin
-     * @param pluginName         The name of the plugin
-     * @param sourceLocation     The place to download the plugin from
-     */
-    private static boolean downloadPlugin(String filePluginLocation, String version, String pluginName, String sourceLocation) {
-        String pluginZip = String.format("%2$s-%1$s.zip", version, pluginName);
-        Path pluginPath = Paths.get(filePluginLocation, pluginZip);
-        String destinationLocation = pluginPath.toString();
-        if (Files.exists(pluginPath)) {
-            System.out.println("Skipping " + destinationLocation + ", already exists");
-            return false;
-        } else {
-            System.out.println("Downloading " + sourceLocation + " to " + destinationLocation);
-            final int pluginDownloadAttempts = 1;
-            FileProvisioning.retryWrapper(null, sourceLocation, Paths.get(destinationLocation), pluginDownloadAttempts, true, 1);
-            return true;
-        }
-    }
-
     /**
      * Extracts plugin information from json and then downloads the plugin
      *
-     * @param filePluginLocation The location of the plugins folder
-     * @param json               The PluginJSON object
+     * @param filePluginLocation  The location of the plugins folder
+     * @param pluginCacheLocation The location of the plugin cache, null if there is none
+     * @param json                The PluginJSON object
+     * @param threads             Number of plugins downloaded at once, used for display purposes
      */
-    private static boolean downloadPlugin(String filePluginLocation, PluginJSON json) {
+    private static boolean downloadPlugin(String filePluginLocation, String pluginCacheLocation, PluginJSON json, int threads)
+        throws IOException {
         try {
-            LOG.info("Downloading Plugins");
             String version = json.getVersion();
             String name = json.getName();
             String sourceLocation;
@@ -238,14 +325,108 @@ public final class FileProvisionUtil {
             } else {
                 sourceLocation = json.getLocation();
             }
-            downloadPlugin(filePluginLocation, version, name, sourceLocation);
-            return true;
+            return downloadPlugin(filePluginLocation, pluginCacheLocation, version, name, sourceLocation, json.getSha256(), threads);
         } catch (MalformedURLException | URISyntaxException e) {
             LOG.error("Could not download plugin: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Downloads a plugin, going through the plugin cache when there is one.
+     * The plugin cache is shared by the users of a host, it is filled by whoever can write to it and read by everyone else.
+     * Plugins run as the user, so the cache is only used for plugins with a sha256 in plugins.json.
+     *
+     * @param filePluginLocation  The path of the plugins folder
+     * @param pluginCacheLocation The path of the plugin cache, null if there is none
+     * @param version             The version of the plugin
+     * @param pluginName          The name of the plugin
+     * @param sourceLocation      The place to download the plugin from
+     * @param sha256              Expected digest of the plugin, null to skip checking it
+     * @param threads             Number of plugins downloaded at once, used for display purposes
+     */
+    private static boolean downloadPlugin(String filePluginLocation, String pluginCacheLocation, String version, String pluginName,
+        String sourceLocation, String sha256, int threads) throws IOException {
+        String pluginZip = String.format("%2$s-%1$s.zip", version, pluginName);
+        Path pluginPath = Paths.get(filePluginLocation, pluginZip);
+        String destinationLocation = pluginPath.toString();
+        if (Files.exists(pluginPath)) {
+            System.out.println("Skipping " + destinationLocation + ", already exists");
+            return false;
+        }
+        if (sha256 == null) {
+            LOG.warn("No sha256 for " + pluginZip + " in " + PLUGINS_JSON_FILENAME + ", it will not be verified");
+        }
+        Files.createDirectories(pluginPath.getParent());
+        if (pluginCacheLocation != null && sha256 == null) {
+            LOG.warn("Not using " + PLUGIN_CACHE_DIR + " for " + pluginZip + ", it has no sha256 to check the cached copy against");
+        } else if (pluginCacheLocation != null) {
+            Path cachedPath = Paths.get(pluginCacheLocation, pluginZip);
+            if (!Files.exists(cachedPath) && Files.isWritable(cachedPath.getParent())) {
+                System.out.println("Downloading " + sourceLocation + " to " + cachedPath);
+                downloadVerified(sourceLocation, cachedPath, sha256, threads);
+                // other users of the host read from the cache
+                if (!cachedPath.toFile().setReadable(true, false)) {
+                    LOG.warn("Could not make " + cachedPath + " readable by other users");
+                }
+            }
+            if (Files.isReadable(cachedPath)) {
+                System.out.println("Copying " + cachedPath + " to " + destinationLocation);
+                Path temporary = temporaryFor(pluginPath);
+                try {
+                    Files.copy(cachedPath, temporary);
+                    verify(temporary, sha256);
+                    Files.move(temporary, pluginPath, StandardCopyOption.ATOMIC_MOVE);
+                    return true;
+                } catch (IOException e) {
+                    LOG.error("Could not use cached " + cachedPath + ", downloading instead: " + e.getMessage());
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        }
+        System.out.println("Downloading " + sourceLocation + " to " + destinationLocation);
+        downloadVerified(sourceLocation, pluginPath, sha256, threads);
+        return true;
+    }
+
+    /**
+     * Download next to the target and only move it into place once it is complete and matches its digest,
+     * so that a failed download is not mistaken for an installed plugin
+     */
+    private static void downloadVerified(String sourceLocation, Path target, String sha256, int threads) throws IOException {
+        Path temporary = temporaryFor(target);
+        try {
+            final int pluginDownloadAttempts = 1;
+            FileProvisioning.retryWrapper(null, sourceLocation, temporary, pluginDownloadAttempts, true, threads);
+            verify(temporary, sha256);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return false if users other than the owner could write to the plugin cache, or if that cannot be told
+     */
+    static boolean isSafePluginCache(Path pluginCache) {
+        if (!Files.isDirectory(pluginCache)) {
+            // nothing to read yet, it is not created here
+            return false;
+        }
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(pluginCache);
+            return !permissions.contains(PosixFilePermission.GROUP_WRITE) && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+        } catch (UnsupportedOperationException | IOException e) {
+            LOG.warn("Could not read the permissions of " + pluginCache, e);
+            return false;
+        }
+    }
+
+    private static Path temporaryFor(Path target) {
+        return target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
     /**
      * Creates the plugins json file
      *
@@ -18,34 +18,38 @@ package io.dockstore.common;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import com.github.zafarkhaja.semver.UnexpectedCharacterException;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.dockstore.client.cli.Client;
+import io.dockstore.provision.ChunkedUploadInterface;
 import io.dockstore.provision.ProvisionInterface;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration2.INIConfiguration;
-import org.apache.commons.configuration2.SubnodeConfiguration;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -59,7 +63,6 @@ import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.fortsoft.pf4j.PluginManager;
-import ro.fortsoft.pf4j.PluginWrapper;
 
 /**
  * The purpose of this class is to provide general functions to deal with workflow file provisioning.
@@ -72,11 +75,24 @@ public class FileProvisioning {
 
     private static final int DEFAULT_RETRIES = 3;
     private static final String FILE_PROVISION_RETRIES = "file-provision-retries";
+    private static final String FILE_PROVISION_CONNECTIONS = "file-provision-connections";
+    private static final int SIZE_TIMEOUT_MILLIS = 10 * 1000;
     private static final Logger LOG = LoggerFactory.getLogger(FileProvisioning.class);
     private final int threads;
-    private final boolean cache;
+    private final int connections;
+    private final ProvisioningScheduler scheduler;
+    /**
+     * null when the cache is off
+     */
+    private final FileProvisioningCache cache;
 
-    private List<ProvisionInterface> plugins = new ArrayList<>();
+    private final PluginIndex plugins;
+    private final LocalProvisioning localProvisioning;
+    private final HttpUploader httpUploader;
+    /**
+     * Where each remote input was first provisioned to, completed once it is in place
+     */
+    private final ConcurrentMap<String, CompletableFuture<Path>> provisioned = new ConcurrentHashMap<>();
 
     private INIConfiguration config;
 
@@ -86,32 +102,12 @@ public class FileProvisioning {
     public FileProvisioning(String configFile) {
         this.config = Utilities.parseConfig(configFile);
         this.threads = config.getInt(FileProvisioning.FILE_PROVISION_THREADS, FileProvisioning.DEFAULT_THREADS);
-        this.cache = isCacheOn(config);
-        try {
-            PluginManager pluginManager = FileProvisionUtil.getPluginManager(config);
-
-            this.plugins = pluginManager.getExtensions(ProvisionInterface.class);
-
-            List<PluginWrapper> pluginWrappers = pluginManager.getPlugins();
-            for (PluginWrapper pluginWrapper : pluginWrappers) {
-                SubnodeConfiguration section = config.getSection(pluginWrapper.getPluginId());
-                Map<String, String> sectionConfig = new HashMap<>();
-                Iterator<String> keys = section.getKeys();
-                keys.forEachRemaining(key -> sectionConfig.put(key, section.getString(key)));
-                // this is ugly, but we need to pass configuration into the plugins
-                // TODO: speed this up using a map of plugins
-                for (ProvisionInterface extension : plugins) {
-                    String extensionName = extension.getClass().getName();
-                    String pluginClass = pluginWrapper.getDescriptor().getPluginClass();
-                    if (extensionName.startsWith(pluginClass)) {
-                        extension.setConfiguration(sectionConfig);
-                    }
-                }
-            }
-        } catch (UnexpectedCharacterException e) {
-            LOG.error("Could not load plugins: " + e.toString(), e);
-            throw new RuntimeException(e);
-        }
+        this.connections = config.getInt(FileProvisioning.FILE_PROVISION_CONNECTIONS, RangedDownloader.DEFAULT_CONNECTIONS);
+        this.scheduler = ProvisioningScheduler.get(config, threads);
+        this.cache = isCacheOn(config) ? FileProvisioningCache.fromConfig(config) : null;
+        this.plugins = new PluginIndex(config);
+        this.localProvisioning = LocalProvisioning.fromConfig(config);
+        this.httpUploader = HttpUploader.fromConfig(config, connections);
     }
 
     /*
@@ -196,17 +192,36 @@ public class FileProvisioning {
     }
 
     public void provisionInputFiles(String parameterFilePath, List<Pair<String, Path>> inputFiles) {
-        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        provisionInputFiles(parameterFilePath, inputFiles, Collections.emptyMap());
+    }
 
-        List<Future> futures = new ArrayList<>();
+    /**
+     * @param parameterFilePath path of the parameter file
+     * @param inputFiles        where to download from and to
+     * @param checksums         checksums of the files by where they are downloaded from, as algorithm$hex like the CWL checksum field
+     */
+    public void provisionInputFiles(String parameterFilePath, List<Pair<String, Path>> inputFiles, Map<String, String> checksums) {
+        // sizes only matter when some inputs have to wait for others
+        boolean prioritize = inputFiles.size() > threads;
+        Map<Pair<String, Path>, Long> expectedSizes = new HashMap<>();
         for (Pair<String, Path> inputFile : inputFiles) {
-            Future<Object> submit = executorService.submit(() -> {
-                provisionInputFile(parameterFilePath, inputFile.getLeft(), inputFile.getRight());
-                return true;
-            });
-            futures.add(submit);
+            expectedSizes.put(inputFile, prioritize ? estimateSize(parameterFilePath, inputFile.getLeft()) : ProvisioningScheduler.UNKNOWN_SIZE);
         }
-        for (Future future : futures) {
+        // submit largest first as well, idle threads pick up work before it can be ordered by the scheduler
+        List<Pair<String, Path>> ordered = new ArrayList<>(inputFiles);
+        ordered.sort(Comparator.comparing(expectedSizes::get, FileProvisioning::largestFirst));
+        List<Future<ProvisioningScheduler.Transferred>> futures = new ArrayList<>();
+        for (Pair<String, Path> inputFile : ordered) {
+            String targetPath = inputFile.getLeft();
+            Path localPath = inputFile.getRight();
+            long expectedSize = expectedSizes.get(inputFile);
+            futures.add(scheduler.submit(targetPath, ProvisioningScheduler.schemeOf(targetPath), expectedSize, () -> {
+                String checksum = provisionInputFile(parameterFilePath, targetPath, localPath, checksums.get(targetPath));
+                return new ProvisioningScheduler.Transferred(
+                    Files.isRegularFile(localPath) ? Files.size(localPath) : ProvisioningScheduler.UNKNOWN_SIZE, checksum);
+            }));
+        }
+        for (Future<ProvisioningScheduler.Transferred> future : futures) {
             try {
                 future.get();
             } catch (InterruptedException | ExecutionException e) {
@@ -214,7 +229,41 @@ public class FileProvisioning {
                 throw new RuntimeException(e.getCause());
             }
         }
-        executorService.shutdownNow();
+    }
+
+    /**
+     * Unknown sizes are usually remote files, so they go before known ones
+     */
+    private static int largestFirst(long size, long otherSize) {
+        return Long.compare(otherSize < 0 ? Long.MAX_VALUE : otherSize, size < 0 ? Long.MAX_VALUE : size);
+    }
+
+    /**
+     * @return the size of a local file or of an http(s) url that reports one, {@link ProvisioningScheduler#UNKNOWN_SIZE} otherwise
+     */
+    private static long estimateSize(String parameterFilePath, String targetPath) {
+        try {
+            String scheme = ProvisioningScheduler.schemeOf(targetPath);
+            if ("http".equals(scheme) || "https".equals(scheme)) {
+                HttpURLConnection connection = (HttpURLConnection)new URL(targetPath).openConnection();
+                connection.setRequestMethod("HEAD");
+                connection.setConnectTimeout(SIZE_TIMEOUT_MILLIS);
+                connection.setReadTimeout(SIZE_TIMEOUT_MILLIS);
+                try {
+                    return connection.getResponseCode() == HttpURLConnection.HTTP_OK ? connection.getContentLengthLong()
+                        : ProvisioningScheduler.UNKNOWN_SIZE;
+                } finally {
+                    connection.disconnect();
+                }
+            } else if (URI.create(targetPath).getScheme() == null) {
+                Path path = targetPath.startsWith("/") || "".equals(parameterFilePath) ? Paths.get(targetPath)
+                    : Paths.get(parameterFilePath).toAbsolutePath().resolveSibling(targetPath);
+                return Files.isRegularFile(path) ? Files.size(path) : ProvisioningScheduler.UNKNOWN_SIZE;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.debug("Could not find the size of " + targetPath, e);
+        }
+        return ProvisioningScheduler.UNKNOWN_SIZE;
     }
 
     /**
@@ -224,58 +273,93 @@ public class FileProvisioning {
      * @param parameterFilePath path of the parameter file
      * @param targetPath        path for target file
      * @param localPath         the absolute path where we will download files to
+     * @param checksum          the checksum of the file from the parameter file, null if there is none
+     * @return how the file was verified for the provisioning report, null if it was not
      */
-    private void provisionInputFile(String parameterFilePath, String targetPath, Path localPath) {
+    private String provisionInputFile(String parameterFilePath, String targetPath, Path localPath, String checksum) {
+
+        URI objectIdentifier = URI.create(targetPath);    // throws IllegalArgumentException if it isn't a valid URI
+        if (objectIdentifier.getScheme() == null) {
+            return provisionInputFile(parameterFilePath, targetPath, localPath, objectIdentifier, checksum);
+        }
+        // a url used by several runs of a batch, or twice in one run, is provisioned once and put in place from the first copy
+        CompletableFuture<Path> provisioning = new CompletableFuture<>();
+        CompletableFuture<Path> earlier = provisioned.putIfAbsent(targetPath, provisioning);
+        if (earlier != null) {
+            return provisionFromEarlier(targetPath, earlier, localPath) ? null
+                : provisionInputFile(parameterFilePath, targetPath, localPath, objectIdentifier, checksum);
+        }
+        try {
+            String verified = provisionInputFile(parameterFilePath, targetPath, localPath, objectIdentifier, checksum);
+            provisioning.complete(localPath);
+            return verified;
+        } catch (RuntimeException e) {
+            // later uses of the url try for themselves
+            provisioned.remove(targetPath, provisioning);
+            provisioning.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private String provisionInputFile(String parameterFilePath, String targetPath, Path localPath, URI objectIdentifier, String checksum) {
+        List<Checksums.Expected> expected = new ArrayList<>();
+        Checksums.Expected.parse(checksum, "the parameter file").ifPresent(expected::add);
+        // local files are linked from where they are, only remote files are cached
+        if (cache == null || objectIdentifier.getScheme() == null) {
+            return provisionInputFile(parameterFilePath, targetPath, localPath, objectIdentifier, null, expected);
+        }
+        // the url stays locked until its file is stored, so an input used twice is downloaded once while other inputs carry on
+        try (FileProvisioningCache.KeyLock ignored = cache.lock(targetPath)) {
+            FileProvisioningCache.Lookup cacheLookup;
+            try {
+                cacheLookup = cache.lookup(targetPath, expected);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read dockstore cache: " + cache.getRoot(), e);
+            }
+            return provisionInputFile(parameterFilePath, targetPath, localPath, objectIdentifier, cacheLookup, cacheLookup.getExpected());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not lock dockstore cache: " + cache.getRoot(), e);
+        }
+    }
 
-        Path potentialCachedFile = null;
+    /**
+     * @param cacheLookup what the cache has for the file, null if it is not cached
+     * @param expected    checksums the file should have
+     */
+    private String provisionInputFile(String parameterFilePath, String targetPath, Path localPath, URI objectIdentifier,
+        FileProvisioningCache.Lookup cacheLookup, List<Checksums.Expected> expected) {
+        // digests computed on the way in, null if the file did not come through Dockstore's own downloads
+        Checksums checksums = null;
+        List<Checksums.Expected> pluginExpected = new ArrayList<>(expected);
         // check if a file exists in the cache and if it does, link/copy it into place
-        synchronized (LOG) {
-            if (cache) {
-                // check cache for cached files
-                final String cacheDirectory = getCacheDirectory(config);
-                // create cache directory
-                final Path cachePath = Paths.get(cacheDirectory);
-                if (Files.notExists(cachePath)) {
-                    if (!cachePath.toFile().mkdirs()) {
-                        throw new RuntimeException("Could not create dockstore cache: " + cacheDirectory);
+        if (cacheLookup != null) {
+            Optional<Path> cachedFile = cacheLookup.getCachedFile();
+            if (cachedFile.isPresent()) {
+                Path potentialCachedFile = cachedFile.get();
+                try {
+                    final Path parentPath = localPath.getParent();
+                    if (Files.notExists(parentPath)) {
+                        Files.createDirectory(parentPath);
                     }
-                }
-
-                final String sha1 = DigestUtils.sha1Hex(targetPath);
-                final String sha1Prefix = sha1.substring(0, 2);
-                final String sha1Suffix = sha1.substring(2);
-                potentialCachedFile = Paths.get(cacheDirectory, sha1Prefix, sha1Suffix);
-                if (Files.exists(potentialCachedFile)) {
-                    System.out.println("Found file " + targetPath + " in cache, hard-linking");
-                    try {
-                        final Path parentPath = localPath.getParent();
-                        if (Files.notExists(parentPath)) {
-                            Files.createDirectory(parentPath);
-                        }
-                        Files.createLink(localPath, potentialCachedFile);
-                    } catch (IOException e) {
-                        LOG.error("Cannot create hard link to cached file, you may want to move your cache", e.getMessage());
-                        try {
-                            Files.copy(potentialCachedFile, localPath);
-                        } catch (IOException e1) {
-                            LOG.error("Could not copy " + targetPath + " to " + localPath, e);
-                            throw new RuntimeException("Could not copy " + targetPath + " to " + localPath, e1);
-                        }
-                        System.out.println("Found file " + targetPath + " in cache, copied");
+                    // the cache may evict the file later, so it cannot be symlinked
+                    LocalProvisioning.Method method = localProvisioning.withoutSymlinks().provision(potentialCachedFile, localPath);
+                    System.out.println("Found file " + targetPath + " in cache, " + method.pastTense());
+                    if (method == LocalProvisioning.Method.COPY) {
+                        LOG.warn("Cannot link to cached file, you may want to move your cache to the file system of your working directory");
                     }
+                } catch (IOException e) {
+                    LOG.error("Could not copy " + targetPath + " to " + localPath, e);
+                    throw new RuntimeException("Could not copy " + targetPath + " to " + localPath, e);
                 }
             }
         }
 
-        URI objectIdentifier = URI.create(targetPath);    // throws IllegalArgumentException if it isn't a valid URI
         if (objectIdentifier.getScheme() != null) {
-            String scheme = objectIdentifier.getScheme().toLowerCase();
-            for (ProvisionInterface provision : plugins) {
-                if (provision.schemesHandled().contains(scheme.toUpperCase()) || provision.schemesHandled()
-                        .contains(scheme.toLowerCase())) {
-                    System.out.println("Calling on plugin " + provision.getClass().getName() + " to provision " + targetPath);
-                    handleDownloadProvisionWithRetries(targetPath, localPath, provision);
-                }
+            for (ProvisionInterface provision : plugins.pluginsFor(objectIdentifier.getScheme())) {
+                System.out.println("Calling on plugin " + provision.getClass().getName() + " to provision " + targetPath);
+                handleDownloadProvisionWithRetries(targetPath, localPath, provision);
+                provision.checksumOf(targetPath)
+                    .ifPresent(checksum -> Checksums.Expected.parse(checksum, provision.getClass().getName()).ifPresent(pluginExpected::add));
             }
         }
         // if a file does not exist yet, get it
@@ -283,9 +367,12 @@ public class FileProvisioning {
             // check if we can use a plugin
             boolean localFileType = objectIdentifier.getScheme() == null;
             if (!localFileType) {
-                handleDownloadProvisionWithRetries(targetPath, localPath, null);
+                FileProvisionUtilPluginWrapper wrapper = new FileProvisionUtilPluginWrapper(threads, connections, expected,
+                    cacheLookup == null ? Collections.emptySet() : Collections.singleton(Checksums.SHA256));
+                handleDownloadProvisionWithRetries(targetPath, localPath, wrapper);
+                checksums = wrapper.getChecksums();
             } else {
-                // hard link into target location
+                // clone or link into target location
                 Path actualTargetPath = null;
                 try {
                     String workingDir = System.getProperty("user.dir");
@@ -306,63 +393,98 @@ public class FileProvisioning {
                         throw new IOException("Could not create " + localPath);
                     }
 
-                    // create link
-                    Files.createLink(localPath, actualTargetPath);
+                    // clone or link where possible, directories are copied
+                    if (Files.isDirectory(actualTargetPath)) {
+                        FileUtils.copyDirectory(actualTargetPath.toFile(), localPath.toFile(), file -> {
+                            String name = file.getName();
+                            return !("datastore".equals(name));
+                        });
+                    } else {
+                        LocalProvisioning.Method method = localProvisioning.provision(actualTargetPath, localPath);
+                        LOG.info("Provisioned " + targetPath + " to " + localPath + ", " + method.pastTense());
+                    }
                 } catch (IOException e) {
-                    LOG.info("Could not link " + targetPath + " to " + localPath + " , copying instead", e);
-                    try {
-                        if (actualTargetPath.toFile().isDirectory()) {
-                            FileUtils.copyDirectory(actualTargetPath.toFile(), localPath.toFile(), file -> {
-                                String name = file.getName();
-                                return !("datastore".equals(name));
-                            });
-                        } else {
-                            Files.copy(actualTargetPath, localPath);
-                        }
-                    } catch (IOException e1) {
-                        LOG.error("Could not copy " + targetPath + " to " + localPath, e);
-                        if (!Client.SCRIPT.get()) {
-                            throw new RuntimeException("Could not copy " + targetPath + " to " + localPath, e1);
-                        }
-                        LOG.error("Could not copy " + targetPath + " to " + localPath, e1);
+                    LOG.error("Could not copy " + targetPath + " to " + localPath, e);
+                    if (!Client.SCRIPT.get()) {
+                        throw new RuntimeException("Could not copy " + targetPath + " to " + localPath, e);
                     }
                 }
             }
         }
 
-        synchronized (LOG) {
-            // cache the file if we got it successfully
-            if (cache) {
-                // do not cache directories
-                if (localPath.toFile().isDirectory()) {
-                    return;
-                }
-                // populate cache
-                if (Files.notExists(potentialCachedFile)) {
-                    System.out.println("Caching file " + localPath + " in cache, hard-linking");
-                    try {
-                        // create parent directory
-                        final Path parentPath = potentialCachedFile.getParent();
-                        if (Files.notExists(parentPath)) {
-                            Files.createDirectory(parentPath);
-                        }
-                        Files.createLink(potentialCachedFile, localPath);
-                    } catch (IOException e) {
-                        LOG.error("Cannot create hard link for local file, skipping", e);
-                    }
-                }
+        boolean cached = cacheLookup != null && cacheLookup.getCachedFile().isPresent();
+        // files from plugins and local files are only read again when there is a checksum to check them against, cached files were checked
+        // when they were looked up
+        if (checksums == null && !cached && Files.isRegularFile(localPath) && pluginExpected.stream().anyMatch(Checksums.Expected::isReliable)) {
+            checksums = new Checksums(Collections.emptySet(), pluginExpected);
+            try {
+                checksums.update(localPath);
+                checksums.verify(targetPath);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not verify " + targetPath + ": " + e.getMessage(), e);
+            }
+        }
+
+        // cache the file if we got it successfully, directories are not cached
+        if (cacheLookup != null && !cached && Files.isRegularFile(localPath)) {
+            try {
+                cache.store(cacheLookup, localPath, checksums == null ? Collections.emptyMap() : checksums.values());
+            } catch (IOException e) {
+                LOG.error("Cannot cache " + localPath + ", skipping", e);
             }
         }
+        return checksums == null ? null : checksums.describe();
+    }
+
+    /**
+     * Waits for the earlier copy, whose transfer is already running since it registered itself, so this cannot deadlock the scheduler
+     *
+     * @return false if the earlier copy failed or cannot be put in place, the url is then provisioned again
+     */
+    private boolean provisionFromEarlier(String targetPath, CompletableFuture<Path> earlier, Path localPath) {
+        Path earlierPath;
+        try {
+            earlierPath = earlier.join();
+        } catch (CompletionException | CancellationException e) {
+            return false;
+        }
+        // directories are provisioned for each use
+        if (!Files.isRegularFile(earlierPath)) {
+            return false;
+        }
+        try {
+            Files.createDirectories(localPath.getParent());
+            // the earlier run may clean up its copy, so it cannot be symlinked
+            LocalProvisioning.Method method = localProvisioning.withoutSymlinks().provision(earlierPath, localPath);
+            System.out.println("Provisioned " + targetPath + " from the copy at " + earlierPath + ", " + method.pastTense());
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not provision " + targetPath + " from the copy at " + earlierPath + ", provisioning it again", e);
+            return false;
+        }
     }
 
     private void handleDownloadProvisionWithRetries(String targetPath, Path localPath, ProvisionInterface provision) {
         int maxRetries = config.getInt(FILE_PROVISION_RETRIES, DEFAULT_RETRIES);
+        if (provision == null) {
+            provision = new FileProvisionUtilPluginWrapper(threads, connections);
+        }
         retryWrapper(provision, targetPath, localPath, maxRetries, true, threads);
     }
 
     private void handleUploadProvisionWithRetries(String targetPath, Path localPath, ProvisionInterface provision, String metadata) {
         int maxRetries = config.getInt(FILE_PROVISION_RETRIES, DEFAULT_RETRIES);
-        retryWrapper(provision, targetPath, localPath, maxRetries, false, threads);
+        if (provision instanceof ChunkedUploadInterface) {
+            try {
+                MultipartUploader multipartUploader = new MultipartUploader(connections, MultipartUploader.DEFAULT_PART_SIZE, maxRetries);
+                if (multipartUploader.upload((ChunkedUploadInterface)provision, targetPath, localPath, Optional.ofNullable(metadata), threads)) {
+                    return;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not provision: " + localPath + " to " + targetPath, e);
+            }
+        }
+        retryWrapper(provision, targetPath, localPath, maxRetries, false, metadata, threads);
     }
 
     /**
@@ -386,6 +508,23 @@ public class FileProvisioning {
             handleUploadProvisionWithRetries(destPath, Paths.get(srcPath), provisionInterface, metadata);
             // finalize output from the printer
             System.out.println();
+        } else if (sourceFile.isFile() && ("http".equals(ProvisioningScheduler.schemeOf(destPath)) || "https"
+            .equals(ProvisioningScheduler.schemeOf(destPath)))) {
+            // vfs2 cannot write to http(s)
+            System.out.println("Provisioning from " + srcPath + " to " + destPath);
+            handleUploadProvisionWithRetries(destPath, sourceFile.toPath(), httpUploader, metadata);
+        } else if (sourceFile.isFile() && isLocalPath(destPath)) {
+            Path destination = Paths.get(destPath).toAbsolutePath();
+            System.out.println("Provisioning from " + srcPath + " to " + destPath);
+            try {
+                Files.createDirectories(destination.getParent());
+                Files.deleteIfExists(destination);
+                // the working directory may be cleaned up, so outputs are not symlinked
+                LocalProvisioning.Method method = localProvisioning.withoutSymlinks().provision(sourceFile.toPath(), destination);
+                LOG.info("Provisioned " + srcPath + " to " + destination + ", " + method.pastTense());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not provision output files", e);
+            }
         } else {
             try {
                 FileSystemManager fsManager = VFS.getManager();
@@ -447,6 +586,14 @@ public class FileProvisioning {
         }
     }
 
+    private static boolean isLocalPath(String path) {
+        try {
+            return URI.create(path).getScheme() == null;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
     /**
      * This is an entry point for both WDL and CWL, where registered files are provisioned out.
      * @param outputSet pairs that describe files that we want to provision out
@@ -477,24 +624,21 @@ public class FileProvisioning {
                     pInterface.prepareFileSet(destList, srcList, metadataList);
                 }
 
-                ExecutorService executorService = Executors.newFixedThreadPool(threads);
-
-                List<Future> futures = new ArrayList<>();
+                List<Future<ProvisioningScheduler.Transferred>> futures = new ArrayList<>();
                 for (int i = 0; i < pairs.length; i++) {
                     Pair<String, FileInfo> pair = pairs[i];
                     String dest = destList.get(i);
-                    Future<Object> submit = executorService.submit(() -> {
+                    Path source = srcList.get(i);
+                    long size = Files.isRegularFile(source) ? Files.size(source) : ProvisioningScheduler.UNKNOWN_SIZE;
+                    futures.add(scheduler.submit(dest, ProvisioningScheduler.schemeOf(dest), size, () -> {
                         provisionOutputFile(pair.getLeft(), dest, pair.getRight().getMetadata(), pInterface);
-                        return true;
-                    });
-                    futures.add(submit);
+                        return new ProvisioningScheduler.Transferred(size, null);
+                    }));
                 }
-                for (Future future : futures) {
+                for (Future<ProvisioningScheduler.Transferred> future : futures) {
                     future.get();
                 }
 
-                executorService.shutdownNow();
-
                 if (pInterface != null) {
                     pInterface.finalizeFileSet(destList, srcList, metadataList);
                 }
@@ -515,13 +659,9 @@ public class FileProvisioning {
             URI objectIdentifier = URI.create(destPath);    // throws IllegalArgumentException if it isn't a valid URI
             boolean handled = false;
             if (objectIdentifier.getScheme() != null) {
-                String scheme = objectIdentifier.getScheme();
-                for (ProvisionInterface provision : plugins) {
-                    if (provision.schemesHandled().contains(scheme.toUpperCase()) || provision.schemesHandled()
-                            .contains(scheme.toLowerCase())) {
-                        map.put(provision, pair);
-                        handled = true;
-                    }
+                for (ProvisionInterface provision : plugins.pluginsFor(objectIdentifier.getScheme())) {
+                    map.put(provision, pair);
+                    handled = true;
                 }
             }
             if (!handled) {
@@ -580,9 +720,38 @@ public class FileProvisioning {
     public static class FileProvisionUtilPluginWrapper implements ProvisionInterface {
 
         private final int threads;
+        private final int connections;
+        /**
+         * null to not compute checksums
+         */
+        private final List<Checksums.Expected> expected;
+        private final Collection<String> algorithms;
+        private Checksums checksums;
 
         FileProvisionUtilPluginWrapper(int threads) {
+            this(threads, RangedDownloader.DEFAULT_CONNECTIONS);
+        }
+
+        FileProvisionUtilPluginWrapper(int threads, int connections) {
+            this(threads, connections, null, Collections.emptySet());
+        }
+
+        /**
+         * @param expected   checksums the file should have, a download that does not match them fails
+         * @param algorithms digests to compute whether or not they are expected
+         */
+        FileProvisionUtilPluginWrapper(int threads, int connections, List<Checksums.Expected> expected, Collection<String> algorithms) {
             this.threads = threads;
+            this.connections = connections;
+            this.expected = expected;
+            this.algorithms = algorithms;
+        }
+
+        /**
+         * @return the digests of the last download, null if they were not computed
+         */
+        Checksums getChecksums() {
+            return checksums;
         }
 
         @Override
@@ -592,7 +761,9 @@ public class FileProvisioning {
 
         @Override
         public boolean downloadFrom(String sourcePath, Path destination) {
-            return FileProvisionUtil.downloadFromVFS2(sourcePath, destination, threads);
+            // each attempt starts over
+            checksums = expected == null ? null : new Checksums(algorithms, expected);
+            return FileProvisionUtil.downloadFromVFS2(sourcePath, destination, threads, connections, checksums);
         }
 
         @Override
@@ -0,0 +1,735 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of provisioned input files, stored once per content no matter how many urls they were fetched from.
+ * <ul>
+ * <li>objects/[sha256 of the content] holds the files</li>
+ * <li>urls/[sha1 of the url] maps a url to the content it last had, along with the ETag, Last-Modified and Content-Length it was served with
+ * and the other checksums computed while downloading it.
+ * http(s) files are checked against these before the cached copy is used. The modification time of the mapping is when it was last used.</li>
+ * <li>checksums/[algorithm]/[checksum] holds the sha256 of content with that checksum, so that a file whose checksum is known
+ * (from the CWL checksum field or the server) is found whatever url it was cached from</li>
+ * </ul>
+ * When a maximum size is configured, the least recently used files are evicted to stay under it.
+ * Cached files are cloned or hard-linked into place, so evicting a file does not affect earlier launches.
+ * <p>
+ * Several threads and several launches on the same host may share a cache. Each url is guarded by {@link #lock(String)},
+ * a lock of its own within this JVM plus a file lock between processes, and files are written next to where they go and then renamed into place.
+ * The lock is held while the url downloads, so urls never wait on each other, only on a download of the same url.
+ * Eviction skips urls that are locked.
+ *
+ * @author dyuen
+ */
+public class FileProvisioningCache {
+
+    static final String CACHE_MAX_SIZE_MB = "cache-max-size-mb";
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileProvisioningCache.class);
+    private static final String OBJECTS = "objects";
+    private static final String URLS = "urls";
+    private static final String LOCKS = "locks";
+    private static final String CHECKSUMS = "checksums";
+    private static final String EVICTION_LOCK = "eviction";
+    /**
+     * Shared by every cache in this JVM, since file locks are held by the whole process and cannot keep its threads apart.
+     * One per key rather than striped, a stripe would hold up other urls for as long as a download takes. Removed once unused.
+     */
+    private static final ConcurrentMap<String, KeyMutex> KEY_LOCKS = new ConcurrentHashMap<>();
+    private static final int PREFIX_LENGTH = 2;
+    private static final long BYTES_IN_MEGABYTE = 1024L * 1024L;
+    private static final int VALIDATE_TIMEOUT_MILLIS = 10 * 1000;
+    private static final String CONTENT_MD5 = "Content-MD5";
+    private static final String GOOG_HASH = "x-goog-hash";
+
+    private final Path root;
+    private final long maxBytes;
+    private final LocalProvisioning localProvisioning;
+
+    /**
+     * @param root     directory of the cache
+     * @param maxBytes size to evict down to, 0 for no limit
+     */
+    public FileProvisioningCache(Path root, long maxBytes) {
+        this(root, maxBytes, new LocalProvisioning(LocalProvisioning.DEFAULT_POLICY));
+    }
+
+    private FileProvisioningCache(Path root, long maxBytes, LocalProvisioning localProvisioning) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        this.localProvisioning = localProvisioning;
+    }
+
+    public static FileProvisioningCache fromConfig(INIConfiguration config) {
+        // launches may delete what they downloaded, so it cannot be symlinked
+        return new FileProvisioningCache(Paths.get(FileProvisioning.getCacheDirectory(config)),
+            config.getLong(CACHE_MAX_SIZE_MB, 0L) * BYTES_IN_MEGABYTE, LocalProvisioning.fromConfig(config).withoutSymlinks());
+    }
+
+    /**
+     * Lock a url against other threads and processes, hold it from {@link #lookup(String)} until the file is in place or stored
+     * so that the same url is not downloaded twice at once.
+     *
+     * @param url where the file would be provisioned from
+     * @return the lock, to be closed when done
+     */
+    public KeyLock lock(String url) throws IOException {
+        return acquire(DigestUtils.sha1Hex(url), true);
+    }
+
+    /**
+     * @param key  name of the lock
+     * @param wait whether to wait for the lock or give up straight away
+     * @return the lock, null if it was not available without waiting
+     */
+    private KeyLock acquire(String key, boolean wait) throws IOException {
+        KeyMutex lock = KeyMutex.get(key);
+        if (wait) {
+            lock.lock();
+        } else if (!lock.tryLock()) {
+            lock.release();
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            Path lockFile = hashed(LOCKS, key);
+            Files.createDirectories(lockFile.getParent());
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock fileLock = wait ? channel.lock() : channel.tryLock();
+            if (fileLock == null) {
+                channel.close();
+                lock.unlockAndRelease();
+                return null;
+            }
+            return new KeyLock(lock, channel, fileLock);
+        } catch (OverlappingFileLockException e) {
+            // this thread already holds it further up, such as when evicting while storing
+            channel.close();
+            lock.unlockAndRelease();
+            return null;
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            lock.unlockAndRelease();
+            throw e;
+        }
+    }
+
+    /**
+     * Find the content of a url, checking that it has not changed for http(s) urls.
+     * Call while holding {@link #lock(String)} for the url.
+     *
+     * @param url where the file would be provisioned from
+     * @return the lookup, holding the cached file if there is a current one
+     */
+    public Lookup lookup(String url) throws IOException {
+        return lookup(url, new ArrayList<>());
+    }
+
+    /**
+     * @param expected checksums the file should have, the server's are added to them in the lookup
+     */
+    Lookup lookup(String url, List<Checksums.Expected> expected) throws IOException {
+        Validators current = fetchValidators(url);
+        List<Checksums.Expected> allExpected = new ArrayList<>(expected);
+        if (current != null) {
+            allExpected.addAll(current.checksums());
+        }
+        Path mappingFile = mappingFile(url);
+        Path object = null;
+        if (Files.exists(mappingFile)) {
+            Properties mapping = readProperties(mappingFile);
+            Validators cached = Validators.from(mapping);
+            String sha256 = mapping.getProperty(Checksums.SHA256);
+            object = sha256 == null ? null : objectFile(sha256);
+            if (object == null || !Files.exists(object)) {
+                Files.deleteIfExists(mappingFile);
+                object = null;
+            } else if (current != null && !current.matches(cached)) {
+                System.out.println("Cached copy of " + url + " is out of date, downloading again");
+                Files.deleteIfExists(mappingFile);
+                object = null;
+            } else if (!matches(mapping, allExpected)) {
+                System.out.println("Cached copy of " + url + " does not have the expected checksum, downloading again");
+                Files.deleteIfExists(mappingFile);
+                object = null;
+            }
+        }
+        if (object == null) {
+            object = findByChecksum(allExpected);
+            if (object == null) {
+                return new Lookup(url, current, null, allExpected);
+            }
+            System.out.println("Content of " + url + " is already cached with the same checksum");
+            Map<String, String> checksums = new HashMap<>();
+            checksums.put(Checksums.SHA256, hashOf(object));
+            writeMapping(url, current, checksums);
+        } else {
+            // record the use for eviction
+            Files.setLastModifiedTime(mappingFile, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        return new Lookup(url, current, object, allExpected);
+    }
+
+    /**
+     * @return false if the mapping records a digest that differs from a reliable expected checksum
+     */
+    private static boolean matches(Properties mapping, List<Checksums.Expected> expected) {
+        for (Checksums.Expected checksum : expected) {
+            String recorded = mapping.getProperty(checksum.getAlgorithm());
+            if (checksum.isReliable() && recorded != null && !recorded.equalsIgnoreCase(checksum.getHex())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the cached file with one of the reliable expected checksums, null if there is none
+     */
+    private Path findByChecksum(List<Checksums.Expected> expected) throws IOException {
+        for (Checksums.Expected checksum : expected) {
+            if (!checksum.isReliable()) {
+                continue;
+            }
+            String sha256 = checksum.getHex();
+            if (!Checksums.SHA256.equals(checksum.getAlgorithm())) {
+                Path alias = checksumFile(checksum.getAlgorithm(), checksum.getHex());
+                sha256 = Files.exists(alias) ? new String(Files.readAllBytes(alias), StandardCharsets.UTF_8).trim() : null;
+            }
+            if (sha256 != null && sha256.matches("[0-9a-f]{64}") && Files.exists(objectFile(sha256))) {
+                return objectFile(sha256);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a downloaded file, keyed by its content.
+     * Call while holding {@link #lock(String)} for the url.
+     *
+     * @param lookup     the lookup that missed
+     * @param downloaded the file that was downloaded, it is cloned or hard-linked into the cache where possible
+     */
+    public void store(Lookup lookup, Path downloaded) throws IOException {
+        store(lookup, downloaded, new HashMap<>());
+    }
+
+    /**
+     * @param checksums digests computed while downloading by algorithm, the sha256 is only computed here if it is missing
+     */
+    void store(Lookup lookup, Path downloaded, Map<String, String> checksums) throws IOException {
+        String sha256 = checksums.get(Checksums.SHA256);
+        if (sha256 == null) {
+            try (InputStream inputStream = Files.newInputStream(downloaded)) {
+                sha256 = DigestUtils.sha256Hex(inputStream);
+            }
+        }
+        Path object = objectFile(sha256);
+        if (Files.notExists(object)) {
+            Files.createDirectories(object.getParent());
+            Path temporary = object.resolveSibling(object.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            LocalProvisioning.Method method = localProvisioning.provision(downloaded, temporary);
+            System.out.println("Caching file " + downloaded + " in cache, " + method.pastTense());
+            moveIntoPlace(temporary, object);
+        } else {
+            System.out.println("Content of " + lookup.url + " is already cached from another url");
+        }
+
+        Map<String, String> allChecksums = new HashMap<>(checksums);
+        allChecksums.put(Checksums.SHA256, sha256);
+        for (Map.Entry<String, String> checksum : allChecksums.entrySet()) {
+            if (!Checksums.SHA256.equals(checksum.getKey())) {
+                writeAtomically(checksumFile(checksum.getKey(), checksum.getValue()), sha256.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        writeMapping(lookup.url, lookup.validators, allChecksums);
+        evict();
+    }
+
+    private void writeMapping(String url, Validators validators, Map<String, String> checksums) throws IOException {
+        Properties mapping = new Properties();
+        mapping.setProperty("url", url);
+        checksums.forEach(mapping::setProperty);
+        if (validators != null) {
+            validators.to(mapping);
+        }
+        writeProperties(mappingFile(url), mapping);
+    }
+
+    /**
+     * Evict the least recently used files until the cache fits in its maximum size, files that no url maps to go first
+     *
+     * @return number of files evicted
+     */
+    public int evict() throws IOException {
+        if (maxBytes <= 0) {
+            return 0;
+        }
+        // one eviction at a time, another launch that is already evicting will get the cache under the size
+        try (KeyLock evictionLock = acquire(EVICTION_LOCK, false)) {
+            return evictionLock == null ? 0 : evictUnderLock();
+        }
+    }
+
+    private int evictUnderLock() throws IOException {
+        Map<String, List<Path>> mappingsByObject = new HashMap<>();
+        Map<String, FileTime> lastUsedByObject = new HashMap<>();
+        for (Path mappingFile : list(URLS)) {
+            String sha256 = readProperties(mappingFile).getProperty("sha256");
+            if (sha256 == null) {
+                Files.deleteIfExists(mappingFile);
+                continue;
+            }
+            mappingsByObject.computeIfAbsent(sha256, key -> new ArrayList<>()).add(mappingFile);
+            FileTime lastUsed = Files.getLastModifiedTime(mappingFile);
+            lastUsedByObject.merge(sha256, lastUsed, (a, b) -> a.compareTo(b) > 0 ? a : b);
+        }
+
+        List<Path> objects = list(OBJECTS);
+        long total = 0;
+        for (Path object : objects) {
+            total += Files.size(object);
+        }
+        objects.sort(Comparator.comparing(object -> lastUsedByObject.getOrDefault(hashOf(object), FileTime.fromMillis(0))));
+
+        int evicted = 0;
+        for (Path object : objects) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long size = Files.size(object);
+            if (evictIfUnused(object, mappingsByObject.getOrDefault(hashOf(object), new ArrayList<>()))) {
+                total -= size;
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            LOG.info("Evicted " + evicted + " files from the cache to stay under " + maxBytes / BYTES_IN_MEGABYTE + " MB");
+        }
+        return evicted;
+    }
+
+    /**
+     * @return false if a url of the file is locked, as it may be being linked into place
+     */
+    private boolean evictIfUnused(Path object, List<Path> mappingFiles) throws IOException {
+        List<KeyLock> locks = new ArrayList<>();
+        try {
+            for (Path mappingFile : mappingFiles) {
+                KeyLock lock = acquire(hashOf(mappingFile), false);
+                if (lock == null) {
+                    return false;
+                }
+                locks.add(lock);
+            }
+            for (Path mappingFile : mappingFiles) {
+                Files.deleteIfExists(mappingFile);
+            }
+            Files.deleteIfExists(object);
+            return true;
+        } finally {
+            for (KeyLock lock : locks) {
+                lock.close();
+            }
+        }
+    }
+
+    /**
+     * Remove what the current layout does not use, files cached by versions that keyed them by url and urls whose files are gone
+     *
+     * @return number of entries removed
+     */
+    public int removeUnused() throws IOException {
+        int removed = 0;
+        for (Path legacy : legacyDirectories()) {
+            FileUtils.deleteDirectory(legacy.toFile());
+            removed++;
+        }
+        for (Path mappingFile : list(URLS)) {
+            String sha256 = readProperties(mappingFile).getProperty("sha256");
+            if (sha256 == null || Files.notExists(objectFile(sha256))) {
+                Files.deleteIfExists(mappingFile);
+                removed++;
+            }
+        }
+        for (Path alias : list(CHECKSUMS)) {
+            String sha256 = new String(Files.readAllBytes(alias), StandardCharsets.UTF_8).trim();
+            if (!sha256.matches("[0-9a-f]{64}") || Files.notExists(objectFile(sha256))) {
+                Files.deleteIfExists(alias);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return a summary of what is in the cache
+     */
+    public Stats stats() throws IOException {
+        Stats stats = new Stats();
+        stats.maxBytes = maxBytes;
+        stats.urls = list(URLS).size();
+        for (Path object : list(OBJECTS)) {
+            stats.files++;
+            stats.bytes += Files.size(object);
+        }
+        for (Path legacy : legacyDirectories()) {
+            stats.legacyBytes += FileUtils.sizeOfDirectory(legacy.toFile());
+        }
+        return stats;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private Path mappingFile(String url) {
+        return hashed(URLS, DigestUtils.sha1Hex(url));
+    }
+
+    private Path objectFile(String sha256) {
+        return hashed(OBJECTS, sha256);
+    }
+
+    private Path checksumFile(String algorithm, String hex) {
+        return hashed(CHECKSUMS + '/' + algorithm, hex.toLowerCase(Locale.ROOT));
+    }
+
+    private Path hashed(String directory, String hash) {
+        return root.resolve(directory).resolve(hash.substring(0, PREFIX_LENGTH))
+            .resolve(hash.substring(PREFIX_LENGTH));
+    }
+
+    private static String hashOf(Path file) {
+        return file.getParent().getFileName().toString() + file.getFileName().toString();
+    }
+
+    /**
+     * @return the files of a part of the cache, leaving out those being written
+     */
+    private List<Path> list(String directory) throws IOException {
+        Path path = root.resolve(directory);
+        if (Files.notExists(path)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).filter(file -> !file.getFileName().toString().endsWith(".tmp"))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Earlier versions stored files directly under [first two characters of the sha1 of the url]
+     */
+    private List<Path> legacyDirectories() throws IOException {
+        if (Files.notExists(root)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> directories = Files.list(root)) {
+            return directories.filter(Files::isDirectory).filter(directory -> directory.getFileName().toString().length() == PREFIX_LENGTH)
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Ask an http(s) server about the current version of a file
+     *
+     * @return null if the url is not http(s) or the server could not be asked
+     */
+    private static Validators fetchValidators(String url) {
+        String scheme = URI.create(url).getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return null;
+        }
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(VALIDATE_TIMEOUT_MILLIS).setSocketTimeout(VALIDATE_TIMEOUT_MILLIS).build();
+        try (CloseableHttpClient client = HttpClients.custom().setDefaultRequestConfig(requestConfig).build();
+            CloseableHttpResponse response = client.execute(new HttpHead(url))) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                // such as pre-signed urls, which are only signed for GET
+                return null;
+            }
+            Validators validators = new Validators(value(response.getFirstHeader(HttpHeaders.ETAG)),
+                value(response.getFirstHeader(HttpHeaders.LAST_MODIFIED)), value(response.getFirstHeader(HttpHeaders.CONTENT_LENGTH)));
+            validators.contentMd5 = value(response.getFirstHeader(CONTENT_MD5));
+            validators.googHash = value(response.getFirstHeader(GOOG_HASH));
+            return validators;
+        } catch (IOException e) {
+            LOG.info("Could not check whether " + url + " has changed, using the cached copy if there is one", e);
+            return null;
+        }
+    }
+
+    private static String value(Header header) {
+        return header == null ? null : header.getValue();
+    }
+
+    private static Properties readProperties(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    /**
+     * Written next to the file and then renamed over it, so readers never see part of it
+     */
+    private static void writeProperties(Path file, Properties properties) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        moveIntoPlace(temporary, file);
+    }
+
+    private static void writeAtomically(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        Files.write(temporary, content);
+        moveIntoPlace(temporary, file);
+    }
+
+    /**
+     * Another launch may be moving the same content into place, either one winning is fine
+     */
+    private static void moveIntoPlace(Path temporary, Path target) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * A lock on a url, held by one thread of one process at a time
+     */
+    public static final class KeyLock implements AutoCloseable {
+        private final KeyMutex lock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        private KeyLock(KeyMutex lock, FileChannel channel, FileLock fileLock) {
+            this.lock = lock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                fileLock.release();
+                channel.close();
+            } finally {
+                lock.unlockAndRelease();
+            }
+        }
+    }
+
+    /**
+     * The lock of one key within this JVM, counting the threads that hold or wait for it so that it can be removed once unused
+     */
+    private static final class KeyMutex extends ReentrantLock {
+        private final String key;
+        /**
+         * Only changed within the map's compute functions for the key
+         */
+        private int users;
+
+        private KeyMutex(String key) {
+            this.key = key;
+        }
+
+        static KeyMutex get(String key) {
+            return KEY_LOCKS.compute(key, (k, existing) -> {
+                KeyMutex mutex = existing == null ? new KeyMutex(k) : existing;
+                mutex.users++;
+                return mutex;
+            });
+        }
+
+        void release() {
+            KEY_LOCKS.computeIfPresent(key, (k, mutex) -> --mutex.users == 0 ? null : mutex);
+        }
+
+        void unlockAndRelease() {
+            unlock();
+            release();
+        }
+    }
+
+    /**
+     * The result of looking up a url, to be passed back to {@link #store(Lookup, Path)} on a miss
+     */
+    public static final class Lookup {
+        private final String url;
+        private final Validators validators;
+        private final Path cachedFile;
+        private final List<Checksums.Expected> expected;
+
+        private Lookup(String url, Validators validators, Path cachedFile, List<Checksums.Expected> expected) {
+            this.url = url;
+            this.validators = validators;
+            this.cachedFile = cachedFile;
+            this.expected = expected;
+        }
+
+        public Optional<Path> getCachedFile() {
+            return Optional.ofNullable(cachedFile);
+        }
+
+        /**
+         * @return the checksums the file should have, including those the server gave when asked whether it changed
+         */
+        List<Checksums.Expected> getExpected() {
+            return expected;
+        }
+    }
+
+    /**
+     * What an http(s) server says about the version of a file
+     */
+    private static final class Validators {
+        private final String etag;
+        private final String lastModified;
+        private final String length;
+        /**
+         * Checksums of the current version, not kept in the mapping since the digests are
+         */
+        private String contentMd5;
+        private String googHash;
+
+        private Validators(String etag, String lastModified, String length) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        static Validators from(Properties properties) {
+            return new Validators(properties.getProperty("etag"), properties.getProperty("lastModified"), properties.getProperty("length"));
+        }
+
+        void to(Properties properties) {
+            if (etag != null) {
+                properties.setProperty("etag", etag);
+            }
+            if (lastModified != null) {
+                properties.setProperty("lastModified", lastModified);
+            }
+            if (length != null) {
+                properties.setProperty("length", length);
+            }
+        }
+
+        List<Checksums.Expected> checksums() {
+            List<Checksums.Expected> checksums = new ArrayList<>();
+            Checksums.Expected.fromContentMd5(contentMd5).ifPresent(checksums::add);
+            checksums.addAll(Checksums.Expected.fromGoogHash(googHash));
+            Checksums.Expected.fromEtag(etag).ifPresent(checksums::add);
+            return checksums;
+        }
+
+        /**
+         * The ETag decides when both have one, otherwise the modification time and length must agree
+         */
+        boolean matches(Validators other) {
+            if (etag != null && other.etag != null) {
+                return etag.equals(other.etag);
+            }
+            return Objects.equals(lastModified, other.lastModified) && Objects.equals(length, other.length);
+        }
+    }
+
+    /**
+     * A summary of the cache
+     */
+    public static final class Stats {
+        private long files;
+        private long bytes;
+        private long urls;
+        private long legacyBytes;
+        private long maxBytes;
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getUrls() {
+            return urls;
+        }
+
+        public long getLegacyBytes() {
+            return legacyBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import io.dockstore.provision.ChunkedUploadInterface;
+import io.dockstore.provision.PartsNotSupportedException;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads outputs to http(s) urls with PUT, which vfs2 cannot do.
+ * Files are sent in one PUT, a Content-Range on a PUT is not standard and servers that ignore it would store each part as the whole file.
+ * Large files to hosts listed in {@value #FILE_PROVISION_HTTP_RANGED_HOSTS} are sent as parts instead,
+ * each a PUT with a Content-Range header saying where it goes. If such a host turns that down it gets the whole file,
+ * see {@link MultipartUploader}.
+ * Whole files are digested as they are sent and compared with the ETag the server returns, where that is an MD5.
+ *
+ * @author dyuen
+ */
+class HttpUploader implements ChunkedUploadInterface {
+
+    static final String FILE_PROVISION_HTTP_RANGED_HOSTS = "file-provision-http-ranged-hosts";
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpUploader.class);
+    private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+    private static final int SOCKET_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    /**
+     * how servers turn down a PUT with a Content-Range, other failures of a part are retried
+     */
+    private static final Set<Integer> RANGES_UNSUPPORTED = new HashSet<>(
+        Arrays.asList(HttpStatus.SC_BAD_REQUEST, HttpStatus.SC_METHOD_NOT_ALLOWED, HttpStatus.SC_LENGTH_REQUIRED, HttpStatus.SC_NOT_IMPLEMENTED));
+
+    private final CloseableHttpClient client;
+    /**
+     * lower case hosts known to put together PUTs with a Content-Range
+     */
+    private final Set<String> rangedHosts;
+
+    /**
+     * @param connections most uploads to a host at once
+     * @param rangedHosts hosts that can be sent parts of a file
+     */
+    HttpUploader(int connections, Set<String> rangedHosts) {
+        this.rangedHosts = rangedHosts;
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT_MILLIS).setSocketTimeout(SOCKET_TIMEOUT_MILLIS).build();
+        this.client = HttpClients.custom().setDefaultRequestConfig(requestConfig).setMaxConnPerRoute(connections).setMaxConnTotal(connections)
+            .build();
+    }
+
+    static HttpUploader fromConfig(INIConfiguration config, int connections) {
+        Set<String> rangedHosts = new HashSet<>();
+        for (String host : config.getString(FILE_PROVISION_HTTP_RANGED_HOSTS, "").split(",")) {
+            if (!host.trim().isEmpty()) {
+                rangedHosts.add(host.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return new HttpUploader(connections, rangedHosts);
+    }
+
+    @Override
+    public Set<String> schemesHandled() {
+        return new HashSet<>(Arrays.asList("http", "https"));
+    }
+
+    @Override
+    public boolean downloadFrom(String sourcePath, Path destination) {
+        return false;
+    }
+
+    @Override
+    public boolean uploadTo(String destPath, Path sourceFile, Optional<String> metadata) {
+        try {
+            put(destPath, sourceFile, 0, Files.size(sourceFile), null);
+            return true;
+        } catch (IOException e) {
+            LOG.error(e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public long minimumPartSize() {
+        // unlike object stores, any split works
+        return 1;
+    }
+
+    @Override
+    public String initiateUpload(String destPath, Path sourceFile, Optional<String> metadata) {
+        // the server keeps no state between parts
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public String uploadPart(String uploadId, String destPath, Path sourceFile, int partNumber, long offset, long length) throws IOException {
+        if (!takesParts(destPath)) {
+            // nothing has been sent, the whole file goes in one PUT
+            throw new PartsNotSupportedException("the host of " + destPath + " is not in " + FILE_PROVISION_HTTP_RANGED_HOSTS);
+        }
+        long total = Files.size(sourceFile);
+        return put(destPath, sourceFile, offset, length, "bytes " + offset + '-' + (offset + length - 1) + '/' + total);
+    }
+
+    @Override
+    public void completeUpload(String uploadId, String destPath, Path sourceFile, List<String> parts) throws IOException {
+        // check the server put the parts together, where it says how large the file is
+        try (CloseableHttpResponse response = client.execute(new HttpHead(destPath))) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                throw new IOException("Could not check the upload to " + destPath + ", the server responded with " + response.getStatusLine());
+            }
+            Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+            long expected = Files.size(sourceFile);
+            if (contentLength == null) {
+                throw new IOException("Could not check the upload to " + destPath + ", the server did not say how large it is");
+            }
+            if (Long.parseLong(contentLength.getValue()) != expected) {
+                throw new IOException(destPath + " has " + contentLength.getValue() + " bytes after the upload, expected " + expected);
+            }
+        }
+    }
+
+    @Override
+    public void setConfiguration(Map<String, String> config) {
+        // do nothing
+    }
+
+    private boolean takesParts(String destPath) {
+        try {
+            String host = URI.create(destPath).getHost();
+            return host != null && rangedHosts.contains(host.toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the ETag of the response, if any
+     */
+    private String put(String destPath, Path sourceFile, long offset, long length, String contentRange) throws IOException {
+        HttpPut put = new HttpPut(destPath);
+        if (contentRange != null) {
+            put.setHeader(HttpHeaders.CONTENT_RANGE, contentRange);
+        }
+        // parts have ETags of their own
+        Checksums checksums = contentRange == null ? new Checksums(Collections.singleton(Checksums.MD5), Collections.emptyList()) : null;
+        try (FileChannel channel = FileChannel.open(sourceFile, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream part = new ThrottledInputStream(new BoundedInputStream(Channels.newInputStream(channel), length));
+            if (checksums != null) {
+                part = checksums.digesting(part);
+            }
+            put.setEntity(new InputStreamEntity(part, length, ContentType.APPLICATION_OCTET_STREAM));
+            try (CloseableHttpResponse response = client.execute(put)) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                int status = response.getStatusLine().getStatusCode();
+                if (contentRange != null && RANGES_UNSUPPORTED.contains(status)) {
+                    throw new PartsNotSupportedException(destPath + " does not take a Content-Range, the server responded with " + response.getStatusLine());
+                }
+                if (status != HttpStatus.SC_OK && status != HttpStatus.SC_CREATED && status != HttpStatus.SC_NO_CONTENT) {
+                    throw new IOException("Could not upload " + (contentRange == null ? "" : contentRange + " of ") + sourceFile + " to "
+                        + destPath + ", the server responded with " + response.getStatusLine());
+                }
+                Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+                if (etag == null) {
+                    return null;
+                }
+                if (checksums != null) {
+                    Checksums.Expected.fromEtag(etag.getValue()).ifPresent(checksums::expect);
+                    checksums.verify(destPath);
+                }
+                return etag.getValue();
+            }
+        }
+    }
+
+    /**
+     * Keeps uploads within the bandwidth cap, see {@link ProvisioningScheduler#throttle(long)}
+     */
+    private static final class ThrottledInputStream extends FilterInputStream {
+        private ThrottledInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) {
+                ProvisioningScheduler.throttle(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                ProvisioningScheduler.throttle(read);
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes whole lines to a shared stream, each starting with a prefix, so that the output of things running at the same time
+ * can be told apart. A line is held back until it is complete, the rest of one is written on close.
+ * Closing does not close the shared stream.
+ *
+ * @author dyuen
+ */
+public final class LinePrefixingOutputStream extends OutputStream {
+
+    private final PrintStream target;
+    private final byte[] prefix;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    /**
+     * @param target the shared stream, such as System.out
+     * @param prefix written before each line
+     */
+    public LinePrefixingOutputStream(PrintStream target, String prefix) {
+        this.target = target;
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        line.write(this.prefix, 0, this.prefix.length);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        line.write(b);
+        if (b == '\n') {
+            emit();
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        int start = off;
+        for (int i = off; i < off + len; i++) {
+            if (b[i] == '\n') {
+                line.write(b, start, i + 1 - start);
+                emit();
+                start = i + 1;
+            }
+        }
+        line.write(b, start, off + len - start);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (line.size() > prefix.length) {
+            line.write('\n');
+            emit();
+        }
+    }
+
+    private void emit() {
+        // one write, so the line is not split by lines written to the shared stream from elsewhere
+        byte[] bytes = line.toByteArray();
+        target.write(bytes, 0, bytes.length);
+        target.flush();
+        line.reset();
+        line.write(prefix, 0, prefix.length);
+    }
+}
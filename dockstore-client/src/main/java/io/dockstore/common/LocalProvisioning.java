@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.configuration2.INIConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Puts a local file in place without copying its bytes where the file system allows it.
+ * <p>
+ * file-provision-local-policy lists what to try in order, by default {@code reflink, hardlink, copy}.
+ * Reflinks (copy-on-write clones, as on Btrfs and XFS) and hard links are instant on the same file system.
+ * Symbolic links also work across file systems, but only where the target is visible, so they are not tried unless listed
+ * and never for files that may be deleted later such as cached ones.
+ * Copies go through {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which the kernel can do without
+ * passing the bytes through the JVM.
+ *
+ * @author dyuen
+ */
+final class LocalProvisioning {
+
+    static final String FILE_PROVISION_LOCAL_POLICY = "file-provision-local-policy";
+    static final List<Method> DEFAULT_POLICY = Collections.unmodifiableList(Arrays.asList(Method.REFLINK, Method.HARDLINK, Method.COPY));
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocalProvisioning.class);
+    private static final boolean LINUX = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("linux");
+    private static final File DEV_NULL = new File("/dev/null");
+    /**
+     * File systems that turned down a reflink, so that it is not tried again for every file
+     */
+    private static final Set<FileStore> NO_REFLINK = ConcurrentHashMap.newKeySet();
+
+    private final List<Method> policy;
+
+    LocalProvisioning(List<Method> policy) {
+        this.policy = policy;
+    }
+
+    static LocalProvisioning fromConfig(INIConfiguration config) {
+        String value = config.getString(FILE_PROVISION_LOCAL_POLICY, null);
+        if (value == null) {
+            return new LocalProvisioning(DEFAULT_POLICY);
+        }
+        List<Method> policy = new ArrayList<>();
+        for (String name : value.split(",")) {
+            try {
+                policy.add(Method.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Ignoring " + name.trim() + " in " + FILE_PROVISION_LOCAL_POLICY + ", expected one of " + Arrays.toString(Method.values()));
+            }
+        }
+        if (!policy.contains(Method.COPY)) {
+            // there is always a way to get the file in place
+            policy.add(Method.COPY);
+        }
+        return new LocalProvisioning(policy);
+    }
+
+    /**
+     * @return the same policy for files that must outlive their source, such as files going into or out of the cache
+     */
+    LocalProvisioning withoutSymlinks() {
+        List<Method> withoutSymlinks = new ArrayList<>(policy);
+        withoutSymlinks.remove(Method.SYMLINK);
+        return new LocalProvisioning(withoutSymlinks);
+    }
+
+    /**
+     * @param source an existing regular file
+     * @param target where it should be, which must not exist yet
+     * @return how it was put in place
+     */
+    Method provision(Path source, Path target) throws IOException {
+        for (Method method : policy) {
+            try {
+                switch (method) {
+                case REFLINK:
+                    if (reflink(source, target)) {
+                        return method;
+                    }
+                    break;
+                case HARDLINK:
+                    Files.createLink(target, source);
+                    return method;
+                case SYMLINK:
+                    Files.createSymbolicLink(target, source.toAbsolutePath());
+                    return method;
+                case COPY:
+                    copy(source, target);
+                    return method;
+                default:
+                    throw new IllegalStateException("Unknown method " + method);
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                if (method == Method.COPY) {
+                    throw e;
+                }
+                LOG.debug("Could not use " + method + " for " + source + " to " + target + ", trying the next method", e);
+            }
+        }
+        throw new IOException("Could not provision " + source + " to " + target + " with " + policy);
+    }
+
+    /**
+     * There is no reflink call in the JDK, so this uses GNU cp which fails rather than copying with --reflink=always
+     */
+    private static boolean reflink(Path source, Path target) throws IOException {
+        if (!LINUX) {
+            return false;
+        }
+        FileStore store = Files.getFileStore(target.toAbsolutePath().getParent());
+        // clones only work within a file system, so a failure within one means it does not support them
+        if (NO_REFLINK.contains(store) || !store.equals(Files.getFileStore(source))) {
+            return false;
+        }
+        ProcessBuilder builder = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString());
+        builder.redirectErrorStream(true).redirectOutput(DEV_NULL);
+        try {
+            if (builder.start().waitFor() == 0) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Files.deleteIfExists(target);
+            throw new IOException("Interrupted while cloning " + source, e);
+        } catch (IOException e) {
+            LOG.debug("Could not run cp", e);
+        }
+        Files.deleteIfExists(target);
+        NO_REFLINK.add(store);
+        return false;
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * Ways of putting a file in place, from cheapest
+     */
+    enum Method {
+        REFLINK("cloned"), HARDLINK("hard-linked"), SYMLINK("symlinked"), COPY("copied");
+
+        private final String pastTense;
+
+        Method(String pastTense) {
+            this.pastTense = pastTense;
+        }
+
+        /**
+         * @return what was done, for messages like "Found file in cache, hard-linked"
+         */
+        String pastTense() {
+            return pastTense;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.dockstore.provision.ChunkedUploadInterface;
+import io.dockstore.provision.PartsNotSupportedException;
+import io.dockstore.provision.ProgressPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads a file as parts in parallel through a {@link ChunkedUploadInterface}, retrying parts rather than the whole file.
+ * Files under two parts are left to a single upload.
+ *
+ * @author dyuen
+ */
+final class MultipartUploader {
+
+    static final long DEFAULT_PART_SIZE = 64L * 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultipartUploader.class);
+    private static final long RETRY_MULTIPLIER_MILLIS = 100L;
+
+    private final int connections;
+    private final long partSize;
+    private final int retries;
+
+    MultipartUploader(int connections, long partSize, int retries) {
+        this.connections = connections;
+        this.partSize = partSize;
+        this.retries = retries;
+    }
+
+    /**
+     * @param uploader   the plugin to upload with
+     * @param destPath   where to upload to
+     * @param sourceFile the file to upload
+     * @param metadata   passed on to the plugin
+     * @param threads    number of files being uploaded at once, used for display purposes
+     * @return false if the file is too small to split or the destination does not take parts, nothing has been uploaded then
+     * @throws IOException if the upload failed after some parts were uploaded
+     */
+    boolean upload(ChunkedUploadInterface uploader, String destPath, Path sourceFile, Optional<String> metadata, int threads)
+        throws IOException {
+        long length = Files.size(sourceFile);
+        // stay within what the destination allows
+        long size = Math.max(Math.max(partSize, uploader.minimumPartSize()), (length + uploader.maximumParts() - 1) / uploader.maximumParts());
+        if (length < 2 * size) {
+            return false;
+        }
+        int parts = (int)((length + size - 1) / size);
+
+        String uploadId = uploader.initiateUpload(destPath, sourceFile, metadata);
+        System.out.println("Uploading: " + sourceFile + " to " + destPath + " in " + parts + " parts");
+        ProgressPrinter printer = new ProgressPrinter(threads, threads > 1 ? destPath : "");
+        AtomicLong transferred = new AtomicLong();
+        List<String> tokens = new ArrayList<>();
+        boolean completed = false;
+        ExecutorService executorService = Executors.newFixedThreadPool(connections);
+        try {
+            // the first part on its own finds out whether the destination takes parts before anything else is sent
+            try {
+                tokens.add(uploadPart(uploader, uploadId, destPath, sourceFile, 1, 0, size));
+            } catch (PartsNotSupportedException e) {
+                LOG.info("Could not upload " + destPath + " in parts, uploading it whole: " + e.getMessage());
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Upload interrupted", e);
+            }
+            progress(printer, transferred.addAndGet(size), length);
+
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 2; i <= parts; i++) {
+                final int partNumber = i;
+                final long offset = (i - 1) * size;
+                final long partLength = Math.min(size, length - offset);
+                futures.add(executorService.submit(() -> {
+                    String token = uploadPart(uploader, uploadId, destPath, sourceFile, partNumber, offset, partLength);
+                    progress(printer, transferred.addAndGet(partLength), length);
+                    return token;
+                }));
+            }
+            tokens.addAll(waitFor(futures));
+            uploader.completeUpload(uploadId, destPath, sourceFile, tokens);
+            completed = true;
+            return true;
+        } finally {
+            executorService.shutdownNow();
+            if (!completed) {
+                uploader.abortUpload(uploadId, destPath);
+            }
+            // finalize output from the printer
+            System.out.println();
+        }
+    }
+
+    private String uploadPart(ChunkedUploadInterface uploader, String uploadId, String destPath, Path sourceFile, int partNumber, long offset,
+        long length) throws IOException, InterruptedException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return uploader.uploadPart(uploadId, destPath, sourceFile, partNumber, offset, length);
+            } catch (PartsNotSupportedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                LOG.error("Could not upload part " + partNumber + " of " + destPath + ", for retry " + attempt + ": " + e.getMessage());
+                Thread.sleep((long)Math.pow(2, attempt + 1) * RETRY_MULTIPLIER_MILLIS);
+            }
+        }
+    }
+
+    private static void progress(ProgressPrinter printer, long total, long length) {
+        synchronized (System.out) {
+            printer.handleProgress(total, length);
+        }
+    }
+
+    /**
+     * Wait for every part, even after one fails, so that nothing is still uploading when the upload is aborted
+     */
+    private static List<String> waitFor(List<Future<String>> futures) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        IOException failure = null;
+        for (Future<String> future : futures) {
+            try {
+                tokens.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Upload interrupted", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return tokens;
+    }
+}
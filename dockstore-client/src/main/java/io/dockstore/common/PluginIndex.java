@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.github.zafarkhaja.semver.UnexpectedCharacterException;
+import io.dockstore.provision.ProvisionInterface;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.apache.commons.configuration2.SubnodeConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.pf4j.PluginManager;
+import ro.fortsoft.pf4j.PluginWrapper;
+
+/**
+ * Finds the file provisioning plugins for a scheme, loading only the plugins that are needed.
+ * <p>
+ * Which plugin handles which scheme is kept in a file in the plugins directory.
+ * When the plugins directory changes, every plugin is loaded once to rebuild that file, see {@link FileProvisionUtil#getPluginManager(INIConfiguration)}.
+ * Otherwise launches with no plugin schemes never start pf4j.
+ *
+ * @author dyuen
+ */
+final class PluginIndex {
+
+    static final String INDEX_FILENAME = "schemes.properties";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PluginIndex.class);
+    private static final String SIGNATURE = "signature";
+    private static final String SCHEME_PREFIX = "scheme.";
+    private static final String ZIP_SUFFIX = ".zip";
+
+    private final INIConfiguration config;
+    private final File pluginsDirectory;
+    private final Map<String, List<ProvisionInterface>> pluginsByScheme = new HashMap<>();
+    private final Map<String, List<ProvisionInterface>> extensionsByDirectory = new HashMap<>();
+    private Properties index;
+    private PluginManager pluginManager;
+
+    PluginIndex(INIConfiguration config) {
+        this.config = config;
+        this.pluginsDirectory = new File(FileProvisionUtil.getFilePluginLocation(config));
+    }
+
+    /**
+     * @param scheme a url scheme, in any case
+     * @return the plugins that handle the scheme, started and configured, empty if there are none
+     */
+    synchronized List<ProvisionInterface> pluginsFor(String scheme) {
+        String key = scheme.toLowerCase(Locale.ROOT);
+        List<ProvisionInterface> plugins = pluginsByScheme.get(key);
+        if (plugins != null) {
+            return plugins;
+        }
+        readIndex();
+        plugins = pluginsByScheme.get(key);
+        if (plugins != null) {
+            return plugins;
+        }
+        plugins = new ArrayList<>();
+        String directories = index.getProperty(SCHEME_PREFIX + key);
+        if (directories != null) {
+            for (String directory : directories.split(",")) {
+                plugins.addAll(handling(key, startPlugin(directory)));
+            }
+        }
+        pluginsByScheme.put(key, plugins);
+        return plugins;
+    }
+
+    private void readIndex() {
+        if (index != null) {
+            return;
+        }
+        if (!pluginsDirectory.isDirectory()) {
+            // nothing has been downloaded
+            index = new Properties();
+            return;
+        }
+        Path indexFile = pluginsDirectory.toPath().resolve(INDEX_FILENAME);
+        Properties properties = new Properties();
+        if (Files.exists(indexFile)) {
+            try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                LOG.warn("Could not read " + indexFile + ", rebuilding it", e);
+            }
+        }
+        if (signature().equals(properties.getProperty(SIGNATURE))) {
+            index = properties;
+        } else {
+            rebuildIndex(indexFile);
+        }
+    }
+
+    /**
+     * Load every plugin, which also cleans up old versions, and record the schemes they handle
+     */
+    private void rebuildIndex(Path indexFile) {
+        LOG.info("Plugins have changed, indexing the schemes they handle");
+        try {
+            pluginManager = FileProvisionUtil.getPluginManager(config);
+        } catch (UnexpectedCharacterException e) {
+            LOG.error("Could not load plugins: " + e.toString(), e);
+            throw new RuntimeException(e);
+        }
+        Map<String, Set<String>> directoriesByScheme = new HashMap<>();
+        for (PluginWrapper pluginWrapper : pluginManager.getStartedPlugins()) {
+            String directory = new File(pluginWrapper.getPluginPath()).getName();
+            List<ProvisionInterface> extensions = configure(pluginWrapper);
+            extensionsByDirectory.put(directory, extensions);
+            for (ProvisionInterface extension : extensions) {
+                for (String scheme : extension.schemesHandled()) {
+                    String key = scheme.toLowerCase(Locale.ROOT);
+                    directoriesByScheme.computeIfAbsent(key, k -> new TreeSet<>()).add(directory);
+                    pluginsByScheme.computeIfAbsent(key, k -> new ArrayList<>());
+                    if (!pluginsByScheme.get(key).contains(extension)) {
+                        pluginsByScheme.get(key).add(extension);
+                    }
+                }
+            }
+        }
+
+        index = new Properties();
+        directoriesByScheme.forEach((scheme, directories) -> index.setProperty(SCHEME_PREFIX + scheme, String.join(",", directories)));
+        // expanding archives changes the directory, so sign it afterwards
+        index.setProperty(SIGNATURE, signature());
+        try {
+            Path temporary = indexFile.resolveSibling(INDEX_FILENAME + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                index.store(writer, "schemes handled by each plugin, rebuilt when the plugins change");
+            }
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("Could not write " + indexFile + ", plugins will be indexed again next time", e);
+        }
+    }
+
+    /**
+     * @param directory directory of the plugin in the plugins directory
+     * @return the extensions of the plugin, empty if it could not be started
+     */
+    private List<ProvisionInterface> startPlugin(String directory) {
+        List<ProvisionInterface> extensions = extensionsByDirectory.get(directory);
+        if (extensions != null) {
+            return extensions;
+        }
+        extensions = Collections.emptyList();
+        File archive = new File(pluginsDirectory, directory + ZIP_SUFFIX);
+        if (!archive.exists()) {
+            LOG.error("Could not find " + archive + ", run dockstore plugin download");
+        } else {
+            if (pluginManager == null) {
+                pluginManager = new VersionAwarePluginManager(pluginsDirectory);
+            }
+            String pluginId = pluginManager.loadPlugin(archive);
+            if (pluginId == null) {
+                LOG.error("Could not load plugin " + archive);
+            } else {
+                pluginManager.startPlugin(pluginId);
+                extensions = configure(pluginManager.getPlugin(pluginId));
+            }
+        }
+        extensionsByDirectory.put(directory, extensions);
+        return extensions;
+    }
+
+    /**
+     * Pass the section of the config file named after the plugin to its extensions
+     */
+    private List<ProvisionInterface> configure(PluginWrapper pluginWrapper) {
+        SubnodeConfiguration section = config.getSection(pluginWrapper.getPluginId());
+        Map<String, String> sectionConfig = new HashMap<>();
+        Iterator<String> keys = section.getKeys();
+        keys.forEachRemaining(key -> sectionConfig.put(key, section.getString(key)));
+        List<ProvisionInterface> extensions = pluginManager.getExtensions(ProvisionInterface.class, pluginWrapper.getPluginId());
+        extensions.forEach(extension -> extension.setConfiguration(sectionConfig));
+        return extensions;
+    }
+
+    private static List<ProvisionInterface> handling(String scheme, List<ProvisionInterface> extensions) {
+        List<ProvisionInterface> handling = new ArrayList<>();
+        for (ProvisionInterface extension : extensions) {
+            if (extension.schemesHandled().stream().anyMatch(handled -> handled.equalsIgnoreCase(scheme))) {
+                handling.add(extension);
+            }
+        }
+        return handling;
+    }
+
+    /**
+     * @return a hash of what is in the plugins directory, which changes when plugins are downloaded, upgraded or removed
+     */
+    private String signature() {
+        File[] files = pluginsDirectory.listFiles((dir, name) -> !name.startsWith(INDEX_FILENAME));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+        StringBuilder builder = new StringBuilder();
+        for (File file : files) {
+            builder.append(file.getName()).append('\t').append(file.lastModified()).append('\t').append(file.length()).append('\n');
+        }
+        return DigestUtils.sha1Hex(builder.toString());
+    }
+}
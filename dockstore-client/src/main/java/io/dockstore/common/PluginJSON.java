@@ -35,6 +35,10 @@ public class PluginJSON {
     @Expose
     private String location;
 
+    @SerializedName("sha256")
+    @Expose
+    private String sha256;
+
     public String getVersion() {
         return version;
     }
@@ -46,4 +50,11 @@ public class PluginJSON {
     public String getLocation() {
         return location;
     }
+
+    /**
+     * @return hex digest of the plugin zip, null if it should not be checked
+     */
+    public String getSha256() {
+        return sha256;
+    }
 }
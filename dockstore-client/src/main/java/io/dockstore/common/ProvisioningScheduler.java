@@ -0,0 +1,302 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs every input and output transfer of a launch, so that file-provision-threads is the number of transfers at once
+ * no matter how many files or plugins are involved.
+ * <p>
+ * file-provision-scheme-threads further limits schemes, such as {@code s3:2, https:4}, and file-provision-max-mb-per-second
+ * caps the bandwidth of downloads and copies done by Dockstore itself (plugins move their own bytes and are not capped).
+ * Waiting transfers start largest first, skipping those whose scheme is at its limit so that they do not take up a thread while they wait.
+ *
+ * @author dyuen
+ */
+final class ProvisioningScheduler {
+
+    static final String FILE_PROVISION_SCHEME_THREADS = "file-provision-scheme-threads";
+    static final String FILE_PROVISION_MAX_MB_PER_SECOND = "file-provision-max-mb-per-second";
+    static final long UNKNOWN_SIZE = -1;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProvisioningScheduler.class);
+    private static final long BYTES_IN_MEGABYTE = 1024L * 1024L;
+    private static final String LOCAL_SCHEME = "file";
+
+    private static volatile ProvisioningScheduler shared;
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final Map<String, Integer> schemeLimits;
+    private final TokenBucket bandwidth;
+    private final AtomicLong sequence = new AtomicLong();
+    /**
+     * Transfers that have not started, in the order they should start in. Guarded by this, like the counts of running transfers
+     */
+    private final NavigableSet<Transfer> waiting = new TreeSet<>();
+    private final Map<String, Integer> runningByScheme = new HashMap<>();
+    private int running;
+
+    ProvisioningScheduler(int threads, Map<String, Integer> schemeThreads, long bytesPerSecond) {
+        // only given transfers that can start, see dispatch()
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("provisioning-%d").setDaemon(true).build());
+        this.threads = threads;
+        this.schemeLimits = new HashMap<>();
+        schemeThreads.forEach((scheme, limit) -> schemeLimits.put(scheme, Math.max(1, limit)));
+        this.bandwidth = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond) : null;
+    }
+
+    /**
+     * The scheduler is shared by every launch in this JVM and created by the first one, its threads stop when the JVM exits
+     *
+     * @param config  the dockstore config file
+     * @param threads number of transfers at once
+     */
+    static synchronized ProvisioningScheduler get(INIConfiguration config, int threads) {
+        if (shared == null) {
+            Map<String, Integer> schemeThreads = parseSchemeThreads(config.getString(FILE_PROVISION_SCHEME_THREADS, ""));
+            long bytesPerSecond = config.getLong(FILE_PROVISION_MAX_MB_PER_SECOND, 0L) * BYTES_IN_MEGABYTE;
+            ProvisioningScheduler scheduler = new ProvisioningScheduler(threads, schemeThreads, bytesPerSecond);
+            Runtime.getRuntime().addShutdownHook(new Thread(scheduler.executor::shutdownNow));
+            shared = scheduler;
+        }
+        return shared;
+    }
+
+    /**
+     * Wait until the bandwidth cap allows this many more bytes, does nothing without a cap
+     */
+    static void throttle(long bytes) {
+        ProvisioningScheduler scheduler = shared;
+        if (scheduler != null && scheduler.bandwidth != null) {
+            scheduler.bandwidth.acquire(bytes);
+        }
+    }
+
+    /**
+     * @param location a url or a local path
+     * @return the lower case scheme, file for local paths
+     */
+    static String schemeOf(String location) {
+        try {
+            String scheme = URI.create(location).getScheme();
+            return scheme == null ? LOCAL_SCHEME : scheme.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return LOCAL_SCHEME;
+        }
+    }
+
+    static Map<String, Integer> parseSchemeThreads(String value) {
+        Map<String, Integer> schemeThreads = new HashMap<>();
+        for (String entry : value.split(",")) {
+            String[] schemeAndLimit = entry.trim().split(":");
+            if (schemeAndLimit.length != 2) {
+                if (!entry.trim().isEmpty()) {
+                    LOG.warn("Ignoring " + entry.trim() + " in " + FILE_PROVISION_SCHEME_THREADS + ", expected scheme:threads");
+                }
+                continue;
+            }
+            try {
+                schemeThreads.put(schemeAndLimit[0].trim().toLowerCase(Locale.ROOT), Integer.parseInt(schemeAndLimit[1].trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring " + entry.trim() + " in " + FILE_PROVISION_SCHEME_THREADS + ", expected scheme:threads");
+            }
+        }
+        return schemeThreads;
+    }
+
+    /**
+     * @param description  what is being transferred, for the throughput report
+     * @param scheme       scheme of the remote end, see {@link #schemeOf(String)}
+     * @param expectedSize size used to start larger transfers first, {@link #UNKNOWN_SIZE} if not known
+     * @param transfer     does the transfer and returns what it moved
+     */
+    Future<Transferred> submit(String description, String scheme, long expectedSize, Callable<Transferred> transfer) {
+        Transfer task = new Transfer(scheme, expectedSize, sequence.getAndIncrement(), () -> run(description, transfer));
+        synchronized (this) {
+            waiting.add(task);
+        }
+        dispatch();
+        return task;
+    }
+
+    /**
+     * Start the first waiting transfers whose schemes are under their limits, while there are threads for them.
+     * A transfer held back by its scheme does not hold up those behind it.
+     */
+    private void dispatch() {
+        List<Transfer> starting = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Transfer> iterator = waiting.iterator();
+            while (running < threads && iterator.hasNext()) {
+                Transfer task = iterator.next();
+                if (task.isDone()) {
+                    // cancelled while waiting
+                    iterator.remove();
+                    continue;
+                }
+                int runningInScheme = runningByScheme.getOrDefault(task.scheme, 0);
+                if (runningInScheme >= schemeLimits.getOrDefault(task.scheme, Integer.MAX_VALUE)) {
+                    continue;
+                }
+                iterator.remove();
+                runningByScheme.put(task.scheme, runningInScheme + 1);
+                running++;
+                starting.add(task);
+            }
+        }
+        starting.forEach(executor::execute);
+    }
+
+    private void finished(Transfer task) {
+        synchronized (this) {
+            runningByScheme.merge(task.scheme, -1, Integer::sum);
+            running--;
+        }
+        dispatch();
+    }
+
+    private static Transferred run(String description, Callable<Transferred> transfer) throws Exception {
+        long start = System.nanoTime();
+        Transferred transferred = transfer.call();
+        report(description, transferred, System.nanoTime() - start);
+        return transferred;
+    }
+
+    private static void report(String description, Transferred transferred, long elapsedNanos) {
+        if (transferred == null || transferred.bytes < 0) {
+            return;
+        }
+        double seconds = Math.max(elapsedNanos, 1) / (double)TimeUnit.SECONDS.toNanos(1);
+        String rate = FileUtils.byteCountToDisplaySize((long)(transferred.bytes / seconds));
+        String checksum = transferred.checksum == null ? "" : ", " + transferred.checksum;
+        synchronized (System.out) {
+            System.out.println(String.format("Provisioned %s, %s in %.1fs (%s/s)%s", description,
+                FileUtils.byteCountToDisplaySize(transferred.bytes), seconds, rate, checksum));
+        }
+    }
+
+    /**
+     * What a transfer moved, for the throughput report
+     */
+    static final class Transferred {
+        private final long bytes;
+        private final String checksum;
+
+        /**
+         * @param bytes    number of bytes moved, {@link #UNKNOWN_SIZE} if not known
+         * @param checksum how the file was verified or its digest, null if neither is known
+         */
+        Transferred(long bytes, String checksum) {
+            this.bytes = bytes;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * Larger transfers first, unknown sizes before known ones since they are usually remote, otherwise in the order submitted
+     */
+    private final class Transfer extends FutureTask<Transferred> implements Comparable<Transfer> {
+        private final String scheme;
+        private final long expectedSize;
+        private final long sequence;
+
+        private Transfer(String scheme, long expectedSize, long sequence, Callable<Transferred> callable) {
+            super(callable);
+            this.scheme = scheme;
+            this.expectedSize = expectedSize < 0 ? Long.MAX_VALUE : expectedSize;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Transfer other) {
+            int bySize = Long.compare(other.expectedSize, expectedSize);
+            return bySize != 0 ? bySize : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(sequence);
+        }
+    }
+
+    /**
+     * Hands out bytes at a fixed rate, allowing a burst of up to a second's worth after being idle
+     */
+    static final class TokenBucket {
+        private final long bytesPerSecond;
+        private long nextFreeNanos = System.nanoTime();
+
+        TokenBucket(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        private synchronized long reserve(long bytes) {
+            long now = System.nanoTime();
+            nextFreeNanos = Math.max(nextFreeNanos, now - TimeUnit.SECONDS.toNanos(1));
+            nextFreeNanos += (long)(bytes * (double)TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+            return nextFreeNanos - now;
+        }
+
+        void acquire(long bytes) {
+            long waitNanos = reserve(bytes);
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.dockstore.provision.ProgressPrinter;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads a file over http(s) as parallel range requests, each written at its offset.
+ * Finished parts are recorded in a manifest next to the partial file, so a retry after a failure only fetches the missing parts.
+ * Servers that do not support ranges are left to a single stream, see {@link FileProvisionUtil#downloadFromVFS2(String, Path, int, int)}.
+ * <p>
+ * Parts arrive out of order, so checksums are computed over the parts in order as soon as each run of them is complete,
+ * reading them back while they are still in the page cache rather than in a second pass once the download is done.
+ *
+ * @author dyuen
+ */
+final class RangedDownloader {
+
+    static final int DEFAULT_CONNECTIONS = 4;
+    static final long DEFAULT_PART_SIZE = 64L * 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangedDownloader.class);
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes 0-0/(\\d+)");
+    private static final String PART_SUFFIX = ".part";
+    private static final String MANIFEST_SUFFIX = ".part.manifest";
+    private static final String DONE_PREFIX = "done.";
+    private static final String GOOG_HASH = "x-goog-hash";
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+    private static final int SOCKET_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private final int connections;
+    private final long partSize;
+
+    RangedDownloader(int connections, long partSize) {
+        this.connections = connections;
+        this.partSize = partSize;
+    }
+
+    /**
+     * @param url    http or https url to download from
+     * @param target where to download to
+     * @param threads number of files being downloaded at once, used for display purposes
+     * @return false if the server does not support ranges or the file is too small to split, nothing has been downloaded then
+     * @throws IOException if the download failed, it can be resumed by calling this again
+     */
+    boolean download(String url, Path target, int threads) throws IOException {
+        return download(url, target, threads, null);
+    }
+
+    /**
+     * @param checksums digests to compute, null for none. Checksums the server gives for the whole file are added to those expected
+     */
+    boolean download(String url, Path target, int threads, Checksums checksums) throws IOException {
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT_MILLIS).setSocketTimeout(SOCKET_TIMEOUT_MILLIS).build();
+        try (CloseableHttpClient client = HttpClients.custom().setDefaultRequestConfig(requestConfig).setMaxConnPerRoute(connections)
+            .setMaxConnTotal(connections).build()) {
+            Remote remote = probe(client, url);
+            if (remote == null || remote.length < 2 * partSize) {
+                return false;
+            }
+
+            Path partFile = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+            Path manifestFile = target.resolveSibling(target.getFileName() + MANIFEST_SUFFIX);
+            Set<Integer> done = readManifest(manifestFile, partFile, url, remote);
+            if (done.isEmpty()) {
+                writeManifest(manifestFile, url, remote);
+            }
+
+            int parts = (int)((remote.length + partSize - 1) / partSize);
+            InOrderDigest digest = null;
+            if (checksums != null) {
+                Checksums.Expected.fromEtag(remote.etag).ifPresent(checksums::expect);
+                Checksums.Expected.fromGoogHash(remote.googHash).forEach(checksums::expect);
+                digest = new InOrderDigest(checksums, parts, done, remote.length);
+            }
+            final InOrderDigest inOrderDigest = digest;
+            System.out.println("Downloading: " + url + " to " + target + " in " + parts + " parts, " + done.size() + " already downloaded");
+            ProgressPrinter printer = new ProgressPrinter(threads, threads > 1 ? url : "");
+            AtomicLong transferred = new AtomicLong(done.size() * partSize);
+
+            ExecutorService executorService = Executors.newFixedThreadPool(connections);
+            // a discarded attempt may have left a longer file behind
+            Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (done.isEmpty()) {
+                options.add(StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            try (FileChannel channel = FileChannel.open(partFile, options)) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < parts; i++) {
+                    if (done.contains(i)) {
+                        continue;
+                    }
+                    final int part = i;
+                    futures.add(executorService.submit(() -> {
+                        downloadPart(client, url, remote, part, channel, transferred, printer);
+                        appendToManifest(manifestFile, part);
+                        if (inOrderDigest != null) {
+                            inOrderDigest.finished(part, channel);
+                        }
+                        return null;
+                    }));
+                }
+                waitFor(futures);
+                channel.truncate(remote.length);
+                if (inOrderDigest != null) {
+                    // parts from an earlier attempt that nothing came after
+                    inOrderDigest.finished(-1, channel);
+                }
+                channel.force(true);
+            } finally {
+                executorService.shutdownNow();
+                // finalize output from the printer
+                System.out.println();
+            }
+
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(manifestFile);
+            return true;
+        }
+    }
+
+    /**
+     * Ask for the first byte, which works where a HEAD would not (such as pre-signed urls) and says whether ranges are supported
+     *
+     * @return the length and version of the file, null if ranges are not supported
+     */
+    private static Remote probe(CloseableHttpClient client, String url) throws IOException {
+        HttpGet get = new HttpGet(url);
+        get.setHeader(HttpHeaders.RANGE, "bytes=0-0");
+        try (CloseableHttpResponse response = client.execute(get)) {
+            Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT || contentRange == null) {
+                // do not read what may be the whole file
+                get.abort();
+                return null;
+            }
+            Matcher matcher = CONTENT_RANGE.matcher(contentRange.getValue());
+            if (!matcher.matches()) {
+                return null;
+            }
+            Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+            Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            String version = etag != null ? etag.getValue() : lastModified != null ? lastModified.getValue() : null;
+            // Content-MD5 would describe the range, x-goog-hash describes the whole object
+            Header googHash = response.getFirstHeader(GOOG_HASH);
+            return new Remote(Long.parseLong(matcher.group(1)), version, etag == null ? null : etag.getValue(),
+                googHash == null ? null : googHash.getValue());
+        }
+    }
+
+    private void downloadPart(CloseableHttpClient client, String url, Remote remote, int part, FileChannel channel, AtomicLong transferred,
+        ProgressPrinter printer) throws IOException {
+        long start = part * partSize;
+        long end = Math.min(start + partSize, remote.length) - 1;
+        HttpGet get = new HttpGet(url);
+        get.setHeader(HttpHeaders.RANGE, "bytes=" + start + '-' + end);
+        if (remote.version != null) {
+            // if the file changed, the server sends all of it instead of mixing versions
+            get.setHeader(HttpHeaders.IF_RANGE, remote.version);
+        }
+        try (CloseableHttpResponse response = client.execute(get)) {
+            HttpEntity entity = response.getEntity();
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT || entity == null) {
+                get.abort();
+                throw new IOException("Could not download bytes " + start + '-' + end + " of " + url + ", the server responded with "
+                    + response.getStatusLine() + " (the file may have changed)");
+            }
+            long position = start;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            try (InputStream inputStream = entity.getContent()) {
+                int read;
+                while ((read = inputStream.read(buffer.array())) != -1) {
+                    buffer.limit(read);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    buffer.clear();
+                    ProvisioningScheduler.throttle(read);
+                    long total = transferred.addAndGet(read);
+                    synchronized (System.out) {
+                        printer.handleProgress(total, remote.length);
+                    }
+                }
+            }
+            if (position != end + 1) {
+                throw new IOException("Download of bytes " + start + '-' + end + " of " + url + " ended early at " + position);
+            }
+        }
+    }
+
+    /**
+     * Wait for every part, even after one fails, so that a retry has as little left to do as possible
+     */
+    private static void waitFor(List<Future<?>> futures) throws IOException {
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Download interrupted", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the parts that were finished by an earlier attempt at the same version of the file, empty if starting over
+     */
+    private static Set<Integer> readManifest(Path manifestFile, Path partFile, String url, Remote remote) throws IOException {
+        Set<Integer> done = new HashSet<>();
+        if (!Files.exists(manifestFile) || !Files.exists(partFile)) {
+            return done;
+        }
+        Properties manifest = new Properties();
+        try (Reader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            manifest.load(reader);
+        }
+        if (!url.equals(manifest.getProperty("url")) || !String.valueOf(remote.length).equals(manifest.getProperty("length"))
+            || !Objects.equals(remote.version, manifest.getProperty("version"))) {
+            LOG.info("Discarding partial download of " + url + ", the file has changed");
+            return done;
+        }
+        for (String key : manifest.stringPropertyNames()) {
+            if (key.startsWith(DONE_PREFIX)) {
+                done.add(Integer.parseInt(key.substring(DONE_PREFIX.length())));
+            }
+        }
+        return done;
+    }
+
+    private static void writeManifest(Path manifestFile, String url, Remote remote) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("url", url);
+        manifest.setProperty("length", String.valueOf(remote.length));
+        if (remote.version != null) {
+            manifest.setProperty("version", remote.version);
+        }
+        try (Writer writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8)) {
+            manifest.store(writer, "parts of a ranged download, delete along with the .part file to start over");
+        }
+    }
+
+    private static synchronized void appendToManifest(Path manifestFile, int part) throws IOException {
+        Files.write(manifestFile, (DONE_PREFIX + part + "=true\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND,
+            StandardOpenOption.SYNC);
+    }
+
+    /**
+     * What the server said about the file
+     */
+    private static final class Remote {
+        private final long length;
+        private final String version;
+        private final String etag;
+        private final String googHash;
+
+        private Remote(long length, String version, String etag, String googHash) {
+            this.length = length;
+            this.version = version;
+            this.etag = etag;
+            this.googHash = googHash;
+        }
+    }
+
+    /**
+     * Digests parts in order as they finish
+     */
+    private final class InOrderDigest {
+        private final Checksums checksums;
+        private final boolean[] finished;
+        private final long length;
+        private int next;
+
+        private InOrderDigest(Checksums checksums, int parts, Set<Integer> done, long length) {
+            this.checksums = checksums;
+            this.finished = new boolean[parts];
+            this.length = length;
+            done.forEach(part -> finished[part] = true);
+        }
+
+        /**
+         * @param part a part that was written, -1 to only catch up
+         */
+        private synchronized void finished(int part, FileChannel channel) throws IOException {
+            if (part >= 0) {
+                finished[part] = true;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (next < finished.length && finished[next]) {
+                long position = next * partSize;
+                long end = Math.min(position + partSize, length);
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int)Math.min(BUFFER_SIZE, end - position));
+                    int read = channel.read(buffer, position);
+                    if (read == -1) {
+                        throw new IOException("Part " + next + " is shorter than expected");
+                    }
+                    checksums.update(buffer.array(), 0, read);
+                    position += read;
+                }
+                next++;
+            }
+        }
+    }
+}
@@ -26,6 +26,11 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,6 +48,7 @@ import io.dockstore.client.cli.nested.AbstractEntryClient;
 import io.dockstore.client.cli.nested.LanguageClientInterface;
 import io.dockstore.client.cli.nested.WorkflowClient;
 import io.dockstore.common.FileProvisioning;
+import io.dockstore.common.Utilities;
 import io.swagger.client.ApiException;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -61,6 +67,7 @@ import static io.dockstore.client.cli.ArgumentUtility.out;
 import static io.dockstore.client.cli.Client.API_ERROR;
 import static io.dockstore.client.cli.Client.CLIENT_ERROR;
 import static io.dockstore.client.cli.Client.ENTRY_NOT_FOUND;
+import static io.dockstore.client.cli.Client.GENERIC_ERROR;
 import static io.dockstore.client.cli.Client.SCRIPT;
 
 /**
@@ -68,6 +75,8 @@ import static io.dockstore.client.cli.Client.SCRIPT;
  */
 public class CWLClient implements LanguageClientInterface {
 
+    private static final String LAUNCH_BATCH_THREADS = "launch-batch-threads";
+
     private final AbstractEntryClient abstractEntryClient;
 
     public CWLClient(AbstractEntryClient abstractEntryClient) {
@@ -130,18 +139,14 @@ public class CWLClient implements LanguageClientInterface {
                 final JsonElement parsed = parser.parse(new InputStreamReader(new FileInputStream(jsonRun), StandardCharsets.UTF_8));
                 if (parsed.isJsonArray()) {
                     final JsonArray asJsonArray = parsed.getAsJsonArray();
+                    List<File> jobs = new ArrayList<>();
                     for (JsonElement element : asJsonArray) {
                         final String finalString = gson.toJson(element);
                         final File tempJson = File.createTempFile("parameter", ".json", Files.createTempDir());
                         FileUtils.write(tempJson, finalString, StandardCharsets.UTF_8);
-                        final LauncherCWL cwlLauncher = new LauncherCWL(abstractEntryClient.getConfigFile(), tempCWL.getAbsolutePath(),
-                            tempJson.getAbsolutePath(), null, null, originalTestParameterFilePath, uuid);
-                        if (abstractEntryClient instanceof WorkflowClient) {
-                            cwlLauncher.run(Workflow.class);
-                        } else {
-                            cwlLauncher.run(CommandLineTool.class);
-                        }
+                        jobs.add(tempJson);
                     }
+                    launchBatch(tempCWL, jobs, originalTestParameterFilePath, uuid);
                 } else {
                     final LauncherCWL cwlLauncher = new LauncherCWL(abstractEntryClient.getConfigFile(), tempCWL.getAbsolutePath(), jsonRun,
                         null, null, originalTestParameterFilePath, uuid);
@@ -161,6 +166,7 @@ public class CWLClient implements LanguageClientInterface {
                     // ignore row with type information
                     iterator.next();
                     // process rows
+                    List<File> jobs = new ArrayList<>();
                     while (iterator.hasNext()) {
                         final CSVRecord csvRecord = iterator.next();
                         final File tempJson = File.createTempFile("temp", ".json", Files.createTempDir());
@@ -187,14 +193,9 @@ public class CWLClient implements LanguageClientInterface {
 
                         // final String stringMapAsString = gson.toJson(stringMap);
                         // Files.write(stringMapAsString, tempJson, StandardCharsets.UTF_8);
-                        final LauncherCWL cwlLauncher = new LauncherCWL(abstractEntryClient.getConfigFile(), tempCWL.getAbsolutePath(),
-                            tempJson.getAbsolutePath(), null, null, originalTestParameterFilePath, uuid);
-                        if (abstractEntryClient instanceof WorkflowClient) {
-                            cwlLauncher.run(Workflow.class);
-                        } else {
-                            cwlLauncher.run(CommandLineTool.class);
-                        }
+                        jobs.add(tempJson);
                     }
+                    launchBatch(tempCWL, jobs, originalTestParameterFilePath, uuid);
                 }
             } else {
                 errorMessage("Missing required parameters, one of  --json or --tsv is required", CLIENT_ERROR);
@@ -207,6 +208,72 @@ public class CWLClient implements LanguageClientInterface {
         return 0;
     }
 
+    /**
+     * Launch several runs of one descriptor, such as the rows of a tsv.
+     * The descriptor is parsed once and the runs share their file provisioning, so an input that several runs use is
+     * downloaded once and put in place for the others from that copy. Each run has a working directory of its own.
+     * When runs go at the same time, each line their cwl-runner prints starts with the number of the run, the output of each run
+     * is also saved to its working directory.
+     *
+     * @param tempCWL                       the descriptor
+     * @param jobs                          a parameter file for each run
+     * @param originalTestParameterFilePath
+     * @param uuid                          uuid that was optional specified for notifications
+     */
+    private void launchBatch(File tempCWL, List<File> jobs, String originalTestParameterFilePath, String uuid) {
+        final String configFile = abstractEntryClient.getConfigFile();
+        final int threads = Math.max(1, Utilities.parseConfig(configFile).getInt(LAUNCH_BATCH_THREADS, 1));
+        final Class cwlClassTarget = abstractEntryClient instanceof WorkflowClient ? Workflow.class : CommandLineTool.class;
+        final FileProvisioning fileProvisioning = new FileProvisioning(configFile);
+        final String descriptor = new LauncherCWL(configFile, tempCWL.getAbsolutePath(), null, originalTestParameterFilePath, uuid,
+            new LaunchOptions(null, null, fileProvisioning)).parseDescriptor();
+
+        final int runsAtOnce = Math.min(threads, Math.max(1, jobs.size()));
+        final ExecutorService executor = Executors.newFixedThreadPool(runsAtOnce);
+        final List<Future<String>> runs = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            final File job = jobs.get(i);
+            final String prefix = runsAtOnce > 1 ? "[run " + (i + 1) + "] " : null;
+            runs.add(executor.submit(() -> {
+                final long start = System.nanoTime();
+                try (LaunchOptions options = LaunchOptions.forBatchRun(fileProvisioning, prefix)) {
+                    new LauncherCWL(configFile, tempCWL.getAbsolutePath(), job.getAbsolutePath(), originalTestParameterFilePath, uuid, options)
+                        .run(cwlClassTarget, descriptor);
+                    return "succeeded in " + seconds(start);
+                } catch (RuntimeException e) {
+                    return "failed in " + seconds(start) + ": " + e.getMessage();
+                }
+            }));
+        }
+        executor.shutdown();
+
+        out("");
+        out("Runs:");
+        int failed = 0;
+        for (int i = 0; i < runs.size(); i++) {
+            String status;
+            try {
+                status = runs.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                status = "failed: interrupted";
+            } catch (ExecutionException e) {
+                status = "failed: " + e.getCause().getMessage();
+            }
+            if (status.startsWith("failed")) {
+                failed++;
+            }
+            out("run " + (i + 1) + " (" + jobs.get(i).getAbsolutePath() + "): " + status);
+        }
+        if (failed > 0) {
+            errorMessage(failed + " of " + runs.size() + " runs failed", GENERIC_ERROR);
+        }
+    }
+
+    private static String seconds(long start) {
+        return String.format("%.1fs", (System.nanoTime() - start) / (double)TimeUnit.SECONDS.toNanos(1));
+    }
+
     /**
      * this function will check if the content of the file is CWL or not
      * it will get the content of the file and try to find/match the required fields
@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2017 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.collaboratory.cwl;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import io.dockstore.common.FileProvisioning;
+import io.dockstore.common.LinePrefixingOutputStream;
+
+/**
+ * Where a launch prints and how it provisions its files.
+ * The runs of a batch share one file provisioning, and when they go at the same time each run starts the lines it prints with a prefix.
+ *
+ * @author dyuen
+ */
+public final class LaunchOptions implements AutoCloseable {
+
+    private final OutputStream stdoutStream;
+    private final OutputStream stderrStream;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final FileProvisioning fileProvisioning;
+    private final boolean prefixed;
+
+    /**
+     * @param stdoutStream     pass a stream in order to capture stdout from the run tool, null to print it
+     * @param stderrStream     pass a stream in order to capture stderr from the run tool, null to print it
+     * @param fileProvisioning provisions the files of the launch
+     */
+    public LaunchOptions(OutputStream stdoutStream, OutputStream stderrStream, FileProvisioning fileProvisioning) {
+        this.stdoutStream = stdoutStream;
+        this.stderrStream = stderrStream;
+        this.out = System.out;
+        this.err = System.err;
+        this.fileProvisioning = fileProvisioning;
+        this.prefixed = false;
+    }
+
+    private LaunchOptions(FileProvisioning fileProvisioning, String prefix) {
+        this.out = new PrintStream(new LinePrefixingOutputStream(System.out, prefix), true);
+        this.err = new PrintStream(new LinePrefixingOutputStream(System.err, prefix), true);
+        this.stdoutStream = out;
+        this.stderrStream = err;
+        this.fileProvisioning = fileProvisioning;
+        this.prefixed = true;
+    }
+
+    /**
+     * @param fileProvisioning shared by the runs of the batch
+     * @param prefix           starts each line the run prints, null when runs go one at a time
+     */
+    public static LaunchOptions forBatchRun(FileProvisioning fileProvisioning, String prefix) {
+        return prefix == null ? new LaunchOptions(null, null, fileProvisioning) : new LaunchOptions(fileProvisioning, prefix);
+    }
+
+    public OutputStream getStdoutStream() {
+        return stdoutStream;
+    }
+
+    public OutputStream getStderrStream() {
+        return stderrStream;
+    }
+
+    /**
+     * @return where the launcher prints what it is doing
+     */
+    public PrintStream getOut() {
+        return out;
+    }
+
+    /**
+     * @return where the launcher prints warnings
+     */
+    public PrintStream getErr() {
+        return err;
+    }
+
+    public FileProvisioning getFileProvisioning() {
+        return fileProvisioning;
+    }
+
+    /**
+     * Prints the rest of a line left without a line break, the console itself stays open
+     */
+    @Override
+    public void close() {
+        if (prefixed) {
+            out.close();
+            err.close();
+        }
+    }
+}
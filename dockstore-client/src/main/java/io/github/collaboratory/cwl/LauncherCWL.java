@@ -21,6 +21,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
@@ -90,6 +91,8 @@ public class LauncherCWL {
     private final String notificationsUUID;
     private final OutputStream stdoutStream;
     private final OutputStream stderrStream;
+    private final PrintStream out;
+    private final PrintStream err;
     private final Yaml yaml = new Yaml(new SafeConstructor());
     private final Gson gson;
     private final FileProvisioning fileProvisioning;
@@ -114,6 +117,8 @@ public class LauncherCWL {
         originalTestParameterFilePath = "";
         this.stdoutStream = null;
         this.stderrStream = null;
+        this.out = System.out;
+        this.err = System.err;
         gson = CWL.getTypeSafeCWLToolDocument();
         fileProvisioning = new FileProvisioning(configFilePath);
     }
@@ -130,14 +135,28 @@ public class LauncherCWL {
      */
     public LauncherCWL(String configFilePath, String imageDescriptorPath, String runtimeDescriptorPath, OutputStream stdoutStream,
             OutputStream stderrStream, String originalTestParameterFilePath, String uuid) {
+        this(configFilePath, imageDescriptorPath, runtimeDescriptorPath, originalTestParameterFilePath, uuid,
+                new LaunchOptions(stdoutStream, stderrStream, new FileProvisioning(configFilePath)));
+    }
+
+    /**
+     * Constructor for launches that share their file provisioning and console, such as the runs of a batch
+     *
+     * @param options where this launch prints and how it provisions its files, inputs already provisioned for another launch
+     *                that shares the file provisioning are not fetched again
+     */
+    public LauncherCWL(String configFilePath, String imageDescriptorPath, String runtimeDescriptorPath, String originalTestParameterFilePath,
+            String uuid, LaunchOptions options) {
         this.configFilePath = configFilePath;
         this.imageDescriptorPath = imageDescriptorPath;
         this.runtimeDescriptorPath = runtimeDescriptorPath;
         this.notificationsUUID = uuid;
         this.originalTestParameterFilePath = originalTestParameterFilePath;
-        fileProvisioning = new FileProvisioning(configFilePath);
-        this.stdoutStream = stdoutStream;
-        this.stderrStream = stderrStream;
+        this.fileProvisioning = options.getFileProvisioning();
+        this.stdoutStream = options.getStdoutStream();
+        this.stderrStream = options.getStderrStream();
+        this.out = options.getOut();
+        this.err = options.getErr();
         gson = CWL.getTypeSafeCWLToolDocument();
     }
 
@@ -150,21 +169,47 @@ public class LauncherCWL {
      */
     public static void outputIntegrationOutput(String workingDir, ImmutablePair<String, String> execute, String stdout, String stderr,
             String cwltool) {
-        System.out.println(cwltool + " stdout:\n" + stdout);
-        System.out.println(cwltool + " stderr:\n" + stderr);
+        outputIntegrationOutput(System.out, workingDir, execute, stdout, stderr, cwltool);
+    }
+
+    private static void outputIntegrationOutput(PrintStream out, String workingDir, ImmutablePair<String, String> execute, String stdout,
+            String stderr, String cwltool) {
+        out.println(cwltool + " stdout:\n" + stdout);
+        out.println(cwltool + " stderr:\n" + stderr);
         try {
             final Path path = Paths.get(workingDir + File.separator + cwltool + ".stdout.txt");
             FileUtils.writeStringToFile(path.toFile(), execute.getLeft(), StandardCharsets.UTF_8, false);
-            System.out.println("Saving copy of " + cwltool + " stdout to: " + path.toAbsolutePath().toString());
+            out.println("Saving copy of " + cwltool + " stdout to: " + path.toAbsolutePath().toString());
             final Path txt2 = Paths.get(workingDir + File.separator + cwltool + ".stderr.txt");
             FileUtils.writeStringToFile(txt2.toFile(), execute.getRight(), StandardCharsets.UTF_8, false);
-            System.out.println("Saving copy of " + cwltool + " stderr to: " + txt2.toAbsolutePath().toString());
+            out.println("Saving copy of " + cwltool + " stderr to: " + txt2.toAbsolutePath().toString());
         } catch (IOException e) {
             throw new RuntimeException("unable to save " + cwltool + " output", e);
         }
     }
 
+    /**
+     * Parse the CWL tool definition without validation, the result can be shared by launches of the same descriptor
+     *
+     * @return the descriptor as json, see {@link #run(Class, String)}
+     */
+    public String parseDescriptor() {
+        config = Utilities.parseConfig(configFilePath);
+        CWLRunnerFactory.setConfig(config);
+        String cwlRunner = CWLRunnerFactory.getCWLRunner();
+        CWL cwlUtil = new CWL(cwlRunner.equalsIgnoreCase(CWLRunnerFactory.CWLRunner.BUNNY.toString()), config);
+        return cwlUtil.parseCWL(imageDescriptorPath).getLeft();
+    }
+
     public void run(Class cwlClassTarget) {
+        run(cwlClassTarget, null);
+    }
+
+    /**
+     * @param cwlClassTarget         Workflow or CommandLineTool
+     * @param imageDescriptorContent the descriptor from {@link #parseDescriptor()}, null to parse it
+     */
+    public void run(Class cwlClassTarget, String imageDescriptorContent) {
         // now read in the INI file
         config = Utilities.parseConfig(configFilePath);
 
@@ -174,27 +219,26 @@ public class LauncherCWL {
         NotificationsClient notificationsClient = new NotificationsClient(notificationsWebHookURL, notificationsUUID);
         String cwlRunner = CWLRunnerFactory.getCWLRunner();
         CWL cwlUtil = new CWL(cwlRunner.equalsIgnoreCase(CWLRunnerFactory.CWLRunner.BUNNY.toString()), config);
-        final String imageDescriptorContent = cwlUtil.parseCWL(imageDescriptorPath).getLeft();
+        if (imageDescriptorContent == null) {
+            imageDescriptorContent = cwlUtil.parseCWL(imageDescriptorPath).getLeft();
+        }
         Object cwlObject;
         try {
             cwlObject = gson.fromJson(imageDescriptorContent, cwlClassTarget);
 
         } catch (JsonParseException ex) {
-            LOG.error("The JSON file provided is invalid.");
-            return;
+            throw new JsonParseException("The JSON file provided is invalid.", ex);
         }
 
         if (cwlObject == null) {
-            LOG.info("CWL Workflow was null");
-            return;
+            throw new RuntimeException("CWL Workflow was null");
         }
 
         // this is the job parameterization, just a JSON, defines the inputs/outputs in terms or real URLs that are provisioned by the launcher
         Map<String, Object> inputsAndOutputsJson = loadJob(runtimeDescriptorPath);
 
         if (inputsAndOutputsJson == null) {
-            LOG.info("Cannot load job object.");
-            return;
+            throw new RuntimeException("Cannot load job object.");
         }
 
         // setup directories
@@ -205,7 +249,7 @@ public class LauncherCWL {
         notificationsClient.sendMessage(NotificationsClient.PROVISION_INPUT, true);
         Map<String, Object> outputObj;
         String newJsonPath;
-        System.out.println("Provisioning your input files to your local machine");
+        out.println("Provisioning your input files to your local machine");
         try {
             if (cwlObject instanceof Workflow) {
                 Workflow workflow = (Workflow)cwlObject;
@@ -239,10 +283,10 @@ public class LauncherCWL {
         }
         notificationsClient.sendMessage(NotificationsClient.RUN, true);
         try {
-            System.out.println("Calling out to a cwl-runner to run your " + (cwlObject instanceof Workflow ? "workflow" : "tool"));
+            out.println("Calling out to a cwl-runner to run your " + (cwlObject instanceof Workflow ? "workflow" : "tool"));
             outputObj = runCWLCommand(imageDescriptorPath, newJsonPath, globalWorkingDir + "/outputs/",
                     globalWorkingDir + "/working/", globalWorkingDir + "/tmp/", stdoutStream, stderrStream);
-            System.out.println();
+            out.println();
         } catch (Exception e) {
             notificationsClient.sendMessage(NotificationsClient.RUN, false);
             throw e;
@@ -251,7 +295,7 @@ public class LauncherCWL {
         // push output files
         try {
             if (outputMap.size() > 0) {
-                System.out.println("Provisioning your output files to their final destinations");
+                out.println("Provisioning your output files to their final destinations");
                 List<ImmutablePair<String, FileProvisioning.FileInfo>> outputList = registerOutputFiles(outputMap, outputObj);
                 this.fileProvisioning.uploadFiles(outputList);
             }
@@ -333,11 +377,11 @@ public class LauncherCWL {
                     }
                 }
             } else {
-                System.out.println("WARNING: Output malformed for \"" + cwlID + "\" provisioning by default to working directory");
+                out.println("WARNING: Output malformed for \"" + cwlID + "\" provisioning by default to working directory");
                 handleOutputFileToWorkingDirectory(fileMap, cwlID);
             }
         } else {
-            System.out.println("WARNING: Output location not found for \"" + cwlID + "\" provisioning by default to working directory");
+            out.println("WARNING: Output location not found for \"" + cwlID + "\" provisioning by default to working directory");
             handleOutputFileToWorkingDirectory(fileMap, cwlID);
         }
     }
@@ -409,7 +453,7 @@ public class LauncherCWL {
                     final String localPath = fileMap.get(paramName + ":" + currentFileMap.get("path")).getLocalPath();
                     currentFileMap.put("path", localPath);
                 } else {
-                    System.err.println("WARNING: We did not understand secondary files for \"" + paramName + "\" , skipping");
+                    err.println("WARNING: We did not understand secondary files for \"" + paramName + "\" , skipping");
                 }
             }
             param.put("secondaryFiles", data);
@@ -576,7 +620,7 @@ public class LauncherCWL {
         UUID uuid = UUID.randomUUID();
         // setup directories
         globalWorkingDir = workingDir + "/launcher-" + uuid;
-        System.out.println("Creating directories for run of Dockstore launcher at: " + globalWorkingDir);
+        out.println("Creating directories for run of Dockstore launcher at: " + globalWorkingDir);
 
         Path globalWorkingPath = Paths.get(globalWorkingDir);
 
@@ -588,7 +632,7 @@ public class LauncherCWL {
                     Utilities.executeCommand("setfacl -d -m o::rwx " + workingDir);
                 }
             } catch (Exception e) {
-                System.err.println("WARNING: Unable to set default permissions on working dir, may "
+                err.println("WARNING: Unable to set default permissions on working dir, may "
                         + "result in problems with Docker containers that change users : setfacl -d -m o::rwx " + workingDir);
             }
             Files.createDirectories(globalWorkingPath);
@@ -608,8 +652,8 @@ public class LauncherCWL {
         List<String> extraFlags = (List)config.getList("cwltool-extra-parameters");
 
         if (extraFlags.size() > 0) {
-            System.out.println("########### WARNING ###########");
-            System.out.println("You are using extra flags for your cwl runner which may not be supported. Use at your own risk.");
+            out.println("########### WARNING ###########");
+            out.println("You are using extra flags for your cwl runner which may not be supported. Use at your own risk.");
         }
 
         // Trim the input
@@ -622,7 +666,7 @@ public class LauncherCWL {
         command.addAll(1, extraFlags);
 
         final String joined = Joiner.on(" ").join(command);
-        System.out.println("Executing: " + joined);
+        out.println("Executing: " + joined);
         final ImmutablePair<String, String> execute = Utilities
                 .executeCommand(joined, MoreObjects.firstNonNull(localStdoutStream, System.out),
                         MoreObjects.firstNonNull(localStderrStream, System.err));
@@ -631,7 +675,7 @@ public class LauncherCWL {
         String stdout = execute.getLeft().replaceAll("(?m)^", "\t");
         String stderr = execute.getRight().replaceAll("(?m)^", "\t");
 
-        outputIntegrationOutput(outputDir, execute, stdout, stderr, FilenameUtils.getName(command.get(0)));
+        outputIntegrationOutput(out, outputDir, execute, stdout, stderr, FilenameUtils.getName(command.get(0)));
         Map<String, Object> obj = (Map<String, Object>)yaml.load(execute.getLeft());
         return obj;
     }
@@ -692,7 +736,7 @@ public class LauncherCWL {
         } else {
             // output a warning if there is some other odd output structure we don't understand
             LOG.error("We don't understand provision out structure for: " + key + " ,skipping");
-            System.out.println("Ignoring odd provision out structure for: " + key + " ,skipping");
+            out.println("Ignoring odd provision out structure for: " + key + " ,skipping");
         }
         return outputSet;
     }
@@ -710,7 +754,7 @@ public class LauncherCWL {
         List<ImmutablePair<String, FileProvisioning.FileInfo>> outputSet = new ArrayList<>();
 
         if (fileMapDataStructure == null) {
-            System.out.println("Skipping: #" + key + " was null from cwl-runner");
+            out.println("Skipping: #" + key + " was null from cwl-runner");
             return outputSet;
         }
 
@@ -720,7 +764,7 @@ public class LauncherCWL {
             cwlOutputPath = (String)fileMapDataStructure.get("location");
         }
         if (cwlOutputPath == null) {
-            System.out.println("Skipping: #" + key + " was null from cwl-runner");
+            out.println("Skipping: #" + key + " was null from cwl-runner");
             return outputSet;
         }
         Path path = Paths.get(cwlOutputPath);
@@ -731,7 +775,7 @@ public class LauncherCWL {
         }
 
         LOG.info("NAME: {} URL: {} FILENAME: {} CWL OUTPUT PATH: {}", file.getLocalPath(), file.getUrl(), key, cwlOutputPath);
-        System.out.println("Registering: #" + key + " to provision from " + cwlOutputPath + " to : " + file.getUrl());
+        out.println("Registering: #" + key + " to provision from " + cwlOutputPath + " to : " + file.getUrl());
         outputSet.add(ImmutablePair.of(cwlOutputPath, file));
 
         if (fileMapDataStructure.containsKey("secondaryFiles")) {
@@ -807,7 +851,7 @@ public class LauncherCWL {
                 List<String> secondaryFiles = getSecondaryFileStrings(file);
                 pairs.addAll(pullFilesHelper(inputsOutputs, fileMap, cwlInputFileID, secondaryFiles));
             }
-            fileProvisioning.provisionInputFiles(this.originalTestParameterFilePath, pairs);
+            fileProvisioning.provisionInputFiles(this.originalTestParameterFilePath, pairs, getChecksums(inputsOutputs, new HashMap<>()));
         } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
             LOG.error("Reflection issue, this is likely a coding problem.");
             throw new RuntimeException();
@@ -815,6 +859,30 @@ public class LauncherCWL {
         return fileMap;
     }
 
+    /**
+     * @param value     the json parameter file or a part of it
+     * @param checksums where to add the checksums of files, by path or location
+     * @return the checksums of files that have a checksum field, such as {@code sha1$2fd4e1c67a2d28fced849ee1bb76e7391b93eb12}
+     */
+    private Map<String, String> getChecksums(Object value, Map<String, String> checksums) {
+        if (value instanceof Map) {
+            Map map = (Map)value;
+            Object checksum = map.get("checksum");
+            if (checksum instanceof String && (map.get("path") instanceof String || map.get("location") instanceof String)) {
+                checksums.put(getPathOrLocation(map), (String)checksum);
+            }
+            // secondary files and directory listings have their own
+            for (Object nested : map.values()) {
+                getChecksums(nested, checksums);
+            }
+        } else if (value instanceof List) {
+            for (Object nested : (List)value) {
+                getChecksums(nested, checksums);
+            }
+        }
+        return checksums;
+    }
+
     /**
      * @param file either an input or output parameter for both workflows and tools
      * @return A list of secondary files
@@ -929,7 +997,7 @@ public class LauncherCWL {
 
         // set up output paths
         String downloadDirectory = globalWorkingDir + "/inputs/" + UUID.randomUUID();
-        System.out
+        out
                 .println("Preparing download location for: #" + cwlInputFileID + " from " + path + " into directory: " + downloadDirectory);
         Utilities.executeCommand("mkdir -p " + downloadDirectory);
         File downloadDirFileObj = new File(downloadDirectory);
@@ -994,7 +1062,7 @@ public class LauncherCWL {
 
     private String trimAndPrintInput(String input) {
         input = input.trim();
-        System.out.println(input);
+        out.println(input);
         return input;
     }
 }
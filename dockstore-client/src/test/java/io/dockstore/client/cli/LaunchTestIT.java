@@ -157,6 +157,58 @@ public class LaunchTestIT {
         runToolThreaded(cwlFile, args, api, usersApi, client);
     }
 
+    @Test
+    public void runToolBatch() {
+        File cwlFile = new File(ResourceHelpers.resourceFilePath("1st-tool.cwl"));
+        File cwlJSON = new File(ResourceHelpers.resourceFilePath("echo-batch-job.json"));
+
+        ArrayList<String> args = new ArrayList<String>() {{
+            add("--local-entry");
+            add("--json");
+            add(cwlJSON.getAbsolutePath());
+        }};
+
+        ContainersApi api = mock(ContainersApi.class);
+        UsersApi usersApi = mock(UsersApi.class);
+        Client client = new Client();
+        client.setConfigFile(ResourceHelpers.resourceFilePath("config.withBatchThreads"));
+        runToolShared(cwlFile, args, api, usersApi, client);
+
+        // runs at the same time say which run each line of their output is from
+        String output = systemOutRule.getLog() + systemErrRule.getLog();
+        assertTrue("output should be prefixed by run", output.contains("[run 1] ") && output.contains("[run 2] "));
+        assertTrue("output should include the outcome of each run",
+            systemOutRule.getLog().matches("(?s).*run 1 \\(.*\\): succeeded.*run 2 \\(.*\\): succeeded.*"));
+    }
+
+    @Test
+    public void runToolBatchWithAFailedRun() {
+        File cwlFile = new File(ResourceHelpers.resourceFilePath("1st-tool.cwl"));
+        File cwlJSON = new File(ResourceHelpers.resourceFilePath("echo-batch-job-failing.json"));
+
+        ArrayList<String> args = new ArrayList<String>() {{
+            add("--local-entry");
+            add("--json");
+            add(cwlJSON.getAbsolutePath());
+        }};
+
+        ContainersApi api = mock(ContainersApi.class);
+        UsersApi usersApi = mock(UsersApi.class);
+        Client client = new Client();
+        client.setConfigFile(ResourceHelpers.resourceFilePath("config.withBatchThreads"));
+
+        // the other run goes on, the summary says which run failed and the launch exits with an error
+        exit.expectSystemExitWithStatus(Client.GENERIC_ERROR);
+        exit.checkAssertionAfterwards(() -> {
+            String output = systemOutRule.getLog();
+            assertTrue("output should include the successful run", output.contains("Final process status is success"));
+            assertTrue("output should say which run failed", output.matches("(?s).*run 1 \\(.*\\): succeeded.*run 2 \\(.*\\): failed.*"));
+            assertTrue("output should count the failed runs", systemErrRule.getLog().contains("1 of 2 runs failed"));
+        });
+        ToolClient toolClient = new ToolClient(api, null, usersApi, client, false);
+        toolClient.checkEntryFile(cwlFile.getAbsolutePath(), args, null);
+    }
+
     @Test
     public void runToolWithSecondaryFilesOnOutput() throws IOException {
 
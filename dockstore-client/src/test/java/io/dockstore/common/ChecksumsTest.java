@@ -0,0 +1,121 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author dyuen
+ */
+public class ChecksumsTest {
+
+    /**
+     * the check value of CRC-32C, the checksum of the digits 1 to 9
+     */
+    private static final byte[] CHECK_INPUT = "123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final String CHECK_CRC32C = "e3069283";
+    private static final String CHECK_MD5 = "25f9e794323b453885f5181f1b624d0b";
+
+    @Test
+    public void parseTheCwlChecksumField() {
+        Checksums.Expected sha1 = Checksums.Expected.parse("SHA1$2FD4E1C67A2D28FCED849EE1BB76E7391B93EB12", "test").get();
+        assertEquals(Checksums.SHA1, sha1.getAlgorithm());
+        assertEquals("2fd4e1c67a2d28fced849ee1bb76e7391b93eb12", sha1.getHex());
+        assertTrue(sha1.isReliable());
+        assertEquals("sha1$2fd4e1c67a2d28fced849ee1bb76e7391b93eb12", sha1.toString());
+
+        for (String invalid : Arrays.asList(null, "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12", "$2fd4e1c67a2d28fc", "sha1$not-hex!", "md5$abc",
+            "sha-1$2fd4e1c67a2d28fc")) {
+            assertFalse(invalid, Checksums.Expected.parse(invalid, "test").isPresent());
+        }
+    }
+
+    @Test
+    public void contentMd5IsBase64() {
+        Checksums.Expected md5 = Checksums.Expected.fromContentMd5("JfnnlDI7RTiF9RgfG2JNCw==").get();
+        assertEquals(Checksums.MD5, md5.getAlgorithm());
+        assertEquals(CHECK_MD5, md5.getHex());
+        assertTrue(md5.isReliable());
+
+        assertFalse(Checksums.Expected.fromContentMd5(null).isPresent());
+        assertFalse(Checksums.Expected.fromContentMd5("not base64!").isPresent());
+    }
+
+    @Test
+    public void googHashHasCrc32cAndMd5() {
+        List<Checksums.Expected> checksums = Checksums.Expected.fromGoogHash("crc32c=n03x6A==, md5=Ojk9c3dhfxgoKVVHYwFbHQ==,sha512=AAAA,md5=!!");
+        assertEquals(2, checksums.size());
+        assertEquals("crc32c$9f4df1e8", checksums.get(0).toString());
+        assertEquals("md5$3a393d7377617f182829554763015b1d", checksums.get(1).toString());
+        assertTrue(checksums.get(0).isReliable());
+
+        assertTrue(Checksums.Expected.fromGoogHash(null).isEmpty());
+    }
+
+    @Test
+    public void onlyAStrongMd5LikeEtagIsUsed() {
+        Checksums.Expected etag = Checksums.Expected.fromEtag('"' + CHECK_MD5 + '"').get();
+        assertEquals(Checksums.MD5, etag.getAlgorithm());
+        assertEquals(CHECK_MD5, etag.getHex());
+        assertFalse("an ETag is not always an MD5 of the content", etag.isReliable());
+
+        // the ETag of a multipart S3 upload is an MD5 of the MD5s of its parts, followed by the number of parts
+        assertEquals(Optional.empty(), Checksums.Expected.fromEtag('"' + CHECK_MD5 + "-2\""));
+        assertEquals(Optional.empty(), Checksums.Expected.fromEtag("W/\"" + CHECK_MD5 + '"'));
+        assertEquals(Optional.empty(), Checksums.Expected.fromEtag(null));
+    }
+
+    @Test
+    public void crc32cIsEncodedLikeGoogHash() throws IOException {
+        Checksums checksums = new Checksums(Collections.singleton(Checksums.MD5),
+            Checksums.Expected.fromGoogHash("crc32c=4waSgw=="));
+        checksums.update(CHECK_INPUT, 0, CHECK_INPUT.length);
+        assertEquals(CHECK_CRC32C, checksums.values().get(Checksums.CRC32C));
+        assertEquals(CHECK_MD5, checksums.values().get(Checksums.MD5));
+        checksums.verify("test");
+        assertEquals("crc32c verified against x-goog-hash", checksums.describe());
+    }
+
+    @Test
+    public void aMismatchFailsUnlessItIsAgainstAnEtag() throws IOException {
+        Checksums.Expected wrong = Checksums.Expected.parse("md5$" + CHECK_MD5.replace('2', '3'), "test").get();
+        Checksums checksums = new Checksums(Collections.emptySet(), Collections.singletonList(wrong));
+        checksums.update(CHECK_INPUT, 0, CHECK_INPUT.length);
+        try {
+            checksums.verify("test");
+            fail("a mismatch should fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Checksums againstEtag = new Checksums(Collections.emptySet(),
+            Collections.singletonList(Checksums.Expected.fromEtag('"' + CHECK_MD5.replace('2', '3') + '"').get()));
+        againstEtag.update(CHECK_INPUT, 0, CHECK_INPUT.length);
+        againstEtag.verify("test");
+    }
+}
@@ -16,12 +16,18 @@
 package io.dockstore.common;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
 
 import org.apache.commons.configuration2.INIConfiguration;
 import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static io.dockstore.common.FileProvisionUtil.PLUGINS_JSON_FILENAME;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -29,6 +35,9 @@ import static org.junit.Assert.assertTrue;
  * @since 14/03/17
  */
 public class FileProvisionUtilTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void downloadPlugins() throws Exception {
         File iniFile = FileUtils.getFile("src", "test", "resources", "launcher.cwltool.ini");
@@ -45,4 +54,18 @@ public class FileProvisionUtilTest {
         assertTrue(f.exists() && !f.isDirectory());
         f.delete();
     }
+
+    @Test
+    public void pluginCacheOnlyWritableByItsOwner() throws Exception {
+        assertTrue(FileProvisionUtil.isSafePluginCache(pluginCache("rwxr-xr-x")));
+        assertFalse(FileProvisionUtil.isSafePluginCache(pluginCache("rwxrwxr-x")));
+        assertFalse(FileProvisionUtil.isSafePluginCache(pluginCache("rwxrwxrwx")));
+        assertFalse(FileProvisionUtil.isSafePluginCache(temporaryFolder.getRoot().toPath().resolve("missing")));
+    }
+
+    private Path pluginCache(String permissions) throws Exception {
+        Path pluginCache = temporaryFolder.newFolder().toPath();
+        Files.setPosixFilePermissions(pluginCache, PosixFilePermissions.fromString(permissions));
+        return pluginCache;
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author dyuen
+ */
+public class FileProvisioningCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sameContentFromTwoUrlsIsStoredOnce() throws IOException {
+        FileProvisioningCache cache = new FileProvisioningCache(temporaryFolder.newFolder("cache").toPath(), 0);
+        cache.store(cache.lookup("s3://mirror-a/reference.fa"), download("reference.fa", "ACGT"));
+        cache.store(cache.lookup("s3://mirror-b/reference.fa"), download("reference-copy.fa", "ACGT"));
+
+        assertEquals(1, cache.stats().getFiles());
+        assertEquals(2, cache.stats().getUrls());
+        assertTrue(cache.lookup("s3://mirror-b/reference.fa").getCachedFile().isPresent());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws IOException {
+        FileProvisioningCache cache = new FileProvisioningCache(temporaryFolder.newFolder("cache").toPath(), 0);
+        cache.store(cache.lookup("s3://bucket/old.bam"), download("old.bam", "old content"));
+        cache.store(cache.lookup("s3://bucket/new.bam"), download("new.bam", "new content"));
+        // make the first one the least recently used
+        Path mappings = cache.getRoot().resolve("urls");
+        Files.walk(mappings).filter(Files::isRegularFile).forEach(file -> {
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(cache.lookup("s3://bucket/new.bam").getCachedFile().isPresent());
+
+        FileProvisioningCache bounded = new FileProvisioningCache(cache.getRoot(), "new content".length());
+        assertEquals(1, bounded.evict());
+        assertFalse(bounded.lookup("s3://bucket/old.bam").getCachedFile().isPresent());
+        assertTrue(bounded.lookup("s3://bucket/new.bam").getCachedFile().isPresent());
+    }
+
+    @Test
+    public void lockedUrlsAreNotEvicted() throws IOException {
+        FileProvisioningCache cache = new FileProvisioningCache(temporaryFolder.newFolder("cache").toPath(), 1);
+        try (FileProvisioningCache.KeyLock ignored = cache.lock("s3://bucket/in-use.bam")) {
+            cache.store(cache.lookup("s3://bucket/in-use.bam"), download("in-use.bam", "in use"));
+            assertTrue(cache.lookup("s3://bucket/in-use.bam").getCachedFile().isPresent());
+        }
+        assertEquals(1, cache.evict());
+        assertFalse(cache.lookup("s3://bucket/in-use.bam").getCachedFile().isPresent());
+    }
+
+    @Test
+    public void contentIsFoundByChecksum() throws IOException {
+        FileProvisioningCache cache = new FileProvisioningCache(temporaryFolder.newFolder("cache").toPath(), 0);
+        Path downloaded = download("reads.fastq", "@read1");
+        Checksums checksums = new Checksums(Arrays.asList(Checksums.MD5, Checksums.SHA256), Collections.emptyList());
+        checksums.update(downloaded);
+        cache.store(cache.lookup("s3://mirror-a/reads.fastq"), downloaded, checksums.values());
+
+        Checksums.Expected md5 = Checksums.Expected.parse("md5$" + DigestUtils.md5Hex("@read1"), "test").get();
+        assertTrue(cache.lookup("s3://mirror-b/reads.fastq", Collections.singletonList(md5)).getCachedFile().isPresent());
+        // now known under its new url as well
+        assertTrue(cache.lookup("s3://mirror-b/reads.fastq").getCachedFile().isPresent());
+
+        Checksums.Expected other = Checksums.Expected.parse("md5$" + DigestUtils.md5Hex("@read2"), "test").get();
+        assertFalse(cache.lookup("s3://mirror-a/reads.fastq", Collections.singletonList(other)).getCachedFile().isPresent());
+    }
+
+    @Test
+    public void aLockedUrlDoesNotHoldUpOthers() throws Exception {
+        FileProvisioningCache cache = new FileProvisioningCache(temporaryFolder.newFolder("cache").toPath(), 0);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        FileProvisioningCache.KeyLock downloading = cache.lock("s3://bucket/downloading.bam");
+        try {
+            // enough urls that some would have shared a stripe with the locked one
+            Future<?> others = executorService.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    try (FileProvisioningCache.KeyLock other = cache.lock("s3://bucket/other-" + i + ".bam")) {
+                        assertTrue(other != null);
+                    }
+                }
+                return null;
+            });
+            others.get(10, TimeUnit.SECONDS);
+
+            // the same url still waits
+            Future<?> same = executorService.submit(() -> {
+                cache.lock("s3://bucket/downloading.bam").close();
+                return null;
+            });
+            try {
+                same.get(200, TimeUnit.MILLISECONDS);
+                fail("the url is locked");
+            } catch (TimeoutException e) {
+                // released below
+            }
+            downloading.close();
+            same.get(10, TimeUnit.SECONDS);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private Path download(String name, String content) throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Provisions inputs of several runs from a local stand-in for a server that counts the downloads of its one file.
+ *
+ * @author dyuen
+ */
+public class FileProvisioningTest {
+
+    private static final String CONTENT = "ACGT";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final AtomicBoolean failDownloads = new AtomicBoolean();
+    private Server server;
+    private String url;
+    private FileProvisioning fileProvisioning;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                throws IOException {
+                baseRequest.setHandled(true);
+                byte[] body = CONTENT.getBytes(StandardCharsets.UTF_8);
+                response.setContentLength(body.length);
+                if (!"GET".equals(request.getMethod())) {
+                    return;
+                }
+                if (failDownloads.get()) {
+                    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+                // the first byte on its own finds out whether the server takes ranges
+                if (!"bytes=0-0".equals(request.getHeader("Range"))) {
+                    downloads.incrementAndGet();
+                }
+                response.getOutputStream().write(body);
+            }
+        });
+        server.start();
+        url = "http://localhost:" + ((ServerConnector)server.getConnectors()[0]).getLocalPort() + "/reference.fa";
+
+        Path config = temporaryFolder.getRoot().toPath().resolve("config");
+        Files.write(config, Arrays.asList("file-provision-threads = 4", "file-provision-retries = 0",
+            "file-plugins-location = " + temporaryFolder.newFolder("plugins")), StandardCharsets.UTF_8);
+        fileProvisioning = new FileProvisioning(config.toString());
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void anInputOfSeveralRunsIsDownloadedOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        Future<?>[] runs = new Future<?>[3];
+        for (int run = 0; run < runs.length; run++) {
+            Path localPath = temporaryFolder.getRoot().toPath().resolve("run-" + run).resolve("inputs").resolve("reference.fa");
+            runs[run] = executor.submit(
+                () -> fileProvisioning.provisionInputFiles("", Collections.singletonList(ImmutablePair.of(url, localPath))));
+        }
+        for (Future<?> run : runs) {
+            run.get();
+        }
+        executor.shutdown();
+        assertEquals(1, downloads.get());
+        for (int run = 0; run < runs.length; run++) {
+            assertEquals(CONTENT, read(temporaryFolder.getRoot().toPath().resolve("run-" + run).resolve("inputs").resolve("reference.fa")));
+        }
+    }
+
+    @Test
+    public void anInputUsedTwiceInOneRunIsDownloadedOnce() throws Exception {
+        Path first = temporaryFolder.getRoot().toPath().resolve("first").resolve("reference.fa");
+        Path second = temporaryFolder.getRoot().toPath().resolve("second").resolve("reference.fa");
+        fileProvisioning.provisionInputFiles("", Arrays.asList(ImmutablePair.of(url, first), ImmutablePair.of(url, second)));
+        assertEquals(1, downloads.get());
+        assertEquals(CONTENT, read(first));
+        assertEquals(CONTENT, read(second));
+    }
+
+    @Test
+    public void anInputThatFailedIsDownloadedAgainByTheNextRun() throws Exception {
+        failDownloads.set(true);
+        Path first = temporaryFolder.getRoot().toPath().resolve("first").resolve("reference.fa");
+        try {
+            fileProvisioning.provisionInputFiles("", Collections.singletonList(ImmutablePair.of(url, first)));
+            fail("the first run should not get its input");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        failDownloads.set(false);
+        Path second = temporaryFolder.getRoot().toPath().resolve("second").resolve("reference.fa");
+        fileProvisioning.provisionInputFiles("", Collections.singletonList(ImmutablePair.of(url, second)));
+        assertEquals(1, downloads.get());
+        assertEquals(CONTENT, read(second));
+    }
+
+    @Test
+    public void aDownloadThatDoesNotMatchItsChecksumFailsAndIsNotKept() throws Exception {
+        Path config = temporaryFolder.getRoot().toPath().resolve("config-with-cache");
+        Files.write(config, Arrays.asList("file-provision-threads = 4", "file-provision-retries = 0", "use-cache = true",
+            "cache-dir = " + temporaryFolder.newFolder("cache"), "file-plugins-location = " + temporaryFolder.getRoot().toPath().resolve("plugins")),
+            StandardCharsets.UTF_8);
+        FileProvisioning caching = new FileProvisioning(config.toString());
+        Path first = temporaryFolder.getRoot().toPath().resolve("first").resolve("reference.fa");
+        try {
+            caching.provisionInputFiles("", Collections.singletonList(ImmutablePair.of(url, first)),
+                Collections.singletonMap(url, "sha256$" + DigestUtils.sha256Hex("TGCA")));
+            fail("content that does not match its checksum should fail the run");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertFalse("the mismatched download should be deleted", Files.exists(first));
+
+        // nothing was cached, so the next run downloads again
+        Path second = temporaryFolder.getRoot().toPath().resolve("second").resolve("reference.fa");
+        caching.provisionInputFiles("", Collections.singletonList(ImmutablePair.of(url, second)),
+            Collections.singletonMap(url, "sha256$" + DigestUtils.sha256Hex(CONTENT)));
+        assertEquals(2, downloads.get());
+        assertEquals(CONTENT, read(second));
+    }
+
+    private static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+}
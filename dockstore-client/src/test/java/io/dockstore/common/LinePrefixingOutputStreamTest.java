@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author dyuen
+ */
+public class LinePrefixingOutputStreamTest {
+
+    @Test
+    public void linesArePrefixedWhereverTheWritesSplitThem() {
+        ByteArrayOutputStream shared = new ByteArrayOutputStream();
+        PrintStream target = new PrintStream(shared, true);
+        LinePrefixingOutputStream stream = new LinePrefixingOutputStream(target, "[run 1] ");
+        byte[] bytes = "first\nsec".getBytes(StandardCharsets.UTF_8);
+        stream.write(bytes, 0, bytes.length);
+        assertEquals("[run 1] first\n", text(shared));
+        stream.write('o');
+        bytes = "nd\nthird".getBytes(StandardCharsets.UTF_8);
+        stream.write(bytes, 0, bytes.length);
+        assertEquals("[run 1] first\n[run 1] second\n", text(shared));
+        stream.close();
+        assertEquals("[run 1] first\n[run 1] second\n[run 1] third\n", text(shared));
+        stream.close();
+        assertEquals("[run 1] first\n[run 1] second\n[run 1] third\n", text(shared));
+    }
+
+    @Test
+    public void runsAtTheSameTimeDoNotInterleaveWithinALine() throws Exception {
+        ByteArrayOutputStream shared = new ByteArrayOutputStream();
+        PrintStream target = new PrintStream(shared, true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int run = 1; run <= 4; run++) {
+            final String prefix = "[run " + run + "] ";
+            runs.add(executor.submit(() -> {
+                try (LinePrefixingOutputStream stream = new LinePrefixingOutputStream(target, prefix)) {
+                    for (int i = 0; i < 500; i++) {
+                        // a byte at a time, as a process pumping its output may
+                        for (byte b : ("line " + i + " of " + prefix + '\n').getBytes(StandardCharsets.UTF_8)) {
+                            stream.write(b);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> run : runs) {
+            run.get();
+        }
+        executor.shutdown();
+        List<String> lines = Arrays.asList(text(shared).split("\n"));
+        assertEquals(2000, lines.size());
+        for (String line : lines) {
+            String prefix = line.substring(0, line.indexOf(']') + 2);
+            assertEquals(line, prefix + line.substring(prefix.length(), line.lastIndexOf(" of ") + 4) + prefix);
+        }
+    }
+
+    private static String text(ByteArrayOutputStream shared) {
+        return new String(shared.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
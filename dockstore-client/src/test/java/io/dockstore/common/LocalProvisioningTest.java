@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author dyuen
+ */
+public class LocalProvisioningTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void copiesWhenNothingElseIsAllowed() throws IOException {
+        Path source = file("input.bam", "content");
+        Path target = temporaryFolder.getRoot().toPath().resolve("copy.bam");
+        LocalProvisioning copyOnly = new LocalProvisioning(Collections.singletonList(LocalProvisioning.Method.COPY));
+
+        assertEquals(LocalProvisioning.Method.COPY, copyOnly.provision(source, target));
+        assertEquals("content", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertFalse(Files.isSameFile(source, target));
+    }
+
+    @Test
+    public void symlinksAreLeftOutForFilesThatMustOutliveTheirSource() throws IOException {
+        Path source = file("input.bam", "content");
+        LocalProvisioning symlinkFirst = new LocalProvisioning(Arrays.asList(LocalProvisioning.Method.SYMLINK, LocalProvisioning.Method.COPY));
+
+        Path linked = temporaryFolder.getRoot().toPath().resolve("linked.bam");
+        assertEquals(LocalProvisioning.Method.SYMLINK, symlinkFirst.provision(source, linked));
+        assertTrue(Files.isSymbolicLink(linked));
+
+        Path copied = temporaryFolder.getRoot().toPath().resolve("copied.bam");
+        assertEquals(LocalProvisioning.Method.COPY, symlinkFirst.withoutSymlinks().provision(source, copied));
+        assertFalse(Files.isSymbolicLink(copied));
+    }
+
+    private Path file(String name, String content) throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Uploads to a local stand-in for an object server that keeps one object in memory and accepts PUTs with a Content-Range,
+ * or ignores the Content-Range like most servers do.
+ *
+ * @author dyuen
+ */
+public class MultipartUploaderTest {
+
+    private static final int PART_SIZE = 100 * 1000;
+    private static final int FILE_SIZE = 5 * PART_SIZE + 123;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicInteger rangedPuts = new AtomicInteger();
+    private final AtomicBoolean acceptRanges = new AtomicBoolean(true);
+    private final AtomicBoolean ignoreRanges = new AtomicBoolean();
+    private final AtomicBoolean failFourthPart = new AtomicBoolean();
+    private final AtomicInteger firstPartFailures = new AtomicInteger();
+    private final AtomicInteger headStatus = new AtomicInteger(HttpServletResponse.SC_OK);
+    private Server server;
+    private byte[] stored = new byte[0];
+    private String url;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                throws IOException {
+                baseRequest.setHandled(true);
+                if ("HEAD".equals(request.getMethod())) {
+                    response.setStatus(headStatus.get());
+                    response.setContentLengthLong(stored.length);
+                    return;
+                }
+                byte[] body = IOUtils.toByteArray(request.getInputStream());
+                String contentRange = request.getHeader("Content-Range");
+                if (contentRange == null || ignoreRanges.get()) {
+                    stored = body;
+                    response.setStatus(HttpServletResponse.SC_CREATED);
+                    return;
+                }
+                Matcher matcher = CONTENT_RANGE.matcher(contentRange);
+                if (!acceptRanges.get() || !matcher.matches()) {
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    return;
+                }
+                int start = Integer.parseInt(matcher.group(1));
+                if (start == 0 && firstPartFailures.getAndDecrement() > 0) {
+                    response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    return;
+                }
+                if (start == 3 * PART_SIZE && failFourthPart.getAndSet(false)) {
+                    response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    return;
+                }
+                rangedPuts.incrementAndGet();
+                synchronized (MultipartUploaderTest.this) {
+                    if (stored.length != Integer.parseInt(matcher.group(3))) {
+                        stored = new byte[Integer.parseInt(matcher.group(3))];
+                    }
+                    System.arraycopy(body, 0, stored, start, body.length);
+                }
+                response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            }
+        });
+        server.start();
+        url = "http://localhost:" + ((ServerConnector)server.getConnectors()[0]).getLocalPort() + "/bucket/output.bam";
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void uploadInPartsWithARetriedPart() throws IOException {
+        byte[] content = content();
+        failFourthPart.set(true);
+        assertTrue(uploader().upload(rangedUploader(), url, file(content), Optional.empty(), 1));
+        assertArrayEquals(content, stored);
+        assertEquals(6, rangedPuts.get());
+        assertFalse(failFourthPart.get());
+    }
+
+    @Test
+    public void aFailedFirstPartIsRetried() throws IOException {
+        byte[] content = content();
+        firstPartFailures.set(1);
+        assertTrue(uploader().upload(rangedUploader(), url, file(content), Optional.empty(), 1));
+        assertArrayEquals(content, stored);
+        assertEquals(6, rangedPuts.get());
+    }
+
+    @Test
+    public void aFirstPartThatKeepsFailingFailsTheUpload() throws IOException {
+        firstPartFailures.set(2);
+        try {
+            uploader().upload(rangedUploader(), url, file(content()), Optional.empty(), 1);
+            fail("a server that is down should not be sent the whole file instead");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, stored.length);
+    }
+
+    @Test
+    public void serversWithoutRangedPutsGetTheWholeFile() throws IOException {
+        byte[] content = content();
+        acceptRanges.set(false);
+        Path source = file(content);
+        HttpUploader httpUploader = rangedUploader();
+        assertFalse(uploader().upload(httpUploader, url, source, Optional.empty(), 1));
+        assertTrue(httpUploader.uploadTo(url, source, Optional.empty()));
+        assertArrayEquals(content, stored);
+    }
+
+    @Test
+    public void hostsNotConfiguredForRangedPutsGetTheWholeFile() throws IOException {
+        byte[] content = content();
+        ignoreRanges.set(true);
+        Path source = file(content);
+        HttpUploader httpUploader = new HttpUploader(3, Collections.emptySet());
+        assertFalse(uploader().upload(httpUploader, url, source, Optional.empty(), 1));
+        assertEquals(0, stored.length);
+        assertTrue(httpUploader.uploadTo(url, source, Optional.empty()));
+        assertArrayEquals(content, stored);
+    }
+
+    @Test(expected = IOException.class)
+    public void rangedHostsThatIgnoreTheContentRangeFail() throws IOException {
+        ignoreRanges.set(true);
+        // each part replaces the object, the check once they are uploaded finds it is the size of the last part
+        uploader().upload(rangedUploader(), url, file(content()), Optional.empty(), 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void uploadsThatCannotBeCheckedFail() throws IOException {
+        headStatus.set(HttpServletResponse.SC_FORBIDDEN);
+        uploader().upload(rangedUploader(), url, file(content()), Optional.empty(), 1);
+    }
+
+    private static HttpUploader rangedUploader() {
+        return new HttpUploader(3, Collections.singleton("localhost"));
+    }
+
+    private MultipartUploader uploader() {
+        return new MultipartUploader(3, PART_SIZE, 1);
+    }
+
+    private static byte[] content() {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(0).nextBytes(content);
+        return content;
+    }
+
+    private Path file(byte[] content) throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve("output.bam");
+        Files.write(file, content);
+        return file;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import io.dockstore.provision.ProvisionInterface;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.fortsoft.pf4j.Plugin;
+import ro.fortsoft.pf4j.PluginWrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Indexes a plugins directory of fake plugins, whose classes come from the test classpath.
+ *
+ * @author dyuen
+ */
+public class PluginIndexTest {
+
+    /**
+     * how many times each plugin was created, by plugin id
+     */
+    private static final Map<String, AtomicInteger> STARTED = new ConcurrentHashMap<>();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File pluginsDirectory;
+    private INIConfiguration config;
+
+    @Before
+    public void setUp() throws IOException {
+        STARTED.clear();
+        pluginsDirectory = temporaryFolder.newFolder("plugins");
+        writePlugin("s3-plugin", "0.0.1", S3Provision.class);
+        writePlugin("gs-plugin", "0.0.1", GsProvision.class);
+        File iniFile = temporaryFolder.newFile("config");
+        Files.write(iniFile.toPath(), ("file-plugins-location = " + pluginsDirectory + "\n\n[s3-plugin]\nendpoint = https://s3.example.org\n\n"
+            + "[gs-plugin]\nproject = dockstore\n").getBytes(StandardCharsets.UTF_8));
+        config = Utilities.parseConfig(iniFile.getAbsolutePath());
+    }
+
+    @Test
+    public void indexIsBuiltOnce() throws IOException {
+        assertEquals(1, new PluginIndex(config).pluginsFor("s3").size());
+        // every plugin is loaded to build the index
+        assertEquals(1, started("s3-plugin"));
+        assertEquals(1, started("gs-plugin"));
+        Properties index = readIndex();
+        assertEquals("s3-plugin-0.0.1", index.getProperty("scheme.s3"));
+        assertEquals("gs-plugin-0.0.1", index.getProperty("scheme.gs"));
+        assertNotNull(index.getProperty("signature"));
+
+        // a later launch only loads the plugin for its scheme
+        List<ProvisionInterface> plugins = new PluginIndex(config).pluginsFor("S3");
+        assertEquals(1, plugins.size());
+        assertTrue(plugins.get(0) instanceof S3Provision);
+        assertEquals(2, started("s3-plugin"));
+        assertEquals(1, started("gs-plugin"));
+    }
+
+    @Test
+    public void schemesWithoutPluginsLoadNothing() throws IOException {
+        new PluginIndex(config).pluginsFor("s3");
+        STARTED.clear();
+        PluginIndex pluginIndex = new PluginIndex(config);
+        assertTrue(pluginIndex.pluginsFor("ftp").isEmpty());
+        assertTrue(pluginIndex.pluginsFor("ftp").isEmpty());
+        assertTrue(STARTED.isEmpty());
+    }
+
+    @Test
+    public void indexIsRebuiltWhenPluginsChange() throws IOException {
+        new PluginIndex(config).pluginsFor("s3");
+        String signature = readIndex().getProperty("signature");
+
+        // downloading a plugin changes the directory
+        writePlugin("http-plugin", "0.0.1", HttpProvision.class);
+        STARTED.clear();
+        List<ProvisionInterface> plugins = new PluginIndex(config).pluginsFor("ftp");
+        assertEquals(1, plugins.size());
+        assertTrue(plugins.get(0) instanceof HttpProvision);
+        assertEquals(1, started("s3-plugin"));
+        assertEquals(1, started("gs-plugin"));
+        Properties index = readIndex();
+        assertEquals("http-plugin-0.0.1", index.getProperty("scheme.ftp"));
+        assertNotEquals(signature, index.getProperty("signature"));
+    }
+
+    @Test
+    public void extensionsGetTheSectionOfTheirPlugin() throws IOException {
+        // both when building the index and when loading lazily
+        for (int i = 0; i < 2; i++) {
+            PluginIndex pluginIndex = new PluginIndex(config);
+            ConfiguredProvision s3 = (ConfiguredProvision)pluginIndex.pluginsFor("s3").get(0);
+            assertEquals("https://s3.example.org", s3.configuration.get("endpoint"));
+            assertNull(s3.configuration.get("project"));
+            ConfiguredProvision gs = (ConfiguredProvision)pluginIndex.pluginsFor("gs").get(0);
+            assertEquals("dockstore", gs.configuration.get("project"));
+            assertNull(gs.configuration.get("endpoint"));
+        }
+    }
+
+    private static int started(String pluginId) {
+        AtomicInteger count = STARTED.get(pluginId);
+        return count == null ? 0 : count.get();
+    }
+
+    private Properties readIndex() throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(pluginsDirectory.toPath().resolve(PluginIndex.INDEX_FILENAME), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    /**
+     * A plugin archive as downloaded, with only a manifest and an extension index, the classes are found on the test classpath
+     */
+    private void writePlugin(String pluginId, String version, Class<? extends ProvisionInterface> extension) throws IOException {
+        Path archive = pluginsDirectory.toPath().resolve(pluginId + '-' + version + ".zip");
+        try (OutputStream outputStream = Files.newOutputStream(archive); ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+            zip.putNextEntry(new ZipEntry("classes/META-INF/MANIFEST.MF"));
+            zip.write(("Manifest-Version: 1.0\nPlugin-Id: " + pluginId + "\nPlugin-Version: " + version + "\nPlugin-Class: "
+                + CountingPlugin.class.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("classes/META-INF/extensions.idx"));
+            zip.write((extension.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+    }
+
+    public static class CountingPlugin extends Plugin {
+        public CountingPlugin(PluginWrapper wrapper) {
+            super(wrapper);
+            STARTED.computeIfAbsent(wrapper.getPluginId(), key -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    public abstract static class ConfiguredProvision implements ProvisionInterface {
+        private Map<String, String> configuration = new HashMap<>();
+
+        @Override
+        public boolean downloadFrom(String sourcePath, Path destination) {
+            return false;
+        }
+
+        @Override
+        public boolean uploadTo(String destPath, Path sourceFile, Optional<String> metadata) {
+            return false;
+        }
+
+        @Override
+        public void setConfiguration(Map<String, String> config) {
+            this.configuration = config;
+        }
+    }
+
+    public static class S3Provision extends ConfiguredProvision {
+        @Override
+        public Set<String> schemesHandled() {
+            return Collections.singleton("s3");
+        }
+    }
+
+    public static class GsProvision extends ConfiguredProvision {
+        @Override
+        public Set<String> schemesHandled() {
+            return Collections.singleton("GS");
+        }
+    }
+
+    public static class HttpProvision extends ConfiguredProvision {
+        @Override
+        public Set<String> schemesHandled() {
+            return Collections.singleton("ftp");
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author dyuen
+ */
+public class ProvisioningSchedulerTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static ProvisioningScheduler.Transferred await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return new ProvisioningScheduler.Transferred(ProvisioningScheduler.UNKNOWN_SIZE, null);
+    }
+
+    @Test
+    public void largestFirst() throws Exception {
+        ProvisioningScheduler scheduler = new ProvisioningScheduler(1, Collections.emptyMap(), 0);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = scheduler.submit("blocker", "s3", 1, () -> await(release));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        List<Future<?>> futures = Arrays.asList(scheduler.submit("small", "s3", 10, () -> record(order, "small")),
+            scheduler.submit("unknown", "https", ProvisioningScheduler.UNKNOWN_SIZE, () -> record(order, "unknown")),
+            scheduler.submit("large", "s3", 1000, () -> record(order, "large")),
+            scheduler.submit("small again", "s3", 10, () -> record(order, "small again")));
+        release.countDown();
+        blocker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        for (Future<?> future : futures) {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("unknown", "large", "small", "small again"), order);
+    }
+
+    @Test
+    public void schemeAtItsLimitDoesNotHoldUpOthers() throws Exception {
+        ProvisioningScheduler scheduler = new ProvisioningScheduler(2, Collections.singletonMap("s3", 1), 0);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runningS3 = new AtomicInteger();
+        AtomicInteger maxRunningS3 = new AtomicInteger();
+        Future<?> first = scheduler.submit("first", "s3", ProvisioningScheduler.UNKNOWN_SIZE, () -> {
+            maxRunningS3.accumulateAndGet(runningS3.incrementAndGet(), Math::max);
+            ProvisioningScheduler.Transferred transferred = await(release);
+            runningS3.decrementAndGet();
+            return transferred;
+        });
+        // larger than the https transfer, so it comes first but has to wait for the s3 limit
+        Future<?> second = scheduler.submit("second", "s3", ProvisioningScheduler.UNKNOWN_SIZE, () -> {
+            maxRunningS3.accumulateAndGet(runningS3.incrementAndGet(), Math::max);
+            runningS3.decrementAndGet();
+            return null;
+        });
+        Future<?> https = scheduler.submit("https", "https", 10, () -> null);
+
+        https.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(second.isDone());
+        release.countDown();
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, maxRunningS3.get());
+    }
+
+    @Test
+    public void cancelledWhileWaiting() throws Exception {
+        ProvisioningScheduler scheduler = new ProvisioningScheduler(1, Collections.emptyMap(), 0);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = scheduler.submit("blocker", "s3", ProvisioningScheduler.UNKNOWN_SIZE, () -> await(release));
+        AtomicInteger ran = new AtomicInteger();
+        Future<?> cancelled = scheduler.submit("cancelled", "s3", 10, () -> {
+            ran.incrementAndGet();
+            return null;
+        });
+        assertTrue(cancelled.cancel(false));
+        Future<?> after = scheduler.submit("after", "s3", 1, () -> null);
+        release.countDown();
+        blocker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        after.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void tokenBucket() {
+        final long bytesPerSecond = 4L * 1024 * 1024;
+        ProvisioningScheduler.TokenBucket bucket = new ProvisioningScheduler.TokenBucket(bytesPerSecond);
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            bucket.acquire(bytesPerSecond / 4);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // two seconds' worth
+        assertTrue("took " + elapsedMillis, elapsedMillis >= 1800 && elapsedMillis < 4000);
+    }
+
+    @Test
+    public void tokenBucketBurstsAfterIdle() throws InterruptedException {
+        final long bytesPerSecond = 4L * 1024 * 1024;
+        ProvisioningScheduler.TokenBucket bucket = new ProvisioningScheduler.TokenBucket(bytesPerSecond);
+        Thread.sleep(1100);
+        long start = System.nanoTime();
+        bucket.acquire(bytesPerSecond);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    }
+
+    private static ProvisioningScheduler.Transferred record(List<String> order, String name) {
+        order.add(name);
+        return null;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.server.handler.ResourceHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Downloads from a local Jetty file server, which supports ranges.
+ *
+ * @author dyuen
+ */
+public class RangedDownloaderTest {
+
+    private static final int PART_SIZE = 100 * 1000;
+    private static final int FILE_SIZE = 5 * PART_SIZE + 123;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicBoolean failThirdPart = new AtomicBoolean();
+    private Server server;
+    private Path served;
+    private byte[] content;
+    private String url;
+
+    @Before
+    public void startServer() throws Exception {
+        File folder = temporaryFolder.newFolder("served");
+        served = folder.toPath().resolve("input.bam");
+        content = new byte[FILE_SIZE];
+        new Random(0).nextBytes(content);
+        Files.write(served, content);
+
+        ResourceHandler resourceHandler = new ResourceHandler();
+        resourceHandler.setResourceBase(folder.getAbsolutePath());
+        HandlerWrapper counting = new HandlerWrapper() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                throws IOException, ServletException {
+                String range = request.getHeader("Range");
+                if (range != null) {
+                    rangeRequests.incrementAndGet();
+                    if (range.startsWith("bytes=" + 2 * PART_SIZE + '-') && failThirdPart.getAndSet(false)) {
+                        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                        baseRequest.setHandled(true);
+                        return;
+                    }
+                }
+                super.handle(target, baseRequest, request, response);
+            }
+        };
+        counting.setHandler(resourceHandler);
+        server = new Server(0);
+        server.setHandler(counting);
+        server.start();
+        url = "http://localhost:" + ((ServerConnector)server.getConnectors()[0]).getLocalPort() + "/input.bam";
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void downloadInParts() throws IOException {
+        Path target = temporaryFolder.getRoot().toPath().resolve("downloaded.bam");
+        assertTrue(new RangedDownloader(3, PART_SIZE).download(url, target, 1));
+        assertArrayEquals(content, Files.readAllBytes(target));
+        // the probe and six parts
+        assertEquals(7, rangeRequests.get());
+        assertFalse(Files.exists(target.resolveSibling("downloaded.bam.part.manifest")));
+    }
+
+    @Test
+    public void resumeAfterFailedPart() throws IOException {
+        Path target = temporaryFolder.getRoot().toPath().resolve("downloaded.bam");
+        failThirdPart.set(true);
+        try {
+            new RangedDownloader(3, PART_SIZE).download(url, target, 1);
+            fail("the third part should have failed");
+        } catch (IOException e) {
+            assertTrue(Files.exists(target.resolveSibling("downloaded.bam.part.manifest")));
+        }
+        rangeRequests.set(0);
+        assertTrue(new RangedDownloader(3, PART_SIZE).download(url, target, 1));
+        assertArrayEquals(content, Files.readAllBytes(target));
+        // the probe and the part that failed
+        assertEquals(2, rangeRequests.get());
+    }
+
+    @Test
+    public void resumedDownloadIsDigestedInOrder() throws IOException {
+        Path target = temporaryFolder.getRoot().toPath().resolve("downloaded.bam");
+        failThirdPart.set(true);
+        try {
+            new RangedDownloader(3, PART_SIZE).download(url, target, 1);
+            fail("the third part should have failed");
+        } catch (IOException e) {
+            // resumed below
+        }
+        Checksums.Expected expected = Checksums.Expected.parse("sha256$" + DigestUtils.sha256Hex(content), "test").get();
+        Checksums checksums = new Checksums(Collections.singleton(Checksums.MD5), Collections.singletonList(expected));
+        assertTrue(new RangedDownloader(3, PART_SIZE).download(url, target, 1, checksums));
+        checksums.verify(url);
+        assertEquals(DigestUtils.md5Hex(content), checksums.values().get(Checksums.MD5));
+    }
+
+    @Test
+    public void fileShrankBetweenAttempts() throws IOException {
+        Path target = temporaryFolder.getRoot().toPath().resolve("downloaded.bam");
+        failThirdPart.set(true);
+        try {
+            new RangedDownloader(3, PART_SIZE).download(url, target, 1);
+            fail("the third part should have failed");
+        } catch (IOException e) {
+            // the file changes before the retry
+        }
+        byte[] shorter = new byte[3 * PART_SIZE + 45];
+        new Random(1).nextBytes(shorter);
+        Files.write(served, shorter);
+        // a new version even within the resolution of Last-Modified
+        assertTrue(served.toFile().setLastModified(served.toFile().lastModified() + 2000));
+
+        Checksums.Expected expected = Checksums.Expected.parse("sha256$" + DigestUtils.sha256Hex(shorter), "test").get();
+        Checksums checksums = new Checksums(Collections.singleton(Checksums.MD5), Collections.singletonList(expected));
+        assertTrue(new RangedDownloader(3, PART_SIZE).download(url, target, 1, checksums));
+        assertArrayEquals(shorter, Files.readAllBytes(target));
+        checksums.verify(url);
+    }
+
+    @Test
+    public void smallFilesAreLeftToASingleStream() throws IOException {
+        Path target = temporaryFolder.getRoot().toPath().resolve("downloaded.bam");
+        assertFalse(new RangedDownloader(3, FILE_SIZE).download(url, target, 1));
+        assertFalse(Files.exists(target));
+    }
+}
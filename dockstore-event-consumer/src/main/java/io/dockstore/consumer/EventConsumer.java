@@ -16,18 +16,37 @@
 package io.dockstore.consumer;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
-import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import io.dockstore.common.model.BasicMessage;
 import io.dockstore.consumer.handler.DOIHandler;
@@ -38,33 +57,83 @@ import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Receives messages from SQS in batches and hands them to a pool of workers.
+ * Messages from the same FIFO message group are handled in order by one worker, messages from different groups in parallel.
+ * While a message is being handled, its visibility timeout is extended periodically so that it is not redelivered.
+ * Handled messages are deleted in batches.
+ */
 public final class EventConsumer {
 
+    /**
+     * the most messages SQS will return or accept in one batch
+     */
+    static final int MAX_BATCH_SIZE = 10;
+
     private static final Logger LOG = LoggerFactory.getLogger(EventConsumer.class);
 
     /**
      * the maximum wait time allowed
      */
     private static final int MAX_WAIT_TIME_SECONDS = 20;
-    private PropertiesConfiguration config;
+    private static final int DEFAULT_WORKERS = 4;
+    private static final int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 300;
+    private static final long DELETE_INTERVAL_SECONDS = 1;
+    private static final long SHUTDOWN_GRACE_MINUTES = 5;
+    /**
+     * visibility of messages in flight is extended this many times per visibility timeout, well before it runs out
+     */
+    private static final int HEARTBEATS_PER_TIMEOUT = 3;
+
+    private final AmazonSQS sqs;
+    private final String sqsURL;
+    private final Map<String, MessageHandler> messageHandlers;
+    private final int visibilityTimeoutSeconds;
+    private final Gson gson = new Gson();
+
+    /**
+     * one permit per worker, a message is only received when there is a worker free to handle it
+     */
+    private final Semaphore capacity;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService heartbeat;
+    /**
+     * messages received but not yet deleted or released, by message id
+     */
+    private final Map<String, Message> inFlight = new ConcurrentHashMap<>();
+    private final BlockingQueue<Message> handled = new LinkedBlockingQueue<>();
 
-    private EventConsumer() {
-        this.config = getConsumerConfiguration();
+    /**
+     * @param sqs                      client for the queue
+     * @param sqsURL                   the queue to consume from
+     * @param messageHandlers          handlers by message type
+     * @param workerCount              number of messages handled at the same time
+     * @param visibilityTimeoutSeconds how long a received message stays hidden from other consumers before it has to be extended
+     */
+    EventConsumer(AmazonSQS sqs, String sqsURL, Map<String, MessageHandler> messageHandlers, int workerCount, int visibilityTimeoutSeconds) {
+        this.sqs = sqs;
+        this.sqsURL = sqsURL;
+        this.messageHandlers = messageHandlers;
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+        this.capacity = new Semaphore(workerCount);
+        this.workers = Executors.newFixedThreadPool(workerCount, new ThreadFactoryBuilder().setNameFormat("consumer-worker-%d").build());
+        this.heartbeat = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("consumer-heartbeat").setDaemon(true).build());
+        long heartbeatSeconds = Math.max(1, visibilityTimeoutSeconds / HEARTBEATS_PER_TIMEOUT);
+        heartbeat.scheduleWithFixedDelay(this::extendVisibility, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        heartbeat.scheduleWithFixedDelay(this::deleteHandled, DELETE_INTERVAL_SECONDS, DELETE_INTERVAL_SECONDS, TimeUnit.SECONDS);
     }
 
-    private PropertiesConfiguration getConsumerConfiguration() {
-        if (this.config == null) {
-            Configurations configs = new Configurations();
-            // Read data from this file
-            File propertiesFile = new File(System.getProperty("user.home"), ".dockstore/consumer.config");
+    private static PropertiesConfiguration getConsumerConfiguration() {
+        Configurations configs = new Configurations();
+        // Read data from this file
+        File propertiesFile = new File(System.getProperty("user.home"), ".dockstore/consumer.config");
 
-            try {
-                this.config = configs.properties(propertiesFile);
-            } catch (ConfigurationException e) {
-                throw new RuntimeException("Could not read ~/.dockstore/consumer.config", e);
-            }
+        try {
+            return configs.properties(propertiesFile);
+        } catch (ConfigurationException e) {
+            throw new RuntimeException("Could not read ~/.dockstore/consumer.config", e);
         }
-        return this.config;
     }
 
     /**
@@ -74,60 +143,206 @@ public final class EventConsumer {
      * @return
      */
     public static void main(String[] args) {
-
-        EventConsumer consumer = new EventConsumer();
-        String sqsURL = consumer.getConsumerConfiguration().getString("sqsURL");
-        String dockstoreToken = consumer.getConsumerConfiguration().getString("dockstoreToken");
-        String dockstoreURL = consumer.getConsumerConfiguration().getString("dockstoreURL");
-        String zenodoToken = consumer.getConsumerConfiguration().getString("zenodoToken");
-        String zenodoURL = consumer.getConsumerConfiguration().getString("zenodoURL");
-
+        PropertiesConfiguration config = getConsumerConfiguration();
+        String sqsURL = config.getString("sqsURL");
+        String dockstoreToken = config.getString("dockstoreToken");
+        String dockstoreURL = config.getString("dockstoreURL");
+        String zenodoToken = config.getString("zenodoToken");
+        String zenodoURL = config.getString("zenodoURL");
+        int workerCount = config.getInt("workers", DEFAULT_WORKERS);
+        int visibilityTimeoutSeconds = config.getInt("visibilityTimeout", DEFAULT_VISIBILITY_TIMEOUT_SECONDS);
 
         AmazonSQS sqs = AmazonSQSClientBuilder.standard().withRegion(Regions.US_EAST_1).build();
-        LOG.info("Receiving messages from MyFifoQueue.fifo");
-        ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(sqsURL);
-        // there's no indefinite wait
-        receiveMessageRequest.setMessageAttributeNames(Lists.newArrayList(".*"));
-        receiveMessageRequest.setWaitTimeSeconds(MAX_WAIT_TIME_SECONDS);
-        receiveMessageRequest.setMaxNumberOfMessages(1);
-        Gson gson = new Gson();
-
-        DOIHandler doiHandler = new DOIHandler(dockstoreURL, dockstoreToken, zenodoURL, zenodoToken);
+
+        MetricRegistry metrics = new MetricRegistry();
+        JmxReporter.forRegistry(metrics).inDomain(EventConsumer.class.getPackage().getName()).build().start();
+        DOIHandler doiHandler = new DOIHandler(dockstoreURL, dockstoreToken, zenodoURL, zenodoToken, metrics);
         Map<String, MessageHandler> messageHandlers = new HashMap<>();
         messageHandlers.put(doiHandler.messageTypeHandled(), doiHandler);
 
-        do {
-            List<Message> messages = sqs.receiveMessage(receiveMessageRequest).getMessages();
-            for (Message message : messages) {
-                LOG.debug("  Message");
-                LOG.debug("    MessageId:     " + message.getMessageId());
-                LOG.debug("    ReceiptHandle: " + message.getReceiptHandle());
-                LOG.debug("    MD5OfBody:     " + message.getMD5OfBody());
-                LOG.debug("    Body:          " + message.getBody());
-                for (Entry<String, String> entry : message.getAttributes().entrySet()) {
-                    LOG.debug("  Attribute");
-                    LOG.debug("    Name:  " + entry.getKey());
-                    LOG.debug("    Value: " + entry.getValue());
+        EventConsumer consumer = new EventConsumer(sqs, sqsURL, messageHandlers, workerCount, visibilityTimeoutSeconds);
+        Runtime.getRuntime().addShutdownHook(new Thread(consumer::shutdown));
+        LOG.info("Receiving messages from " + sqsURL + " with " + workerCount + " workers");
+        try {
+            while (!consumer.isShutdown()) {
+                try {
+                    consumer.receive();
+                } catch (AmazonClientException e) {
+                    LOG.error("Could not receive messages", e);
                 }
+            }
+        } catch (InterruptedException e) {
+            LOG.info("Interrupted, no longer receiving messages");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for at least one free worker, then receives as many messages as there are free workers (up to a batch) and hands them out.
+     *
+     * @return the number of messages received
+     * @throws InterruptedException if interrupted while waiting for a free worker
+     */
+    int receive() throws InterruptedException {
+        capacity.acquire();
+        int permits = 1 + capacity.drainPermits();
+        int wanted = Math.min(permits, MAX_BATCH_SIZE);
+        capacity.release(permits - wanted);
+        if (workers.isShutdown()) {
+            capacity.release(wanted);
+            return 0;
+        }
+
+        List<Message> messages;
+        try {
+            // there's no indefinite wait
+            ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(sqsURL).withMessageAttributeNames(".*")
+                    .withAttributeNames(MessageSystemAttributeName.MessageGroupId.toString()).withWaitTimeSeconds(MAX_WAIT_TIME_SECONDS)
+                    .withMaxNumberOfMessages(wanted).withVisibilityTimeout(visibilityTimeoutSeconds);
+            messages = sqs.receiveMessage(receiveMessageRequest).getMessages();
+        } catch (RuntimeException e) {
+            capacity.release(wanted);
+            throw e;
+        }
+        capacity.release(wanted - messages.size());
+
+        // messages of one group have to be handled in the order they were received
+        Map<String, List<Message>> groups = new LinkedHashMap<>();
+        for (Message message : messages) {
+            inFlight.put(message.getMessageId(), message);
+            String group = message.getAttributes().getOrDefault(MessageSystemAttributeName.MessageGroupId.toString(), message.getMessageId());
+            groups.computeIfAbsent(group, key -> new ArrayList<>()).add(message);
+        }
+        for (List<Message> group : groups.values()) {
+            try {
+                workers.submit(() -> handleGroup(group));
+            } catch (RejectedExecutionException e) {
+                // shut down while receiving, the messages go back on the queue rather than wait out their visibility timeout
+                group.forEach(this::release);
+                capacity.release(group.size());
+            }
+        }
+        return messages.size();
+    }
 
-                // in reality, get the workflow here and create a zenodo entry for it
-                MessageHandler messageHandler = messageHandlers.get(message.getMessageAttributes().get("type").getStringValue());
-                if (messageHandler != null) {
-                    BasicMessage basicMessage = (BasicMessage)gson.fromJson(message.getBody(), messageHandler.messageClassHandled());
-                    boolean handled = messageHandler.handleMessage(basicMessage);
-
-                    String messageReceiptHandle = messages.get(0).getReceiptHandle();
-                    if (handled) {
-                        // Delete the message
-                        LOG.info("Deleting the message");
-                        sqs.deleteMessage(new DeleteMessageRequest(sqsURL, messageReceiptHandle));
-                    } else {
-                        // requeue the message
-                        sqs.changeMessageVisibility(sqsURL, messageReceiptHandle, 0);
-                    }
+    /**
+     * Stop receiving, wait for the workers to finish and delete what they handled.
+     * Messages in flight keep their visibility extended in the meantime.
+     */
+    void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_GRACE_MINUTES, TimeUnit.MINUTES)) {
+                LOG.warn("Workers did not finish in time, unfinished messages will be redelivered");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        heartbeat.shutdownNow();
+        deleteHandled();
+    }
+
+    /**
+     * @return true once {@link #shutdown()} has been called, no more messages are received after that
+     */
+    boolean isShutdown() {
+        return workers.isShutdown();
+    }
+
+    private void handleGroup(List<Message> group) {
+        // once a message cannot be handled, the rest of its group goes back on the queue to keep the order
+        boolean inOrder = true;
+        for (Message message : group) {
+            try {
+                logMessage(message);
+                MessageHandler messageHandler = message.getMessageAttributes().containsKey("type") ? messageHandlers
+                        .get(message.getMessageAttributes().get("type").getStringValue()) : null;
+                if (messageHandler == null) {
+                    LOG.error("No handler for message " + message.getMessageId() + ", it will be redelivered after its visibility timeout");
+                    inFlight.remove(message.getMessageId());
+                    inOrder = false;
+                } else if (inOrder && handle(message, messageHandler)) {
+                    handled.add(message);
+                } else {
+                    inOrder = false;
+                    release(message);
                 }
+            } finally {
+                capacity.release();
+            }
+        }
+    }
+
+    private boolean handle(Message message, MessageHandler messageHandler) {
+        try {
+            BasicMessage basicMessage = (BasicMessage)gson.fromJson(message.getBody(), messageHandler.messageClassHandled());
+            return messageHandler.handleMessage(basicMessage);
+        } catch (RuntimeException e) {
+            LOG.error("Could not handle message " + message.getMessageId(), e);
+            return false;
+        }
+    }
 
+    private static void logMessage(Message message) {
+        LOG.debug("  Message");
+        LOG.debug("    MessageId:     " + message.getMessageId());
+        LOG.debug("    ReceiptHandle: " + message.getReceiptHandle());
+        LOG.debug("    MD5OfBody:     " + message.getMD5OfBody());
+        LOG.debug("    Body:          " + message.getBody());
+        for (Entry<String, String> entry : message.getAttributes().entrySet()) {
+            LOG.debug("  Attribute");
+            LOG.debug("    Name:  " + entry.getKey());
+            LOG.debug("    Value: " + entry.getValue());
+        }
+    }
+
+    /**
+     * requeue the message
+     */
+    private void release(Message message) {
+        inFlight.remove(message.getMessageId());
+        try {
+            sqs.changeMessageVisibility(sqsURL, message.getReceiptHandle(), 0);
+        } catch (AmazonClientException e) {
+            LOG.warn("Could not release message " + message.getMessageId() + ", it will be redelivered after its visibility timeout", e);
+        }
+    }
+
+    private void extendVisibility() {
+        try {
+            for (List<Message> batch : Lists.partition(new ArrayList<>(inFlight.values()), MAX_BATCH_SIZE)) {
+                List<ChangeMessageVisibilityBatchRequestEntry> entries = batch.stream()
+                        .map(message -> new ChangeMessageVisibilityBatchRequestEntry(message.getMessageId(), message.getReceiptHandle())
+                                .withVisibilityTimeout(visibilityTimeoutSeconds)).collect(Collectors.toList());
+                logFailures("extend", sqs.changeMessageVisibilityBatch(sqsURL, entries).getFailed());
             }
-        } while (true);
+        } catch (AmazonClientException e) {
+            // a scheduled task that throws is not run again
+            LOG.warn("Could not extend visibility of messages in flight", e);
+        }
+    }
+
+    private void deleteHandled() {
+        List<Message> toDelete = new ArrayList<>();
+        handled.drainTo(toDelete);
+        for (List<Message> batch : Lists.partition(toDelete, MAX_BATCH_SIZE)) {
+            List<DeleteMessageBatchRequestEntry> entries = batch.stream()
+                    .map(message -> new DeleteMessageBatchRequestEntry(message.getMessageId(), message.getReceiptHandle()))
+                    .collect(Collectors.toList());
+            try {
+                LOG.info("Deleting " + entries.size() + " messages");
+                logFailures("delete", sqs.deleteMessageBatch(sqsURL, entries).getFailed());
+            } catch (AmazonClientException e) {
+                LOG.warn("Could not delete messages, they will be redelivered", e);
+            }
+            // failed deletes are redelivered once their visibility timeout runs out
+            batch.forEach(message -> inFlight.remove(message.getMessageId()));
+        }
+    }
+
+    private static void logFailures(String action, List<BatchResultErrorEntry> failures) {
+        for (BatchResultErrorEntry failure : failures) {
+            LOG.warn("Could not " + action + " message " + failure.getId() + ": " + failure.getCode() + " " + failure.getMessage());
+        }
     }
 }
@@ -15,16 +15,26 @@
  */
 package io.dockstore.consumer.handler;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerCertificateException;
@@ -34,7 +44,6 @@ import io.dockstore.zenodo.client.ApiClient;
 import io.dockstore.zenodo.client.ApiException;
 import io.dockstore.zenodo.client.api.ActionsApi;
 import io.dockstore.zenodo.client.api.DepositsApi;
-import io.dockstore.zenodo.client.api.FilesApi;
 import io.dockstore.zenodo.client.model.Author;
 import io.dockstore.zenodo.client.model.Deposit;
 import io.dockstore.zenodo.client.model.DepositMetadata;
@@ -48,23 +57,45 @@ import io.swagger.client.model.SourceFile;
 import io.swagger.client.model.Tag;
 import io.swagger.client.model.Workflow;
 import io.swagger.client.model.WorkflowVersion;
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class DOIHandler implements MessageHandler<DOIMessage> {
 
     private static final Logger LOG = LoggerFactory.getLogger(DOIHandler.class);
+    private static final int UPLOAD_THREADS = 4;
     private final String dockstoreURL;
     private final String dockstoreToken;
     private final String zenodoToken;
     private final String zenodoURL;
-
-    public DOIHandler(String dockstoreURL, String dockstoreToken, String zenodoURL, String zenodoToken) {
+    /**
+     * shared by all messages so that the number of concurrent uploads stays bounded
+     */
+    private final ExecutorService uploadExecutor = Executors
+            .newFixedThreadPool(UPLOAD_THREADS, new ThreadFactoryBuilder().setNameFormat("zenodo-upload-%d").setDaemon(true).build());
+
+    private final MetricRegistry metrics;
+
+    /**
+     * @param metrics registry for the metrics of uploads to Zenodo
+     */
+    public DOIHandler(String dockstoreURL, String dockstoreToken, String zenodoURL, String zenodoToken, MetricRegistry metrics) {
         this.dockstoreURL = dockstoreURL;
         this.dockstoreToken = dockstoreToken;
         this.zenodoToken = zenodoToken;
         this.zenodoURL = zenodoURL;
+        this.metrics = metrics;
+    }
+
+    private static InputStream save(DockerClient docker, String image) throws IOException {
+        try {
+            return docker.save(image);
+        } catch (DockerException e) {
+            throw new IOException("could not save Docker image: " + image, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while saving Docker image: " + image);
+        }
     }
 
     @Override
@@ -93,21 +124,6 @@ public class DOIHandler implements MessageHandler<DOIMessage> {
                 return true;
             }
 
-            // Pull an image
-            // Create a client based on DOCKER_HOST and DOCKER_CERT_PATH env vars
-            String image = publishedContainer.getPath() + ":" + tag.getName();
-            File dockerImageFile = new File(image);
-            try (DockerClient docker = DefaultDockerClient.fromEnv().build()) {
-                docker.pull(image);
-                FileUtils.copyInputStreamToFile(docker.save(image), dockerImageFile);
-            } catch (DockerException | DockerCertificateException | InterruptedException e) {
-                LOG.error("could not pull Docker image:" + image, e);
-                return false;
-            } catch (IOException e) {
-                LOG.error("could not save Docker image to file:" + dockerImageFile.getAbsolutePath(), e);
-                return false;
-            }
-
             // send documents to zenodo
             ApiClient zenodoClient = new ApiClient();
             zenodoClient.addDefaultHeader("Authorization", "Bearer " + zenodoToken);
@@ -122,21 +138,36 @@ public class DOIHandler implements MessageHandler<DOIMessage> {
             DepositsApi depositApi = new DepositsApi(zenodoClient);
             Deposit deposit = new Deposit();
             Deposit returnDeposit = null;
-            try {
+            String image = publishedContainer.getPath() + ":" + tag.getName();
+            // Create a client based on DOCKER_HOST and DOCKER_CERT_PATH env vars
+            try (DockerClient docker = DefaultDockerClient.fromEnv().build()) {
+                // Pull an image
+                docker.pull(image);
+
                 returnDeposit = depositApi.createDeposit(deposit);
-                // upload a new file
                 int depositionID = returnDeposit.getId();
-                FilesApi filesApi = new FilesApi(zenodoClient);
+                ZenodoBucketClient bucketClient = new ZenodoBucketClient(zenodoURL, zenodoToken, metrics);
+                String bucketURL = bucketClient.getBucketURL(depositionID);
+
+                // upload descriptors from memory and the image straight from Docker, all at the same time
+                List<Callable<Long>> uploads = new ArrayList<>();
                 for (SourceFile file : tag.getSourceFiles()) {
-                    Path tempFile = Files.createTempFile("temp", "file");
-                    FileUtils.writeStringToFile(tempFile.toFile(), file.getContent(), StandardCharsets.UTF_8);
-                    // file name is passsed in but seems to be ignore
-                    filesApi.createFile(depositionID, tempFile.toFile(), new File(file.getPath()).getName());
+                    byte[] content = file.getContent().getBytes(StandardCharsets.UTF_8);
+                    String fileName = new File(file.getPath()).getName();
+                    uploads.add(() -> bucketClient.upload(bucketURL, fileName, new ByteArrayInputStream(content), content.length));
                 }
 // TODO: this would be fleshed out to populate descriptors, secondary descriptors, test json, dockerfiles, etc.
-// TODO: this could use a progress indicator, uploading docker images seems slow
-                //DepositionFile file = filesApi.createFile(depositionID, dockerImageFile, dockerImageFile.getAbsolutePath());
-                // LOG.info(file.toString());
+                String imageFileName = image.replaceAll("[/:]", "_") + ".tar";
+                uploads.add(() -> {
+                    try (InputStream saved = save(docker, image)) {
+                        return bucketClient.upload(bucketURL, imageFileName, saved);
+                    }
+                });
+                long bytes = 0;
+                for (Future<Long> upload : uploadExecutor.invokeAll(uploads)) {
+                    bytes += upload.get();
+                }
+                LOG.info("uploaded " + uploads.size() + " files, " + bytes + " bytes in total to deposition " + depositionID);
 
                 // add some metadata
                 returnDeposit.getMetadata().setTitle(publishedContainer.getToolPath());
@@ -160,11 +191,18 @@ public class DOIHandler implements MessageHandler<DOIMessage> {
                 Deposit publishedDeposit = actionsApi.publishDeposit(depositionID);
                 // need to grab and save the generated DOI here
                 LOG.info(publishedDeposit.toString());
-            } catch (ApiException | IOException e) {
+            } catch (DockerException | DockerCertificateException e) {
+                LOG.error("could not pull Docker image:" + image, e);
+                return false;
+            } catch (InterruptedException e) {
+                LOG.error("interrupted while creating zenodo representation", e);
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ApiException | IOException | ExecutionException e) {
                 LOG.error("could not create zenodo representation", e);
                 return false;
             }
-            System.out.println(returnDeposit.toString());
+            LOG.info(returnDeposit.toString());
 
 
             // update the webservice with a new DOI status
@@ -0,0 +1,165 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.consumer.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads to the bucket of a Zenodo deposition with the files API (http://developers.zenodo.org/#deposition-files).
+ * Unlike the generated FilesApi, which only takes files on disk, content is streamed from memory or from another stream
+ * through a fixed size buffer, so an upload never needs more than one buffer of memory or any scratch disk.
+ * Content of a known length is sent with a Content-Length, content whose length is only known once it is read,
+ * such as an image from docker save, is sent chunked as it is read.
+ */
+class ZenodoBucketClient {
+
+    static final long UNKNOWN_LENGTH = -1;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ZenodoBucketClient.class);
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    private final String zenodoURL;
+    private final String zenodoToken;
+    private final Timer uploads;
+    private final Meter uploadedBytes;
+    private final Meter failures;
+
+    /**
+     * @param zenodoURL   either 'https://sandbox.zenodo.org/api' or 'https://zenodo.org/api'
+     * @param zenodoToken personal access token
+     * @param metrics     registry for the upload timer, the bytes uploaded and the failed uploads
+     */
+    ZenodoBucketClient(String zenodoURL, String zenodoToken, MetricRegistry metrics) {
+        this.zenodoURL = zenodoURL;
+        this.zenodoToken = zenodoToken;
+        this.uploads = metrics.timer(MetricRegistry.name(ZenodoBucketClient.class, "uploads"));
+        this.uploadedBytes = metrics.meter(MetricRegistry.name(ZenodoBucketClient.class, "bytes"));
+        this.failures = metrics.meter(MetricRegistry.name(ZenodoBucketClient.class, "failures"));
+    }
+
+    /**
+     * @param depositionID an unpublished deposition
+     * @return the URL of the bucket that holds the files of the deposition
+     */
+    String getBucketURL(int depositionID) throws IOException {
+        HttpURLConnection connection = open(zenodoURL + "/deposit/depositions/" + depositionID, "GET");
+        checkResponse(connection);
+        try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+            JsonObject deposition = new JsonParser().parse(reader).getAsJsonObject();
+            return deposition.getAsJsonObject("links").get("bucket").getAsString();
+        }
+    }
+
+    /**
+     * Upload content whose length is not known up front, such as an image from docker save.
+     * It is read once and sent chunked as it is read.
+     *
+     * @param bucketURL from {@link #getBucketURL(int)}
+     * @param fileName  name of the file in the deposition
+     * @param content   closed by the caller
+     * @return the number of bytes uploaded
+     */
+    long upload(String bucketURL, String fileName, InputStream content) throws IOException {
+        return upload(bucketURL, fileName, content, UNKNOWN_LENGTH);
+    }
+
+    /**
+     * Upload a file, progress is logged periodically for long uploads.
+     *
+     * @param bucketURL from {@link #getBucketURL(int)}
+     * @param fileName  name of the file in the deposition
+     * @param content   closed by the caller
+     * @param length    length of the content in bytes, {@link #UNKNOWN_LENGTH} to send it chunked
+     * @return the number of bytes uploaded
+     */
+    long upload(String bucketURL, String fileName, InputStream content, long length) throws IOException {
+        HttpURLConnection connection = open(bucketURL + '/' + URLEncoder.encode(fileName, StandardCharsets.UTF_8.name()), "PUT");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/octet-stream");
+        if (length == UNKNOWN_LENGTH) {
+            connection.setChunkedStreamingMode(BUFFER_SIZE);
+        } else {
+            connection.setFixedLengthStreamingMode(length);
+        }
+
+        final long start = System.nanoTime();
+        long lastReport = start;
+        long total = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (Timer.Context ignored = uploads.time()) {
+            try (OutputStream out = connection.getOutputStream()) {
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    total += read;
+                    uploadedBytes.mark(read);
+                    long now = System.nanoTime();
+                    if (now - lastReport > PROGRESS_INTERVAL_NANOS) {
+                        LOG.info(String.format("uploading %s: %.1f MiB at %.1f MiB/s", fileName, total / BYTES_IN_MEGABYTE,
+                                throughput(total, now - start)));
+                        lastReport = now;
+                    }
+                }
+            }
+            checkResponse(connection);
+        } catch (IOException e) {
+            failures.mark();
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        LOG.info(String.format("uploaded %s: %.1f MiB in %.1f s at %.1f MiB/s", fileName, total / BYTES_IN_MEGABYTE,
+                elapsed / (double)TimeUnit.SECONDS.toNanos(1), throughput(total, elapsed)));
+        return total;
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes / BYTES_IN_MEGABYTE / (nanos / (double)TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private HttpURLConnection open(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Authorization", "Bearer " + zenodoToken);
+        return connection;
+    }
+
+    private static void checkResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if (code < HttpURLConnection.HTTP_OK || code >= HttpURLConnection.HTTP_MULT_CHOICE) {
+            throw new IOException(connection.getRequestMethod() + " " + connection.getURL() + " failed with " + code + " " + connection
+                    .getResponseMessage());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import com.google.gson.Gson;
+import io.dockstore.common.model.DOIMessage;
+import io.dockstore.consumer.handler.MessageHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EventConsumerTest {
+
+    private static final String TYPE = "test";
+    private static final int WORKERS = 4;
+
+    @Test
+    public void testBatchesAcrossWorkers() throws InterruptedException {
+        InMemorySQS sqs = new InMemorySQS();
+        final int messageCount = 25;
+        for (int i = 0; i < messageCount; i++) {
+            sqs.send(TYPE, "group" + i, body(i));
+        }
+        RecordingHandler handler = new RecordingHandler(message -> true, () -> sleep(100));
+        EventConsumer consumer = new EventConsumer(sqs, "queue", Collections.singletonMap(TYPE, handler), WORKERS, 1);
+        while (sqs.getVisible() > 0) {
+            consumer.receive();
+        }
+        consumer.shutdown();
+
+        Assert.assertEquals(messageCount, sqs.getDeleted().size());
+        Assert.assertTrue("messages should be received in batches", sqs.getReceiveCalls() < messageCount);
+        Assert.assertTrue("messages should be handled in parallel", handler.maxConcurrent.get() > 1);
+        Assert.assertTrue("no more messages than workers in flight", handler.maxConcurrent.get() <= WORKERS);
+    }
+
+    @Test
+    public void testHeartbeat() throws InterruptedException {
+        InMemorySQS sqs = new InMemorySQS();
+        sqs.send(TYPE, "entry", body(0));
+        // the message is handled until its visibility has been extended, rather than for longer than some guessed time
+        AtomicBoolean extended = new AtomicBoolean();
+        RecordingHandler handler = new RecordingHandler(message -> extended.get(), () -> {
+            try {
+                extended.set(sqs.awaitVisibilityExtension(1, TimeUnit.MINUTES));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        EventConsumer consumer = new EventConsumer(sqs, "queue", Collections.singletonMap(TYPE, handler), WORKERS, 1);
+        consumer.receive();
+        consumer.shutdown();
+
+        Assert.assertTrue("visibility of long running messages should be extended", extended.get());
+        Assert.assertEquals(1, sqs.getDeleted().size());
+    }
+
+    @Test
+    public void testReceiveAfterShutdown() throws InterruptedException {
+        InMemorySQS sqs = new InMemorySQS();
+        sqs.send(TYPE, "entry", body(0));
+        RecordingHandler handler = new RecordingHandler(message -> true, () -> { });
+        EventConsumer consumer = new EventConsumer(sqs, "queue", Collections.singletonMap(TYPE, handler), WORKERS, 1);
+        Assert.assertFalse(consumer.isShutdown());
+        consumer.shutdown();
+
+        Assert.assertTrue("the receive loop should stop", consumer.isShutdown());
+        Assert.assertEquals(0, consumer.receive());
+        Assert.assertEquals("the message should stay on the queue for another consumer", 1, sqs.getVisible());
+        Assert.assertTrue(handler.handled.isEmpty());
+    }
+
+    @Test
+    public void testGroupOrderAndRequeue() throws InterruptedException {
+        InMemorySQS sqs = new InMemorySQS();
+        for (int i = 0; i < 3; i++) {
+            sqs.send(TYPE, "entry", body(i));
+        }
+        // the first attempt at the second message fails
+        AtomicInteger failures = new AtomicInteger(1);
+        RecordingHandler handler = new RecordingHandler(message -> message.getEntryId() != 1 || failures.getAndDecrement() <= 0, () -> { });
+        EventConsumer consumer = new EventConsumer(sqs, "queue", Collections.singletonMap(TYPE, handler), WORKERS, 1);
+        while (sqs.getDeleted().size() < 3) {
+            consumer.receive();
+        }
+        consumer.shutdown();
+
+        // the third message is not handled until the second has been
+        List<Long> handled = new ArrayList<>(handler.handled);
+        Assert.assertEquals(Long.valueOf(2), handled.get(handled.size() - 1));
+        Assert.assertEquals(handled.lastIndexOf(2L), handled.indexOf(2L));
+        Assert.assertTrue(handled.lastIndexOf(1L) < handled.indexOf(2L));
+    }
+
+    private static String body(long entryId) {
+        DOIMessage message = new DOIMessage();
+        message.setEntryId(entryId);
+        return new Gson().toJson(message);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class RecordingHandler implements MessageHandler<DOIMessage> {
+        private final Predicate<DOIMessage> outcome;
+        private final Runnable work;
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+        private final List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * @param outcome whether a message is handled successfully, decided after the work is done
+         * @param work    what handling a message takes
+         */
+        private RecordingHandler(Predicate<DOIMessage> outcome, Runnable work) {
+            this.outcome = outcome;
+            this.work = work;
+        }
+
+        @Override
+        public boolean handleMessage(DOIMessage message) {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            work.run();
+            handled.add(message.getEntryId());
+            concurrent.decrementAndGet();
+            return outcome.test(message);
+        }
+
+        @Override
+        public String messageTypeHandled() {
+            return TYPE;
+        }
+
+        @Override
+        public Class<DOIMessage> messageClassHandled() {
+            return DOIMessage.class;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+/**
+ * A single queue kept in memory, enough of SQS to exercise the consumer without localstack.
+ * Received messages stay hidden until they are deleted or released, visibility timeouts never run out.
+ */
+class InMemorySQS extends AbstractAmazonSQS {
+
+    private final Map<String, Message> visible = new LinkedHashMap<>();
+    private final Map<String, Message> hidden = new LinkedHashMap<>();
+    private final List<String> deleted = new ArrayList<>();
+    private int receiveCalls = 0;
+    private int visibilityExtensions = 0;
+    private final CountDownLatch extended = new CountDownLatch(1);
+
+    synchronized void send(String type, String group, String body) {
+        Message message = new Message().withMessageId(UUID.randomUUID().toString()).withBody(body)
+                .addMessageAttributesEntry("type", new MessageAttributeValue().withDataType("String").withStringValue(type))
+                .addAttributesEntry(MessageSystemAttributeName.MessageGroupId.toString(), group);
+        visible.put(message.getMessageId(), message);
+    }
+
+    synchronized List<String> getDeleted() {
+        return new ArrayList<>(deleted);
+    }
+
+    synchronized int getVisible() {
+        return visible.size();
+    }
+
+    synchronized int getReceiveCalls() {
+        return receiveCalls;
+    }
+
+    synchronized int getVisibilityExtensions() {
+        return visibilityExtensions;
+    }
+
+    /**
+     * @return true once the visibility of a message has been extended, false if that did not happen in time
+     */
+    boolean awaitVisibilityExtension(long timeout, TimeUnit unit) throws InterruptedException {
+        return extended.await(timeout, unit);
+    }
+
+    @Override
+    public synchronized ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+        receiveCalls++;
+        List<Message> received = new ArrayList<>();
+        // like a FIFO queue, nothing more from a group while one of its messages is in flight
+        Set<String> busyGroups = hidden.values().stream().map(InMemorySQS::group).collect(Collectors.toSet());
+        for (Message message : new ArrayList<>(visible.values())) {
+            if (received.size() == request.getMaxNumberOfMessages()) {
+                break;
+            }
+            if (busyGroups.contains(group(message))) {
+                continue;
+            }
+            visible.remove(message.getMessageId());
+            message.setReceiptHandle(UUID.randomUUID().toString());
+            hidden.put(message.getReceiptHandle(), message);
+            received.add(message.clone());
+        }
+        return new ReceiveMessageResult().withMessages(received);
+    }
+
+    private static String group(Message message) {
+        return message.getAttributes().get(MessageSystemAttributeName.MessageGroupId.toString());
+    }
+
+    @Override
+    public synchronized DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult().withSuccessful(new ArrayList<>()).withFailed(new ArrayList<>());
+        for (DeleteMessageBatchRequestEntry entry : request.getEntries()) {
+            Message message = hidden.remove(entry.getReceiptHandle());
+            if (message == null || !message.getMessageId().equals(entry.getId())) {
+                result.getFailed().add(new BatchResultErrorEntry().withId(entry.getId()).withCode("ReceiptHandleIsInvalid"));
+            } else {
+                deleted.add(message.getMessageId());
+                result.getSuccessful().add(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized ChangeMessageVisibilityResult changeMessageVisibility(ChangeMessageVisibilityRequest request) {
+        if (request.getVisibilityTimeout() == 0 && hidden.containsKey(request.getReceiptHandle())) {
+            Message message = hidden.remove(request.getReceiptHandle());
+            visible.put(message.getMessageId(), message);
+        }
+        return new ChangeMessageVisibilityResult();
+    }
+
+    @Override
+    public synchronized ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest request) {
+        for (ChangeMessageVisibilityBatchRequestEntry ignored : request.getEntries()) {
+            visibilityExtensions++;
+            extended.countDown();
+        }
+        return new ChangeMessageVisibilityBatchResult().withSuccessful(Collections.emptyList()).withFailed(Collections.emptyList());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.consumer.handler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZenodoBucketClientTest {
+
+    private final List<String> contentLengths = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> transferEncodings = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger status = new AtomicInteger(HttpURLConnection.HTTP_CREATED);
+    private HttpServer server;
+    private String bucketURL;
+
+    @Before
+    public void startBucket() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/bucket", exchange -> {
+            contentLengths.add(exchange.getRequestHeaders().getFirst("Content-Length"));
+            transferEncodings.add(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+            received.add(ByteStreams.toByteArray(exchange.getRequestBody()).length);
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        bucketURL = "http://localhost:" + server.getAddress().getPort() + "/bucket";
+    }
+
+    @After
+    public void stopBucket() {
+        server.stop(0);
+    }
+
+    @Test
+    public void contentOfUnknownLengthIsSentChunkedAsItIsRead() throws IOException {
+        MetricRegistry metrics = new MetricRegistry();
+        ZenodoBucketClient client = new ZenodoBucketClient("unused", "token", metrics);
+        byte[] image = new byte[3 * 1024 * 1024 + 17];
+
+        long uploaded = client.upload(bucketURL, "image.tar", new ByteArrayInputStream(image));
+
+        Assert.assertEquals(image.length, uploaded);
+        Assert.assertEquals(Collections.singletonList(null), contentLengths);
+        Assert.assertEquals(Collections.singletonList("chunked"), transferEncodings);
+        Assert.assertEquals(Collections.singletonList(image.length), received);
+        Assert.assertEquals(1, metrics.timer(MetricRegistry.name(ZenodoBucketClient.class, "uploads")).getCount());
+        Assert.assertEquals(image.length, metrics.meter(MetricRegistry.name(ZenodoBucketClient.class, "bytes")).getCount());
+    }
+
+    @Test
+    public void contentOfKnownLengthIsSentWithContentLength() throws IOException {
+        ZenodoBucketClient client = new ZenodoBucketClient("unused", "token", new MetricRegistry());
+        byte[] descriptor = "cwlVersion: v1.0".getBytes(StandardCharsets.UTF_8);
+
+        client.upload(bucketURL, "Dockstore.cwl", new ByteArrayInputStream(descriptor), descriptor.length);
+
+        Assert.assertEquals(Collections.singletonList(String.valueOf(descriptor.length)), contentLengths);
+        Assert.assertEquals("uploads are not chunked", Collections.singletonList(null), transferEncodings);
+        Assert.assertEquals(Collections.singletonList(descriptor.length), received);
+    }
+
+    @Test
+    public void rejectedUploadsFail() {
+        MetricRegistry metrics = new MetricRegistry();
+        ZenodoBucketClient client = new ZenodoBucketClient("unused", "token", metrics);
+        status.set(HttpURLConnection.HTTP_INTERNAL_ERROR);
+
+        try {
+            client.upload(bucketURL, "image.tar", new ByteArrayInputStream(new byte[1024]));
+            Assert.fail("an upload the bucket turned down should fail");
+        } catch (IOException e) {
+            Assert.assertEquals(1, metrics.meter(MetricRegistry.name(ZenodoBucketClient.class, "failures")).getCount());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.provision;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Optional extension for plugins whose destinations accept a file in parts, such as multipart uploads to object stores.
+ * For large files the Dockstore CLI uploads parts in parallel instead of calling {@link #uploadTo(String, Path, Optional)}.
+ * Parts may be uploaded in any order and retried.
+ */
+public interface ChunkedUploadInterface extends ProvisionInterface {
+
+    /**
+     * Smallest part that object stores such as S3 take, other than the last one
+     */
+    long DEFAULT_MINIMUM_PART_SIZE = 5L * 1024 * 1024;
+    /**
+     * Most parts that object stores such as S3 take in one upload
+     */
+    int DEFAULT_MAXIMUM_PARTS = 10000;
+
+    /**
+     * Parts other than the last are at least this size
+     * @return size in bytes
+     */
+    default long minimumPartSize() {
+        return DEFAULT_MINIMUM_PART_SIZE;
+    }
+
+    /**
+     * @return the most parts a single upload can have
+     */
+    default int maximumParts() {
+        return DEFAULT_MAXIMUM_PARTS;
+    }
+
+    /**
+     * Start an upload
+     * @param destPath a string indicating a destination for a file, for example `s3://upload.destination/output.bam`
+     * @param sourceFile a local file path where the file will be copied from
+     * @param metadata optional metadata describing the uploaded file that can be understood by the provisioning plugin
+     * @return an id for the upload, passed to the other methods
+     * @throws IOException if the upload could not be started
+     */
+    String initiateUpload(String destPath, Path sourceFile, Optional<String> metadata) throws IOException;
+
+    /**
+     * Upload one part
+     * @param uploadId id returned by {@link #initiateUpload(String, Path, Optional)}
+     * @param destPath the destination of the upload
+     * @param sourceFile the file being uploaded
+     * @param partNumber number of the part, starting at 1
+     * @param offset where the part starts in the file
+     * @param length size of the part
+     * @return what the destination needs to know about the part when completing the upload, such as its ETag
+     * @throws PartsNotSupportedException if the destination does not take parts, the file is then uploaded whole
+     * @throws IOException if the part could not be uploaded, it may be retried
+     */
+    String uploadPart(String uploadId, String destPath, Path sourceFile, int partNumber, long offset, long length) throws IOException;
+
+    /**
+     * Finish an upload once every part is uploaded
+     * @param uploadId id returned by {@link #initiateUpload(String, Path, Optional)}
+     * @param destPath the destination of the upload
+     * @param sourceFile the file that was uploaded
+     * @param parts what {@link #uploadPart(String, String, Path, int, long, long)} returned for each part, in part number order
+     * @throws IOException if the upload could not be completed
+     */
+    void completeUpload(String uploadId, String destPath, Path sourceFile, List<String> parts) throws IOException;
+
+    /**
+     * Optional method that can be overridden.
+     * Called when an upload fails, can be used to clean up parts that were uploaded.
+     * @param uploadId id returned by {@link #initiateUpload(String, Path, Optional)}
+     * @param destPath the destination of the upload
+     */
+    default void abortUpload(String uploadId, String destPath) {
+        // nothing to clean up by default
+    }
+}
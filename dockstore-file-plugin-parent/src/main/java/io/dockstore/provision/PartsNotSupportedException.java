@@ -0,0 +1,32 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.provision;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Thrown by {@link ChunkedUploadInterface#uploadPart(String, String, Path, int, long, long)} when the destination does not take
+ * files in parts at all, as opposed to a part that failed and may be retried.
+ * Thrown for the first part, nothing has been uploaded and the Dockstore CLI uploads the whole file with
+ * {@link ProvisionInterface#uploadTo(String, Path, java.util.Optional)} instead.
+ */
+public class PartsNotSupportedException extends IOException {
+
+    public PartsNotSupportedException(String message) {
+        super(message);
+    }
+}
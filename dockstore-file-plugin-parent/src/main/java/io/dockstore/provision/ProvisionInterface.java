@@ -77,6 +77,17 @@ public interface ProvisionInterface extends ExtensionPoint {
         return true;
     }
 
+    /**
+     * Optional method that can be overridden.
+     * Called after downloading a file, the Dockstore CLI checks the downloaded file against the checksum.
+     * @param sourcePath the source that was downloaded from
+     * @return the checksum the source has for the file as algorithm$hex, for example `md5$1b2cf535f27731c974343645a3985328`
+     *         (md5, sha1, sha256 and crc32c are checked), empty if unknown
+     */
+    default Optional<String> checksumOf(String sourcePath) {
+        return Optional.empty();
+    }
+
     void setConfiguration(Map<String, String> config);
 
 }
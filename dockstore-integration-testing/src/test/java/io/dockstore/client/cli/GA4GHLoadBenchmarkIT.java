@@ -0,0 +1,354 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.client.cli;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.Response;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.dockstore.common.BenchmarkTest;
+import io.dockstore.common.Registry;
+import io.dockstore.common.SourceControl;
+import io.dockstore.webservice.DockstoreWebserviceApplication;
+import io.dockstore.webservice.core.SourceFile;
+import io.dockstore.webservice.core.Tag;
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.ToolMode;
+import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.core.WorkflowMode;
+import io.dockstore.webservice.core.WorkflowVersion;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load test of the read-only endpoints against a seeded catalogue of synthetic tools and workflows.
+ * Nothing is fetched from GitHub or Quay.io, the catalogue is written straight to the testing database.
+ * <p>
+ * Sizes can be set with system properties, e.g.
+ * mvn verify -P benchmark-tests -Dit.test=GA4GHLoadBenchmarkIT -Dloadtest.tools=5000 -Dloadtest.concurrency=32
+ * <ul>
+ * <li>loadtest.tools and loadtest.workflows, the size of the catalogue (default 2000 each)</li>
+ * <li>loadtest.versions, versions per entry (default 5)</li>
+ * <li>loadtest.concurrency, concurrent clients (default 16)</li>
+ * <li>loadtest.requests, measured requests per endpoint (default 1000) after loadtest.warmup requests (default 100)</li>
+ * <li>loadtest.seed, for the random choice of entries (default 42)</li>
+ * </ul>
+ * p50/p99 latency, throughput, errors and heap are logged per endpoint and written to target/loadtest-results.json
+ * so that runs can be compared.
+ *
+ * @author dyuen
+ */
+@Category(BenchmarkTest.class)
+public class GA4GHLoadBenchmarkIT extends BaseIT {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GA4GHLoadBenchmarkIT.class);
+
+    private static final int TOOLS = Integer.getInteger("loadtest.tools", 2000);
+    private static final int WORKFLOWS = Integer.getInteger("loadtest.workflows", 2000);
+    private static final int VERSIONS = Integer.getInteger("loadtest.versions", 5);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 16);
+    private static final int REQUESTS = Integer.getInteger("loadtest.requests", 1000);
+    private static final int WARMUP = Integer.getInteger("loadtest.warmup", 100);
+    private static final long SEED = Long.getLong("loadtest.seed", 42L);
+
+    private static final int BATCH_SIZE = 50;
+    private static final int NAMESPACES = 50;
+    private static final String CWL = "cwlVersion: v1.0\nclass: CommandLineTool\nbaseCommand: echo\ninputs:\n  message:\n    type: string\n"
+        + "    inputBinding:\n      position: 1\noutputs: []\n";
+    private static final String DOCKERFILE = "FROM ubuntu:16.04\nRUN apt-get update\n";
+
+    private static Client client;
+    private final Random random = new Random(SEED);
+
+    @BeforeClass
+    public static void seedCatalogue() {
+        client = ClientBuilder.newClient();
+        SessionFactory sessionFactory = SUPPORT.<DockstoreWebserviceApplication>getApplication().getHibernate().getSessionFactory();
+        long start = System.nanoTime();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            for (int i = 0; i < TOOLS; i++) {
+                saveTool(session, i);
+                flushBatch(session, i);
+            }
+            for (int i = 0; i < WORKFLOWS; i++) {
+                saveWorkflow(session, i);
+                flushBatch(session, i);
+            }
+            transaction.commit();
+        }
+        LOG.info(String.format("seeded %d tools and %d workflows with %d versions each in %d s", TOOLS, WORKFLOWS, VERSIONS,
+            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)));
+    }
+
+    @AfterClass
+    public static void closeClient() {
+        client.close();
+    }
+
+    @Before
+    @Override
+    public void resetDBBetweenTests() {
+        // keep the seeded catalogue
+    }
+
+    @Test
+    public void testReadOnlyEndpoints() throws Exception {
+        Map<String, Function<Random, String>> endpoints = new LinkedHashMap<>();
+        final String ga4gh = DockstoreWebserviceApplication.GA4GH_API_PATH;
+        endpoints.put("ga4gh tools", r -> ga4gh + "/tools?limit=100&offset=" + r.nextInt(Math.max(1, (TOOLS + WORKFLOWS) / 100)));
+        endpoints.put("ga4gh tool descriptor", r -> {
+            int i = r.nextInt(TOOLS);
+            return ga4gh + "/tools/" + encode("quay.io/" + namespace(i) + "/tool" + i) + "/versions/" + version(r.nextInt(VERSIONS)) + "/CWL/descriptor";
+        });
+        endpoints.put("ga4gh workflow descriptor", r -> {
+            int i = r.nextInt(WORKFLOWS);
+            return ga4gh + "/tools/" + encode("#workflow/github.com/" + namespace(i) + "/workflow" + i) + "/versions/" + version(r.nextInt(VERSIONS))
+                + "/CWL/descriptor";
+        });
+        endpoints.put("published tools", r -> "/containers/published");
+        endpoints.put("published workflows", r -> "/workflows/published");
+        endpoints.put("search tools", r -> "/containers/search?pattern=" + namespace(r.nextInt(NAMESPACES)));
+        endpoints.put("search workflows", r -> "/workflows/search?pattern=" + namespace(r.nextInt(NAMESPACES)));
+
+        List<Result> results = new ArrayList<>();
+        for (Map.Entry<String, Function<Random, String>> endpoint : endpoints.entrySet()) {
+            drive(endpoint.getValue(), WARMUP);
+            Result result = drive(endpoint.getValue(), REQUESTS);
+            result.endpoint = endpoint.getKey();
+            results.add(result);
+            LOG.info(result.toString());
+        }
+
+        File report = new File("target", "loadtest-results.json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report, new Report(results));
+        LOG.info("load test results written to " + report.getAbsolutePath());
+        for (Result result : results) {
+            Assert.assertEquals(result.endpoint + " should not have errors", 0, result.errors);
+        }
+    }
+
+    /**
+     * Send requests from a fixed number of concurrent clients, sampling the heap while they run
+     */
+    private Result drive(Function<Random, String> path, int requests) throws InterruptedException, ExecutionException {
+        final String base = "http://localhost:" + SUPPORT.getLocalPort();
+        final long[] latencies = new long[requests];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicLong maxHeap = new AtomicLong();
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> maxHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max), 0, 100, TimeUnit.MILLISECONDS);
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < CONCURRENCY; c++) {
+            // each client gets its own generator so that clients do not contend on one
+            final Random clientRandom = new Random(random.nextLong());
+            futures.add(clients.submit(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    long requestStart = System.nanoTime();
+                    Response response = client.target(base + path.apply(clientRandom)).request().get();
+                    // read the whole body, it is part of the cost
+                    response.readEntity(String.class);
+                    latencies[i] = System.nanoTime() - requestStart;
+                    if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+        sampler.shutdown();
+
+        Arrays.sort(latencies);
+        Result result = new Result();
+        result.requests = requests;
+        result.errors = errors.get();
+        result.concurrency = CONCURRENCY;
+        result.p50Millis = percentile(latencies, 50);
+        result.p99Millis = percentile(latencies, 99);
+        result.maxMillis = latencies.length == 0 ? 0 : latencies[latencies.length - 1] / (double)TimeUnit.MILLISECONDS.toNanos(1);
+        result.throughput = requests / (elapsed / (double)TimeUnit.SECONDS.toNanos(1));
+        result.maxHeapMegabytes = maxHeap.get() / (1024 * 1024);
+        return result;
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int)Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / (double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static void flushBatch(Session session, int i) {
+        if (i % BATCH_SIZE == BATCH_SIZE - 1) {
+            session.flush();
+            session.clear();
+        }
+    }
+
+    private static void saveTool(Session session, int i) {
+        Tool tool = new Tool();
+        tool.setMode(ToolMode.MANUAL_IMAGE_PATH);
+        tool.setRegistry(Registry.QUAY_IO.toString());
+        tool.setNamespace(namespace(i));
+        tool.setName("tool" + i);
+        tool.setGitUrl("git@github.com:" + namespace(i) + "/tool" + i + ".git");
+        tool.setAuthor("Load Test");
+        tool.setDescription("Synthetic tool " + i + " for load testing");
+        tool.setIsPublished(true);
+        tool.setLastUpdated(new Date());
+        for (int v = 0; v < VERSIONS; v++) {
+            Tag tag = new Tag();
+            tag.setName(version(v));
+            tag.setReference(version(v));
+            tag.setImageId("sha256:" + i + "-" + v);
+            tag.setValid(true);
+            tag.setAutomated(false);
+            tag.addSourceFile(sourceFile(SourceFile.FileType.DOCKERFILE, "/Dockerfile", DOCKERFILE));
+            tag.addSourceFile(sourceFile(SourceFile.FileType.DOCKSTORE_CWL, "/Dockstore.cwl", CWL));
+            session.save(tag);
+            tool.addTag(tag);
+        }
+        session.save(tool);
+    }
+
+    private static void saveWorkflow(Session session, int i) {
+        Workflow workflow = new Workflow();
+        workflow.setMode(WorkflowMode.FULL);
+        workflow.setSourceControl(SourceControl.GITHUB);
+        workflow.setOrganization(namespace(i));
+        workflow.setRepository("workflow" + i);
+        workflow.setDescriptorType("cwl");
+        workflow.setDefaultWorkflowPath("/Dockstore.cwl");
+        workflow.setGitUrl("git@github.com:" + namespace(i) + "/workflow" + i + ".git");
+        workflow.setAuthor("Load Test");
+        workflow.setDescription("Synthetic workflow " + i + " for load testing");
+        workflow.setIsPublished(true);
+        workflow.setLastUpdated(new Date());
+        for (int v = 0; v < VERSIONS; v++) {
+            WorkflowVersion version = new WorkflowVersion();
+            version.setName(version(v));
+            version.setReference(version(v));
+            version.setWorkflowPath("/Dockstore.cwl");
+            version.setValid(true);
+            version.addSourceFile(sourceFile(SourceFile.FileType.DOCKSTORE_CWL, "/Dockstore.cwl", CWL));
+            session.save(version);
+            workflow.addWorkflowVersion(version);
+        }
+        session.save(workflow);
+    }
+
+    private static SourceFile sourceFile(SourceFile.FileType type, String path, String content) {
+        SourceFile file = new SourceFile();
+        file.setType(type);
+        file.setPath(path);
+        file.setContent(content);
+        return file;
+    }
+
+    private static String namespace(int i) {
+        return "loadtest" + (i % NAMESPACES);
+    }
+
+    private static String version(int v) {
+        return "1." + v;
+    }
+
+    private static String encode(String id) {
+        try {
+            return URLEncoder.encode(id, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Results for one endpoint, latencies are in milliseconds and throughput in requests per second
+     */
+    public static class Result {
+        public String endpoint;
+        public int requests;
+        public int errors;
+        public int concurrency;
+        public double p50Millis;
+        public double p99Millis;
+        public double maxMillis;
+        public double throughput;
+        public long maxHeapMegabytes;
+
+        @Override
+        public String toString() {
+            return String.format("%-28s p50 %8.1f ms  p99 %8.1f ms  max %8.1f ms  %8.1f req/s  %d errors  max heap %d MiB", endpoint, p50Millis,
+                p99Millis, maxMillis, throughput, errors, maxHeapMegabytes);
+        }
+    }
+
+    public static class Report {
+        public final int tools = TOOLS;
+        public final int workflows = WORKFLOWS;
+        public final int versions = VERSIONS;
+        public final String javaVersion = System.getProperty("java.version");
+        public final long maxHeapMegabytes = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+        public final List<Result> results;
+
+        Report(List<Result> results) {
+            this.results = results;
+        }
+    }
+}
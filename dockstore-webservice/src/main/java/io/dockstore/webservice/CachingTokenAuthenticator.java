@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice;
+
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import io.dockstore.webservice.core.Token;
+import io.dockstore.webservice.core.User;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.Authenticator;
+
+/**
+ * Caches authenticated users by the SHA-256 digest of their token so that most requests do not need a database round-trip.
+ * Unknown tokens are not cached, so a token is usable as soon as it has been created.
+ * Entries have to be invalidated explicitly when a token is deleted or its contents change.
+ *
+ * @author dyuen
+ */
+public class CachingTokenAuthenticator implements Authenticator<String, User> {
+
+    private final Authenticator<String, User> underlying;
+    private final Cache<String, User> cache;
+    private final Timer loads;
+
+    /**
+     * @param metricRegistry where cache statistics are reported
+     * @param underlying     the authenticator used on a cache miss
+     * @param cacheSpec      size and expiry of the cache, statistics are always recorded
+     */
+    public CachingTokenAuthenticator(MetricRegistry metricRegistry, Authenticator<String, User> underlying, CaffeineSpec cacheSpec) {
+        this.underlying = underlying;
+        this.loads = metricRegistry.timer(MetricRegistry.name(CachingTokenAuthenticator.class, "loads"));
+        this.cache = Caffeine.from(cacheSpec).recordStats().build();
+        metricRegistry.register(MetricRegistry.name(CachingTokenAuthenticator.class, "hit-ratio"), (Gauge<Double>)() -> cache.stats().hitRate());
+        metricRegistry.register(MetricRegistry.name(CachingTokenAuthenticator.class, "evictions"), (Gauge<Long>)() -> cache.stats().evictionCount());
+        metricRegistry.register(MetricRegistry.name(CachingTokenAuthenticator.class, "size"), (Gauge<Long>)cache::estimatedSize);
+    }
+
+    @Override
+    public Optional<User> authenticate(String credentials) throws AuthenticationException {
+        try {
+            return Optional.ofNullable(cache.get(Token.hash(credentials), tokenHash -> load(credentials)));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AuthenticationException) {
+                throw (AuthenticationException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Discard the cached user for a token, use before deleting a token or replacing its contents.
+     *
+     * @param credentials the contents of the token
+     */
+    public void invalidate(String credentials) {
+        cache.invalidate(Token.hash(credentials));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private User load(String credentials) {
+        try (Timer.Context ignored = loads.time()) {
+            // returning null leaves unknown tokens out of the cache
+            return underlying.authenticate(credentials).orElse(null);
+        } catch (AuthenticationException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package io.dockstore.webservice;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -29,4 +30,11 @@ public class CustomWebApplicationException extends WebApplicationException {
         super(Response.status(status).entity(message).type(MediaType.TEXT_PLAIN).build());
     }
 
+    /**
+     * For when the client should try again later, such as when a provider is rate limiting or unavailable
+     */
+    public CustomWebApplicationException(String message, int status, long retryAfterSeconds) {
+        super(Response.status(status).entity(message).type(MediaType.TEXT_PLAIN).header(HttpHeaders.RETRY_AFTER, retryAfterSeconds).build());
+    }
+
 }
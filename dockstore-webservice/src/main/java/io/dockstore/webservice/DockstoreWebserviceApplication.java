@@ -22,12 +22,13 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.EnumSet;
-import java.util.concurrent.TimeUnit;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.google.common.collect.ImmutableList;
 import io.dockstore.webservice.core.FileFormat;
 import io.dockstore.webservice.core.Group;
 import io.dockstore.webservice.core.Label;
@@ -40,12 +41,20 @@ import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowVersion;
 import io.dockstore.webservice.doi.DOIGeneratorFactory;
 import io.dockstore.webservice.helpers.ElasticManager;
+import io.dockstore.webservice.helpers.HibernateCacheMetrics;
 import io.dockstore.webservice.helpers.PersistenceExceptionMapper;
+import io.dockstore.webservice.helpers.ProviderGuard;
+import io.dockstore.webservice.helpers.ProviderMetrics;
+import io.dockstore.webservice.helpers.QueryStatistics;
+import io.dockstore.webservice.helpers.QueryStatisticsEventListener;
+import io.dockstore.webservice.helpers.QueryStatisticsTask;
+import io.dockstore.webservice.helpers.ReferenceRefreshQueue;
 import io.dockstore.webservice.helpers.TransactionExceptionMapper;
 import io.dockstore.webservice.jdbi.FileDAO;
 import io.dockstore.webservice.jdbi.FileFormatDAO;
 import io.dockstore.webservice.jdbi.GroupDAO;
 import io.dockstore.webservice.jdbi.LabelDAO;
+import io.dockstore.webservice.jdbi.RoutingSessionFactory;
 import io.dockstore.webservice.jdbi.TagDAO;
 import io.dockstore.webservice.jdbi.TokenDAO;
 import io.dockstore.webservice.jdbi.ToolDAO;
@@ -64,6 +73,8 @@ import io.dockstore.webservice.resources.QuayIOAuthenticationResource;
 import io.dockstore.webservice.resources.TemplateHealthCheck;
 import io.dockstore.webservice.resources.TokenResource;
 import io.dockstore.webservice.resources.UserResource;
+import io.dockstore.webservice.resources.WebhookRefresher;
+import io.dockstore.webservice.resources.WebhookResource;
 import io.dockstore.webservice.resources.WorkflowResource;
 import io.dockstore.webservice.resources.proposedGA4GH.ToolsApiExtendedServiceImpl;
 import io.dockstore.webservice.resources.proposedGA4GH.ToolsExtendedApi;
@@ -71,11 +82,12 @@ import io.dropwizard.Application;
 import io.dropwizard.assets.AssetsBundle;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthValueFactoryProvider;
-import io.dropwizard.auth.CachingAuthenticator;
 import io.dropwizard.auth.oauth.OAuthCredentialAuthFilter;
 import io.dropwizard.client.HttpClientBuilder;
 import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.hibernate.HibernateBundle;
+import io.dropwizard.hibernate.SessionFactoryFactory;
+import io.dropwizard.hibernate.UnitOfWorkApplicationListener;
 import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
 import io.dropwizard.migrations.MigrationsBundle;
 import io.dropwizard.setup.Bootstrap;
@@ -99,6 +111,9 @@ import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlets.CrossOriginFilter;
 import org.glassfish.jersey.CommonProperties;
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.JCacheRegionFactory;
+import org.hibernate.cfg.AvailableSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -114,19 +129,53 @@ import static org.eclipse.jetty.servlets.CrossOriginFilter.ALLOWED_ORIGINS_PARAM
 public class DockstoreWebserviceApplication extends Application<DockstoreWebserviceConfiguration> {
     public static final String GA4GH_API_PATH = "/api/ga4gh/v2";
     public static final String GA4GH_API_PATH_V1 = "/api/ga4gh/v1";
+    /**
+     * Name of the session factory for read-only endpoints, use with {@code @UnitOfWork(value = READ_ONLY, readOnly = true)}
+     */
+    public static final String READ_ONLY = "readOnlyHibernate";
     private static final Logger LOG = LoggerFactory.getLogger(DockstoreWebserviceApplication.class);
     private static final int BYTES_IN_KILOBYTE = 1024;
     private static final int KILOBYTES_IN_MEGABYTE = 1024;
     private static final int CACHE_IN_MB = 100;
     private static Cache cache = null;
+    private static final ImmutableList<Class<?>> ENTITIES = ImmutableList.of(Token.class, Tool.class, User.class, Group.class, Tag.class,
+            Label.class, SourceFile.class, Workflow.class, WorkflowVersion.class, FileFormat.class);
 
     private final HibernateBundle<DockstoreWebserviceConfiguration> hibernate = new HibernateBundle<DockstoreWebserviceConfiguration>(
-            Token.class, Tool.class, User.class, Group.class, Tag.class, Label.class, SourceFile.class, Workflow.class,
-            WorkflowVersion.class, FileFormat.class) {
+            ENTITIES, new SessionFactoryFactory()) {
         @Override
         public DataSourceFactory getDataSourceFactory(DockstoreWebserviceConfiguration configuration) {
             return configuration.getDataSourceFactory();
         }
+
+        @Override
+        protected void configure(org.hibernate.cfg.Configuration configuration) {
+            configureCache(configuration);
+            QueryStatistics.configure(configuration);
+        }
+    };
+
+    private final HibernateBundle<DockstoreWebserviceConfiguration> readOnlyHibernate = new HibernateBundle<DockstoreWebserviceConfiguration>(
+            ENTITIES, new SessionFactoryFactory()) {
+        @Override
+        public DataSourceFactory getDataSourceFactory(DockstoreWebserviceConfiguration configuration) {
+            return configuration.getReadOnlyDataSourceFactory();
+        }
+
+        @Override
+        protected String name() {
+            return READ_ONLY;
+        }
+
+        @Override
+        protected void configure(org.hibernate.cfg.Configuration configuration) {
+            // a replica does not see the primary's evictions, rows cached from it could be served long after they changed
+            configuration.setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, "false");
+            configuration.setProperty(AvailableSettings.USE_QUERY_CACHE, "false");
+            QueryStatistics.configure(configuration);
+            // the schema belongs to the primary database, a replica cannot be changed and a second create would wipe it
+            configuration.setProperty(AvailableSettings.HBM2DDL_AUTO, "none");
+        }
     };
 
     public static void main(String[] args) throws Exception {
@@ -150,6 +199,7 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
 
         // setup hibernate+postgres
         bootstrap.addBundle(hibernate);
+        // readOnlyHibernate is only run when a replica is configured, see readOnlySessionFactory
 
         // serve static html as well
         bootstrap.addBundle(new AssetsBundle("/assets/", "/static/"));
@@ -178,9 +228,10 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
             }
             cache = new Cache(cacheDir, cacheSize);
         }
-        // match HttpURLConnection which does not have a timeout by default
-        OkHttpClient okHttpClient = new OkHttpClient().newBuilder().cache(cache).connectTimeout(0, TimeUnit.SECONDS)
-                .readTimeout(0, TimeUnit.SECONDS).writeTimeout(0, TimeUnit.SECONDS).build();
+        // unlike HttpURLConnection by default, do not wait forever on a provider that has stopped responding
+        // the configuration is not read yet, so this uses the default timeouts rather than those of a provider
+        OkHttpClient okHttpClient = ProviderGuard.withTimeouts(new OkHttpClient().newBuilder(), "default").cache(cache)
+                .addInterceptor(ProviderMetrics.cacheInterceptor()).build();
         try {
             // this can only be called once per JVM, a factory exception is thrown in our tests
             URL.setURLStreamHandlerFactory(new OkUrlFactory(okHttpClient));
@@ -194,6 +245,44 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         }
     }
 
+    /**
+     * Without a replica, read-only units of work use the primary session factory rather than a second pool against the same database
+     *
+     * @return the session factory of read-only units of work
+     */
+    private SessionFactory readOnlySessionFactory(DockstoreWebserviceConfiguration configuration, Environment environment) {
+        if (configuration.hasReadOnlyDatabase()) {
+            try {
+                readOnlyHibernate.run(configuration, environment);
+            } catch (Exception e) {
+                throw new RuntimeException("Could not connect to the read-only database", e);
+            }
+            return readOnlyHibernate.getSessionFactory();
+        }
+        // the listener the hibernate bundle registered opens sessions for @UnitOfWork, by name
+        UnitOfWorkApplicationListener listener = environment.jersey().getResourceConfig().getSingletons().stream()
+                .filter(UnitOfWorkApplicationListener.class::isInstance).map(UnitOfWorkApplicationListener.class::cast).findFirst()
+                .orElseThrow(() -> new IllegalStateException("The hibernate bundle did not register a unit of work listener"));
+        listener.registerSessionFactory(READ_ONLY, hibernate.getSessionFactory());
+        return hibernate.getSessionFactory();
+    }
+
+    private static void configureCache(org.hibernate.cfg.Configuration configuration) {
+        // second-level cache for reference data, regions are sized in application.conf
+        // any of these can be overridden in the database properties of the configuration file
+        setDefaultProperty(configuration, AvailableSettings.USE_SECOND_LEVEL_CACHE, "true");
+        setDefaultProperty(configuration, AvailableSettings.USE_QUERY_CACHE, "true");
+        setDefaultProperty(configuration, AvailableSettings.CACHE_REGION_FACTORY, JCacheRegionFactory.class.getName());
+        setDefaultProperty(configuration, JCacheRegionFactory.PROVIDER, "com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider");
+        setDefaultProperty(configuration, AvailableSettings.GENERATE_STATISTICS, "true");
+    }
+
+    private static void setDefaultProperty(org.hibernate.cfg.Configuration configuration, String key, String value) {
+        if (configuration.getProperty(key) == null) {
+            configuration.setProperty(key, value);
+        }
+    }
+
     private static void configureMapper(ObjectMapper objectMapper) {
         objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
         objectMapper.enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY);
@@ -218,25 +307,36 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         final TemplateHealthCheck healthCheck = new TemplateHealthCheck(configuration.getTemplate());
         environment.healthChecks().register("template", healthCheck);
 
-        final UserDAO userDAO = new UserDAO(hibernate.getSessionFactory());
-        final TokenDAO tokenDAO = new TokenDAO(hibernate.getSessionFactory());
-        final ToolDAO toolDAO = new ToolDAO(hibernate.getSessionFactory());
-        final WorkflowDAO workflowDAO = new WorkflowDAO(hibernate.getSessionFactory());
-        final WorkflowVersionDAO workflowVersionDAO = new WorkflowVersionDAO(hibernate.getSessionFactory());
-
-        final GroupDAO groupDAO = new GroupDAO(hibernate.getSessionFactory());
-        final TagDAO tagDAO = new TagDAO(hibernate.getSessionFactory());
-        final LabelDAO labelDAO = new LabelDAO(hibernate.getSessionFactory());
-        final FileDAO fileDAO = new FileDAO(hibernate.getSessionFactory());
-        final FileFormatDAO fileFormatDAO = new FileFormatDAO(hibernate.getSessionFactory());
+        // DAOs use the read-only session factory within read-only units of work
+        final SessionFactory sessionFactory = RoutingSessionFactory.create(hibernate.getSessionFactory(),
+                readOnlySessionFactory(configuration, environment));
+        final UserDAO userDAO = new UserDAO(sessionFactory);
+        final TokenDAO tokenDAO = new TokenDAO(sessionFactory);
+        final ToolDAO toolDAO = new ToolDAO(sessionFactory);
+        final WorkflowDAO workflowDAO = new WorkflowDAO(sessionFactory);
+        final WorkflowVersionDAO workflowVersionDAO = new WorkflowVersionDAO(sessionFactory);
+
+        final GroupDAO groupDAO = new GroupDAO(sessionFactory);
+        final TagDAO tagDAO = new TagDAO(sessionFactory);
+        final LabelDAO labelDAO = new LabelDAO(sessionFactory);
+        final FileDAO fileDAO = new FileDAO(sessionFactory);
+        final FileFormatDAO fileFormatDAO = new FileFormatDAO(sessionFactory);
+
+        environment.metrics().registerAll(new HibernateCacheMetrics(hibernate.getSessionFactory().getStatistics()));
+        ProviderMetrics.setRegistry(environment.metrics());
+        ProviderGuard.configure(configuration.getProviders());
+        final QueryStatisticsEventListener queryStatistics = new QueryStatisticsEventListener(environment.metrics(),
+                configuration.getQueryStatistics());
+        environment.jersey().register(queryStatistics);
+        environment.admin().addTask(new QueryStatisticsTask(queryStatistics));
 
         LOG.info("Cache directory for OkHttp is: " + cache.directory().getAbsolutePath());
         LOG.info("This is our custom logger saying that we're about to load authenticators");
         // setup authentication to allow session access in authenticators, see https://github.com/dropwizard/dropwizard/pull/1361
         SimpleAuthenticator authenticator = new UnitOfWorkAwareProxyFactory(getHibernate())
                 .create(SimpleAuthenticator.class, new Class[] { TokenDAO.class, UserDAO.class }, new Object[] { tokenDAO, userDAO });
-        CachingAuthenticator<String, User> cachingAuthenticator = new CachingAuthenticator<>(environment.metrics(), authenticator,
-                configuration.getAuthenticationCachePolicy());
+        CachingTokenAuthenticator cachingAuthenticator = new CachingTokenAuthenticator(environment.metrics(), authenticator,
+                CaffeineSpec.parse(configuration.getAuthenticationCachePolicy().toParsableString()));
         environment.jersey().register(new AuthDynamicFeature(
                 new OAuthCredentialAuthFilter.Builder<User>().setAuthenticator(cachingAuthenticator).setAuthorizer(new SimpleAuthorizer())
                         .setPrefix("Bearer").setRealm("SUPER SECRET STUFF").buildAuthFilter()));
@@ -255,6 +355,15 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         environment.jersey().register(dockerRepoResource);
         environment.jersey().register(new DockerRepoTagResource(toolDAO, tagDAO));
 
+        // pushes from source control are applied in the background, each with its own session
+        final WebhookRefresher webhookRefresher = new UnitOfWorkAwareProxyFactory(getHibernate()).create(WebhookRefresher.class,
+                new Class[] { WorkflowDAO.class, ToolDAO.class, WorkflowResource.class, DockerRepoResource.class },
+                new Object[] { workflowDAO, toolDAO, workflowResource, dockerRepoResource });
+        final ReferenceRefreshQueue referenceRefreshQueue = new ReferenceRefreshQueue(webhookRefresher::refresh,
+                configuration.getWebhooks().getDelaySeconds());
+        environment.lifecycle().manage(referenceRefreshQueue);
+        environment.jersey().register(new WebhookResource(configuration.getWebhooks(), referenceRefreshQueue));
+
         final GitHubComAuthenticationResource resource3 = new GitHubComAuthenticationResource(configuration.getGithubClientID(),
                 configuration.getGithubRedirectURI());
         environment.jersey().register(resource3);
@@ -283,7 +392,7 @@ public class DockstoreWebserviceApplication extends Application<DockstoreWebserv
         ToolsApiExtendedServiceImpl.setWorkflowDAO(workflowDAO);
         ToolsApiExtendedServiceImpl.setConfig(configuration);
 
-        DOIGeneratorFactory.setConfig(configuration);
+        environment.lifecycle().manage(DOIGeneratorFactory.setConfig(configuration));
 
         ToolsApi toolsApi = new ToolsApi(null);
         environment.jersey().register(toolsApi);
@@ -16,7 +16,9 @@
 
 package io.dockstore.webservice;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -35,6 +37,9 @@ public class DockstoreWebserviceConfiguration extends Configuration {
     @NotNull
     private DataSourceFactory database = new DataSourceFactory();
 
+    @Valid
+    private DataSourceFactory readOnlyDatabase;
+
     @Valid
     @NotNull
     private HttpClientConfiguration httpClient = new HttpClientConfiguration();
@@ -42,6 +47,15 @@ public class DockstoreWebserviceConfiguration extends Configuration {
     @Valid
     private ElasticSearchConfig esConfiguration = new ElasticSearchConfig();
 
+    @Valid
+    private QueryStatisticsConfig queryStatistics = new QueryStatisticsConfig();
+
+    @Valid
+    private WebhookConfig webhooks = new WebhookConfig();
+
+    @Valid
+    private Map<String, ProviderConfig> providers = new HashMap<>();
+
     @NotEmpty
     private String template;
 
@@ -106,6 +120,23 @@ public class DockstoreWebserviceConfiguration extends Configuration {
         return database;
     }
 
+    /**
+     * @return the pool used by read-only endpoints, a replica of the database if one is configured
+     */
+    @JsonProperty("readOnlyDatabase")
+    public DataSourceFactory getReadOnlyDataSourceFactory() {
+        return readOnlyDatabase == null ? database : readOnlyDatabase;
+    }
+
+    public boolean hasReadOnlyDatabase() {
+        return readOnlyDatabase != null;
+    }
+
+    @JsonProperty("readOnlyDatabase")
+    public void setReadOnlyDatabase(DataSourceFactory readOnlyDatabase) {
+        this.readOnlyDatabase = readOnlyDatabase;
+    }
+
     @JsonProperty("httpClient")
     public HttpClientConfiguration getHttpClientConfiguration() {
         return httpClient;
@@ -316,6 +347,36 @@ public class DockstoreWebserviceConfiguration extends Configuration {
         this.esConfiguration = esConfiguration;
     }
 
+    @JsonProperty
+    public QueryStatisticsConfig getQueryStatistics() {
+        return queryStatistics;
+    }
+
+    public void setQueryStatistics(QueryStatisticsConfig queryStatistics) {
+        this.queryStatistics = queryStatistics;
+    }
+
+    @JsonProperty
+    public WebhookConfig getWebhooks() {
+        return webhooks;
+    }
+
+    public void setWebhooks(WebhookConfig webhooks) {
+        this.webhooks = webhooks;
+    }
+
+    /**
+     * @return limits for calls to each provider, keyed by the names in {@link io.dockstore.webservice.helpers.ProviderMetrics}
+     */
+    @JsonProperty
+    public Map<String, ProviderConfig> getProviders() {
+        return providers;
+    }
+
+    public void setProviders(Map<String, ProviderConfig> providers) {
+        this.providers = providers;
+    }
+
     public String getUiPort() {
         return uiPort;
     }
@@ -380,4 +441,146 @@ public class DockstoreWebserviceConfiguration extends Configuration {
             this.port = port;
         }
     }
+
+    /**
+     * Requests over any of these are logged as slow, see {@link io.dockstore.webservice.helpers.QueryStatisticsEventListener}
+     */
+    public static class QueryStatisticsConfig {
+        private static final int DEFAULT_SLOW_QUERIES = 100;
+        private static final int DEFAULT_SLOW_ENTITY_LOADS = 1000;
+        private static final long DEFAULT_SLOW_DATABASE_MILLIS = 1000;
+
+        private int slowQueries = DEFAULT_SLOW_QUERIES;
+        private int slowEntityLoads = DEFAULT_SLOW_ENTITY_LOADS;
+        private long slowDatabaseMillis = DEFAULT_SLOW_DATABASE_MILLIS;
+
+        public int getSlowQueries() {
+            return slowQueries;
+        }
+
+        public void setSlowQueries(int slowQueries) {
+            this.slowQueries = slowQueries;
+        }
+
+        public int getSlowEntityLoads() {
+            return slowEntityLoads;
+        }
+
+        public void setSlowEntityLoads(int slowEntityLoads) {
+            this.slowEntityLoads = slowEntityLoads;
+        }
+
+        public long getSlowDatabaseMillis() {
+            return slowDatabaseMillis;
+        }
+
+        public void setSlowDatabaseMillis(long slowDatabaseMillis) {
+            this.slowDatabaseMillis = slowDatabaseMillis;
+        }
+    }
+
+    /**
+     * Push events from source control, see {@link io.dockstore.webservice.resources.WebhookResource}
+     */
+    public static class WebhookConfig {
+        private static final int DEFAULT_DELAY_SECONDS = 30;
+
+        /**
+         * The secret of each user's webhooks is derived from this one, which is never handed out, webhooks are turned off without one
+         */
+        private String secret;
+        /**
+         * How long to wait after the first push to a branch or tag before refreshing it, later pushes in that time are coalesced
+         */
+        private int delaySeconds = DEFAULT_DELAY_SECONDS;
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        public int getDelaySeconds() {
+            return delaySeconds;
+        }
+
+        public void setDelaySeconds(int delaySeconds) {
+            this.delaySeconds = delaySeconds;
+        }
+    }
+
+    /**
+     * Limits for calls to one source control or image registry provider, see {@link io.dockstore.webservice.helpers.ProviderGuard}
+     */
+    public static class ProviderConfig {
+        private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+        private static final int DEFAULT_READ_TIMEOUT_SECONDS = 30;
+        private static final int DEFAULT_MAX_CONCURRENT_CALLS = 20;
+        private static final long DEFAULT_MAX_WAIT_MILLIS = 500;
+        private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+        private static final int DEFAULT_OPEN_SECONDS = 30;
+
+        private int connectTimeoutSeconds = DEFAULT_CONNECT_TIMEOUT_SECONDS;
+        private int readTimeoutSeconds = DEFAULT_READ_TIMEOUT_SECONDS;
+        /**
+         * Calls to the provider that may be in flight at once, further calls wait up to maxWaitMillis and then fail
+         */
+        private int maxConcurrentCalls = DEFAULT_MAX_CONCURRENT_CALLS;
+        private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+        /**
+         * Consecutive failures that open the circuit, calls then fail straight away for openSeconds before one is let through to try again
+         */
+        private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+        private int openSeconds = DEFAULT_OPEN_SECONDS;
+
+        public int getConnectTimeoutSeconds() {
+            return connectTimeoutSeconds;
+        }
+
+        public void setConnectTimeoutSeconds(int connectTimeoutSeconds) {
+            this.connectTimeoutSeconds = connectTimeoutSeconds;
+        }
+
+        public int getReadTimeoutSeconds() {
+            return readTimeoutSeconds;
+        }
+
+        public void setReadTimeoutSeconds(int readTimeoutSeconds) {
+            this.readTimeoutSeconds = readTimeoutSeconds;
+        }
+
+        public int getMaxConcurrentCalls() {
+            return maxConcurrentCalls;
+        }
+
+        public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        public void setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public int getOpenSeconds() {
+            return openSeconds;
+        }
+
+        public void setOpenSeconds(int openSeconds) {
+            this.openSeconds = openSeconds;
+        }
+    }
 }
@@ -46,7 +46,15 @@ public class SimpleAuthenticator implements Authenticator<String, User> {
     @Override
     public Optional<User> authenticate(String credentials) throws AuthenticationException {
         LOG.debug("SimpleAuthenticator called with {}", credentials);
-        final Token token = dao.findByContent(credentials);
+        Token token = dao.findByTokenHash(Token.hash(credentials));
+        if (token == null) {
+            // tokens created before hashes were stored only have their contents, fill in the hash on first use
+            token = dao.findByContent(credentials);
+            if (token != null) {
+                token.setContent(credentials);
+                dao.update(token);
+            }
+        }
         if (token != null) {
             return Optional.of(userDAO.findById(token.getUserId()));
         }
@@ -49,6 +49,8 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.dockstore.webservice.helpers.EntryStarredSerializer;
 import io.swagger.annotations.ApiModelProperty;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Filter;
+import org.hibernate.annotations.FilterDef;
 import org.hibernate.annotations.UpdateTimestamp;
 
 /**
@@ -59,6 +61,7 @@ import org.hibernate.annotations.UpdateTimestamp;
 @Entity
 @Inheritance(strategy = InheritanceType.TABLE_PER_CLASS)
 @SuppressWarnings("checkstyle:magicnumber")
+@FilterDef(name = Entry.USER_FILTER, defaultCondition = "1 = 0")
 
 // TODO: Replace this with JPA when possible
 @NamedNativeQueries({
@@ -77,6 +80,11 @@ import org.hibernate.annotations.UpdateTimestamp;
             + " select 'workflow' as type, id from workflow where sourcecontrol = :one and organization = :two and repository = :three and workflowname IS NULL and ispublished = TRUE")})
 public abstract class Entry<S extends Entry, T extends Version> {
 
+    /**
+     * When enabled on a session, entries are loaded without the users that have control over them
+     */
+    public static final String USER_FILTER = "userFilter";
+
     /**
      * re-use existing generator for backwards compatibility
      */
@@ -100,6 +108,7 @@ public abstract class Entry<S extends Entry, T extends Version> {
     private SortedSet<Label> labels = new TreeSet<>();
 
     @ManyToMany(fetch = FetchType.LAZY)
+    @Filter(name = USER_FILTER)
     @JoinTable(name = "user_entry", inverseJoinColumns = @JoinColumn(name = "userid", nullable = false, updatable = false, referencedColumnName = "id"), joinColumns = @JoinColumn(name = "entryid", nullable = false, updatable = false, referencedColumnName = "id"))
     @ApiModelProperty(value = "This indicates the users that have control over this entry, dockstore specific", required = false, position = 4)
     private Set<User> users;
@@ -110,6 +119,10 @@ public abstract class Entry<S extends Entry, T extends Version> {
     @JsonSerialize(using = EntryStarredSerializer.class)
     private Set<User> starredUsers;
 
+    @Column(columnDefinition = "integer default 0", nullable = false, updatable = false)
+    @ApiModelProperty(value = "The number of users that have starred this entry, dockstore specific")
+    private int starCount;
+
     @Column
     @ApiModelProperty(value = "This is the email of the git organization", position = 6)
     private String email;
@@ -310,11 +323,27 @@ public abstract class Entry<S extends Entry, T extends Version> {
 
     public void addStarredUser(User user) {
         starredUsers.add(user);
+        starCount = starredUsers.size();
     }
 
     public boolean removeStarredUser(User user) {
-        return starredUsers.remove(user);
+        boolean removed = starredUsers.remove(user);
+        starCount = starredUsers.size();
+        return removed;
     }
+
+    /**
+     * Kept in step with the starred users so that published listings can sort without counting the join table.
+     * The column is only written by {@link io.dockstore.webservice.jdbi.EntryDAO#addToStarCount(long, int)}, an atomic
+     * increment, so that users starring the same entry at once do not overwrite each other's count.
+     *
+     * @return the number of users that starred this entry
+     */
+    @JsonProperty
+    public int getStarCount() {
+        return starCount;
+    }
+
     /**
      * Used during refresh to update containers
      *
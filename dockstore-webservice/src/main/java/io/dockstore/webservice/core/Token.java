@@ -16,10 +16,12 @@
 
 package io.dockstore.webservice.core;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.List;
 import java.util.Objects;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Convert;
 import javax.persistence.Entity;
@@ -30,11 +32,15 @@ import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ComparisonChain;
+import com.google.common.hash.Hashing;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -45,9 +51,12 @@ import org.hibernate.annotations.UpdateTimestamp;
  */
 @ApiModel(value = "Token", description = "Access tokens for this web service and integrated services like quay.io and github")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "token")
 @NamedQueries({
     @NamedQuery(name = "io.dockstore.webservice.core.Token.findByContent", query = "SELECT t FROM Token t WHERE t.content = :content"),
+    @NamedQuery(name = "io.dockstore.webservice.core.Token.findByTokenHash", query = "SELECT t FROM Token t WHERE t.tokenHash = :tokenHash"),
     @NamedQuery(name = "io.dockstore.webservice.core.Token.findBySource", query = "SELECT t FROM Token t WHERE t.tokenSource = :source"),
     @NamedQuery(name = "io.dockstore.webservice.core.Token.findByUserId", query = "SELECT t FROM Token t WHERE t.userId = :userId"),
     @NamedQuery(name = "io.dockstore.webservice.core.Token.findDockstoreByUserId", query = "SELECT t FROM Token t WHERE t.userId = :userId AND t.tokenSource = 'dockstore'"),
@@ -83,6 +92,14 @@ public class Token implements Comparable<Token> {
     @ApiModelProperty(position = 4)
     private String refreshToken;
 
+    /**
+     * SHA-256 digest of the content, used to look up tokens during authentication.
+     * Null for tokens created before this column existed until they are first used.
+     */
+    @Column(unique = true)
+    @JsonIgnore
+    private String tokenHash;
+
     // TODO: tokens will need to be associated with a particular user
     @Column
     @ApiModelProperty(position = 5)
@@ -100,6 +117,14 @@ public class Token implements Comparable<Token> {
     public Token() {
     }
 
+    /**
+     * @param content the contents of an access token
+     * @return the hex encoded SHA-256 digest of the contents
+     */
+    public static String hash(String content) {
+        return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+    }
+
     public static Token extractToken(List<Token> tokens, TokenType source) {
         for (Token token : tokens) {
             if (token.getTokenSource().equals(source)) {
@@ -157,6 +182,14 @@ public class Token implements Comparable<Token> {
      */
     public void setContent(String content) {
         this.content = content;
+        this.tokenHash = content == null ? null : hash(content);
+    }
+
+    /**
+     * @return the SHA-256 digest of the content
+     */
+    public String getTokenHash() {
+        return tokenHash;
     }
 
     /**
@@ -48,6 +48,9 @@ import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Filter;
+import org.hibernate.annotations.FilterDef;
+import org.hibernate.annotations.FilterDefs;
 import org.hibernate.annotations.UpdateTimestamp;
 
 /**
@@ -59,7 +62,19 @@ import org.hibernate.annotations.UpdateTimestamp;
 @ApiModel(value = "Base class for versions of entries in the Dockstore")
 @Inheritance(strategy = InheritanceType.TABLE_PER_CLASS)
 @SuppressWarnings("checkstyle:magicnumber")
+@FilterDefs({
+    @FilterDef(name = Version.HIDDEN_VERSION_FILTER, defaultCondition = "hidden = false"),
+    @FilterDef(name = Version.SOURCE_FILE_FILTER, defaultCondition = "1 = 0") })
 public abstract class Version<T extends Version> implements Comparable<T> {
+    /**
+     * When enabled on a session, hidden versions are not loaded into the versions of an entry
+     */
+    public static final String HIDDEN_VERSION_FILTER = "hiddenVersionFilter";
+    /**
+     * When enabled on a session, versions are loaded without their source files
+     */
+    public static final String SOURCE_FILE_FILTER = "sourceFileFilter";
+
     /**
      * re-use existing generator for backwards compatibility
      */
@@ -95,6 +110,7 @@ public abstract class Version<T extends Version> implements Comparable<T> {
     @JoinTable(name = "version_sourcefile", joinColumns = @JoinColumn(name = "versionid", referencedColumnName = "id"), inverseJoinColumns = @JoinColumn(name = "sourcefileid", referencedColumnName = "id"))
     @ApiModelProperty(value = "Cached files for each version. Includes Dockerfile and Descriptor files", position = 3)
     @Cascade(org.hibernate.annotations.CascadeType.DETACH)
+    @Filter(name = SOURCE_FILE_FILTER)
     private final Set<SourceFile> sourceFiles;
 
     @Column
@@ -19,17 +19,22 @@ import io.dockstore.webservice.DockstoreWebserviceConfiguration;
 
 public final class DOIGeneratorFactory {
 
-    private static DockstoreWebserviceConfiguration config;
+    private static SQSDOIScheduler scheduler;
 
     private DOIGeneratorFactory() {
         /* hide utility constructor */
     }
 
     public static DOIGeneratorInterface createDOIGenerator() {
-        return new SQSDOIScheduler(config.getSqsURL());
+        return scheduler;
     }
 
-    public static void setConfig(DockstoreWebserviceConfiguration config) {
-        DOIGeneratorFactory.config = config;
+    /**
+     * @param config the webservice configuration
+     * @return the shared scheduler, to be managed by the application
+     */
+    public static SQSDOIScheduler setConfig(DockstoreWebserviceConfiguration config) {
+        DOIGeneratorFactory.scheduler = new SQSDOIScheduler(config.getSqsURL());
+        return scheduler;
     }
 }
@@ -24,17 +24,36 @@ import com.amazonaws.services.sqs.model.SendMessageResult;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.dockstore.common.model.DOIMessage;
+import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class SQSDOIScheduler implements DOIGeneratorInterface {
+/**
+ * Sends DOI requests to a FIFO queue. One instance is shared by the whole webservice so that it reuses one SQS client
+ * (and its connection pool), the client is shut down with the application.
+ */
+public class SQSDOIScheduler implements DOIGeneratorInterface, Managed {
 
     private static final Logger LOG = LoggerFactory.getLogger(SQSDOIScheduler.class);
-    private String sqsURL;
+    private final String sqsURL;
+    private final AmazonSQS sqs;
     private Gson gson = new GsonBuilder().create();
 
     SQSDOIScheduler(String sqsURL) {
         this.sqsURL = sqsURL;
+        this.sqs = sqsURL == null ? null : AmazonSQSClientBuilder.standard().withRegion(Regions.US_EAST_1).build();
+    }
+
+    @Override
+    public void start() {
+        // the client is ready as soon as it is built
+    }
+
+    @Override
+    public void stop() {
+        if (sqs != null) {
+            sqs.shutdown();
+        }
     }
 
     @Override
@@ -54,9 +73,8 @@ public class SQSDOIScheduler implements DOIGeneratorInterface {
             LOG.error("Unable to send out a DOI message because the sqsURL was invalid");
             return;
         }
-        AmazonSQS sqs = AmazonSQSClientBuilder.standard().withRegion(Regions.US_EAST_1).build();
         // Send a message
-        LOG.info("Sending a message to MyFifoQueue.fifo");
+        LOG.info("Sending a message to " + sqsURL);
 
         DOIMessage message = new DOIMessage();
         message.setTargetEntry(messageType);
@@ -67,7 +85,10 @@ public class SQSDOIScheduler implements DOIGeneratorInterface {
             sqsURL, gson.toJson(message));
         sendMessageRequest.addMessageAttributesEntry("type", new MessageAttributeValue().withDataType("String").withStringValue(message.getClass().getName()));
         // You must provide a non-empty MessageGroupId when sending messages to a FIFO queue
-        sendMessageRequest.setMessageGroupId("messageGroup1");
+        // requests for the same entry are handled in order, requests for different entries can be handled in parallel
+        sendMessageRequest.setMessageGroupId(messageType + '-' + id);
+        // repeated requests for the same version within the deduplication interval are only delivered once
+        sendMessageRequest.setMessageDeduplicationId(messageType + '-' + id + '-' + versionId);
         SendMessageResult sendMessageResult = sqs.sendMessage(sendMessageRequest);
         String sequenceNumber = sendMessageResult.getSequenceNumber();
         String messageId = sendMessageResult.getMessageId();
@@ -19,6 +19,7 @@ package io.dockstore.webservice.helpers;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -377,7 +378,32 @@ public abstract class AbstractImageRegistry {
         toolDAO.create(tool);
     }
 
-    private void updateFiles(Tool tool, Tag tag, final FileDAO fileDAO, SourceCodeRepoInterface sourceCodeRepo, String username) {
+    /**
+     * Reloads the files of the tags of a tool that are built from a branch or tag of its git repository,
+     * for when only that reference has changed. Tags come from the image registry, so none are added or removed.
+     *
+     * @param tool
+     * @param reference the branch or tag
+     * @return whether any tag was built from the reference
+     */
+    public static boolean refreshReference(Tool tool, String reference, SourceCodeRepoInterface sourceCodeRepoInterface, final FileDAO fileDAO,
+        final FileFormatDAO fileFormatDAO) {
+        List<Tag> tags = tool.getTags().stream().filter(tag -> reference.equals(tag.getReference())).collect(Collectors.toList());
+        if (tags.isEmpty()) {
+            return false;
+        }
+        tags.forEach(tag -> updateFiles(tool, tag, fileDAO, sourceCodeRepoInterface, sourceCodeRepoInterface.gitUsername));
+        if (tool.getDefaultCwlPath() != null) {
+            sourceCodeRepoInterface.updateEntryMetadata(tool, LanguageType.CWL);
+        }
+        if (tool.getDefaultWdlPath() != null) {
+            sourceCodeRepoInterface.updateEntryMetadata(tool, LanguageType.WDL);
+        }
+        FileFormatHelper.updateFileFormats(new HashSet<>(tags), fileFormatDAO);
+        return true;
+    }
+
+    private static void updateFiles(Tool tool, Tag tag, final FileDAO fileDAO, SourceCodeRepoInterface sourceCodeRepo, String username) {
         // For each tag, will download files to db and determine if the tag is valid
         LOG.info(username + " : Updating files for tag {}", tag.getName());
 
@@ -427,7 +453,7 @@ public abstract class AbstractImageRegistry {
      * @param tag
      * @return list of SourceFiles containing cwl and dockerfile.
      */
-    private List<SourceFile> loadFiles(SourceCodeRepoInterface sourceCodeRepo, Tool c, Tag tag) {
+    private static List<SourceFile> loadFiles(SourceCodeRepoInterface sourceCodeRepo, Tool c, Tag tag) {
         List<SourceFile> files = new ArrayList<>();
 
         String repositoryId = sourceCodeRepo.getRepositoryId(c);
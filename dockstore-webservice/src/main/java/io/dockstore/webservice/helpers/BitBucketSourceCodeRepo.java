@@ -16,15 +16,15 @@
 
 package io.dockstore.webservice.helpers;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -36,82 +36,59 @@ import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowVersion;
 import io.dockstore.webservice.languages.LanguageHandlerFactory;
-import io.dockstore.webservice.resources.ResourceUtilities;
+import okhttp3.HttpUrl;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Uses the Bitbucket 2.0 API, see https://developer.atlassian.com/bitbucket/api/2/reference/
+ *
  * @author dyuen
  */
 public class BitBucketSourceCodeRepo extends SourceCodeRepoInterface {
-    private static final String BITBUCKET_API_URL = "https://bitbucket.org/api/1.0/";
+    private static final HttpUrl BITBUCKET_API_URL = HttpUrl.parse("https://api.bitbucket.org/2.0/");
     private static final String BITBUCKET_GIT_URL_PREFIX = "git@bitbucket.org:";
     private static final String BITBUCKET_GIT_URL_SUFFIX = ".git";
+    private static final String PAGE_LENGTH = "100";
 
     private static final Logger LOG = LoggerFactory.getLogger(BitBucketSourceCodeRepo.class);
-    private final HttpClient client;
     private final String bitbucketTokenContent;
 
     /**
      * @param gitUsername           username that owns the bitbucket token
-     * @param client
      * @param bitbucketTokenContent bitbucket token
      */
-    BitBucketSourceCodeRepo(String gitUsername, HttpClient client, String bitbucketTokenContent) {
-        this.client = client;
+    BitBucketSourceCodeRepo(String gitUsername, String bitbucketTokenContent) {
         this.bitbucketTokenContent = bitbucketTokenContent;
         this.gitUsername = gitUsername;
     }
 
     @Override
     public String readFile(String repositoryId, String fileName, String reference) {
-        if (fileName.startsWith("/")) {
-            fileName = fileName.substring(1);
-        }
-
-        String content;
-        String branch = null;
-
+        String branch;
         if (reference == null) {
-            String mainBranchUrl = BITBUCKET_API_URL + "repositories/" + repositoryId + "/main-branch";
-
-            Optional<String> asString = ResourceUtilities.asString(mainBranchUrl, bitbucketTokenContent, client);
-            LOG.info(gitUsername + ": RESOURCE CALL: {}", mainBranchUrl);
-            if (asString.isPresent()) {
-                String branchJson = asString.get();
-
-                Gson gson = new Gson();
-                Map<String, String> map = new HashMap<>();
-                map = (Map<String, String>)gson.fromJson(branchJson, map.getClass());
-
-                branch = map.get("name");
-
-                if (branch == null) {
-                    LOG.info(gitUsername + ": Could NOT find bitbucket default branch!");
-                    return null;
-                } else {
-                    LOG.info(gitUsername + ": Default branch: {}", branch);
-                }
+            branch = getMainBranchName(repositoryId, "readFile");
+            if (branch == null) {
+                LOG.info(gitUsername + ": Could NOT find bitbucket default branch!");
+                return null;
+            } else {
+                LOG.info(gitUsername + ": Default branch: {}", branch);
             }
         } else {
             branch = reference;
         }
 
-        String url = BITBUCKET_API_URL + "repositories/" + repositoryId + "/raw/" + branch + '/' + fileName;
-        Optional<String> asString = ResourceUtilities.asString(url, bitbucketTokenContent, client);
-        LOG.info(gitUsername + ": RESOURCE CALL: {}", url);
-        if (asString.isPresent()) {
+        Optional<String> content = getRaw(repositoryId, branch, fileName, "readFile");
+        if (content.isPresent()) {
             LOG.info(gitUsername + ": FOUND: {}", fileName);
-            content = asString.get();
         } else {
             LOG.info(gitUsername + ": Branch: {} has no {}", branch, fileName);
             return null;
         }
 
-        if (!content.isEmpty()) {
-            return content;
+        if (!content.get().isEmpty()) {
+            return content.get();
         } else {
             return null;
         }
@@ -120,27 +97,16 @@ public class BitBucketSourceCodeRepo extends SourceCodeRepoInterface {
     @Override
     public Map<String, String> getWorkflowGitUrl2RepositoryId() {
         Map<String, String> reposByGitURl = new HashMap<>();
-        String url = BITBUCKET_API_URL + "users/" + gitUsername;
+        HttpUrl url = repositories().addPathSegment(gitUsername).build();
 
         // Call to Bitbucket API to get list of Workflows owned by the current user (is it possible that owner is a group the user is part of?)
-        Optional<String> asString = ResourceUtilities.asString(url, bitbucketTokenContent, client);
-        LOG.info(gitUsername + ": RESOURCE CALL: {}", url);
-
-        if (asString.isPresent()) {
-            String userJson = asString.get();
-
-            JsonElement jsonElement = new JsonParser().parse(userJson);
-            JsonObject jsonObject = jsonElement.getAsJsonObject();
-            JsonArray asJsonArray = jsonObject.getAsJsonArray("repositories");
-            for (JsonElement element : asJsonArray) {
-                String owner = element.getAsJsonObject().get("owner").getAsString();
-                String name = element.getAsJsonObject().get("name").getAsString();
-                String bitbucketUrl = BITBUCKET_GIT_URL_PREFIX + owner + "/" + name + BITBUCKET_GIT_URL_SUFFIX;
-
-                String id = owner + "/" + name;
+        Optional<List<JsonObject>> repositories = getAllPages(url, "getWorkflowGitUrl2RepositoryId");
+        if (repositories.isPresent()) {
+            for (JsonObject repository : repositories.get()) {
+                String id = repository.get("full_name").getAsString();
+                String bitbucketUrl = BITBUCKET_GIT_URL_PREFIX + id + BITBUCKET_GIT_URL_SUFFIX;
                 reposByGitURl.put(bitbucketUrl, id);
             }
-
         }
         return reposByGitURl;
     }
@@ -161,10 +127,7 @@ public class BitBucketSourceCodeRepo extends SourceCodeRepoInterface {
         SourceFile file = null;
 
         // Get descriptor content using the BitBucket API
-        String url = BITBUCKET_API_URL + "repositories/" + repositoryId + "/raw/" + branch + "/" + path;
-        Optional<String> asString = ResourceUtilities.asString(url, bitbucketTokenContent, client);
-
-        LOG.info(gitUsername + ": RESOURCE CALL: {}", url);
+        Optional<String> asString = getRaw(repositoryId, branch, path, "getSourceFile");
 
         if (asString.isPresent()) {
             file = new SourceFile();
@@ -191,26 +154,11 @@ public class BitBucketSourceCodeRepo extends SourceCodeRepoInterface {
         if (version.getReferenceType() != Version.ReferenceType.UNSET) {
             return;
         }
-        // Look at each version, check for valid workflows
-        String url = BITBUCKET_API_URL + "repositories/" + repositoryId;
-        // Call to Bitbucket API to get list of branches for a given repo (what about tags)
-        Optional<String> branches = ResourceUtilities.asString(url + "/branches", bitbucketTokenContent, client);
-        if (branches.isPresent()) {
-            Gson gson = new Gson();
-            Map<String, String> map = new HashMap<>();
-            map = (Map<String, String>)gson.fromJson(branches.get(), map.getClass());
-            if (map.keySet().stream().anyMatch(key -> key.equals(version.getReference()))) {
-                version.setReferenceType(Version.ReferenceType.BRANCH);
-            }
-        }
-        Optional<String> tags = ResourceUtilities.asString(url + "/tags", bitbucketTokenContent, client);
-        if (tags.isPresent()) {
-            Gson gson = new Gson();
-            Map<String, String> map = new HashMap<>();
-            map = (Map<String, String>)gson.fromJson(tags.get(), map.getClass());
-            if (map.keySet().stream().anyMatch(key -> key.equals(version.getReference()))) {
-                version.setReferenceType(Version.ReferenceType.TAG);
-            }
+        HttpUrl refs = repository(repositoryId).addPathSegment("refs").build();
+        if (get(refs.newBuilder().addPathSegment("branches").addPathSegment(version.getReference()).build(), "updateReferenceType").isPresent()) {
+            version.setReferenceType(Version.ReferenceType.BRANCH);
+        } else if (get(refs.newBuilder().addPathSegment("tags").addPathSegment(version.getReference()).build(), "updateReferenceType").isPresent()) {
+            version.setReferenceType(Version.ReferenceType.TAG);
         }
     }
 
@@ -244,45 +192,34 @@ public class BitBucketSourceCodeRepo extends SourceCodeRepoInterface {
     @Override
     public Workflow setupWorkflowVersions(String repositoryId, Workflow workflow, Optional<Workflow> existingWorkflow,
             Map<String, WorkflowVersion> existingDefaults) {
-        // Look at each version, check for valid workflows
-        String url = BITBUCKET_API_URL + "repositories/" + repositoryId + "/branches-tags";
-
-        // Call to Bitbucket API to get list of branches for a given repo (what about tags)
-        Optional<String> asString = ResourceUtilities.asString(url, bitbucketTokenContent, client);
-        LOG.info(gitUsername + ": RESOURCE CALL: {}", url);
-
-        if (asString.isPresent()) {
-            String repoJson = asString.get();
-
-            JsonElement jsonElement = new JsonParser().parse(repoJson);
-            JsonObject jsonObject = jsonElement.getAsJsonObject();
-            // Iterate to find branches and tags arrays
-            for (Map.Entry<String, JsonElement> objectEntry : jsonObject.entrySet()) {
-                JsonArray branchArray = objectEntry.getValue().getAsJsonArray();
-                // Iterate over both arrays
-                for (JsonElement branch : branchArray) {
-                    String branchName = branch.getAsJsonObject().get("name").getAsString();
-
-                    WorkflowVersion version = initializeWorkflowVersion(branchName, existingWorkflow, existingDefaults);
-                    String calculatedPath = version.getWorkflowPath();
-
-                    // Now grab source files
-                    SourceFile.FileType identifiedType = workflow.getFileType();
-                    // TODO: No exceptions are caught here in the event of a failed call
-                    SourceFile sourceFile = getSourceFile(calculatedPath, repositoryId, branchName, identifiedType);
-
-                    // Non-null sourcefile means that the sourcefile is valid
-                    if (sourceFile != null) {
-                        version.setValid(true);
-                    }
-
-                    // Use default test parameter file if either new version or existing version that hasn't been edited
-                    createTestParameterFiles(workflow, repositoryId, branchName, version, identifiedType);
-                    workflow.addWorkflowVersion(
-                            combineVersionAndSourcefile(repositoryId, sourceFile, workflow, identifiedType, version, existingDefaults));
+        // Look at each branch and tag, check for valid workflows
+        Optional<List<JsonObject>> refs = getAllPages(repository(repositoryId).addPathSegment("refs").build(), "setupWorkflowVersions");
+
+        if (refs.isPresent()) {
+            // versions are fetched concurrently, but only this thread touches the workflow
+            List<WorkflowVersion> versions = ProviderHttpClient.mapConcurrently(refs.get(), ref -> {
+                String branchName = ref.get("name").getAsString();
+                Version.ReferenceType type = "tag".equals(ref.get("type").getAsString()) ? Version.ReferenceType.TAG : Version.ReferenceType.BRANCH;
+
+                WorkflowVersion version = initializeWorkflowVersion(branchName, existingWorkflow, existingDefaults);
+                String calculatedPath = version.getWorkflowPath();
+
+                // Now grab source files
+                SourceFile.FileType identifiedType = workflow.getFileType();
+                // TODO: No exceptions are caught here in the event of a failed call
+                SourceFile sourceFile = getSourceFile(calculatedPath, repositoryId, branchName, identifiedType);
+
+                // Non-null sourcefile means that the sourcefile is valid
+                if (sourceFile != null) {
+                    version.setValid(true);
                 }
-            }
+                version.setReferenceType(type);
 
+                // Use default test parameter file if either new version or existing version that hasn't been edited
+                createTestParameterFiles(workflow, repositoryId, branchName, version, identifiedType);
+                return combineVersionAndSourcefile(repositoryId, sourceFile, workflow, identifiedType, version, existingDefaults);
+            });
+            versions.forEach(workflow::addWorkflowVersion);
         } else {
             LOG.error("Could not find Bitbucket repository " + repositoryId + " for user.");
             throw new CustomWebApplicationException("Could not reach Bitbucket", HttpStatus.SC_SERVICE_UNAVAILABLE);
@@ -312,40 +249,72 @@ public class BitBucketSourceCodeRepo extends SourceCodeRepoInterface {
 
     @Override
     public String getMainBranch(Entry entry, String repositoryId) {
-        String branch;
-
         // Is default version set?
         if (entry.getDefaultVersion() != null) {
-            branch = entry.getDefaultVersion();
+            return entry.getDefaultVersion();
         } else {
             // If default version is not set, need to find the main branch
+            return getMainBranchName(repositoryId, "getMainBranch");
+        }
+    }
 
-            // Create API call string
-            String url = BITBUCKET_API_URL + "repositories/" + repositoryId + "/main-branch";
+    @Override
+    public boolean checkSourceCodeValidity() {
+        //TODO
+        return true;
+    }
 
-            // Call BitBucket API
-            Optional<String> asString = ResourceUtilities.asString(url, bitbucketTokenContent, client);
-            LOG.info(gitUsername + ": RESOURCE CALL: {}", url);
+    private String getMainBranchName(String repositoryId, String operation) {
+        Optional<String> repository = get(repository(repositoryId).build(), operation);
+        if (repository.isPresent()) {
+            JsonElement mainBranch = new JsonParser().parse(repository.get()).getAsJsonObject().get("mainbranch");
+            if (mainBranch != null && mainBranch.isJsonObject()) {
+                return mainBranch.getAsJsonObject().get("name").getAsString();
+            }
+        }
+        return null;
+    }
 
-            if (asString.isPresent()) {
-                String branchJson = asString.get();
-                Gson gson = new Gson();
-                Map<String, String> map = new HashMap<>();
-                map = (Map<String, String>)gson.fromJson(branchJson, map.getClass());
+    /**
+     * @param path relative to the root of the repository, with or without a leading slash
+     */
+    private Optional<String> getRaw(String repositoryId, String reference, String path, String operation) {
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        return get(repository(repositoryId).addPathSegment("src").addPathSegment(reference).addPathSegments(path).build(), operation);
+    }
 
-                // Branch stores the "main branch" on bitbucket
-                branch = map.get("name");
-            } else {
-                branch = null;
+    /**
+     * Follows the next links of a paginated listing
+     *
+     * @return the values from every page, empty if any page could not be read
+     */
+    private Optional<List<JsonObject>> getAllPages(HttpUrl url, String operation) {
+        List<JsonObject> values = new ArrayList<>();
+        HttpUrl next = url.newBuilder().setQueryParameter("pagelen", PAGE_LENGTH).build();
+        while (next != null) {
+            Optional<String> page = get(next, operation);
+            if (!page.isPresent()) {
+                return Optional.empty();
             }
+            JsonObject pageObject = new JsonParser().parse(page.get()).getAsJsonObject();
+            pageObject.getAsJsonArray("values").forEach(value -> values.add(value.getAsJsonObject()));
+            next = pageObject.has("next") ? HttpUrl.parse(pageObject.get("next").getAsString()) : null;
         }
+        return Optional.of(values);
+    }
 
-        return branch;
+    private Optional<String> get(HttpUrl url, String operation) {
+        LOG.info(gitUsername + ": RESOURCE CALL: {}", url);
+        return ProviderHttpClient.get(ProviderMetrics.BITBUCKET, operation, url, bitbucketTokenContent).map(ProviderHttpClient.Result::getBody);
     }
 
-    @Override
-    public boolean checkSourceCodeValidity() {
-        //TODO
-        return true;
+    private static HttpUrl.Builder repositories() {
+        return BITBUCKET_API_URL.newBuilder().addPathSegment("repositories");
+    }
+
+    private static HttpUrl.Builder repository(String repositoryId) {
+        return repositories().addPathSegments(repositoryId);
     }
 }
@@ -170,7 +170,7 @@ public class ElasticManager {
      * @param publishedEntries A list of published entries
      * @return The json used for bulk insert
      */
-    private String getNDJSON(List<Entry> publishedEntries) {
+    String getNDJSON(List<Entry> publishedEntries) {
         ObjectMapper mapper = Jackson.newObjectMapper();
         Gson gson = new GsonBuilder().create();
         StringBuilder builder = new StringBuilder();
@@ -23,7 +23,6 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import com.google.common.collect.Lists;
 import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.core.Entry;
 import io.dockstore.webservice.core.SourceFile;
@@ -51,42 +50,16 @@ public interface EntryVersionHelper<T extends Entry<T, U>, U extends Version, W
     W getDAO();
 
     /**
-     * For the purposes of display, this method filters an entry to not show workflow or tool versions that are hidden
-     * without deleting them from the database
-     * @param entry the entry to be filtered
-     * @return the filtered entry
+     * For the purposes of display, keeps hidden versions and users, and optionally all source files, from being loaded
+     * for entries fetched later in this request, without deleting them from the database.
+     * Only use from endpoints that do not modify entries, before they fetch any.
+     * @param withoutContent true if the response will not include the source files of versions
      */
-    default T filterContainersForHiddenTags(T entry) {
-        return filterContainersForHiddenTags(Lists.newArrayList(entry)).get(0);
-    }
-
-    /**
-     * For convenience, filters a list of entries
-     * @see EntryVersionHelper#filterContainersForHiddenTags(Entry)
-     */
-    default List<T> filterContainersForHiddenTags(List<T> entries) {
-        for (T entry : entries) {
-            getDAO().evict(entry);
-            // clear users which are also lazy loaded
-            entry.setUsers(null);
-            // need to have this evicted so that hibernate does not actually delete the tags and users
-            Set<U> versions = entry.getVersions();
-            versions.removeIf(Version::isHidden);
-        }
-        return entries;
-    }
-
-    /**
-     * For convenience, filters a list of entries
-     */
-    default void stripContent(List<T> entries) {
-        for (T entry : entries) {
-            getDAO().evict(entry);
-            // clear users which are also lazy loaded
-            entry.setUsers(null);
-            // need to have this evicted so that hibernate does not actually delete the tags and users
-            Set<U> versions = entry.getVersions();
-            versions.forEach(version -> version.getSourceFiles().clear());
+    default void enablePublicFilters(boolean withoutContent) {
+        getDAO().enableHiddenVersionFilter();
+        getDAO().enableUserFilter();
+        if (withoutContent) {
+            getDAO().enableSourceFileFilter();
         }
     }
 
@@ -163,9 +136,9 @@ public interface EntryVersionHelper<T extends Entry<T, U>, U extends Version, W
      */
     default Map<String, ImmutablePair<SourceFile, FileDescription>> getSourceFiles(long workflowId, String tag,
             SourceFile.FileType fileType) {
+        enablePublicFilters(false);
         T entry = getDAO().findById(workflowId);
         checkEntry(entry);
-        this.filterContainersForHiddenTags(entry);
         Version tagInstance = null;
 
         Map<String, ImmutablePair<SourceFile, FileDescription>> resultMap = new HashMap<>();
@@ -50,7 +50,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.apache.http.HttpStatus;
-import org.kohsuke.github.AbuseLimitHandler;
 import org.kohsuke.github.GHBranch;
 import org.kohsuke.github.GHCommit;
 import org.kohsuke.github.GHContent;
@@ -62,7 +61,6 @@ import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GHTagObject;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GitHubBuilder;
-import org.kohsuke.github.RateLimitHandler;
 import org.kohsuke.github.extras.OkHttp3Connector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,8 +78,8 @@ public class GitHubSourceCodeRepo extends SourceCodeRepoInterface {
     GitHubSourceCodeRepo(String gitUsername, String githubTokenContent) {
         this.gitUsername = gitUsername;
         try {
-            this.github = new GitHubBuilder().withOAuthToken(githubTokenContent, gitUsername).withRateLimitHandler(RateLimitHandler.WAIT).withAbuseLimitHandler(AbuseLimitHandler.WAIT).withConnector(new OkHttp3Connector(new OkUrlFactory(
-                new OkHttpClient.Builder().cache(DockstoreWebserviceApplication.getCache()).build()))).build();
+            this.github = new GitHubBuilder().withOAuthToken(githubTokenContent, gitUsername).withRateLimitHandler(ProviderGuard.gitHubRateLimitHandler()).withAbuseLimitHandler(ProviderGuard.gitHubAbuseLimitHandler()).withConnector(new OkHttp3Connector(new OkUrlFactory(
+                ProviderGuard.withTimeouts(new OkHttpClient.Builder(), ProviderMetrics.GITHUB).cache(DockstoreWebserviceApplication.getCache()).addInterceptor(ProviderMetrics.gitHubInterceptor(gitUsername)).build()))).build();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
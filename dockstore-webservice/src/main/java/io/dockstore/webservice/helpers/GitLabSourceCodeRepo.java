@@ -16,9 +16,8 @@
 
 package io.dockstore.webservice.helpers;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -26,7 +25,12 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.dockstore.common.SourceControl;
 import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.core.Entry;
@@ -34,64 +38,56 @@ import io.dockstore.webservice.core.SourceFile;
 import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
 import io.dockstore.webservice.core.WorkflowVersion;
+import okhttp3.HttpUrl;
 import org.apache.http.HttpStatus;
-import org.gitlab.api.GitlabAPI;
-import org.gitlab.api.TokenType;
-import org.gitlab.api.models.GitlabBranch;
-import org.gitlab.api.models.GitlabProject;
-import org.gitlab.api.models.GitlabRepositoryFile;
-import org.gitlab.api.models.GitlabTag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Uses the GitLab v4 API, see https://docs.gitlab.com/ee/api/
+ *
  * @author aduncan on 05/10/16.
  * @author dyuen
  */
 public class GitLabSourceCodeRepo extends SourceCodeRepoInterface {
+    private static final HttpUrl GITLAB_API_URL = HttpUrl.parse("https://gitlab.com/api/v4/");
     private static final String GITLAB_GIT_URL_PREFIX = "git@gitlab.com:";
     private static final String GITLAB_GIT_URL_SUFFIX = ".git";
+    private static final String PAGE_LENGTH = "100";
 
     private static final Logger LOG = LoggerFactory.getLogger(GitLabSourceCodeRepo.class);
-    private final GitlabAPI gitlabAPI;
+    private final String gitlabTokenContent;
 
     GitLabSourceCodeRepo(String gitUsername, String gitlabTokenContent) {
         this.gitUsername = gitUsername;
-        this.gitlabAPI = GitlabAPI.connect("https://gitlab.com", gitlabTokenContent, TokenType.ACCESS_TOKEN);
+        this.gitlabTokenContent = gitlabTokenContent;
     }
 
     @Override
     public String readFile(String repositoryId, String fileName, String reference) {
-        if (fileName.startsWith("/")) {
-            fileName = fileName.substring(1);
+        if (reference == null) {
+            reference = getDefaultBranch(repositoryId);
         }
-        try {
-            if (reference == null) {
-                GitlabProject project = gitlabAPI.getProject(repositoryId.split("/")[0], repositoryId.split("/")[1]);
-                reference = project.getDefaultBranch();
-            }
-            GitlabProject project = gitlabAPI.getProject(repositoryId.split("/")[0], repositoryId.split("/")[1]);
-            GitlabRepositoryFile repositoryFile = this.gitlabAPI.getRepositoryFile(project, fileName, reference);
-            return new String(Base64.getDecoder().decode(repositoryFile.getContent()), StandardCharsets.UTF_8);
-        } catch (IOException e) {
+        Optional<String> content = reference == null ? Optional.empty() : getRaw(repositoryId, fileName, reference, "getRepositoryFile");
+        if (!content.isPresent()) {
             LOG.error("could not read file " + fileName + " on " + reference);
         }
-        return null;
+        return content.orElse(null);
     }
 
     @Override
     public Map<String, String> getWorkflowGitUrl2RepositoryId() {
-        try {
-            List<GitlabProject> projects = gitlabAPI.getMembershipProjects();
-            Map<String, String> reposByGitUrl = new HashMap<>();
-            for (GitlabProject project : projects) {
-                reposByGitUrl.put(project.getSshUrl(), project.getPathWithNamespace());
-            }
-            return reposByGitUrl;
-        } catch (IOException e) {
-            LOG.error("could not find projects due to ", e);
+        HttpUrl url = GITLAB_API_URL.newBuilder().addPathSegment("projects").setQueryParameter("membership", "true").build();
+        Optional<List<JsonObject>> projects = getAllPages(url, "getMembershipProjects");
+        if (!projects.isPresent()) {
+            LOG.error("could not find projects for " + gitUsername);
             throw new CustomWebApplicationException("could not read projects from gitlab, please re-link your gitlab token", HttpStatus.SC_INTERNAL_SERVER_ERROR);
         }
+        Map<String, String> reposByGitUrl = new HashMap<>();
+        for (JsonObject project : projects.get()) {
+            reposByGitUrl.put(project.get("ssh_url_to_repo").getAsString(), project.get("path_with_namespace").getAsString());
+        }
+        return reposByGitUrl;
     }
 
     @Override
@@ -118,23 +114,26 @@ public class GitLabSourceCodeRepo extends SourceCodeRepoInterface {
     @Override
     public Workflow setupWorkflowVersions(String repositoryId, Workflow workflow, Optional<Workflow> existingWorkflow,
             Map<String, WorkflowVersion> existingDefaults) {
-
-        try {
-            GitlabProject project = gitlabAPI.getProject(repositoryId.split("/")[0], repositoryId.split("/")[1]);
-            List<GitlabTag> tagList = gitlabAPI.getTags(repositoryId);
-            List<GitlabBranch> branches = gitlabAPI.getBranches(project);
-            tagList.forEach(tag -> handleVersionOfWorkflow(repositoryId, workflow, existingWorkflow, existingDefaults, repositoryId, tag.getName(),
-                Version.ReferenceType.TAG));
-            branches.forEach(branch -> {
-                handleVersionOfWorkflow(repositoryId, workflow, existingWorkflow, existingDefaults, repositoryId, branch.getName(), Version.ReferenceType.BRANCH);
-            });
-        } catch (IOException e) {
-            LOG.info("could not find " + repositoryId + " due to " + e.getMessage());
+        HttpUrl repository = project(repositoryId).addPathSegment("repository").build();
+        Optional<List<JsonObject>> tags = getAllPages(repository.newBuilder().addPathSegment("tags").build(), "getTags");
+        Optional<List<JsonObject>> branches = getAllPages(repository.newBuilder().addPathSegment("branches").build(), "getBranches");
+        if (!tags.isPresent() || !branches.isPresent()) {
+            LOG.info("could not find " + repositoryId);
+            return workflow;
         }
+
+        List<Map.Entry<String, Version.ReferenceType>> references = new ArrayList<>();
+        tags.get().forEach(tag -> references.add(new SimpleImmutableEntry<>(tag.get("name").getAsString(), Version.ReferenceType.TAG)));
+        branches.get().forEach(branch -> references.add(new SimpleImmutableEntry<>(branch.get("name").getAsString(), Version.ReferenceType.BRANCH)));
+        // versions are fetched concurrently, but only this thread touches the workflow
+        List<WorkflowVersion> versions = ProviderHttpClient.mapConcurrently(references,
+            reference -> handleVersionOfWorkflow(repositoryId, workflow, existingWorkflow, existingDefaults, repositoryId, reference.getKey(),
+                reference.getValue()));
+        versions.forEach(workflow::addWorkflowVersion);
         return workflow;
     }
 
-    private void handleVersionOfWorkflow(String repositoryId, Workflow workflow, Optional<Workflow> existingWorkflow,
+    private WorkflowVersion handleVersionOfWorkflow(String repositoryId, Workflow workflow, Optional<Workflow> existingWorkflow,
         Map<String, WorkflowVersion> existingDefaults, String id, String branchName, Version.ReferenceType type) {
         // Initialize workflow version
         WorkflowVersion version = initializeWorkflowVersion(branchName, existingWorkflow, existingDefaults);
@@ -154,8 +153,7 @@ public class GitLabSourceCodeRepo extends SourceCodeRepoInterface {
         // Use default test parameter file if either new version or existing version that hasn't been edited
         createTestParameterFiles(workflow, id, branchName, version, identifiedType);
 
-        workflow.addWorkflowVersion(
-                combineVersionAndSourcefile(repositoryId, sourceFile, workflow, identifiedType, version, existingDefaults));
+        return combineVersionAndSourcefile(repositoryId, sourceFile, workflow, identifiedType, version, existingDefaults);
     }
 
     @Override
@@ -193,15 +191,8 @@ public class GitLabSourceCodeRepo extends SourceCodeRepoInterface {
         if (entry.getDefaultVersion() != null) {
             return entry.getDefaultVersion();
         } else {
-            try {
-                GitlabProject project = gitlabAPI.getProject(repositoryId.split("/")[0], repositoryId.split("/")[1]);
-                return project.getDefaultBranch();
-            } catch (IOException e) {
-                LOG.info("could not find " + repositoryId + " due to " + e.getMessage());
-            }
+            return getDefaultBranch(repositoryId);
         }
-
-        return null;
     }
 
     /**
@@ -215,19 +206,15 @@ public class GitLabSourceCodeRepo extends SourceCodeRepoInterface {
      */
     @Override
     public SourceFile getSourceFile(String path, String id, String branch, SourceFile.FileType type) {
-        try {
-            GitlabProject project = gitlabAPI.getProject(id.split("/")[0], id.split("/")[1]);
-            GitlabRepositoryFile repositoryFile = this.gitlabAPI.getRepositoryFile(project, path, branch);
-            if (repositoryFile != null) {
-                SourceFile file = new SourceFile();
-                file.setType(type);
-                file.setContent(new String(Base64.getDecoder().decode(repositoryFile.getContent()), StandardCharsets.UTF_8));
-                file.setPath(path);
-                return file;
-            }
-        } catch (IOException e) {
-            LOG.info("could not find " + path + " at " + e.getMessage());
+        Optional<String> content = getRaw(id, path, branch, "getRepositoryFile");
+        if (content.isPresent()) {
+            SourceFile file = new SourceFile();
+            file.setType(type);
+            file.setContent(content.get());
+            file.setPath(path);
+            return file;
         }
+        LOG.info("could not find " + path + " at " + branch);
         return null;
     }
 
@@ -236,4 +223,80 @@ public class GitLabSourceCodeRepo extends SourceCodeRepoInterface {
         //TODO
         return true;
     }
+
+    private String getDefaultBranch(String repositoryId) {
+        Optional<String> project = get(project(repositoryId).build(), "getProject").map(ProviderHttpClient.Result::getBody);
+        if (project.isPresent()) {
+            JsonElement defaultBranch = new JsonParser().parse(project.get()).getAsJsonObject().get("default_branch");
+            if (defaultBranch != null && !defaultBranch.isJsonNull()) {
+                return defaultBranch.getAsString();
+            }
+        }
+        LOG.info("could not find the default branch of " + repositoryId);
+        return null;
+    }
+
+    /**
+     * @param path relative to the root of the repository, with or without a leading slash
+     */
+    private Optional<String> getRaw(String repositoryId, String path, String reference, String operation) {
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        HttpUrl url = project(repositoryId).addPathSegment("repository").addPathSegment("files").addPathSegment(path).addPathSegment("raw")
+            .setQueryParameter("ref", reference).build();
+        return get(url, operation).map(ProviderHttpClient.Result::getBody);
+    }
+
+    /**
+     * Reads the first page of a listing, then the rest concurrently when GitLab reports how many there are
+     * (it does not for very large listings, those are followed page by page)
+     *
+     * @return the elements of every page, empty if any page could not be read
+     */
+    private Optional<List<JsonObject>> getAllPages(HttpUrl url, String operation) {
+        HttpUrl firstPage = url.newBuilder().setQueryParameter("per_page", PAGE_LENGTH).build();
+        Optional<ProviderHttpClient.Result> first = get(firstPage, operation);
+        if (!first.isPresent()) {
+            return Optional.empty();
+        }
+        List<Optional<ProviderHttpClient.Result>> pages = new ArrayList<>();
+        pages.add(first);
+        String totalPages = first.get().header("X-Total-Pages");
+        if (totalPages != null && !totalPages.isEmpty()) {
+            List<Integer> rest = IntStream.rangeClosed(2, Integer.parseInt(totalPages)).boxed().collect(Collectors.toList());
+            pages.addAll(ProviderHttpClient.mapConcurrently(rest, page -> get(page(firstPage, page), operation)));
+        } else {
+            String next = first.get().header("X-Next-Page");
+            while (next != null && !next.isEmpty()) {
+                Optional<ProviderHttpClient.Result> page = get(page(firstPage, Integer.parseInt(next)), operation);
+                pages.add(page);
+                next = page.map(result -> result.header("X-Next-Page")).orElse(null);
+            }
+        }
+
+        List<JsonObject> elements = new ArrayList<>();
+        for (Optional<ProviderHttpClient.Result> page : pages) {
+            if (!page.isPresent()) {
+                return Optional.empty();
+            }
+            new JsonParser().parse(page.get().getBody()).getAsJsonArray().forEach(element -> elements.add(element.getAsJsonObject()));
+        }
+        return Optional.of(elements);
+    }
+
+    private Optional<ProviderHttpClient.Result> get(HttpUrl url, String operation) {
+        return ProviderHttpClient.get(ProviderMetrics.GITLAB, operation, url, gitlabTokenContent);
+    }
+
+    private static HttpUrl page(HttpUrl url, int page) {
+        return url.newBuilder().setQueryParameter("page", String.valueOf(page)).build();
+    }
+
+    /**
+     * Projects can be addressed by their namespace and name, with the slash encoded
+     */
+    private static HttpUrl.Builder project(String repositoryId) {
+        return GITLAB_API_URL.newBuilder().addPathSegment("projects").addPathSegment(repositoryId);
+    }
 }
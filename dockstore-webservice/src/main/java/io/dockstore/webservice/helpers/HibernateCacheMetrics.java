@@ -0,0 +1,61 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Exposes hits, misses and sizes of each Hibernate second-level cache region, plus the query cache, as gauges.
+ * Requires hibernate.generate_statistics to be on.
+ *
+ * @author dyuen
+ */
+public class HibernateCacheMetrics implements MetricSet {
+
+    private static final String PREFIX = "hibernate.cache";
+    private final Statistics statistics;
+
+    public HibernateCacheMetrics(Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            metrics.put(MetricRegistry.name(PREFIX, region, "hits"), (Gauge<Long>)() -> regionStatistics(region).getHitCount());
+            metrics.put(MetricRegistry.name(PREFIX, region, "misses"), (Gauge<Long>)() -> regionStatistics(region).getMissCount());
+            metrics.put(MetricRegistry.name(PREFIX, region, "puts"), (Gauge<Long>)() -> regionStatistics(region).getPutCount());
+            metrics.put(MetricRegistry.name(PREFIX, region, "size"), (Gauge<Long>)() -> regionStatistics(region).getElementCountInMemory());
+        }
+        metrics.put(MetricRegistry.name(PREFIX, "query", "hits"), (Gauge<Long>)statistics::getQueryCacheHitCount);
+        metrics.put(MetricRegistry.name(PREFIX, "query", "misses"), (Gauge<Long>)statistics::getQueryCacheMissCount);
+        metrics.put(MetricRegistry.name(PREFIX, "query", "puts"), (Gauge<Long>)statistics::getQueryCachePutCount);
+        return metrics;
+    }
+
+    private SecondLevelCacheStatistics regionStatistics(String region) {
+        return statistics.getSecondLevelCacheStatistics(region);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.WebApplicationException;
+
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import okhttp3.OkHttpClient;
+import org.apache.http.HttpStatus;
+import org.kohsuke.github.AbuseLimitHandler;
+import org.kohsuke.github.HttpException;
+import org.kohsuke.github.RateLimitHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a slow or failing provider from tying up every request thread.
+ * <ul>
+ * <li>timeouts for the HTTP clients of each provider</li>
+ * <li>a bulkhead, which bounds the calls to each provider that may be in flight at once</li>
+ * <li>a circuit breaker, which fails calls straight away for a while after consecutive failures and then lets one through to try again</li>
+ * <li>GitHub rate and abuse limits fail with a retry after instead of waiting for the limit to reset</li>
+ * </ul>
+ * Rejected calls become a 503 (429 for rate limits) with a Retry-After header.
+ * Calls are guarded in {@link ProviderMetrics#time(String, String, ProviderMetrics.Call)}, so everything that is timed is guarded.
+ *
+ * @author dyuen
+ */
+public final class ProviderGuard {
+
+    /**
+     * The status of a call that got no response, such as one that timed out
+     */
+    public static final int NO_RESPONSE = 0;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProviderGuard.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long DEFAULT_ABUSE_RETRY_SECONDS = 60;
+    private static final DockstoreWebserviceConfiguration.ProviderConfig DEFAULTS = new DockstoreWebserviceConfiguration.ProviderConfig();
+    private static final ConcurrentMap<String, Guard> GUARDS = new ConcurrentHashMap<>();
+    private static Map<String, DockstoreWebserviceConfiguration.ProviderConfig> configs = new HashMap<>();
+
+    private ProviderGuard() {
+        // hide the constructor for utility classes
+    }
+
+    public static void configure(Map<String, DockstoreWebserviceConfiguration.ProviderConfig> providers) {
+        configs = new HashMap<>(providers);
+        GUARDS.clear();
+    }
+
+    /**
+     * @return the limits for a provider, the defaults if it is not configured
+     */
+    public static DockstoreWebserviceConfiguration.ProviderConfig getConfig(String provider) {
+        return configs.getOrDefault(provider, DEFAULTS);
+    }
+
+    /**
+     * Apply the timeouts of a provider to a client
+     */
+    public static OkHttpClient.Builder withTimeouts(OkHttpClient.Builder builder, String provider) {
+        DockstoreWebserviceConfiguration.ProviderConfig config = getConfig(provider);
+        return builder.connectTimeout(config.getConnectTimeoutSeconds(), TimeUnit.SECONDS)
+            .readTimeout(config.getReadTimeoutSeconds(), TimeUnit.SECONDS).writeTimeout(config.getReadTimeoutSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Take a place in the bulkhead of a provider, if its circuit is closed.
+     *
+     * @return to be released once the call is done
+     * @throws CustomWebApplicationException if the circuit is open or the bulkhead stays full
+     */
+    static Permit acquire(String provider) {
+        Guard guard = GUARDS.computeIfAbsent(provider, key -> new Guard(getConfig(key)));
+        boolean trial = false;
+        long openUntil = guard.openUntil;
+        if (openUntil != 0) {
+            long remaining = openUntil - System.currentTimeMillis();
+            if (remaining > 0) {
+                throw reject(provider, "circuit-open", provider + " is unavailable", TimeUnit.MILLISECONDS.toSeconds(remaining) + 1);
+            }
+            // half open, only one call gets to find out whether the provider is back
+            if (!guard.trialInFlight.compareAndSet(false, true)) {
+                throw reject(provider, "circuit-open", provider + " is unavailable", 1);
+            }
+            trial = true;
+        }
+        try {
+            if (!guard.bulkhead.tryAcquire(guard.config.getMaxWaitMillis(), TimeUnit.MILLISECONDS)) {
+                guard.endTrial(trial);
+                throw reject(provider, "bulkhead-full", "too many calls in progress to " + provider, 1);
+            }
+        } catch (InterruptedException e) {
+            guard.endTrial(trial);
+            Thread.currentThread().interrupt();
+            throw new CustomWebApplicationException("interrupted while waiting on " + provider, HttpStatus.SC_SERVICE_UNAVAILABLE);
+        }
+        return new Permit(provider, guard, trial);
+    }
+
+    /**
+     * Whether a call failed in a way that says the provider is in trouble: no response, a 5xx or a 429.
+     * Other 4xx, such as a 401 for a revoked token, are the caller's problem and leave the circuit alone.
+     */
+    static boolean isFailure(int status) {
+        return status == NO_RESPONSE || status >= HttpStatus.SC_INTERNAL_SERVER_ERROR || status == TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * @return the status of the response an exception was thrown for, {@link #NO_RESPONSE} for I/O errors,
+     * a 200 for exceptions that are not about the call, such as failing to parse a response
+     */
+    static int statusOf(Exception e) {
+        if (e instanceof WebApplicationException) {
+            return ((WebApplicationException)e).getResponse().getStatus();
+        }
+        if (e instanceof HttpException) {
+            int code = ((HttpException)e).getResponseCode();
+            return code > 0 ? code : NO_RESPONSE;
+        }
+        if (e instanceof FileNotFoundException) {
+            // how the GitHub client reports a 404
+            return HttpStatus.SC_NOT_FOUND;
+        }
+        return e instanceof IOException ? NO_RESPONSE : HttpStatus.SC_OK;
+    }
+
+    private static CustomWebApplicationException reject(String provider, String reason, String message, long retryAfterSeconds) {
+        ProviderMetrics.mark(provider, reason);
+        return new CustomWebApplicationException(message + ", please try again later", HttpStatus.SC_SERVICE_UNAVAILABLE, retryAfterSeconds);
+    }
+
+    /**
+     * Fail with a retry after the rate limit resets, instead of parking the request thread until then
+     */
+    public static RateLimitHandler gitHubRateLimitHandler() {
+        return new RateLimitHandler() {
+            @Override
+            public void onError(IOException e, HttpURLConnection uc) {
+                long reset = uc.getHeaderFieldLong("X-RateLimit-Reset", 0);
+                long retryAfter = Math.max(1, reset - TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+                ProviderMetrics.mark(ProviderMetrics.GITHUB, "rate-limited");
+                throw new CustomWebApplicationException("GitHub rate limit reached, please try again later", TOO_MANY_REQUESTS, retryAfter);
+            }
+        };
+    }
+
+    /**
+     * Fail with the retry after given by GitHub, instead of parking the request thread until then
+     */
+    public static AbuseLimitHandler gitHubAbuseLimitHandler() {
+        return new AbuseLimitHandler() {
+            @Override
+            public void onError(IOException e, HttpURLConnection uc) {
+                long retryAfter = uc.getHeaderFieldLong("Retry-After", DEFAULT_ABUSE_RETRY_SECONDS);
+                ProviderMetrics.mark(ProviderMetrics.GITHUB, "abuse-limited");
+                throw new CustomWebApplicationException("GitHub abuse limit reached, please try again later", TOO_MANY_REQUESTS, retryAfter);
+            }
+        };
+    }
+
+    /**
+     * The state of one provider
+     */
+    private static class Guard {
+        private final DockstoreWebserviceConfiguration.ProviderConfig config;
+        private final Semaphore bulkhead;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicBoolean trialInFlight = new AtomicBoolean();
+        /**
+         * When calls may be tried again, 0 when the circuit is closed
+         */
+        private volatile long openUntil;
+
+        Guard(DockstoreWebserviceConfiguration.ProviderConfig config) {
+            this.config = config;
+            this.bulkhead = new Semaphore(config.getMaxConcurrentCalls());
+        }
+
+        void endTrial(boolean trial) {
+            if (trial) {
+                trialInFlight.set(false);
+            }
+        }
+    }
+
+    /**
+     * A place in the bulkhead of a provider
+     */
+    static final class Permit {
+        private final String provider;
+        private final Guard guard;
+        private final boolean trial;
+
+        private Permit(String provider, Guard guard, boolean trial) {
+            this.provider = provider;
+            this.guard = guard;
+            this.trial = trial;
+        }
+
+        /**
+         * @param success whether the provider responded without an error of its own, failures count towards opening the circuit
+         */
+        void release(boolean success) {
+            guard.bulkhead.release();
+            if (success) {
+                guard.consecutiveFailures.set(0);
+                if (guard.openUntil != 0) {
+                    guard.openUntil = 0;
+                    LOG.info("Circuit for {} closed", provider);
+                }
+            } else if (guard.consecutiveFailures.incrementAndGet() >= guard.config.getFailureThreshold() || trial) {
+                guard.openUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(guard.config.getOpenSeconds());
+                LOG.warn("Circuit for {} opened for {} seconds after {} consecutive failures", provider, guard.config.getOpenSeconds(),
+                    guard.consecutiveFailures.get());
+            }
+            guard.endTrial(trial);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.DockstoreWebserviceApplication;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pooled HTTP client, sharing the web cache, for the REST APIs of source control providers that do not come with a library (Bitbucket and GitLab),
+ * plus a bounded pool for fetching from them concurrently.
+ *
+ * @author dyuen
+ */
+public final class ProviderHttpClient {
+
+    /**
+     * Upper bound on concurrent calls to providers across all refreshes
+     */
+    private static final int PARALLELISM = 16;
+    private static final int MAX_IDLE_CONNECTIONS = 32;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final String THREAD_PREFIX = "provider-fetch-";
+    private static final Logger LOG = LoggerFactory.getLogger(ProviderHttpClient.class);
+    private static final ExecutorService EXECUTOR = Executors
+        .newFixedThreadPool(PARALLELISM, new ThreadFactoryBuilder().setNameFormat(THREAD_PREFIX + "%d").setDaemon(true).build());
+    private static final ConcurrentMap<String, OkHttpClient> CLIENTS = new ConcurrentHashMap<>();
+    private static OkHttpClient client;
+
+    private ProviderHttpClient() {
+        // hide the constructor for utility classes
+    }
+
+    /**
+     * The cache is only created once the application is initialized, so the client is as well
+     */
+    private static synchronized OkHttpClient getClient() {
+        if (client == null) {
+            client = new OkHttpClient.Builder().cache(DockstoreWebserviceApplication.getCache())
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .addInterceptor(ProviderMetrics.cacheInterceptor()).build();
+        }
+        return client;
+    }
+
+    /**
+     * @return a client with the timeouts of the provider, sharing the connection pool and cache
+     */
+    private static OkHttpClient getClient(String provider) {
+        return CLIENTS.computeIfAbsent(provider, key -> ProviderGuard.withTimeouts(getClient().newBuilder(), key).build());
+    }
+
+    /**
+     * GET with a bearer token, timed under the provider and operation.
+     *
+     * @return the response, empty if the provider could not be reached or did not return a success (only I/O errors, 5xx and 429 are counted as failures)
+     * @throws CustomWebApplicationException if calls to the provider are being rejected, see {@link ProviderGuard}
+     */
+    public static Optional<Result> get(String provider, String operation, HttpUrl url, String token) {
+        Request.Builder request = new Request.Builder().url(url);
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        try {
+            return ProviderMetrics.time(provider, operation, () -> {
+                try (Response response = getClient(provider).newCall(request.build()).execute()) {
+                    if (response.code() == HttpStatus.SC_NOT_FOUND) {
+                        return Optional.empty();
+                    }
+                    ResponseBody body = response.body();
+                    if (!ProviderGuard.isFailure(response.code()) && !response.isSuccessful()) {
+                        // such as a revoked token, the provider itself is fine
+                        LOG.info("could not get " + url + " from " + provider + " due to " + response.code() + " " + response.message());
+                        return Optional.empty();
+                    }
+                    if (!response.isSuccessful() || body == null) {
+                        throw new IOException(response.code() + " " + response.message());
+                    }
+                    return Optional.of(new Result(body.string(), response));
+                }
+            });
+        } catch (IOException e) {
+            LOG.info("could not get " + url + " from " + provider + " due to " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Apply a function to each item on the shared pool, waiting for all of them.
+     * Calls from the pool itself run in place so that nested use cannot starve it.
+     *
+     * @return the results in the order of the items
+     */
+    public static <T, R> List<R> mapConcurrently(Collection<T> items, Function<T, R> function) {
+        if (items.size() < 2 || Thread.currentThread().getName().startsWith(THREAD_PREFIX)) {
+            return items.stream().map(function).collect(Collectors.toList());
+        }
+        List<Future<R>> futures = items.stream().map(item -> EXECUTOR.submit(() -> function.apply(item))).collect(Collectors.toList());
+        List<R> results = new ArrayList<>(items.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomWebApplicationException("interrupted while waiting on source control", HttpStatus.SC_SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    /**
+     * A successful response
+     */
+    public static class Result {
+        private final String body;
+        private final Headers headers;
+
+        Result(String body, Response response) {
+            this.body = body;
+            this.headers = response.headers();
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String header(String name) {
+            return headers.get(name);
+        }
+    }
+}
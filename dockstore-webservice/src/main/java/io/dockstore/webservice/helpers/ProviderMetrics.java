@@ -0,0 +1,219 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.resources.ResourceUtilities;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+
+/**
+ * Metrics for calls to source control and image registry providers, reported as providers.[provider].[operation]
+ * <ul>
+ * <li>a timer (which is also a meter) and a failure meter for each operation</li>
+ * <li>remaining rate limit for each account, as last reported by the provider</li>
+ * <li>counters for responses served from the OkHttp cache versus the network</li>
+ * <li>meters for calls rejected by {@link ProviderGuard} and for rate limits being hit</li>
+ * </ul>
+ * The source code repos and image registries are created all over the place, so the registry is set once statically.
+ *
+ * @author dyuen
+ */
+public final class ProviderMetrics {
+
+    public static final String GITHUB = "github";
+    public static final String BITBUCKET = "bitbucket";
+    public static final String GITLAB = "gitlab";
+    public static final String QUAY = "quay";
+
+    private static final String PREFIX = "providers";
+    private static final Map<String, Integer> RATE_LIMITS = new ConcurrentHashMap<>();
+    private static MetricRegistry registry = new MetricRegistry();
+
+    private ProviderMetrics() {
+        // hide the constructor for utility classes
+    }
+
+    public static void setRegistry(MetricRegistry registry) {
+        ProviderMetrics.registry = registry;
+    }
+
+    /**
+     * Time a call guarded by the bulkhead and circuit breaker of the provider, exceptions are counted as failures.
+     * Only I/O errors, 5xx and 429 count towards opening the circuit, see {@link ProviderGuard#statusOf(Exception)}.
+     *
+     * @throws io.dockstore.webservice.CustomWebApplicationException if the provider is not being called, see {@link ProviderGuard}
+     */
+    public static <T, E extends Exception> T time(String provider, String operation, Call<T, E> call) throws E {
+        return time(provider, operation, call, result -> HttpStatus.SC_OK, ProviderGuard::statusOf);
+    }
+
+    /**
+     * Like {@link #time(String, String, Call)}, for clients whose exceptions carry the status of the response
+     *
+     * @param errorStatus the status of the response an exception was thrown for, {@link ProviderGuard#NO_RESPONSE} if there was none
+     */
+    public static <T, E extends Exception> T time(String provider, String operation, Call<T, E> call, ToIntFunction<E> errorStatus) throws E {
+        return time(provider, operation, call, result -> HttpStatus.SC_OK, errorStatus);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, E extends Exception> T time(String provider, String operation, Call<T, E> call, ToIntFunction<T> resultStatus,
+        ToIntFunction<E> errorStatus) throws E {
+        final ProviderGuard.Permit permit = ProviderGuard.acquire(provider);
+        final Timer.Context context = registry.timer(MetricRegistry.name(PREFIX, provider, operation)).time();
+        int status = ProviderGuard.NO_RESPONSE;
+        try {
+            T result = call.call();
+            status = resultStatus.applyAsInt(result);
+            return result;
+        } catch (RuntimeException e) {
+            markFailure(provider, operation);
+            status = ProviderGuard.statusOf(e);
+            throw e;
+        } catch (Exception e) {
+            markFailure(provider, operation);
+            // call only throws E besides runtime exceptions
+            status = errorStatus.applyAsInt((E)e);
+            throw e;
+        } finally {
+            context.stop();
+            permit.release(!ProviderGuard.isFailure(status));
+        }
+    }
+
+    /**
+     * Time a GET through {@link ResourceUtilities#asString(String, String, HttpClient)}, an empty result is counted as a failure.
+     */
+    public static Optional<String> asString(String provider, String operation, String url, String token, HttpClient client) {
+        Optional<String> result = time(provider, operation, () -> ResourceUtilities.asString(url, token, client));
+        if (!result.isPresent()) {
+            markFailure(provider, operation);
+        }
+        return result;
+    }
+
+    public static void recordRateLimit(String provider, String account, int remaining) {
+        String name = MetricRegistry.name(PREFIX, provider, "rate-limit-remaining", account);
+        RATE_LIMITS.put(name, remaining);
+        registry.gauge(name, () -> (Gauge<Integer>)() -> RATE_LIMITS.get(name));
+    }
+
+    /**
+     * Times every GitHub API call by the kind of resource requested, and records the remaining rate limit of the account.
+     *
+     * @param account the account whose token is used
+     */
+    public static Interceptor gitHubInterceptor(String account) {
+        return chain -> {
+            final Response response;
+            try {
+                response = time(GITHUB, gitHubOperation(chain.request().url()), () -> chain.proceed(chain.request()), Response::code,
+                    ProviderGuard::statusOf);
+            } catch (CustomWebApplicationException e) {
+                // rejected by the guard, HttpURLConnection may run this on another thread where only IOExceptions reach the caller
+                throw new IOException("GitHub call rejected: " + e.getMessage(), e);
+            }
+            String remaining = response.networkResponse() == null ? null : response.networkResponse().header("X-RateLimit-Remaining");
+            if (remaining != null && account != null) {
+                recordRateLimit(GITHUB, account, Integer.parseInt(remaining));
+            }
+            countCacheUse(GITHUB, response);
+            return response;
+        };
+    }
+
+    /**
+     * Counts cache hits versus network calls, by provider (or host for unknown providers).
+     */
+    public static Interceptor cacheInterceptor() {
+        return chain -> {
+            Response response = chain.proceed(chain.request());
+            countCacheUse(providerOf(chain.request().url().host()), response);
+            return response;
+        };
+    }
+
+    private static void countCacheUse(String provider, Response response) {
+        final String use;
+        if (response.networkResponse() == null) {
+            use = "cache-hits";
+        } else if (response.cacheResponse() != null) {
+            // revalidated with a conditional request, these do not count against the GitHub rate limit
+            use = "conditional-cache-hits";
+        } else {
+            use = "network";
+        }
+        registry.counter(MetricRegistry.name(PREFIX, provider, use)).inc();
+    }
+
+    private static void markFailure(String provider, String operation) {
+        registry.meter(MetricRegistry.name(PREFIX, provider, operation, "failures")).mark();
+    }
+
+    /**
+     * Meter something that happened to calls to a provider, such as them being rejected
+     */
+    static void mark(String provider, String event) {
+        registry.meter(MetricRegistry.name(PREFIX, provider, event)).mark();
+    }
+
+    /**
+     * e.g. /repos/owner/name/contents/path becomes repos.contents, /user/repos becomes user.repos
+     */
+    private static String gitHubOperation(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        String first = segments.get(0).isEmpty() ? "root" : segments.get(0);
+        final int repoSegments = 3;
+        if ("repos".equals(first)) {
+            return segments.size() > repoSegments ? first + '.' + segments.get(repoSegments) : first;
+        }
+        if (("users".equals(first) || "orgs".equals(first)) && segments.size() > 2) {
+            return first + '.' + segments.get(2);
+        }
+        return segments.size() > 1 ? first + '.' + segments.get(1) : first;
+    }
+
+    private static String providerOf(String host) {
+        for (String provider : new String[] { GITHUB, BITBUCKET, GITLAB, QUAY }) {
+            if (host.contains(provider)) {
+                return provider;
+            }
+        }
+        return host;
+    }
+
+    /**
+     * A call to a provider that may throw a checked exception
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -38,7 +38,6 @@ import io.dockstore.webservice.core.Tag;
 import io.dockstore.webservice.core.Token;
 import io.dockstore.webservice.core.Tool;
 import io.dockstore.webservice.core.ToolMode;
-import io.dockstore.webservice.resources.ResourceUtilities;
 import io.swagger.quay.client.ApiClient;
 import io.swagger.quay.client.ApiException;
 import io.swagger.quay.client.Configuration;
@@ -77,7 +76,7 @@ public class QuayImageRegistry extends AbstractImageRegistry {
         LOG.info(quayToken.getUsername() + " ======================= Getting tags for: {}================================", tool.getPath());
         final String repo = tool.getNamespace() + '/' + tool.getName();
         final String repoUrl = QUAY_URL + "repository/" + repo;
-        final Optional<String> asStringBuilds = ResourceUtilities.asString(repoUrl, quayToken.getContent(), client);
+        final Optional<String> asStringBuilds = ProviderMetrics.asString(ProviderMetrics.QUAY, "getTags", repoUrl, quayToken.getContent(), client);
 
         final List<Tag> tags = new ArrayList<>();
 
@@ -113,7 +112,7 @@ public class QuayImageRegistry extends AbstractImageRegistry {
 
         UserApi api = new UserApi(apiClient);
         try {
-            final UserView loggedInUser = api.getLoggedInUser();
+            final UserView loggedInUser = ProviderMetrics.time(ProviderMetrics.QUAY, "getLoggedInUser", api::getLoggedInUser, ApiException::getCode);
             final List organizations = loggedInUser.getOrganizations();
             for (Object organization : organizations) {
                 Map<String, String> organizationMap = (Map)organization;
@@ -133,7 +132,7 @@ public class QuayImageRegistry extends AbstractImageRegistry {
 
         for (String namespace : namespaces) {
             String url = QUAY_URL + "repository?namespace=" + namespace;
-            Optional<String> asString = ResourceUtilities.asString(url, quayToken.getContent(), client);
+            Optional<String> asString = ProviderMetrics.asString(ProviderMetrics.QUAY, "getToolsFromNamespace", url, quayToken.getContent(), client);
             //            LOG.info(quayToken.getUsername() + " : RESOURCE CALL: {}", url);
 
             if (asString.isPresent()) {
@@ -177,7 +176,7 @@ public class QuayImageRegistry extends AbstractImageRegistry {
 
             // Make call for build information from quay (only need most recent)
             String urlBuilds = QUAY_URL + "repository/" + repo + "/build/?limit=1";
-            Optional<String> asStringBuilds = ResourceUtilities.asString(urlBuilds, quayToken.getContent(), client);
+            Optional<String> asStringBuilds = ProviderMetrics.asString(ProviderMetrics.QUAY, "updateAPIToolsWithBuildInformation", urlBuilds, quayToken.getContent(), client);
 
             // Check result of API call
             if (asStringBuilds.isPresent()) {
@@ -253,7 +252,7 @@ public class QuayImageRegistry extends AbstractImageRegistry {
 
         // Grab build information for given repository
         String urlBuilds = QUAY_URL + "repository/" + repository + "/build/?limit=" + Integer.MAX_VALUE;
-        Optional<String> asStringBuilds = ResourceUtilities.asString(urlBuilds, quayToken.getContent(), client);
+        Optional<String> asStringBuilds = ProviderMetrics.asString(ProviderMetrics.QUAY, "updateTagsWithBuildInformation", urlBuilds, quayToken.getContent(), client);
 
         // List of builds for a tool
         ArrayList builds;
@@ -314,7 +313,7 @@ public class QuayImageRegistry extends AbstractImageRegistry {
     public Map<String, Object> getQuayInfo(final Tool tool) {
         final String repo = tool.getNamespace() + '/' + tool.getName();
         final String repoUrl = QUAY_URL + "repository/" + repo;
-        final Optional<String> asStringBuilds = ResourceUtilities.asString(repoUrl, quayToken.getContent(), client);
+        final Optional<String> asStringBuilds = ProviderMetrics.asString(ProviderMetrics.QUAY, "getQuayInfo", repoUrl, quayToken.getContent(), client);
 
         if (asStringBuilds.isPresent()) {
             final String json = asStringBuilds.get();
@@ -363,7 +362,7 @@ public class QuayImageRegistry extends AbstractImageRegistry {
 
         // Grab build information for given repository
         String urlBuilds = QUAY_URL + "repository/" + repo + "/build/?limit=" + Integer.MAX_VALUE;
-        Optional<String> asStringBuilds = ResourceUtilities.asString(urlBuilds, quayToken.getContent(), client);
+        Optional<String> asStringBuilds = ProviderMetrics.asString(ProviderMetrics.QUAY, "canConvertToAuto", urlBuilds, quayToken.getContent(), client);
 
         // Look for a matching git reference
         if (asStringBuilds.isPresent()) {
@@ -0,0 +1,138 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.type.Type;
+
+/**
+ * Counts the statements, their time and the entities loaded by Hibernate on the current thread.
+ * The global {@link org.hibernate.stat.Statistics} mix up concurrent requests, so this hooks into every session instead
+ * and only counts while {@link #begin()} has been called on the thread, see {@link QueryStatisticsEventListener}.
+ *
+ * @author dyuen
+ */
+public final class QueryStatistics {
+
+    private static final ThreadLocal<QueryStatistics> CURRENT = new ThreadLocal<>();
+
+    private int queries;
+    private int entityLoads;
+    private long databaseNanos;
+    private long statementStart;
+
+    private QueryStatistics() {
+    }
+
+    /**
+     * Install the hooks in a session factory that is being configured
+     */
+    public static void configure(Configuration configuration) {
+        configuration.setProperty(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, StatementListener.class.getName());
+        configuration.setInterceptor(new LoadInterceptor());
+    }
+
+    /**
+     * Start counting on the current thread
+     */
+    public static void begin() {
+        CURRENT.set(new QueryStatistics());
+    }
+
+    /**
+     * Stop counting on the current thread
+     * @return what was counted since {@link #begin()}, null if counting was never started
+     */
+    public static QueryStatistics end() {
+        QueryStatistics statistics = CURRENT.get();
+        CURRENT.remove();
+        return statistics;
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public int getEntityLoads() {
+        return entityLoads;
+    }
+
+    public long getDatabaseMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(databaseNanos);
+    }
+
+    /**
+     * Created by Hibernate for each session, statements include queries, inserts, updates and batches.
+     */
+    public static class StatementListener extends BaseSessionEventListener {
+
+        @Override
+        public void jdbcExecuteStatementStart() {
+            startStatement();
+        }
+
+        @Override
+        public void jdbcExecuteStatementEnd() {
+            endStatement();
+        }
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            startStatement();
+        }
+
+        @Override
+        public void jdbcExecuteBatchEnd() {
+            endStatement();
+        }
+
+        private static void startStatement() {
+            QueryStatistics statistics = CURRENT.get();
+            if (statistics != null) {
+                statistics.statementStart = System.nanoTime();
+            }
+        }
+
+        private static void endStatement() {
+            QueryStatistics statistics = CURRENT.get();
+            if (statistics != null) {
+                statistics.queries++;
+                statistics.databaseNanos += System.nanoTime() - statistics.statementStart;
+            }
+        }
+    }
+
+    /**
+     * Shared by all sessions, so it only touches the thread's counts.
+     */
+    private static class LoadInterceptor extends EmptyInterceptor {
+
+        @Override
+        public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+            QueryStatistics statistics = CURRENT.get();
+            if (statistics != null) {
+                statistics.entityLoads++;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the database work done by each request as histograms named [resource class].[method].[queries|entityLoads|databaseMillis]
+ * and logs requests over the configured thresholds, which is where N+1 patterns from eager associations show up.
+ * Counting runs until the request has finished, so lazy loading while the response is serialized is included.
+ *
+ * @author dyuen
+ */
+public class QueryStatisticsEventListener implements ApplicationEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryStatisticsEventListener.class);
+
+    private final MetricRegistry registry;
+    private final DockstoreWebserviceConfiguration.QueryStatisticsConfig config;
+    private final ConcurrentMap<String, MethodHistograms> methods = new ConcurrentHashMap<>();
+
+    public QueryStatisticsEventListener(MetricRegistry registry, DockstoreWebserviceConfiguration.QueryStatisticsConfig config) {
+        this.registry = registry;
+        this.config = config;
+    }
+
+    /**
+     * @return histograms for each resource method that has been called, keyed by [resource class].[method]
+     */
+    public Map<String, MethodHistograms> getMethods() {
+        return methods;
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+        // nothing to do at the application level
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        QueryStatistics.begin();
+        return event -> {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                QueryStatistics statistics = QueryStatistics.end();
+                ResourceMethod resourceMethod = event.getUriInfo().getMatchedResourceMethod();
+                if (statistics != null && resourceMethod != null) {
+                    record(event, resourceMethod.getInvocable().getDefinitionMethod(), statistics);
+                }
+            }
+        };
+    }
+
+    private void record(RequestEvent event, Method method, QueryStatistics statistics) {
+        String name = MetricRegistry.name(method.getDeclaringClass(), method.getName());
+        MethodHistograms histograms = methods.computeIfAbsent(name, key -> new MethodHistograms(registry, key));
+        histograms.queries.update(statistics.getQueries());
+        histograms.entityLoads.update(statistics.getEntityLoads());
+        histograms.databaseMillis.update(statistics.getDatabaseMillis());
+
+        if (statistics.getQueries() > config.getSlowQueries() || statistics.getEntityLoads() > config.getSlowEntityLoads()
+            || statistics.getDatabaseMillis() > config.getSlowDatabaseMillis()) {
+            LOG.warn("{} {} ({}) ran {} statements, loaded {} entities and spent {} ms in the database", event.getContainerRequest().getMethod(),
+                event.getUriInfo().getPath(), name, statistics.getQueries(), statistics.getEntityLoads(), statistics.getDatabaseMillis());
+        }
+    }
+
+    /**
+     * The histograms for one resource method
+     */
+    public static class MethodHistograms {
+        private final Histogram queries;
+        private final Histogram entityLoads;
+        private final Histogram databaseMillis;
+
+        MethodHistograms(MetricRegistry registry, String name) {
+            queries = registry.histogram(MetricRegistry.name(name, "queries"));
+            entityLoads = registry.histogram(MetricRegistry.name(name, "entityLoads"));
+            databaseMillis = registry.histogram(MetricRegistry.name(name, "databaseMillis"));
+        }
+
+        public Histogram getQueries() {
+            return queries;
+        }
+
+        public Histogram getEntityLoads() {
+            return entityLoads;
+        }
+
+        public Histogram getDatabaseMillis() {
+            return databaseMillis;
+        }
+    }
+}
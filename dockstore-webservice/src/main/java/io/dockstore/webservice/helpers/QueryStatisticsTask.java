@@ -0,0 +1,63 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.codahale.metrics.Snapshot;
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+/**
+ * Admin task listing the database work per resource method, worst first by mean number of statements.
+ * Run with curl -X POST http://[host]:[admin port]/tasks/query-statistics
+ *
+ * @author dyuen
+ */
+public class QueryStatisticsTask extends Task {
+
+    private final QueryStatisticsEventListener listener;
+
+    public QueryStatisticsTask(QueryStatisticsEventListener listener) {
+        super("query-statistics");
+        this.listener = listener;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+        List<Map.Entry<String, QueryStatisticsEventListener.MethodHistograms>> methods = new ArrayList<>(listener.getMethods().entrySet());
+        methods.sort(Comparator.comparingDouble(
+            (Map.Entry<String, QueryStatisticsEventListener.MethodHistograms> entry) -> entry.getValue().getQueries().getSnapshot().getMean())
+            .reversed());
+
+        output.println("method\trequests\tqueries mean/p99/max\tentity loads mean/p99/max\tdatabase ms mean/p99/max");
+        for (Map.Entry<String, QueryStatisticsEventListener.MethodHistograms> entry : methods) {
+            QueryStatisticsEventListener.MethodHistograms histograms = entry.getValue();
+            output.println(String.join("\t", entry.getKey(), String.valueOf(histograms.getQueries().getCount()),
+                summary(histograms.getQueries().getSnapshot()), summary(histograms.getEntityLoads().getSnapshot()),
+                summary(histograms.getDatabaseMillis().getSnapshot())));
+        }
+        output.flush();
+    }
+
+    private static String summary(Snapshot snapshot) {
+        return String.format("%.1f/%.0f/%d", snapshot.getMean(), snapshot.get99thPercentile(), snapshot.getMax());
+    }
+}
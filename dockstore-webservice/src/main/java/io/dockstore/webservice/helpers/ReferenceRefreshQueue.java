@@ -0,0 +1,175 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.helpers;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dockstore.webservice.core.Version;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes branches and tags some time after they were pushed to.
+ * Pushes to the same reference while it is waiting are coalesced into one refresh that sees the latest state,
+ * a push while it is being refreshed is refreshed again once that is done.
+ * Refreshes of one repository run one at a time, since they update the same workflows and tools.
+ *
+ * @author dyuen
+ */
+public class ReferenceRefreshQueue implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReferenceRefreshQueue.class);
+    private static final int THREADS = 2;
+
+    private final ScheduledExecutorService scheduler = Executors
+        .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("reference-refresh-timer").setDaemon(true).build());
+    private final ExecutorService workers = Executors
+        .newFixedThreadPool(THREADS, new ThreadFactoryBuilder().setNameFormat("reference-refresh-%d").setDaemon(true).build());
+    /**
+     * the latest change to each reference that is waiting for its refresh
+     */
+    private final ConcurrentMap<String, ReferenceChange> pending = new ConcurrentHashMap<>();
+    /**
+     * references due for a refresh by repository, a repository is in here while one of its references is being refreshed
+     */
+    private final Map<String, Queue<String>> due = new HashMap<>();
+    private final Consumer<ReferenceChange> refresher;
+    private final int delaySeconds;
+
+    /**
+     * @param refresher    called on a queue thread for each change
+     * @param delaySeconds how long to wait after the first push
+     */
+    public ReferenceRefreshQueue(Consumer<ReferenceChange> refresher, int delaySeconds) {
+        this.refresher = refresher;
+        this.delaySeconds = delaySeconds;
+    }
+
+    public void enqueue(ReferenceChange change) {
+        String key = change.getGitUrl() + '@' + change.getReference() + '#' + change.getUserId();
+        // a refresh that is still waiting picks up this change instead
+        if (pending.put(key, change) == null) {
+            LOG.info("Refreshing {} of {} in {} seconds", change.getReference(), change.getGitUrl(), delaySeconds);
+            scheduler.schedule(() -> markDue(change.getGitUrl(), key), delaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void markDue(String gitUrl, String key) {
+        synchronized (due) {
+            Queue<String> keys = due.get(gitUrl);
+            if (keys != null) {
+                // the refresh of the repository that is running picks it up next
+                keys.add(key);
+                return;
+            }
+            keys = new ArrayDeque<>();
+            keys.add(key);
+            due.put(gitUrl, keys);
+        }
+        workers.execute(() -> refreshRepository(gitUrl));
+    }
+
+    private void refreshRepository(String gitUrl) {
+        while (true) {
+            String key;
+            synchronized (due) {
+                key = due.get(gitUrl).poll();
+                if (key == null) {
+                    due.remove(gitUrl);
+                    return;
+                }
+            }
+            // removed before the refresh starts, so that a push during the refresh schedules another one
+            ReferenceChange change = pending.remove(key);
+            if (change != null) {
+                refresh(change);
+            }
+        }
+    }
+
+    private void refresh(ReferenceChange change) {
+        try {
+            refresher.accept(change);
+        } catch (RuntimeException e) {
+            LOG.error("Could not refresh " + change.getReference() + " of " + change.getGitUrl(), e);
+        }
+    }
+
+    @Override
+    public void start() {
+        // the executors start threads as needed
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * A push to a branch or tag, reported by a webhook of a user
+     */
+    public static class ReferenceChange {
+        private final String gitUrl;
+        private final String reference;
+        private final Version.ReferenceType referenceType;
+        private final boolean deleted;
+        private final long userId;
+
+        public ReferenceChange(String gitUrl, String reference, Version.ReferenceType referenceType, boolean deleted, long userId) {
+            this.gitUrl = gitUrl;
+            this.reference = reference;
+            this.referenceType = referenceType;
+            this.deleted = deleted;
+            this.userId = userId;
+        }
+
+        public String getGitUrl() {
+            return gitUrl;
+        }
+
+        public String getReference() {
+            return reference;
+        }
+
+        public Version.ReferenceType getReferenceType() {
+            return referenceType;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return the user whose webhook reported the push, only their entries are refreshed
+         */
+        public long getUserId() {
+            return userId;
+        }
+    }
+}
@@ -178,6 +178,37 @@ public abstract class SourceCodeRepoInterface {
         return workflow;
     }
 
+    /**
+     * Creates one version of a FULL workflow, for when only that branch or tag has changed
+     *
+     * @param repositoryId
+     * @param workflow the workflow as it is now, it is not changed
+     * @param reference the branch or tag
+     * @param referenceType whether the reference is a branch or a tag
+     * @return the workflow version with associated source files
+     */
+    public WorkflowVersion getWorkflowVersion(String repositoryId, Workflow workflow, String reference, Version.ReferenceType referenceType) {
+        Map<String, WorkflowVersion> existingDefaults = new HashMap<>();
+        workflow.getWorkflowVersions().forEach(existingVersion -> existingDefaults.put(existingVersion.getReference(), existingVersion));
+        // like a full refresh, work from a copy of the workflow information
+        Workflow newWorkflow = initializeWorkflow(repositoryId);
+        workflow.copyWorkflow(newWorkflow);
+
+        WorkflowVersion version = initializeWorkflowVersion(reference, Optional.of(workflow), existingDefaults);
+        SourceFile.FileType identifiedType = newWorkflow.getFileType();
+        SourceFile sourceFile = getSourceFile(version.getWorkflowPath(), repositoryId, reference, identifiedType);
+
+        // Non-null sourcefile means that the sourcefile is valid
+        if (sourceFile != null) {
+            version.setValid(true);
+        }
+        version.setReferenceType(referenceType);
+
+        // Use default test parameter file if either new version or existing version that hasn't been edited
+        createTestParameterFiles(newWorkflow, repositoryId, reference, version, identifiedType);
+        return combineVersionAndSourcefile(repositoryId, sourceFile, newWorkflow, identifiedType, version, existingDefaults);
+    }
+
     /**
      * Update an entry with the contents of the descriptor file from a source code repo
      *
@@ -185,7 +216,7 @@ public abstract class SourceCodeRepoInterface {
      * @param type
      * @return
      */
-    Entry updateEntryMetadata(Entry entry, LanguageType type) {
+    public Entry updateEntryMetadata(Entry entry, LanguageType type) {
         // Determine which branch to use
         String repositoryId = getRepositoryId(entry);
 
@@ -23,6 +23,7 @@ import java.util.Objects;
 
 import io.dockstore.webservice.core.Entry;
 import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.core.Workflow;
 import io.dropwizard.hibernate.AbstractDAO;
 import org.apache.commons.lang3.tuple.MutablePair;
@@ -138,11 +139,43 @@ public abstract class EntryDAO<T extends Entry> extends AbstractDAO<T> {
         session.evict(entry);
     }
 
+    /**
+     * Entries loaded after this call in the current session will not have their hidden versions loaded
+     */
+    public void enableHiddenVersionFilter() {
+        currentSession().enableFilter(Version.HIDDEN_VERSION_FILTER);
+    }
+
+    /**
+     * Entries loaded after this call in the current session will not have the source files of their versions loaded
+     */
+    public void enableSourceFileFilter() {
+        currentSession().enableFilter(Version.SOURCE_FILE_FILTER);
+    }
+
+    /**
+     * Entries loaded after this call in the current session will not have their users loaded
+     */
+    public void enableUserFilter() {
+        currentSession().enableFilter(Entry.USER_FILTER);
+    }
+
     public T findPublishedById(long id) {
         return (T)uniqueResult(
                 namedQuery("io.dockstore.webservice.core." + typeOfT.getSimpleName() + ".findPublishedById").setParameter("id", id));
     }
 
+    /**
+     * Atomically adjust the star count in the database, see {@link Entry#getStarCount()}
+     *
+     * @param id    the entry
+     * @param delta 1 when starred, -1 when unstarred
+     */
+    public void addToStarCount(long id, int delta) {
+        namedQuery("io.dockstore.webservice.core." + typeOfT.getSimpleName() + ".addToStarCount").setParameter("id", id)
+                .setParameter("delta", delta).executeUpdate();
+    }
+
     public List<T> findAllPublished() {
         return list(namedQuery("io.dockstore.webservice.core." + typeOfT.getSimpleName() + ".findAllPublished"));
     }
@@ -19,7 +19,8 @@ public class FileFormatDAO extends AbstractDAO<FileFormat> {
     }
 
     public FileFormat findFileFormatByValue(String fileFormatValue) {
-        return uniqueResult(namedQuery("io.dockstore.webservice.core.FileFormat.findByFileFormatValue").setParameter("fileformatValue", fileFormatValue));
+        return uniqueResult(namedQuery("io.dockstore.webservice.core.FileFormat.findByFileFormatValue").setParameter("fileformatValue", fileFormatValue)
+            .setCacheable(true));
     }
 
     public String create(FileFormat fileFormat) {
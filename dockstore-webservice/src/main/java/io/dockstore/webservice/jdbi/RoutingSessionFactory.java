@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.jdbi;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.context.internal.ManagedSessionContext;
+
+/**
+ * Lets one set of DAOs serve both the primary database and a read-only replica.
+ * The current session comes from the read-only session factory whenever a unit of work has bound a session to it
+ * (i.e. the resource method is annotated with {@code @UnitOfWork(value = READ_ONLY, readOnly = true)}), and from the
+ * primary session factory otherwise. Everything else is delegated to the primary session factory.
+ *
+ * @author dyuen
+ */
+public final class RoutingSessionFactory {
+
+    private RoutingSessionFactory() {
+        // not called
+    }
+
+    public static SessionFactory create(SessionFactory primary, SessionFactory readOnly) {
+        return (SessionFactory)Proxy.newProxyInstance(SessionFactory.class.getClassLoader(), new Class[] { SessionFactory.class },
+            (proxy, method, args) -> {
+                SessionFactory target = primary;
+                if ("getCurrentSession".equals(method.getName()) && ManagedSessionContext.hasBind(readOnly)) {
+                    target = readOnly;
+                }
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+}
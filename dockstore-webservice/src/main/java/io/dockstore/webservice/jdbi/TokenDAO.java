@@ -90,6 +90,11 @@ public class TokenDAO extends AbstractDAO<Token> {
         return uniqueResult(namedQuery("io.dockstore.webservice.core.Token.findByContent").setParameter("content", content));
     }
 
+    public Token findByTokenHash(String tokenHash) {
+        return uniqueResult(namedQuery("io.dockstore.webservice.core.Token.findByTokenHash").setParameter("tokenHash", tokenHash)
+            .setCacheable(true));
+    }
+
     public List<Token> findTokenByUsername(String username, TokenType tokenSource) {
         return list(namedQuery("io.dockstore.webservice.core.Token.findTokenByUsername").setParameter("username", username).setParameter("token", tokenSource));
     }
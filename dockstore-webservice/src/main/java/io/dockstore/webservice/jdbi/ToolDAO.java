@@ -36,6 +36,10 @@ public class ToolDAO extends EntryDAO<Tool> {
         return list(namedQuery("io.dockstore.webservice.core.Tool.findByMode").setParameter("mode", mode));
     }
 
+    public List<Tool> findByGitUrl(String gitUrl) {
+        return list(namedQuery("io.dockstore.webservice.core.Tool.findByGitUrl").setParameter("gitUrl", gitUrl));
+    }
+
     /**
      * Finds all tools with the given path (ignores tool name)
      * When findPublished is true, will only look at published tools
@@ -75,6 +79,26 @@ public class ToolDAO extends EntryDAO<Tool> {
         return list(query);
     }
 
+    /**
+     * Checks whether a published tool exists for a path without loading the tools.
+     * The count is kept in the query cache until the tool table changes, which makes this cheap to call for every step of a workflow.
+     *
+     * @param path registry/namespace/name of a tool
+     * @return true if at least one published tool has this path
+     */
+    public boolean hasPublishedByPath(String path) {
+        String[] splitPath = Tool.splitPath(path);
+        if (splitPath == null) {
+            return false;
+        }
+        Query<Long> query = currentSession().createNamedQuery("io.dockstore.webservice.core.Tool.countPublishedByPath", Long.class)
+            .setParameter("registry", splitPath[registryIndex])
+            .setParameter("namespace", splitPath[orgIndex])
+            .setParameter("name", splitPath[repoIndex])
+            .setCacheable(true);
+        return query.getSingleResult() > 0;
+    }
+
     /**
      * Finds the tool matching the given tool path
      * When findPublished is true, will only look at published tools
@@ -29,7 +29,6 @@ import com.google.common.base.Strings;
 import com.google.gson.Gson;
 import io.dockstore.webservice.core.Entry;
 import io.dockstore.webservice.core.SourceFile;
-import io.dockstore.webservice.core.Tool;
 import io.dockstore.webservice.core.Version;
 import io.dockstore.webservice.helpers.SourceCodeRepoInterface;
 import io.dockstore.webservice.jdbi.ToolDAO;
@@ -226,8 +225,7 @@ public interface LanguageHandlerInterface {
         // TODO: How to deal with multiple entries of a tool? For now just grab the first
         // TODO: How do we check that the URL is valid? If not then the entry is likely a local docker build
         if (dockerEntry.startsWith("quay.io/")) {
-            List<Tool> byPath = toolDAO.findAllByPath(dockerEntry, true);
-            if (byPath == null || byPath.isEmpty()) {
+            if (!toolDAO.hasPublishedByPath(dockerEntry)) {
                 // when we cannot find a published tool on Dockstore, link to quay.io
                 url = dockerEntry.replaceFirst("quay\\.io/", quayIOPath);
             } else {
@@ -238,8 +236,7 @@ public interface LanguageHandlerInterface {
             String[] parts = dockerEntry.split("/");
             if (parts.length == 2) {
                 // if the path looks like pancancer/pcawg-oxog-tools
-                List<Tool> publishedByPath = toolDAO.findAllByPath("registry.hub.docker.com/" + dockerEntry, true);
-                if (publishedByPath == null || publishedByPath.isEmpty()) {
+                if (!toolDAO.hasPublishedByPath("registry.hub.docker.com/" + dockerEntry)) {
                     // when we cannot find a published tool on Dockstore, link to docker hub
                     url = dockerHubPathR + dockerEntry;
                 } else {
@@ -42,6 +42,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.repackaged.com.google.common.base.Strings;
 import io.dockstore.common.Registry;
 import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.DockstoreWebserviceApplication;
 import io.dockstore.webservice.api.PublishRequest;
 import io.dockstore.webservice.api.StarRequest;
 import io.dockstore.webservice.core.Label;
@@ -216,6 +217,35 @@ public class DockerRepoResource implements AuthenticatedResourceInterface, Entry
         return tool;
     }
 
+    /**
+     * Reload the files of the tags of a tool that are built from a branch or tag, for when source control tells us that only it has changed.
+     *
+     * @param tool      tool to be updated
+     * @param user      a user of the tool, whose tokens are used
+     * @param reference the branch or tag
+     */
+    public void refreshReference(Tool tool, User user, String reference) {
+        List<Token> tokens = tokenDAO.findBitbucketByUserId(user.getId());
+        if (!tokens.isEmpty()) {
+            refreshBitbucketToken(tokens.get(0), client, tokenDAO, bitbucketClientID, bitbucketClientSecret);
+        }
+
+        tokens = tokenDAO.findByUserId(user.getId());
+        Token githubToken = Token.extractToken(tokens, TokenType.GITHUB_COM);
+        Token gitlabToken = Token.extractToken(tokens, TokenType.GITLAB_COM);
+        Token bitbucketToken = Token.extractToken(tokens, TokenType.BITBUCKET_ORG);
+        final SourceCodeRepoInterface sourceCodeRepo = SourceCodeRepoFactory
+            .createSourceCodeRepo(tool.getGitUrl(), client, bitbucketToken == null ? null : bitbucketToken.getContent(),
+                gitlabToken == null ? null : gitlabToken.getContent(), githubToken == null ? null : githubToken.getContent());
+        if (sourceCodeRepo == null) {
+            throw new CustomWebApplicationException("Git tokens invalid, please re-link your git accounts.", HttpStatus.SC_BAD_REQUEST);
+        }
+
+        if (AbstractImageRegistry.refreshReference(tool, reference, sourceCodeRepo, fileDAO, fileFormatDAO)) {
+            elasticManager.handleIndexUpdate(tool, ElasticMode.UPDATE);
+        }
+    }
+
     private Tool refreshContainer(final long containerId, final long userId) {
         Tool tool = toolDAO.findById(containerId);
 
@@ -388,30 +418,30 @@ public class DockerRepoResource implements AuthenticatedResourceInterface, Entry
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/published/{containerId}")
     @ApiOperation(value = "Get a published container", notes = "NO authentication", response = Tool.class)
     public Tool getPublishedContainer(@ApiParam(value = "Tool ID", required = true) @PathParam("containerId") Long containerId) {
+        enablePublicFilters(false);
         Tool c = toolDAO.findPublishedById(containerId);
         checkEntry(c);
-        return filterContainersForHiddenTags(c);
+        return c;
     }
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/namespace/{namespace}/published")
     @ApiOperation(value = "List all published containers belonging to the specified namespace", notes = "NO authentication", response = Tool.class, responseContainer = "List")
     public List<Tool> getPublishedContainersByNamespace(
             @ApiParam(value = "namespace", required = true) @PathParam("namespace") String namespace) {
-        List<Tool> tools = toolDAO.findPublishedByNamespace(namespace);
-        filterContainersForHiddenTags(tools);
-        return tools;
+        enablePublicFilters(false);
+        return toolDAO.findPublishedByNamespace(namespace);
     }
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/schema/{containerId}/published")
     @ApiOperation(value = "Get a published container's schema by ID", notes = "NO authentication", responseContainer = "List")
     public List getPublishedContainerSchema(@ApiParam(value = "Tool ID", required = true) @PathParam("containerId") Long containerId) {
@@ -585,26 +615,24 @@ public class DockerRepoResource implements AuthenticatedResourceInterface, Entry
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("published")
     @ApiOperation(value = "List all published containers.", tags = {
             "containers" }, notes = "NO authentication", response = Tool.class, responseContainer = "List")
     public List<Tool> allPublishedContainers() {
-        List<Tool> tools = toolDAO.findAllPublished();
-        filterContainersForHiddenTags(tools);
-        stripContent(tools);
-        return tools;
+        enablePublicFilters(true);
+        return toolDAO.findAllPublished();
     }
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/path/{repository}/published")
     @ApiOperation(value = "Get a list of published tools by path", notes = "NO authentication", response = Tool.class)
     public List<Tool> getPublishedContainerByPath(
             @ApiParam(value = "repository path", required = true) @PathParam("repository") String path) {
+        enablePublicFilters(false);
         List<Tool> tools = toolDAO.findAllByPath(path, true);
-        filterContainersForHiddenTags(tools);
         checkEntry(tools);
         return tools;
     }
@@ -637,7 +665,7 @@ public class DockerRepoResource implements AuthenticatedResourceInterface, Entry
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/path/tool/{repository}/published")
     @ApiOperation(value = "Get a published tool by the specific tool path", notes = "Lists info of tool. Enter full path (include quay.io in path).", response = Tool.class)
     public Tool getPublishedContainerByToolPath(
@@ -671,7 +699,7 @@ public class DockerRepoResource implements AuthenticatedResourceInterface, Entry
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/search")
     @ApiOperation(value = "Search for matching registered containers.", notes = "Search on the name (full path name) and description. NO authentication", response = Tool.class, responseContainer = "List", tags = {
             "containers" })
@@ -900,7 +928,7 @@ public class DockerRepoResource implements AuthenticatedResourceInterface, Entry
             @ApiParam(value = "Tool to star.", required = true) @PathParam("containerId") Long containerId,
             @ApiParam(value = "StarRequest to star a repo for a user", required = true) StarRequest request) {
         Tool tool = toolDAO.findById(containerId);
-        starEntryHelper(tool, user, "tool", tool.getToolPath());
+        starEntryHelper(tool, toolDAO, user, "tool", tool.getToolPath());
         elasticManager.handleIndexUpdate(tool, ElasticMode.UPDATE);
     }
 
@@ -912,7 +940,7 @@ public class DockerRepoResource implements AuthenticatedResourceInterface, Entry
     public void unstarEntry(@ApiParam(hidden = true) @Auth User user,
             @ApiParam(value = "Tool to unstar.", required = true) @PathParam("containerId") Long containerId) {
         Tool tool = toolDAO.findById(containerId);
-        unstarEntryHelper(tool, user, "tool", tool.getToolPath());
+        unstarEntryHelper(tool, toolDAO, user, "tool", tool.getToolPath());
         elasticManager.handleIndexUpdate(tool, ElasticMode.UPDATE);
     }
 
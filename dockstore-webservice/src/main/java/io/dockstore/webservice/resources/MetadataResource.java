@@ -86,7 +86,7 @@ public class MetadataResource {
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("sitemap")
     @ApiOperation(value = "List all workflow and tool paths.", notes = "NO authentication")
     public String sitemap() {
@@ -116,7 +116,7 @@ public class MetadataResource {
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("rss")
     @Produces(MediaType.TEXT_XML)
     @ApiOperation(value = "List all tools and workflows in creation order", notes = "NO authentication")
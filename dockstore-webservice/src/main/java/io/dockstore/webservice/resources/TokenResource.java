@@ -55,6 +55,7 @@ import com.google.common.io.BaseEncoding;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import io.dockstore.webservice.CachingTokenAuthenticator;
 import io.dockstore.webservice.CustomWebApplicationException;
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
 import io.dockstore.webservice.core.Token;
@@ -66,7 +67,6 @@ import io.dockstore.webservice.helpers.SourceCodeRepoFactory;
 import io.dockstore.webservice.jdbi.TokenDAO;
 import io.dockstore.webservice.jdbi.UserDAO;
 import io.dropwizard.auth.Auth;
-import io.dropwizard.auth.CachingAuthenticator;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -122,9 +122,9 @@ public class TokenResource implements AuthenticatedResourceInterface, SourceCont
     private final String googleRedirectUri;
     private final String googleClientSecret;
     private final HttpClient client;
-    private final CachingAuthenticator<String, User> cachingAuthenticator;
+    private final CachingTokenAuthenticator cachingAuthenticator;
 
-    public TokenResource(TokenDAO tokenDAO, UserDAO enduserDAO, HttpClient client, CachingAuthenticator<String, User> cachingAuthenticator,
+    public TokenResource(TokenDAO tokenDAO, UserDAO enduserDAO, HttpClient client, CachingTokenAuthenticator cachingAuthenticator,
         DockstoreWebserviceConfiguration configuration) {
         this.tokenDAO = tokenDAO;
         userDAO = enduserDAO;
@@ -395,6 +395,7 @@ public class TokenResource implements AuthenticatedResourceInterface, SourceCont
                 LOG.info("Google token created for {}", googleLoginName);
             } else {
                 // Update tokens if exists
+                cachingAuthenticator.invalidate(googleToken.getContent());
                 googleToken.setContent(accessToken);
                 googleToken.setRefreshToken(refreshToken);
                 tokenDAO.update(googleToken);
@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.resources;
+
+import java.util.List;
+import java.util.Set;
+
+import io.dockstore.webservice.core.Tool;
+import io.dockstore.webservice.core.User;
+import io.dockstore.webservice.core.Workflow;
+import io.dockstore.webservice.core.WorkflowMode;
+import io.dockstore.webservice.helpers.ReferenceRefreshQueue;
+import io.dockstore.webservice.jdbi.ToolDAO;
+import io.dockstore.webservice.jdbi.WorkflowDAO;
+import io.dropwizard.hibernate.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies a push to the workflows and tools built from the repository, outside of a request.
+ * Only the entries of the user whose webhook reported the push are refreshed, with their tokens.
+ * Create with a {@link io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory} so that each refresh has a session.
+ *
+ * @author dyuen
+ */
+public class WebhookRefresher {
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookRefresher.class);
+
+    private final WorkflowDAO workflowDAO;
+    private final ToolDAO toolDAO;
+    private final WorkflowResource workflowResource;
+    private final DockerRepoResource dockerRepoResource;
+
+    public WebhookRefresher(WorkflowDAO workflowDAO, ToolDAO toolDAO, WorkflowResource workflowResource, DockerRepoResource dockerRepoResource) {
+        this.workflowDAO = workflowDAO;
+        this.toolDAO = toolDAO;
+        this.workflowResource = workflowResource;
+        this.dockerRepoResource = dockerRepoResource;
+    }
+
+    @UnitOfWork
+    public void refresh(ReferenceRefreshQueue.ReferenceChange change) {
+        List<Workflow> workflows = workflowDAO.findByGitUrl(change.getGitUrl());
+        for (Workflow workflow : workflows) {
+            // stubs have no versions yet, they are filled in by a full refresh
+            if (workflow.getMode() != WorkflowMode.FULL) {
+                continue;
+            }
+            User user = findUser(workflow.getUsers(), change.getUserId());
+            if (user == null) {
+                continue;
+            }
+            try {
+                workflowResource.refreshReference(workflow, user, change.getReference(), change.getReferenceType(), change.isDeleted());
+            } catch (RuntimeException e) {
+                LOG.info("Could not refresh " + change.getReference() + " of workflow " + workflow.getId() + " as " + user.getUsername(), e);
+            }
+        }
+
+        // tags are created from the image registry, so a deleted reference is left for a full refresh
+        if (change.isDeleted()) {
+            return;
+        }
+        List<Tool> tools = toolDAO.findByGitUrl(change.getGitUrl());
+        for (Tool tool : tools) {
+            User user = findUser(tool.getUsers(), change.getUserId());
+            if (user == null) {
+                continue;
+            }
+            try {
+                dockerRepoResource.refreshReference(tool, user, change.getReference());
+            } catch (RuntimeException e) {
+                LOG.info("Could not refresh " + change.getReference() + " of tool " + tool.getId() + " as " + user.getUsername(), e);
+            }
+        }
+    }
+
+    private static User findUser(Set<User> users, long userId) {
+        return users.stream().filter(user -> user.getId() == userId).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.webservice.resources;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.codahale.metrics.annotation.Timed;
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.User;
+import io.dockstore.webservice.core.Version;
+import io.dockstore.webservice.helpers.ReferenceRefreshQueue;
+import io.dropwizard.auth.Auth;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.Authorization;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.dockstore.webservice.Constants.JWT_SECURITY_DEFINITION_NAME;
+
+/**
+ * Receives push events from source control so that only the branch or tag that changed is refreshed.
+ * The refresh happens later on a {@link ReferenceRefreshQueue}, so providers get a quick response.
+ * <p>
+ * Each user has a secret of their own, derived from the configured one, for the webhooks of their repositories.
+ * Their webhook URLs carry their user id, and a push only refreshes their own workflows and tools.
+ * Knowing one user's secret therefore does not let anyone refresh another user's entries.
+ *
+ * @author dyuen
+ */
+@Path("/webhooks")
+@Api("webhooks")
+@Consumes(MediaType.APPLICATION_JSON)
+public class WebhookResource {
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookResource.class);
+    private static final String BRANCH_PREFIX = "refs/heads/";
+    private static final String TAG_PREFIX = "refs/tags/";
+    private static final String NULL_COMMIT = "0000000000000000000000000000000000000000";
+
+    private final DockstoreWebserviceConfiguration.WebhookConfig config;
+    private final ReferenceRefreshQueue queue;
+
+    public WebhookResource(DockstoreWebserviceConfiguration.WebhookConfig config, ReferenceRefreshQueue queue) {
+        this.config = config;
+        this.queue = queue;
+    }
+
+    @GET
+    @Timed
+    @Path("/secret")
+    @Produces(MediaType.TEXT_PLAIN)
+    @ApiOperation(value = "Get the secret for the webhooks of your repositories", authorizations = { @Authorization(value = JWT_SECURITY_DEFINITION_NAME) },
+        notes = "Use it with /webhooks/github?user=<your id>, /webhooks/gitlab?user=<your id> or /webhooks/bitbucket?user=<your id>&secret=<it>")
+    public String getSecret(@ApiParam(hidden = true) @Auth User user) {
+        return secretOf(user.getId());
+    }
+
+    @POST
+    @Timed
+    @Path("/github")
+    @ApiOperation(value = "Handle a push event from GitHub", notes = "Signed in X-Hub-Signature with the secret of the user")
+    public Response github(@HeaderParam("X-GitHub-Event") String event, @HeaderParam("X-Hub-Signature") String signature,
+        @QueryParam("user") Long userId, @ApiParam(value = "push payload", required = true) String payload) {
+        String secret = secretOf(checkUser(userId));
+        if (signature == null || !constantTimeEquals(signature, "sha1=" + hmac("HmacSHA1", secret, payload))) {
+            throw new CustomWebApplicationException("Invalid signature", HttpStatus.SC_UNAUTHORIZED);
+        }
+        if (!"push".equals(event)) {
+            return Response.accepted().build();
+        }
+        JsonObject push = parse(payload);
+        String gitUrl = "git@github.com:" + getString(push, "repository", "full_name") + ".git";
+        JsonElement deleted = push.get("deleted");
+        enqueue(gitUrl, getString(push, "ref"), deleted != null && deleted.isJsonPrimitive() && deleted.getAsBoolean(), userId);
+        return Response.accepted().build();
+    }
+
+    @POST
+    @Timed
+    @Path("/gitlab")
+    @ApiOperation(value = "Handle a push event from GitLab", notes = "Authenticated with the secret of the user in X-Gitlab-Token")
+    public Response gitlab(@HeaderParam("X-Gitlab-Event") String event, @HeaderParam("X-Gitlab-Token") String token,
+        @QueryParam("user") Long userId, @ApiParam(value = "push payload", required = true) String payload) {
+        String secret = secretOf(checkUser(userId));
+        if (token == null || !constantTimeEquals(token, secret)) {
+            throw new CustomWebApplicationException("Invalid token", HttpStatus.SC_UNAUTHORIZED);
+        }
+        if (!"Push Hook".equals(event) && !"Tag Push Hook".equals(event)) {
+            return Response.accepted().build();
+        }
+        JsonObject push = parse(payload);
+        String gitUrl = "git@gitlab.com:" + getString(push, "project", "path_with_namespace") + ".git";
+        enqueue(gitUrl, getString(push, "ref"), NULL_COMMIT.equals(getString(push, "after")), userId);
+        return Response.accepted().build();
+    }
+
+    @POST
+    @Timed
+    @Path("/bitbucket")
+    @ApiOperation(value = "Handle a push event from Bitbucket", notes = "Bitbucket does not sign webhooks, so the secret of the user is part of the webhook URL")
+    public Response bitbucket(@HeaderParam("X-Event-Key") String event, @QueryParam("secret") String token, @QueryParam("user") Long userId,
+        @ApiParam(value = "push payload", required = true) String payload) {
+        String secret = secretOf(checkUser(userId));
+        if (token == null || !constantTimeEquals(token, secret)) {
+            throw new CustomWebApplicationException("Invalid secret", HttpStatus.SC_UNAUTHORIZED);
+        }
+        if (!"repo:push".equals(event)) {
+            return Response.accepted().build();
+        }
+        JsonObject push = parse(payload);
+        String gitUrl = "git@bitbucket.org:" + getString(push, "repository", "full_name") + ".git";
+        for (JsonElement element : getArray(push, "push", "changes")) {
+            if (!element.isJsonObject()) {
+                throw new CustomWebApplicationException("Invalid change in payload", HttpStatus.SC_BAD_REQUEST);
+            }
+            JsonObject change = element.getAsJsonObject();
+            boolean deleted = !change.has("new") || change.get("new").isJsonNull();
+            String side = deleted ? "old" : "new";
+            Version.ReferenceType type = "tag".equals(getString(change, side, "type")) ? Version.ReferenceType.TAG : Version.ReferenceType.BRANCH;
+            queue.enqueue(new ReferenceRefreshQueue.ReferenceChange(gitUrl, getString(change, side, "name"), type, deleted, userId));
+        }
+        return Response.accepted().build();
+    }
+
+    private static long checkUser(Long userId) {
+        if (userId == null) {
+            throw new CustomWebApplicationException("The webhook URL needs the user query parameter", HttpStatus.SC_BAD_REQUEST);
+        }
+        return userId;
+    }
+
+    /**
+     * @return the webhook secret of a user, the configured secret is never handed out itself
+     */
+    String secretOf(long userId) {
+        if (config.getSecret() == null) {
+            throw new CustomWebApplicationException("Webhooks are not enabled", HttpStatus.SC_NOT_FOUND);
+        }
+        return hmac("HmacSHA256", config.getSecret(), "webhook-user-" + userId);
+    }
+
+    private void enqueue(String gitUrl, String ref, boolean deleted, long userId) {
+        if (ref.startsWith(BRANCH_PREFIX)) {
+            queue.enqueue(new ReferenceRefreshQueue.ReferenceChange(gitUrl, ref.substring(BRANCH_PREFIX.length()), Version.ReferenceType.BRANCH,
+                deleted, userId));
+        } else if (ref.startsWith(TAG_PREFIX)) {
+            queue.enqueue(new ReferenceRefreshQueue.ReferenceChange(gitUrl, ref.substring(TAG_PREFIX.length()), Version.ReferenceType.TAG,
+                deleted, userId));
+        } else {
+            LOG.info("Ignoring push to " + ref + " of " + gitUrl);
+        }
+    }
+
+    private static JsonObject parse(String payload) {
+        try {
+            return new JsonParser().parse(payload).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new CustomWebApplicationException("Could not parse payload", HttpStatus.SC_BAD_REQUEST);
+        }
+    }
+
+    /**
+     * @param path names of nested objects, then of the field
+     * @throws CustomWebApplicationException with a 400 if the field is missing or is not a string
+     */
+    private static String getString(JsonObject object, String... path) {
+        JsonElement element = get(object, path);
+        if (!element.isJsonPrimitive()) {
+            throw missing(path);
+        }
+        return element.getAsString();
+    }
+
+    private static JsonArray getArray(JsonObject object, String... path) {
+        JsonElement element = get(object, path);
+        if (!element.isJsonArray()) {
+            throw missing(path);
+        }
+        return element.getAsJsonArray();
+    }
+
+    private static JsonElement get(JsonObject object, String... path) {
+        JsonElement element = object;
+        for (String name : path) {
+            if (!element.isJsonObject() || !element.getAsJsonObject().has(name)) {
+                throw missing(path);
+            }
+            element = element.getAsJsonObject().get(name);
+        }
+        return element;
+    }
+
+    private static CustomWebApplicationException missing(String... path) {
+        return new CustomWebApplicationException("Missing " + String.join(".", path) + " in payload", HttpStatus.SC_BAD_REQUEST);
+    }
+
+    private static String hmac(String algorithm, String secret, String payload) {
+        try {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), algorithm));
+            return BaseEncoding.base16().lowerCase().encode(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new CustomWebApplicationException("Could not verify signature", HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private static boolean constantTimeEquals(String a, String b) {
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -18,6 +18,7 @@ package io.dockstore.webservice.resources;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -48,6 +49,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
 import io.dockstore.common.SourceControl;
 import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.DockstoreWebserviceApplication;
 import io.dockstore.webservice.api.PublishRequest;
 import io.dockstore.webservice.api.StarRequest;
 import io.dockstore.webservice.api.VerifyRequest;
@@ -374,43 +376,86 @@ public class WorkflowResource implements AuthenticatedResourceInterface, EntryVe
 
         // Then copy over content that changed
         for (WorkflowVersion version : newWorkflow.getVersions()) {
-            WorkflowVersion workflowVersionFromDB = existingVersionMap.get(version.getName());
-            if (existingVersionMap.containsKey(version.getName())) {
-                workflowVersionFromDB.update(version);
+            updateDBVersionWithSourceControlVersion(workflow, version, existingVersionMap);
+        }
+    }
+
+    /**
+     * @param workflow           workflow to be updated
+     * @param version            workflow version to grab new content from
+     * @param existingVersionMap versions of the workflow by name, a created version is added
+     * @return the version in the database
+     */
+    private WorkflowVersion updateDBVersionWithSourceControlVersion(Workflow workflow, WorkflowVersion version,
+        Map<String, WorkflowVersion> existingVersionMap) {
+        WorkflowVersion workflowVersionFromDB = existingVersionMap.get(version.getName());
+        if (existingVersionMap.containsKey(version.getName())) {
+            workflowVersionFromDB.update(version);
+        } else {
+            // create a new one and replace the old one
+            final long workflowVersionId = workflowVersionDAO.create(version);
+            workflowVersionFromDB = workflowVersionDAO.findById(workflowVersionId);
+            workflow.getVersions().add(workflowVersionFromDB);
+            existingVersionMap.put(workflowVersionFromDB.getName(), workflowVersionFromDB);
+        }
+
+        // Update source files for each version
+        Map<String, SourceFile> existingFileMap = new HashMap<>();
+        workflowVersionFromDB.getSourceFiles().forEach(file -> existingFileMap.put(file.getType().toString() + file.getPath(), file));
+        for (SourceFile file : version.getSourceFiles()) {
+            if (existingFileMap.containsKey(file.getType().toString() + file.getPath())) {
+                existingFileMap.get(file.getType().toString() + file.getPath()).setContent(file.getContent());
             } else {
-                // create a new one and replace the old one
-                final long workflowVersionId = workflowVersionDAO.create(version);
-                workflowVersionFromDB = workflowVersionDAO.findById(workflowVersionId);
-                workflow.getVersions().add(workflowVersionFromDB);
-                existingVersionMap.put(workflowVersionFromDB.getName(), workflowVersionFromDB);
+                final long fileID = fileDAO.create(file);
+                final SourceFile fileFromDB = fileDAO.findById(fileID);
+                workflowVersionFromDB.getSourceFiles().add(fileFromDB);
             }
+        }
 
-            // Update source files for each version
-            Map<String, SourceFile> existingFileMap = new HashMap<>();
-            workflowVersionFromDB.getSourceFiles().forEach(file -> existingFileMap.put(file.getType().toString() + file.getPath(), file));
+        // Remove existing files that are no longer present
+        for (Map.Entry<String, SourceFile> entry : existingFileMap.entrySet()) {
+            boolean toDelete = true;
             for (SourceFile file : version.getSourceFiles()) {
-                if (existingFileMap.containsKey(file.getType().toString() + file.getPath())) {
-                    existingFileMap.get(file.getType().toString() + file.getPath()).setContent(file.getContent());
-                } else {
-                    final long fileID = fileDAO.create(file);
-                    final SourceFile fileFromDB = fileDAO.findById(fileID);
-                    workflowVersionFromDB.getSourceFiles().add(fileFromDB);
+                if (entry.getKey().equals(file.getType().toString() + file.getPath())) {
+                    toDelete = false;
                 }
             }
+            if (toDelete) {
+                workflowVersionFromDB.getSourceFiles().remove(entry.getValue());
+            }
+        }
+        return workflowVersionFromDB;
+    }
 
-            // Remove existing files that are no longer present
-            for (Map.Entry<String, SourceFile> entry : existingFileMap.entrySet()) {
-                boolean toDelete = true;
-                for (SourceFile file : version.getSourceFiles()) {
-                    if (entry.getKey().equals(file.getType().toString() + file.getPath())) {
-                        toDelete = false;
-                    }
-                }
-                if (toDelete) {
-                    workflowVersionFromDB.getSourceFiles().remove(entry.getValue());
-                }
+    /**
+     * Refresh a single branch or tag of a FULL workflow, for when source control tells us that only it has changed.
+     *
+     * @param workflow      workflow to be updated
+     * @param user          a user of the workflow, whose tokens are used
+     * @param reference     the branch or tag
+     * @param referenceType whether the reference is a branch or a tag
+     * @param deleted       whether the webhook reported the reference as deleted, the workflow is then synced with source control
+     *                      instead, so that versions are only removed when source control no longer has them
+     */
+    public void refreshReference(Workflow workflow, User user, String reference, Version.ReferenceType referenceType, boolean deleted) {
+        final SourceCodeRepoInterface sourceCodeRepo = getSourceCodeRepoInterface(workflow.getGitUrl(), user);
+        final String repositoryId = workflow.getOrganization() + '/' + workflow.getRepository();
+        if (deleted) {
+            final Workflow newWorkflow = sourceCodeRepo.getWorkflow(repositoryId, Optional.of(workflow));
+            updateDBWorkflowWithSourceControlWorkflow(workflow, newWorkflow);
+            FileFormatHelper.updateFileFormats(newWorkflow.getVersions(), fileFormatDAO);
+        } else {
+            Map<String, WorkflowVersion> existingVersionMap = new HashMap<>();
+            workflow.getWorkflowVersions().forEach(version -> existingVersionMap.put(version.getName(), version));
+            WorkflowVersion version = sourceCodeRepo.getWorkflowVersion(repositoryId, workflow, reference, referenceType);
+            WorkflowVersion versionFromDB = updateDBVersionWithSourceControlVersion(workflow, version, existingVersionMap);
+            FileFormatHelper.updateFileFormats(Collections.singleton(versionFromDB), fileFormatDAO);
+            // the description and author come from the default branch
+            if (reference.equals(sourceCodeRepo.getMainBranch(workflow, repositoryId))) {
+                sourceCodeRepo.updateEntryMetadata(workflow, workflow.determineWorkflowType());
             }
         }
+        elasticManager.handleIndexUpdate(workflow, ElasticMode.UPDATE);
     }
 
     @GET
@@ -601,24 +646,24 @@ public class WorkflowResource implements AuthenticatedResourceInterface, EntryVe
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/published/{workflowId}")
     @ApiOperation(value = "Get a published workflow", notes = "NO authentication", response = Workflow.class)
     public Workflow getPublishedWorkflow(@ApiParam(value = "Workflow ID", required = true) @PathParam("workflowId") Long workflowId) {
+        enablePublicFilters(false);
         Workflow workflow = workflowDAO.findPublishedById(workflowId);
         checkEntry(workflow);
-        return filterContainersForHiddenTags(workflow);
+        return workflow;
     }
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/organization/{organization}/published")
     @ApiOperation(value = "List all published workflows belonging to the specified namespace", notes = "NO authentication", response = Workflow.class, responseContainer = "List")
     public List<Workflow> getPublishedWorkflowsByOrganization(@ApiParam(value = "organization", required = true) @PathParam("organization") String organization) {
-        List<Workflow> workflows = workflowDAO.findPublishedByOrganization(organization);
-        filterContainersForHiddenTags(workflows);
-        return workflows;
+        enablePublicFilters(false);
+        return workflowDAO.findPublishedByOrganization(organization);
     }
 
     @POST
@@ -672,14 +717,12 @@ public class WorkflowResource implements AuthenticatedResourceInterface, EntryVe
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("published")
     @ApiOperation(value = "List all published workflows.", tags = { "workflows" }, notes = "NO authentication", response = Workflow.class, responseContainer = "List")
     public List<Workflow> allPublishedWorkflows() {
-        List<Workflow> workflows = workflowDAO.findAllPublished();
-        filterContainersForHiddenTags(workflows);
-        stripContent(workflows);
-        return workflows;
+        enablePublicFilters(true);
+        return workflowDAO.findAllPublished();
     }
 
     @GET
@@ -745,7 +788,7 @@ public class WorkflowResource implements AuthenticatedResourceInterface, EntryVe
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/path/workflow/{repository}/published")
     @ApiOperation(value = "Get a published workflow by path", notes = "Lists info of workflow. Enter full path.", response = Workflow.class)
     public Workflow getPublishedWorkflowByPath(@ApiParam(value = "repository path", required = true) @PathParam("repository") String path) {
@@ -756,7 +799,7 @@ public class WorkflowResource implements AuthenticatedResourceInterface, EntryVe
 
     @GET
     @Timed
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Path("/search")
     @ApiOperation(value = "Search for matching published workflows.", notes = "Search on the name (full path name) and description. NO authentication", response = Workflow.class, responseContainer = "List", tags = {
         "workflows" })
@@ -1231,7 +1274,7 @@ public class WorkflowResource implements AuthenticatedResourceInterface, EntryVe
         @ApiParam(value = "StarRequest to star a repo for a user", required = true) StarRequest request) {
         Workflow workflow = workflowDAO.findById(workflowId);
 
-        starEntryHelper(workflow, user, "workflow", workflow.getWorkflowPath());
+        starEntryHelper(workflow, workflowDAO, user, "workflow", workflow.getWorkflowPath());
         elasticManager.handleIndexUpdate(workflow, ElasticMode.UPDATE);
     }
 
@@ -1242,7 +1285,7 @@ public class WorkflowResource implements AuthenticatedResourceInterface, EntryVe
     @ApiOperation(value = "Unstars a workflow.", authorizations = { @Authorization(value = JWT_SECURITY_DEFINITION_NAME) })
     public void unstarEntry(@ApiParam(hidden = true) @Auth User user, @ApiParam(value = "Workflow to unstar.", required = true) @PathParam("workflowId") Long workflowId) {
         Workflow workflow = workflowDAO.findById(workflowId);
-        unstarEntryHelper(workflow, user, "workflow", workflow.getWorkflowPath());
+        unstarEntryHelper(workflow, workflowDAO, user, "workflow", workflow.getWorkflowPath());
         elasticManager.handleIndexUpdate(workflow, ElasticMode.UPDATE);
     }
 
@@ -53,7 +53,7 @@ public class ToolsExtendedApi {
 
     @GET
     @Path("/tools/{organization}")
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Produces({ "application/json", "text/plain" })
     @ApiOperation(value = "List tools of an organization", notes = "This endpoint returns tools of an organization. ", response = ToolV1.class, responseContainer = "List")
     @ApiResponses(value = {
@@ -90,7 +90,7 @@ public class ToolsExtendedApi {
 
     @GET
     @Path("/workflows/{organization}")
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Produces({ "application/json", "text/plain" })
     @ApiOperation(value = "List workflows of an organization", notes = "This endpoint returns workflows of an organization. ", response = ToolV1.class, responseContainer = "List")
     @ApiResponses(value = {
@@ -103,7 +103,7 @@ public class ToolsExtendedApi {
 
     @GET
     @Path("/containers/{organization}")
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Produces({ "application/json", "text/plain" })
     @ApiOperation(value = "List entries of an organization", notes = "This endpoint returns entries of an organization. ", response = ToolV1.class, responseContainer = "List")
     @ApiResponses(value = {
@@ -116,7 +116,7 @@ public class ToolsExtendedApi {
 
     @GET
     @Path("/organizations")
-    @UnitOfWork
+    @UnitOfWork(value = DockstoreWebserviceApplication.READ_ONLY, readOnly = true)
     @Produces({ "application/json", "text/plain" })
     @ApiOperation(value = "List all organizations", notes = "This endpoint returns list of all organizations. ", response = String.class, responseContainer = "List")
     @ApiResponses(value = {
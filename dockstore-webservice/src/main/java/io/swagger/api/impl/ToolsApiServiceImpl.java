@@ -162,6 +162,9 @@ public class ToolsApiServiceImpl extends ToolsApiService {
         if (entryName != null) {
             entryPath += "/" + parsedID.getToolName();
         }
+        // hidden versions are never returned by the GA4GH API, so do not load them
+        toolDAO.enableHiddenVersionFilter();
+        workflowDAO.enableHiddenVersionFilter();
         if (parsedID.isTool()) {
             entry = toolDAO.findByPath(entryPath, true);
         } else {
@@ -254,6 +257,8 @@ public class ToolsApiServiceImpl extends ToolsApiService {
     public Response toolsGet(String registryId, String registry, String organization, String name, String toolname, String description,
         String author, String offset, Integer limit, SecurityContext securityContext, ContainerRequestContext value) {
         final List<Entry> all = new ArrayList<>();
+        toolDAO.enableHiddenVersionFilter();
+        workflowDAO.enableHiddenVersionFilter();
         all.addAll(toolDAO.findAllPublished());
         all.addAll(workflowDAO.findAllPublished());
         all.sort(Comparator.comparing(Entry::getGitUrl));
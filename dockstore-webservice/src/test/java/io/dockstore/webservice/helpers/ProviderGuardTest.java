@@ -0,0 +1,182 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.helpers;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import org.apache.http.HttpStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.github.HttpException;
+
+/**
+ * @author dyuen
+ */
+public class ProviderGuardTest {
+
+    private static final String PROVIDER = "test";
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        DockstoreWebserviceConfiguration.ProviderConfig config = new DockstoreWebserviceConfiguration.ProviderConfig();
+        config.setMaxConcurrentCalls(1);
+        config.setMaxWaitMillis(10);
+        config.setFailureThreshold(2);
+        config.setOpenSeconds(1);
+        ProviderGuard.configure(Collections.singletonMap(PROVIDER, config));
+    }
+
+    private <E extends Exception> void callThrowing(E exception) {
+        try {
+            ProviderMetrics.time(PROVIDER, "call", () -> {
+                calls.incrementAndGet();
+                throw exception;
+            });
+            Assert.fail();
+        } catch (Exception e) {
+            Assert.assertSame(exception, e);
+        }
+    }
+
+    private void callSucceeding() {
+        Assert.assertEquals("ok", ProviderMetrics.time(PROVIDER, "call", () -> {
+            calls.incrementAndGet();
+            return "ok";
+        }));
+    }
+
+    private static void assertRejected(int status, Runnable call) {
+        try {
+            call.run();
+            Assert.fail("expected a rejection");
+        } catch (CustomWebApplicationException e) {
+            Assert.assertEquals(status, e.getResponse().getStatus());
+            Assert.assertNotNull(e.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER));
+        }
+    }
+
+    @Test
+    public void bulkhead() {
+        ProviderGuard.Permit permit = ProviderGuard.acquire(PROVIDER);
+        assertRejected(HttpStatus.SC_SERVICE_UNAVAILABLE, () -> ProviderGuard.acquire(PROVIDER));
+        permit.release(true);
+        ProviderGuard.acquire(PROVIDER).release(true);
+    }
+
+    @Test
+    public void breakerOpensOnIOErrors() throws InterruptedException {
+        callThrowing(new IOException("timed out"));
+        callThrowing(new IOException("timed out"));
+        assertRejected(HttpStatus.SC_SERVICE_UNAVAILABLE, this::callSucceeding);
+        Assert.assertEquals(2, calls.get());
+
+        // half open after a while, a success closes it again
+        Thread.sleep(1100);
+        callSucceeding();
+        callSucceeding();
+        Assert.assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void breakerOpensOnServerErrorsAndRateLimits() {
+        callThrowing(new CustomWebApplicationException("unavailable", HttpStatus.SC_BAD_GATEWAY));
+        callThrowing(new CustomWebApplicationException("rate limited", 429, 10));
+        assertRejected(HttpStatus.SC_SERVICE_UNAVAILABLE, this::callSucceeding);
+    }
+
+    @Test
+    public void clientErrorsLeaveTheBreakerClosed() {
+        for (int i = 0; i < 5; i++) {
+            callThrowing(new CustomWebApplicationException("bad credentials", HttpStatus.SC_UNAUTHORIZED));
+            callThrowing(new HttpException("forbidden", HttpStatus.SC_FORBIDDEN, "Forbidden", "https://api.github.com/user"));
+            callThrowing(new IllegalStateException("could not parse the response"));
+        }
+        callSucceeding();
+        Assert.assertEquals(16, calls.get());
+    }
+
+    @Test
+    public void failedTrialReopens() throws InterruptedException {
+        callThrowing(new IOException("timed out"));
+        callThrowing(new IOException("timed out"));
+        Thread.sleep(1100);
+        callThrowing(new HttpException("unavailable", HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable", "https://api.github.com/user"));
+        assertRejected(HttpStatus.SC_SERVICE_UNAVAILABLE, this::callSucceeding);
+    }
+
+    @Test
+    public void statusOf() {
+        Assert.assertEquals(ProviderGuard.NO_RESPONSE, ProviderGuard.statusOf(new IOException()));
+        Assert.assertEquals(ProviderGuard.NO_RESPONSE, ProviderGuard.statusOf(new HttpException("no response", -1, null, "https://api.github.com")));
+        Assert.assertEquals(HttpStatus.SC_NOT_FOUND, ProviderGuard.statusOf(new FileNotFoundException()));
+        Assert.assertTrue(ProviderGuard.isFailure(ProviderGuard.NO_RESPONSE));
+        Assert.assertTrue(ProviderGuard.isFailure(429));
+        Assert.assertTrue(ProviderGuard.isFailure(HttpStatus.SC_INTERNAL_SERVER_ERROR));
+        Assert.assertFalse(ProviderGuard.isFailure(HttpStatus.SC_UNAUTHORIZED));
+        Assert.assertFalse(ProviderGuard.isFailure(HttpStatus.SC_FORBIDDEN));
+        Assert.assertFalse(ProviderGuard.isFailure(HttpStatus.SC_OK));
+    }
+
+    @Test
+    public void gitHubRetryAfter() throws IOException {
+        HttpURLConnection connection = new HttpURLConnection(new URL("https://api.github.com/user")) {
+            @Override
+            public long getHeaderFieldLong(String name, long defaultValue) {
+                return "Retry-After".equals(name) ? 42 : defaultValue;
+            }
+
+            @Override
+            public void disconnect() {
+            }
+
+            @Override
+            public boolean usingProxy() {
+                return false;
+            }
+
+            @Override
+            public void connect() {
+            }
+        };
+        try {
+            ProviderGuard.gitHubAbuseLimitHandler().onError(new IOException("abuse"), connection);
+            Assert.fail();
+        } catch (CustomWebApplicationException e) {
+            Assert.assertEquals(429, e.getResponse().getStatus());
+            Assert.assertEquals("42", e.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER));
+        }
+        try {
+            ProviderGuard.gitHubRateLimitHandler().onError(new IOException("rate limit"), connection);
+            Assert.fail();
+        } catch (CustomWebApplicationException e) {
+            Assert.assertEquals(429, e.getResponse().getStatus());
+            Assert.assertTrue(Long.parseLong(e.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER)) >= 1);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.helpers;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import io.dockstore.webservice.core.Version;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author dyuen
+ */
+public class ReferenceRefreshQueueTest {
+
+    private static final String REPO = "git@github.com:ga4gh/dockstore-ui.git";
+
+    private ReferenceRefreshQueue queue;
+
+    @After
+    public void tearDown() {
+        queue.stop();
+    }
+
+    private static ReferenceRefreshQueue.ReferenceChange change(String gitUrl, String reference) {
+        return new ReferenceRefreshQueue.ReferenceChange(gitUrl, reference, Version.ReferenceType.BRANCH, false, 1);
+    }
+
+    @Test
+    public void refreshesOfOneRepositoryDoNotOverlap() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(4);
+        queue = new ReferenceRefreshQueue(change -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            sleep(100);
+            running.decrementAndGet();
+            done.countDown();
+        }, 0);
+        for (String reference : new String[] { "master", "develop", "feature", "release" }) {
+            queue.enqueue(change(REPO, reference));
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    public void otherRepositoriesRefreshInParallel() throws InterruptedException {
+        CountDownLatch both = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+        queue = new ReferenceRefreshQueue(change -> {
+            both.countDown();
+            try {
+                // only done once the other repository is being refreshed too
+                if (both.await(10, TimeUnit.SECONDS)) {
+                    done.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0);
+        queue.enqueue(change(REPO, "master"));
+        queue.enqueue(change("git@github.com:ga4gh/dockstore.git", "master"));
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void pushesWhileWaitingAreCoalesced() throws InterruptedException {
+        List<ReferenceRefreshQueue.ReferenceChange> refreshed = new CopyOnWriteArrayList<>();
+        queue = new ReferenceRefreshQueue(refreshed::add, 1);
+        queue.enqueue(change(REPO, "master"));
+        ReferenceRefreshQueue.ReferenceChange latest = new ReferenceRefreshQueue.ReferenceChange(REPO, "master", Version.ReferenceType.BRANCH,
+            true, 1);
+        queue.enqueue(latest);
+        sleep(2000);
+        Assert.assertEquals(1, refreshed.size());
+        Assert.assertSame(latest, refreshed.get(0));
+    }
+
+    @Test
+    public void pushDuringRefreshIsRefreshedAgain() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        Consumer<ReferenceRefreshQueue.ReferenceChange> refresher = change -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+        queue = new ReferenceRefreshQueue(refresher, 0);
+        queue.enqueue(change(REPO, "master"));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        queue.enqueue(change(REPO, "master"));
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
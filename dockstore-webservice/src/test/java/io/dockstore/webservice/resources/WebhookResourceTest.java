@@ -0,0 +1,181 @@
+/*
+ *    Copyright 2018 OICR
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.webservice.resources;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.io.BaseEncoding;
+import io.dockstore.webservice.CustomWebApplicationException;
+import io.dockstore.webservice.DockstoreWebserviceConfiguration;
+import io.dockstore.webservice.core.Version;
+import io.dockstore.webservice.helpers.ReferenceRefreshQueue;
+import org.apache.http.HttpStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author dyuen
+ */
+public class WebhookResourceTest {
+
+    private static final long USER = 42;
+    private static final String GITHUB_PUSH = "{\"ref\": \"refs/heads/develop\", \"deleted\": false, \"repository\": {\"full_name\": \"ga4gh/dockstore-ui\"}}";
+
+    private final List<ReferenceRefreshQueue.ReferenceChange> changes = new ArrayList<>();
+    private WebhookResource resource;
+
+    @Before
+    public void setUp() {
+        DockstoreWebserviceConfiguration.WebhookConfig config = new DockstoreWebserviceConfiguration.WebhookConfig();
+        config.setSecret("server secret");
+        ReferenceRefreshQueue queue = new ReferenceRefreshQueue(change -> { }, 0) {
+            @Override
+            public void enqueue(ReferenceChange change) {
+                changes.add(change);
+            }
+        };
+        resource = new WebhookResource(config, queue);
+    }
+
+    private static String sign(String secret, String payload) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA1"));
+        return "sha1=" + BaseEncoding.base16().lowerCase().encode(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertStatus(int status, Runnable call) {
+        try {
+            call.run();
+            Assert.fail("expected " + status);
+        } catch (CustomWebApplicationException e) {
+            Assert.assertEquals(status, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void secretsDifferPerUser() {
+        Assert.assertNotEquals(resource.secretOf(USER), resource.secretOf(USER + 1));
+        Assert.assertEquals(resource.secretOf(USER), resource.secretOf(USER));
+        Assert.assertNotEquals("server secret", resource.secretOf(USER));
+    }
+
+    @Test
+    public void githubSignature() throws GeneralSecurityException {
+        resource.github("push", sign(resource.secretOf(USER), GITHUB_PUSH), USER, GITHUB_PUSH);
+        Assert.assertEquals(1, changes.size());
+        ReferenceRefreshQueue.ReferenceChange change = changes.get(0);
+        Assert.assertEquals("git@github.com:ga4gh/dockstore-ui.git", change.getGitUrl());
+        Assert.assertEquals("develop", change.getReference());
+        Assert.assertEquals(Version.ReferenceType.BRANCH, change.getReferenceType());
+        Assert.assertFalse(change.isDeleted());
+        Assert.assertEquals(USER, change.getUserId());
+    }
+
+    @Test
+    public void githubSignatureOfAnotherUser() throws GeneralSecurityException {
+        String signature = sign(resource.secretOf(USER + 1), GITHUB_PUSH);
+        assertStatus(HttpStatus.SC_UNAUTHORIZED, () -> resource.github("push", signature, USER, GITHUB_PUSH));
+        String serverSignature = sign("server secret", GITHUB_PUSH);
+        assertStatus(HttpStatus.SC_UNAUTHORIZED, () -> resource.github("push", serverSignature, USER, GITHUB_PUSH));
+        assertStatus(HttpStatus.SC_UNAUTHORIZED, () -> resource.github("push", null, USER, GITHUB_PUSH));
+        Assert.assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void missingUser() {
+        assertStatus(HttpStatus.SC_BAD_REQUEST, () -> resource.github("push", "sha1=00", null, GITHUB_PUSH));
+        assertStatus(HttpStatus.SC_BAD_REQUEST, () -> resource.gitlab("Push Hook", "token", null, "{}"));
+        assertStatus(HttpStatus.SC_BAD_REQUEST, () -> resource.bitbucket("repo:push", "token", null, "{}"));
+    }
+
+    @Test
+    public void githubMissingFields() throws GeneralSecurityException {
+        for (String payload : new String[] { "{\"ref\": \"refs/heads/develop\"}", "{\"repository\": {\"full_name\": \"ga4gh/dockstore-ui\"}}",
+            "{\"ref\": \"refs/heads/develop\", \"repository\": {}}", "{\"ref\": null, \"repository\": {\"full_name\": \"ga4gh/dockstore-ui\"}}",
+            "[]", "not json" }) {
+            String signature = sign(resource.secretOf(USER), payload);
+            assertStatus(HttpStatus.SC_BAD_REQUEST, () -> resource.github("push", signature, USER, payload));
+        }
+        Assert.assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void gitlabToken() {
+        String push = "{\"ref\": \"refs/tags/1.0\", \"after\": \"0000000000000000000000000000000000000000\","
+            + " \"project\": {\"path_with_namespace\": \"dockstore/dockstore-ui\"}}";
+        assertStatus(HttpStatus.SC_UNAUTHORIZED, () -> resource.gitlab("Tag Push Hook", resource.secretOf(USER + 1), USER, push));
+        resource.gitlab("Tag Push Hook", resource.secretOf(USER), USER, push);
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals("git@gitlab.com:dockstore/dockstore-ui.git", changes.get(0).getGitUrl());
+        Assert.assertEquals("1.0", changes.get(0).getReference());
+        Assert.assertEquals(Version.ReferenceType.TAG, changes.get(0).getReferenceType());
+        Assert.assertTrue(changes.get(0).isDeleted());
+
+        String noAfter = "{\"ref\": \"refs/tags/1.0\", \"project\": {\"path_with_namespace\": \"dockstore/dockstore-ui\"}}";
+        assertStatus(HttpStatus.SC_BAD_REQUEST, () -> resource.gitlab("Tag Push Hook", resource.secretOf(USER), USER, noAfter));
+    }
+
+    @Test
+    public void bitbucketSecret() {
+        String push = "{\"repository\": {\"full_name\": \"dockstore/dockstore-ui\"}, \"push\": {\"changes\": ["
+            + "{\"new\": {\"type\": \"branch\", \"name\": \"master\"}},"
+            + "{\"new\": null, \"old\": {\"type\": \"tag\", \"name\": \"1.0\"}}]}}";
+        assertStatus(HttpStatus.SC_UNAUTHORIZED, () -> resource.bitbucket("repo:push", null, USER, push));
+        resource.bitbucket("repo:push", resource.secretOf(USER), USER, push);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals("git@bitbucket.org:dockstore/dockstore-ui.git", changes.get(0).getGitUrl());
+        Assert.assertEquals("master", changes.get(0).getReference());
+        Assert.assertEquals(Version.ReferenceType.BRANCH, changes.get(0).getReferenceType());
+        Assert.assertFalse(changes.get(0).isDeleted());
+        Assert.assertEquals("1.0", changes.get(1).getReference());
+        Assert.assertEquals(Version.ReferenceType.TAG, changes.get(1).getReferenceType());
+        Assert.assertTrue(changes.get(1).isDeleted());
+
+        String noChanges = "{\"repository\": {\"full_name\": \"dockstore/dockstore-ui\"}}";
+        assertStatus(HttpStatus.SC_BAD_REQUEST, () -> resource.bitbucket("repo:push", resource.secretOf(USER), USER, noChanges));
+    }
+
+    @Test
+    public void refParsing() throws GeneralSecurityException {
+        String tag = "{\"ref\": \"refs/tags/v2\", \"deleted\": true, \"repository\": {\"full_name\": \"ga4gh/dockstore-ui\"}}";
+        resource.github("push", sign(resource.secretOf(USER), tag), USER, tag);
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals("v2", changes.get(0).getReference());
+        Assert.assertEquals(Version.ReferenceType.TAG, changes.get(0).getReferenceType());
+        Assert.assertTrue(changes.get(0).isDeleted());
+
+        // branches with slashes keep them
+        String branch = "{\"ref\": \"refs/heads/feature/webhooks\", \"repository\": {\"full_name\": \"ga4gh/dockstore-ui\"}}";
+        resource.github("push", sign(resource.secretOf(USER), branch), USER, branch);
+        Assert.assertEquals("feature/webhooks", changes.get(1).getReference());
+
+        String note = "{\"ref\": \"refs/notes/commits\", \"repository\": {\"full_name\": \"ga4gh/dockstore-ui\"}}";
+        resource.github("push", sign(resource.secretOf(USER), note), USER, note);
+        Assert.assertEquals(2, changes.size());
+
+        // other events are acknowledged and ignored
+        resource.github("ping", sign(resource.secretOf(USER), "{}"), USER, "{}");
+        Assert.assertEquals(2, changes.size());
+    }
+}